@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.jdbc;
+
+import ch.puzzle.openshift.openshift.DatabaseData;
+import ch.puzzle.openshift.openshift.DatabaseDataCache;
+import ch.puzzle.openshift.openshift.DirectChannelTarget;
+import ch.puzzle.openshift.openshift.TrafficClass;
+import ch.puzzle.openshift.openshift.TunnelOptions;
+import com.openshift.client.IOpenShiftConnection;
+
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * State of a single proxy driver connect. Every connect uses its own context so concurrent connects never share
+ * mutable state, shared resources (openshift connections, sessions, tunnels) live in the thread-safe registries of
+ * the {@link ch.puzzle.openshift.openshift.OpenshiftCommunicationHandler}.
+ */
+class ConnectionContext {
+
+    private final ProxyDriverURLParameter urlParameter;
+    private final Properties info;
+    private final DatabaseDataCache.Key databaseDataCacheKey;
+    private final TrafficClass trafficClass;
+
+    private IOpenShiftConnection openshiftConnection;
+    private DatabaseData databaseData;
+    private boolean cachedDatabaseData;
+    private Integer forwardedPort;
+    private DirectChannelTarget directChannelTarget;
+
+    ConnectionContext(ProxyDriverURLParameter urlParameter, Properties info) {
+        this.urlParameter = Objects.requireNonNull(urlParameter, "Url parameter must not be null");
+        // copy the properties, the openshift credentials are still needed when the database data has to be refreshed
+        this.info = new Properties();
+        this.info.putAll(Objects.requireNonNull(info, "Properties must not be null"));
+        this.databaseDataCacheKey = DatabaseDataCache.createKey(urlParameter.getServer(), urlParameter.getDomain(), urlParameter.getApplication(), urlParameter.getCartridge(), getOpenshiftUser(),
+                getOpenshiftPassword());
+        final String trafficClassProperty = this.info.getProperty(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY);
+        this.trafficClass = trafficClassProperty != null ? TrafficClass.fromParameter(trafficClassProperty) : TrafficClass.INTERACTIVE;
+    }
+
+    ProxyDriverURLParameter getUrlParameter() {
+        return urlParameter;
+    }
+
+    Properties getInfo() {
+        return info;
+    }
+
+    String getOpenshiftUser() {
+        return info.getProperty(OpenshiftProxyDriver.USER_PROPERTY_KEY);
+    }
+
+    String getOpenshiftPassword() {
+        return info.getProperty(OpenshiftProxyDriver.PASSWORD_PROPERTY_KEY);
+    }
+
+    String getPrivateSshKeyFilePath() {
+        return info.getProperty(OpenshiftProxyDriver.SSH_PRIVATE_KEY_PROPERTY_KEY);
+    }
+
+    TrafficClass getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Options of the tunnel to the database: traffic class of the properties, striping and tuning of the url.
+     */
+    TunnelOptions getTunnelOptions() {
+        return new TunnelOptions(trafficClass, urlParameter.getStripes(), urlParameter.getStripingStrategy(), urlParameter.getSshTuning());
+    }
+
+    DatabaseDataCache.Key getDatabaseDataCacheKey() {
+        return databaseDataCacheKey;
+    }
+
+    IOpenShiftConnection getOpenshiftConnection() {
+        return openshiftConnection;
+    }
+
+    void setOpenshiftConnection(IOpenShiftConnection openshiftConnection) {
+        this.openshiftConnection = openshiftConnection;
+    }
+
+    boolean isConnectedToOpenshift() {
+        return openshiftConnection != null;
+    }
+
+    DatabaseData getDatabaseData() {
+        return databaseData;
+    }
+
+    void setDatabaseData(DatabaseData databaseData, boolean cachedDatabaseData) {
+        this.databaseData = databaseData;
+        this.cachedDatabaseData = cachedDatabaseData;
+    }
+
+    boolean isCachedDatabaseData() {
+        return cachedDatabaseData;
+    }
+
+    Integer getForwardedPort() {
+        return forwardedPort;
+    }
+
+    void setForwardedPort(Integer forwardedPort) {
+        this.forwardedPort = forwardedPort;
+    }
+
+    DirectChannelTarget getDirectChannelTarget() {
+        return directChannelTarget;
+    }
+
+    void setDirectChannelTarget(DirectChannelTarget directChannelTarget) {
+        this.directChannelTarget = directChannelTarget;
+    }
+
+    /**
+     * Host the target driver connects to, the database host on the gear for direct channels, localhost otherwise.
+     */
+    String getTargetHost() {
+        return directChannelTarget != null ? directChannelTarget.getRemoteHost() : "localhost";
+    }
+
+    /**
+     * Port the target driver connects to, either the externally forwarded port, the port forwarded by the proxy driver
+     * or the database port on the gear for direct channels.
+     */
+    int getTargetPort() {
+        if (directChannelTarget != null) {
+            return directChannelTarget.getRemotePort();
+        }
+        return urlParameter.hasExternalForwardedPort() ? urlParameter.getExternalForwardedPort() : forwardedPort;
+    }
+}
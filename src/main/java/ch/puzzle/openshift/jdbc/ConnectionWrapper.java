@@ -16,6 +16,8 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.DirectChannelTarget;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -38,8 +40,30 @@ public class ConnectionWrapper {
      * @see java.sql.DriverManager#getConnection(String, java.util.Properties)
      */
     public Connection wrap(String url, Properties info) throws SQLException {
+        return wrap(url, info, (Integer) null);
+    }
+
+    /**
+     * Tries to establish a (wrapped) connection to the registered driver. The wrapped connection releases the port
+     * forwarding on the given local port when it is closed.
+     *
+     * @param forwardedPort local port forwarded by the proxy driver or null if the port is not forwarded by the proxy driver
+     * @see java.sql.DriverManager#getConnection(String, java.util.Properties)
+     */
+    public Connection wrap(String url, Properties info, Integer forwardedPort) throws SQLException {
+        final Connection connection = wrapConnection(Objects.requireNonNull(url, "URL must not be null"), Objects.requireNonNull(info, "Properties must not be null"));
+        return new ProxyDriverConnection(driver, connection, forwardedPort);
+    }
+
+    /**
+     * Tries to establish a (wrapped) connection to the registered driver through direct channels to the given target.
+     * The wrapped connection releases the target when it is closed.
+     *
+     * @see java.sql.DriverManager#getConnection(String, java.util.Properties)
+     */
+    public Connection wrap(String url, Properties info, DirectChannelTarget directChannelTarget) throws SQLException {
         final Connection connection = wrapConnection(Objects.requireNonNull(url, "URL must not be null"), Objects.requireNonNull(info, "Properties must not be null"));
-        return new ProxyDriverConnection(driver, connection);
+        return new ProxyDriverConnection(driver, connection, directChannelTarget);
     }
 
     private Connection wrapConnection(String url, Properties info) throws SQLException {
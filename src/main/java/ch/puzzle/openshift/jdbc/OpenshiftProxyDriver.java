@@ -16,14 +16,35 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.ChannelSocketFactory;
+import ch.puzzle.openshift.openshift.CompressionStatistics;
 import ch.puzzle.openshift.openshift.DatabaseData;
+import ch.puzzle.openshift.openshift.DatabaseDataCache;
+import ch.puzzle.openshift.openshift.DirectChannelTarget;
+import ch.puzzle.openshift.openshift.GearConnection;
 import ch.puzzle.openshift.openshift.OpenshiftCommunicationHandler;
+import ch.puzzle.openshift.openshift.SingleFlight;
+import ch.puzzle.openshift.openshift.TunnelState;
+import ch.puzzle.openshift.openshift.TunnelStateListener;
+import com.openshift.client.IOpenShiftConnection;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -35,6 +56,21 @@ public class OpenshiftProxyDriver implements Driver {
     static final String USER_PROPERTY_KEY = "user";
     static final String PASSWORD_PROPERTY_KEY = "password";
     static final String SSH_PRIVATE_KEY_PROPERTY_KEY = "privateSshKeyFilePath";
+    static final String TRAFFIC_CLASS_PROPERTY_KEY = "proxyTrafficClass";
+
+    static final String AUTHENTICATION_FAILURE_SQL_STATE_CLASS = "28";
+
+    static final String ASYNC_CONNECT_THREADS_SYSTEM_PROPERTY = "ch.puzzle.openshift.asyncConnect.threads";
+    static final int DEFAULT_ASYNC_CONNECT_THREADS = 10;
+    private static final long ASYNC_CONNECT_THREAD_KEEP_ALIVE_IN_SECONDS = 60;
+
+    static final String DIRECT_CHANNELS_SYSTEM_PROPERTY = "ch.puzzle.openshift.directChannels";
+    static final String SOCKET_FACTORY_PROPERTY_KEY = "socketFactory";
+    static final String SOCKET_FACTORY_ARG_PROPERTY_KEY = "socketFactoryArg";
+    /**
+     * Protocols of target drivers accepting a javax.net.SocketFactory class name and a String argument for it
+     */
+    static final List<String> SOCKET_FACTORY_PROTOCOLS = Collections.singletonList("postgresql");
 
     static final int MAJOR_VERSION = 1;
     static final int MINOR_VERSION = 0;
@@ -43,6 +79,12 @@ public class OpenshiftProxyDriver implements Driver {
 
     private OpenshiftCommunicationHandler communicator;
     private ConnectionWrapper connectionProxy;
+    private DatabaseDataCache databaseDataCache;
+    private ExecutorService connectExecutor;
+    private ExecutorService asyncConnectExecutor;
+    private boolean directChannels;
+    private SocketFactorySupport socketFactorySupport = new SocketFactorySupport();
+    private final SingleFlight<DatabaseDataCache.Key, DatabaseData> databaseDataLoads = new SingleFlight<>();
 
     static {
         registerDriver();
@@ -51,16 +93,68 @@ public class OpenshiftProxyDriver implements Driver {
     public OpenshiftProxyDriver() {
         this.communicator = new OpenshiftCommunicationHandler();
         this.connectionProxy = new ConnectionWrapper(this);
+        this.databaseDataCache = new DatabaseDataCache();
+        this.connectExecutor = Executors.newCachedThreadPool(createDaemonThreadFactory("openshift-proxy-connect"));
+        this.asyncConnectExecutor = createAsyncConnectExecutor(Integer.getInteger(ASYNC_CONNECT_THREADS_SYSTEM_PROPERTY, DEFAULT_ASYNC_CONNECT_THREADS));
+        this.directChannels = Boolean.parseBoolean(System.getProperty(DIRECT_CHANNELS_SYSTEM_PROPERTY, "false"));
+    }
+
+    private static ExecutorService createAsyncConnectExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Async connect threads must be at least 1");
+        }
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, ASYNC_CONNECT_THREAD_KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), createDaemonThreadFactory("openshift-proxy-async-connect"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory createDaemonThreadFactory(final String threadName) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
     }
 
 
     /**
-     * TODO javadoc
+     * Connects to the database of the application cartridge defined by the url. Connect is thread-safe, all
+     * connection specific state is held in a {@link ConnectionContext}. The gear (ssh session, wake-up and port
+     * lookup) is opened in the background while the database data is read, the port forwarding is started as soon as
+     * both are available.
      *
      * @see Driver#connect(String, java.util.Properties)
      */
     @Override
     public Connection connect(String url, Properties info) throws SQLException {
+        return connect(url, info, null);
+    }
+
+    /**
+     * Connects asynchronously on the driver's async connect executor (see {@link #ASYNC_CONNECT_THREADS_SYSTEM_PROPERTY}).
+     *
+     * @see #connectAsync(String, Properties, Executor)
+     */
+    public Future<Connection> connectAsync(String url, Properties info) {
+        return connectAsync(url, info, asyncConnectExecutor);
+    }
+
+    /**
+     * Connects asynchronously on the given executor. The returned future may be cancelled at any time: connect stops
+     * at the next phase, and a port forwarding or connection that was already set up is released. The future's
+     * result is null when this driver does not accept the url, like {@link #connect(String, Properties)}.
+     */
+    public Future<Connection> connectAsync(String url, Properties info, Executor executor) {
+        final ConnectTask task = new ConnectTask(url, info);
+        executor.execute(task);
+        return task;
+    }
+
+    private Connection connect(String url, Properties info, ConnectTask task) throws SQLException {
         logger.info("proxy connection request to " + url);
 
         if (!acceptsURL(url)) {
@@ -71,54 +165,254 @@ public class OpenshiftProxyDriver implements Driver {
         try {
             verifyUserPasswordProperties(info);
 
-            ProxyDriverURLParameter proxyDriverURLParameter = ProxyDriverURLParameter.createValid(url);
-            final DatabaseData databaseData = connectToOpenshiftAndGetDatabaseData(proxyDriverURLParameter, info);
+            final ConnectionContext context = new ConnectionContext(ProxyDriverURLParameter.createValid(url), info);
+            final Future<GearConnection> gearConnection = openGearConnectionUnlessExternallyForwarded(context);
+            try {
+                readDatabaseData(context);
+                verifyNotCancelled(task);
+
+                if (gearConnection == null) {
+                    logger.info("Use external portforwarding on port " + context.getUrlParameter().getExternalForwardedPort());
+                } else {
+                    startPortForwarding(context, awaitGearConnection(gearConnection));
+                }
+            } finally {
+                if (gearConnection != null) {
+                    releaseGearConnection(gearConnection);
+                }
+            }
+
+            boolean isConnected = false;
+            try {
+                verifyNotCancelled(task);
+                final Connection connection = connectToDriverInvalidatingGearStateOnFailure(context);
+                isConnected = true;
+                return connection;
+            } finally {
+                if (!isConnected && context.getForwardedPort() != null) {
+                    releasePortForwarding(context.getForwardedPort());
+                }
+                if (!isConnected && context.getDirectChannelTarget() != null) {
+                    releaseDirectChannelTarget(context.getDirectChannelTarget());
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new SQLException("Error occurred while communicating with openshift. Reason: " + e.getMessage(), e);
+        }
+
+    }
 
-            int port;
+    private void readDatabaseData(ConnectionContext context) {
+        final DatabaseData cachedDatabaseData = databaseDataCache.get(context.getDatabaseDataCacheKey());
+        if (cachedDatabaseData != null) {
+            logger.fine("Use cached database data for " + context.getDatabaseDataCacheKey());
+            context.setDatabaseData(cachedDatabaseData, true);
+        } else {
+            context.setDatabaseData(connectToOpenshiftAndGetDatabaseData(context), false);
+        }
+    }
+
+    private void verifyNotCancelled(ConnectTask task) throws SQLException {
+        if (task != null && task.isCancelled()) {
+            throw new SQLException("Connect was cancelled");
+        }
+    }
 
-            if (proxyDriverURLParameter.hasExternalForwardedPort()) {
-                logger.info("Use external portforwarding on port " + proxyDriverURLParameter.getExternalForwardedPort());
-                port = proxyDriverURLParameter.getExternalForwardedPort();
-            } else {
-                logger.info("Start port forwarding");
-                port = communicator.startPortForwarding(proxyDriverURLParameter.getApplication(), proxyDriverURLParameter.getDomain(), databaseData.getConnectionUrl(), info.getProperty(SSH_PRIVATE_KEY_PROPERTY_KEY));
+    private Future<GearConnection> openGearConnectionUnlessExternallyForwarded(ConnectionContext context) {
+        final ProxyDriverURLParameter urlParameter = context.getUrlParameter();
+        if (urlParameter.hasExternalForwardedPort()) {
+            return null;
+        }
+        // connect before forking, the openshift connection is shared by the gear and the database data request
+        final IOpenShiftConnection openshiftConnection = connectToOpenshift(context);
+        final String privateSshKeyFilePath = context.getPrivateSshKeyFilePath();
+        // with cached database data the port listing can stop at the database port
+        final DatabaseData cachedDatabaseData = databaseDataCache.get(context.getDatabaseDataCacheKey());
+        final String connectionUrlHint = cachedDatabaseData != null ? cachedDatabaseData.getConnectionUrl() : null;
+        return connectExecutor.submit(new Callable<GearConnection>() {
+            @Override
+            public GearConnection call() {
+                logger.info("Open gear connection");
+                return communicator.openGearConnection(openshiftConnection, urlParameter.getApplication(), urlParameter.getDomain(), privateSshKeyFilePath, urlParameter.getWakeUpStrategy(), connectionUrlHint);
             }
+        });
+    }
 
-            String connectionUrl = createConnectionUrl(databaseData, port);
-            Properties targetDriverPropertiesInfo = createTargetDriverPropertiesInfo(info, databaseData);
+    private GearConnection awaitGearConnection(Future<GearConnection> gearConnection) {
+        try {
+            return gearConnection.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while opening gear connection", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
 
-            return connectToDriver(connectionUrl, targetDriverPropertiesInfo);
-        } catch (RuntimeException e) {
-            throw new SQLException("Error occurred while communicating with openshift. Reason: " + e.getMessage(), e);
+    /**
+     * Releases the gear connection once it is opened. If connect failed before the gear was opened, the release is
+     * done in the background so the caller does not wait for a gear connection nobody needs anymore.
+     */
+    private void releaseGearConnection(final Future<GearConnection> gearConnection) {
+        if (gearConnection.isDone()) {
+            releaseOpenedGearConnection(gearConnection);
+        } else {
+            connectExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    releaseOpenedGearConnection(gearConnection);
+                }
+            });
         }
+    }
 
+    private void releaseOpenedGearConnection(Future<GearConnection> gearConnection) {
+        try {
+            final GearConnection openedGearConnection = gearConnection.get();
+            if (openedGearConnection != null) {
+                communicator.releaseGearConnection(openedGearConnection);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            logger.fine("Gear connection was not opened, nothing to release. Reason: " + e.getMessage());
+        }
     }
 
-    private Properties createTargetDriverPropertiesInfo(Properties allPropertyInfos, DatabaseData databaseData) {
-        removeProxyDriverSpecificProperties(allPropertyInfos);
-        addTargetDriverUserPasswordProperties(allPropertyInfos, databaseData.getDbUser(), databaseData.getDbUserPassword());
+    private void startPortForwarding(ConnectionContext context, GearConnection gearConnection) {
+        if (isDirectChannelSupported(context)) {
+            logger.info("Open direct channel target");
+            context.setDirectChannelTarget(communicator.openDirectChannelTarget(gearConnection, context.getDatabaseData().getConnectionUrl(), context.getTunnelOptions()));
+            return;
+        }
+        logger.info("Start port forwarding");
+        final int port = communicator.startPortForwarding(gearConnection, context.getDatabaseData().getConnectionUrl(), context.getTunnelOptions());
+        context.setForwardedPort(port);
+    }
 
-        return allPropertyInfos;
+    /**
+     * Direct channels are used if they are enabled, the user did not configure a socket factory and the loaded target
+     * driver accepts one, otherwise the connection falls back to port forwarding. Striped connections use port
+     * forwardings, which are spread over several sessions.
+     */
+    private boolean isDirectChannelSupported(ConnectionContext context) {
+        if (!directChannels || context.getInfo().containsKey(SOCKET_FACTORY_PROPERTY_KEY) || context.getUrlParameter().getStripes() > 1) {
+            return false;
+        }
+        final String[] protocolHost = context.getDatabaseData().getConnectionUrl().split(URL_PROTOCOL_HOST_DELIMITER);
+        if (protocolHost.length < 2 || !SOCKET_FACTORY_PROTOCOLS.contains(protocolHost[0])) {
+            return false;
+        }
+        return socketFactorySupport.isSupported("jdbc:" + protocolHost[0] + URL_PROTOCOL_HOST_DELIMITER + "localhost/" + context.getDatabaseData().getDatabaseName());
+    }
+
+    private Properties createTargetDriverPropertiesInfo(Properties allPropertyInfos, DatabaseData databaseData, DirectChannelTarget directChannelTarget) {
+        Properties targetDriverPropertyInfos = new Properties();
+        targetDriverPropertyInfos.putAll(allPropertyInfos);
+        removeProxyDriverSpecificProperties(targetDriverPropertyInfos);
+        addTargetDriverUserPasswordProperties(targetDriverPropertyInfos, databaseData.getDbUser(), databaseData.getDbUserPassword());
+        if (directChannelTarget != null) {
+            targetDriverPropertyInfos.setProperty(SOCKET_FACTORY_PROPERTY_KEY, ChannelSocketFactory.class.getName());
+            targetDriverPropertyInfos.setProperty(SOCKET_FACTORY_ARG_PROPERTY_KEY, directChannelTarget.getKey());
+        }
+
+        return targetDriverPropertyInfos;
     }
 
     private void removeProxyDriverSpecificProperties(Properties allPropertyInfos) {
         allPropertyInfos.remove(USER_PROPERTY_KEY);
         allPropertyInfos.remove(PASSWORD_PROPERTY_KEY);
         allPropertyInfos.remove(SSH_PRIVATE_KEY_PROPERTY_KEY);
+        allPropertyInfos.remove(TRAFFIC_CLASS_PROPERTY_KEY);
     }
 
-    private DatabaseData connectToOpenshiftAndGetDatabaseData(ProxyDriverURLParameter proxyDriverURLParameter, Properties info) {
+    private Connection connectToDriverInvalidatingGearStateOnFailure(ConnectionContext context) throws SQLException {
         try {
+            return connectToDriverRefreshingRejectedDatabaseData(context);
+        } catch (SQLException e) {
+            if (!isAuthenticationFailure(e)) {
+                // the gear might have been moved or restarted, do not rely on cached forwardable ports anymore
+                if (context.getForwardedPort() != null) {
+                    communicator.invalidateGearState(context.getForwardedPort());
+                } else if (context.getDirectChannelTarget() != null) {
+                    communicator.invalidateGearState(context.getDirectChannelTarget());
+                }
+            }
+            throw e;
+        }
+    }
+
+    private Connection connectToDriverRefreshingRejectedDatabaseData(ConnectionContext context) throws SQLException {
+        try {
+            return connectToDriver(context);
+        } catch (SQLException e) {
+            if (!context.isCachedDatabaseData() || !isAuthenticationFailure(e)) {
+                throw e;
+            }
+            logger.info("Target driver rejected cached database credentials, refresh database data for " + context.getDatabaseDataCacheKey());
+            databaseDataCache.invalidate(context.getDatabaseDataCacheKey());
+            context.setDatabaseData(connectToOpenshiftAndGetDatabaseData(context), false);
+            return connectToDriver(context);
+        }
+    }
+
+    private IOpenShiftConnection connectToOpenshift(ConnectionContext context) {
+        if (!context.isConnectedToOpenshift()) {
             logger.fine("Connect to openshift server");
-            communicator.connect(proxyDriverURLParameter.getServer(), info.getProperty(USER_PROPERTY_KEY), info.getProperty(PASSWORD_PROPERTY_KEY));
+            context.setOpenshiftConnection(communicator.connect(context.getUrlParameter().getServer(), context.getOpenshiftUser(), context.getOpenshiftPassword()));
+        }
+        return context.getOpenshiftConnection();
+    }
+
+    /**
+     * Concurrent connects to the same cartridge share a single read of the database data. The cache key includes a
+     * hash of the openshift password, so only connects with the same credentials share a read, a connect with other
+     * credentials does its own openshift login.
+     */
+    private DatabaseData connectToOpenshiftAndGetDatabaseData(final ConnectionContext context) {
+        return databaseDataLoads.execute(context.getDatabaseDataCacheKey(), new Callable<DatabaseData>() {
+            @Override
+            public DatabaseData call() {
+                return loadDatabaseData(context);
+            }
+        });
+    }
+
+    private DatabaseData loadDatabaseData(ConnectionContext context) {
+        try {
+            final IOpenShiftConnection openshiftConnection = connectToOpenshift(context);
             logger.fine("Read database data from cartridge");
-            return communicator.readDatabaseData(proxyDriverURLParameter.getApplication(), proxyDriverURLParameter.getDomain(), proxyDriverURLParameter.getCartridge());
+            final ProxyDriverURLParameter urlParameter = context.getUrlParameter();
+            final DatabaseData databaseData = communicator.readDatabaseData(openshiftConnection, urlParameter.getApplication(), urlParameter.getDomain(), urlParameter.getCartridge());
+            databaseDataCache.put(context.getDatabaseDataCacheKey(), databaseData);
+            return databaseData;
         } catch (Exception e) {
             logger.warning("Could not connect to openshift and read database data! Reason: " + e.getMessage());
             throw new RuntimeException("Error connecting and reading database data from openshift server", e);
         }
     }
 
+    /**
+     * Returns true if the target driver refused the database credentials (SQLState class 28: invalid authorization specification).
+     */
+    private boolean isAuthenticationFailure(SQLException e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof SQLException) {
+                final String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith(AUTHENTICATION_FAILURE_SQL_STATE_CLASS)) {
+                    return true;
+                }
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
     private void addTargetDriverUserPasswordProperties(Properties proxyDriverProperties, String dbUser, String dbUserPassword) {
         proxyDriverProperties.put(USER_PROPERTY_KEY, dbUser);
         proxyDriverProperties.put(PASSWORD_PROPERTY_KEY, dbUserPassword);
@@ -126,8 +420,52 @@ public class OpenshiftProxyDriver implements Driver {
 
 
     /**
-     * Close driver is a callback method to clean up open connections to openshift.
-     * This method is ment to be called by sql connection close.
+     * Callback method to release the port forwarding of a closed sql connection. The tunnel is only closed when no
+     * other connection uses it anymore.
+     */
+    public void releasePortForwarding(int forwardedPort) {
+        logger.fine("Release port forwarding on port " + forwardedPort);
+        communicator.releasePortForwarding(forwardedPort);
+    }
+
+    /**
+     * Callback method to release the direct channel target of a closed sql connection.
+     */
+    public void releaseDirectChannelTarget(DirectChannelTarget directChannelTarget) {
+        logger.fine("Release " + directChannelTarget);
+        communicator.releaseDirectChannelTarget(directChannelTarget);
+    }
+
+    /**
+     * Returns the state of the port forwarding a sql connection uses, e.g. to detect connections through a broken
+     * tunnel.
+     */
+    public TunnelState getTunnelState(int forwardedPort) {
+        return communicator.getTunnelState(forwardedPort);
+    }
+
+    /**
+     * Returns the compression ratios of the compressed ssh sessions, see the system property
+     * ch.puzzle.openshift.ssh.compression.
+     */
+    public List<CompressionStatistics> getCompressionStatistics() {
+        return communicator.getCompressionStatistics();
+    }
+
+    /**
+     * Registers a listener notified when port forwardings are started, detected broken or closed.
+     */
+    public void addTunnelStateListener(TunnelStateListener listener) {
+        communicator.addTunnelStateListener(listener);
+    }
+
+    public void removeTunnelStateListener(TunnelStateListener listener) {
+        communicator.removeTunnelStateListener(listener);
+    }
+
+    /**
+     * Close driver cleans up all open port forwardings and connections to openshift, including the ones still used
+     * by open sql connections.
      */
     public void close() {
         logger.info("Disconnect openshift communicator");
@@ -148,18 +486,27 @@ public class OpenshiftProxyDriver implements Driver {
         throw new SQLException("Invalid user properties! At least user and password must be set!");
     }
 
-    private Connection connectToDriver(String url, Properties info) throws SQLException {
+    private Connection connectToDriver(ConnectionContext context) throws SQLException {
+        String connectionUrl = createConnectionUrl(context.getDatabaseData(), context.getTargetHost(), context.getTargetPort());
+        Properties targetDriverPropertiesInfo = createTargetDriverPropertiesInfo(context.getInfo(), context.getDatabaseData(), context.getDirectChannelTarget());
+
+        return connectToDriver(connectionUrl, targetDriverPropertiesInfo, context);
+    }
+
+    private Connection connectToDriver(String url, Properties info, ConnectionContext context) throws SQLException {
         try {
-            final Connection wrappedConnection = connectionProxy.wrap(url, info);
+            final Connection wrappedConnection = context.getDirectChannelTarget() != null
+                    ? connectionProxy.wrap(url, info, context.getDirectChannelTarget())
+                    : connectionProxy.wrap(url, info, context.getForwardedPort());
             logger.info("Successfully established connection to " + url);
             return wrappedConnection;
         } catch (Exception e) {
-            throw new SQLException(e.getMessage());
+            throw new SQLException(e.getMessage(), e);
         }
     }
 
 
-    private String createConnectionUrl(DatabaseData connectionData, int forwardedPort) throws SQLException {
+    private String createConnectionUrl(DatabaseData connectionData, String host, int port) throws SQLException {
         String connectionUrl = connectionData.getConnectionUrl();
         final String[] protocolHost = connectionUrl.split(URL_PROTOCOL_HOST_DELIMITER);
 
@@ -167,7 +514,7 @@ public class OpenshiftProxyDriver implements Driver {
             throw new SQLException("Error extracting connection url");
         } else {
             String protocol = protocolHost[0];
-            return "jdbc:" + protocol + URL_PROTOCOL_HOST_DELIMITER + "localhost:" + forwardedPort + "/" + connectionData.getDatabaseName();
+            return "jdbc:" + protocol + URL_PROTOCOL_HOST_DELIMITER + host + ":" + port + "/" + connectionData.getDatabaseName();
         }
     }
 
@@ -202,6 +549,11 @@ public class OpenshiftProxyDriver implements Driver {
         driverpropertyinfo.description = "Absolute file path of private ssh key";
         driverPropertyInfos.add(driverpropertyinfo);
 
+        driverpropertyinfo = new DriverPropertyInfo(TRAFFIC_CLASS_PROPERTY_KEY, properties.getProperty(TRAFFIC_CLASS_PROPERTY_KEY));
+        driverpropertyinfo.description = "Traffic class of the connection, connections of different classes never share an ssh session";
+        driverpropertyinfo.choices = new String[]{"interactive", "bulk"};
+        driverPropertyInfos.add(driverpropertyinfo);
+
         return driverPropertyInfos.toArray(new DriverPropertyInfo[driverPropertyInfos.size()]);
     }
 
@@ -239,6 +591,71 @@ public class OpenshiftProxyDriver implements Driver {
         this.connectionProxy = connectionProxy;
     }
 
+    void setDirectChannels(boolean directChannels) {
+        this.directChannels = directChannels;
+    }
+
+    void setSocketFactorySupport(SocketFactorySupport socketFactorySupport) {
+        this.socketFactorySupport = Objects.requireNonNull(socketFactorySupport, "SocketFactorySupport must not be null");
+    }
+
+    void setAsyncConnectExecutor(ExecutorService asyncConnectExecutor) {
+        this.asyncConnectExecutor = Objects.requireNonNull(asyncConnectExecutor, "AsyncConnectExecutor must not be null");
+    }
+
+    void setConnectExecutor(ExecutorService connectExecutor) {
+        this.connectExecutor = Objects.requireNonNull(connectExecutor, "ConnectExecutor must not be null");
+    }
+
+    void setDatabaseDataCache(DatabaseDataCache databaseDataCache) {
+        this.databaseDataCache = Objects.requireNonNull(databaseDataCache, "DatabaseDataCache must not be null");
+    }
+
+
+    /**
+     * Future of an asynchronous connect. A connection that is only set after the future was cancelled is closed, so
+     * its port forwarding is released.
+     */
+    private class ConnectTask extends FutureTask<Connection> {
+
+        private ConnectTask(final String url, final Properties info) {
+            this(new ConnectCall(url, info));
+        }
+
+        private ConnectTask(ConnectCall call) {
+            super(call);
+            call.task = this;
+        }
+
+        @Override
+        protected void set(Connection connection) {
+            super.set(connection);
+            if (isCancelled() && connection != null) {
+                logger.info("Connect was cancelled, close established connection");
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.warning("Could not close connection of cancelled connect. Reason: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private class ConnectCall implements Callable<Connection> {
+        private final String url;
+        private final Properties info;
+        private ConnectTask task;
+
+        private ConnectCall(String url, Properties info) {
+            this.url = url;
+            this.info = info;
+        }
+
+        @Override
+        public Connection call() throws SQLException {
+            return connect(url, info, task);
+        }
+    }
 
     private static void registerDriver() {
         try {
@@ -16,11 +16,14 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.DirectChannelTarget;
+
 import java.sql.*;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -32,26 +35,84 @@ import java.util.logging.Logger;
  */
 public class ProxyDriverConnection implements Connection {
 
+    static final String CLOSED_MESSAGE = "Connection is closed";
+
     private final Connection wrappedConnection;
     private final OpenshiftProxyDriver proxyDriver;
+    private final Integer forwardedPort;
+    private final DirectChannelTarget directChannelTarget;
+    private final ProxyDriverDataSource dataSource;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
 
     private Logger logger = Logger.getLogger(ProxyDriverConnection.class.getName());
 
     public ProxyDriverConnection(OpenshiftProxyDriver proxyDriver, Connection wrappedConnection) {
+        this(proxyDriver, wrappedConnection, null, null);
+    }
+
+    /**
+     * @param forwardedPort local port forwarded by the proxy driver for this connection or null if the port is not
+     *                      forwarded by the proxy driver
+     */
+    public ProxyDriverConnection(OpenshiftProxyDriver proxyDriver, Connection wrappedConnection, Integer forwardedPort) {
+        this(proxyDriver, wrappedConnection, forwardedPort, null);
+    }
+
+    /**
+     * @param directChannelTarget target of the direct channels the connection uses instead of a port forwarding
+     */
+    public ProxyDriverConnection(OpenshiftProxyDriver proxyDriver, Connection wrappedConnection, DirectChannelTarget directChannelTarget) {
+        this(proxyDriver, wrappedConnection, null, Objects.requireNonNull(directChannelTarget, "Direct channel target must not be null"));
+    }
+
+    private ProxyDriverConnection(OpenshiftProxyDriver proxyDriver, Connection wrappedConnection, Integer forwardedPort, DirectChannelTarget directChannelTarget) {
         this.proxyDriver = Objects.requireNonNull(proxyDriver, "Proxy driver must not be null");
         this.wrappedConnection = Objects.requireNonNull(wrappedConnection, "Connection must not be null");
+        this.forwardedPort = forwardedPort;
+        this.directChannelTarget = directChannelTarget;
+        this.dataSource = null;
+    }
+
+    /**
+     * Creates a connection handed out by the pool of the given data source. Closing it returns the pooled
+     * connection to the data source.
+     */
+    ProxyDriverConnection(ProxyDriverDataSource dataSource, OpenshiftProxyDriver proxyDriver, Connection pooledConnection) {
+        this.dataSource = Objects.requireNonNull(dataSource, "Data source must not be null");
+        this.proxyDriver = Objects.requireNonNull(proxyDriver, "Proxy driver must not be null");
+        this.wrappedConnection = Objects.requireNonNull(pooledConnection, "Connection must not be null");
+        this.forwardedPort = null;
+        this.directChannelTarget = null;
     }
 
     /**
-     * Closing the connection must invoke {@link OpenshiftProxyDriver#close()} before closing the connection.
+     * Closing the connection releases the port forwarding used by this connection via
+     * {@link OpenshiftProxyDriver#releasePortForwarding(int)}. The tunnel itself is only closed when no other
+     * connection uses it. A direct channel target is released via
+     * {@link OpenshiftProxyDriver#releaseDirectChannelTarget(DirectChannelTarget)}. Connections handed out by a
+     * {@link ProxyDriverDataSource} are returned to its pool instead.
      *
      * @see java.sql.Connection#close()
      */
     @Override
     public void close() throws SQLException {
-        logger.info("Close driver connection and connection");
-        proxyDriver.close();
-        wrappedConnection.close();
+        if (dataSource != null) {
+            if (closed.compareAndSet(false, true)) {
+                logger.fine("Return connection to pool");
+                dataSource.returnConnection(wrappedConnection);
+            }
+            return;
+        }
+        logger.info("Close connection and release port forwarding");
+        try {
+            wrappedConnection.close();
+        } finally {
+            if (forwardedPort != null && closed.compareAndSet(false, true)) {
+                proxyDriver.releasePortForwarding(forwardedPort);
+            } else if (directChannelTarget != null && closed.compareAndSet(false, true)) {
+                proxyDriver.releaseDirectChannelTarget(directChannelTarget);
+            }
+        }
     }
 
     /**
@@ -59,7 +120,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException {
-        return wrappedConnection.unwrap(iface);
+        return getOpenConnection().unwrap(iface);
     }
 
     /**
@@ -67,7 +128,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public boolean isWrapperFor(Class iface) throws SQLException {
-        return wrappedConnection.isWrapperFor(iface);
+        return getOpenConnection().isWrapperFor(iface);
     }
 
     /**
@@ -75,7 +136,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Statement createStatement() throws SQLException {
-        return wrappedConnection.createStatement();
+        return getOpenConnection().createStatement();
     }
 
     /**
@@ -83,7 +144,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        return wrappedConnection.prepareStatement(sql);
+        return getOpenConnection().prepareStatement(sql);
     }
 
     /**
@@ -91,7 +152,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
-        return wrappedConnection.prepareCall(sql);
+        return getOpenConnection().prepareCall(sql);
     }
 
     /**
@@ -99,7 +160,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public String nativeSQL(String sql) throws SQLException {
-        return wrappedConnection.nativeSQL(sql);
+        return getOpenConnection().nativeSQL(sql);
     }
 
     /**
@@ -107,7 +168,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setAutoCommit(boolean autoCommit) throws SQLException {
-        wrappedConnection.setAutoCommit(autoCommit);
+        getOpenConnection().setAutoCommit(autoCommit);
     }
 
     /**
@@ -115,7 +176,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public boolean getAutoCommit() throws SQLException {
-        return wrappedConnection.getAutoCommit();
+        return getOpenConnection().getAutoCommit();
     }
 
     /**
@@ -123,7 +184,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void commit() throws SQLException {
-        wrappedConnection.commit();
+        getOpenConnection().commit();
     }
 
     /**
@@ -131,7 +192,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void rollback() throws SQLException {
-        wrappedConnection.rollback();
+        getOpenConnection().rollback();
     }
 
 
@@ -140,6 +201,9 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public boolean isClosed() throws SQLException {
+        if (isReturnedToPool()) {
+            return true;
+        }
         return wrappedConnection.isClosed();
     }
 
@@ -148,7 +212,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public DatabaseMetaData getMetaData() throws SQLException {
-        return wrappedConnection.getMetaData();
+        return getOpenConnection().getMetaData();
     }
 
     /**
@@ -156,7 +220,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setReadOnly(boolean readOnly) throws SQLException {
-        wrappedConnection.setReadOnly(readOnly);
+        getOpenConnection().setReadOnly(readOnly);
     }
 
     /**
@@ -164,7 +228,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public boolean isReadOnly() throws SQLException {
-        return wrappedConnection.isReadOnly();
+        return getOpenConnection().isReadOnly();
     }
 
     /**
@@ -172,7 +236,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setCatalog(String catalog) throws SQLException {
-        wrappedConnection.setCatalog(catalog);
+        getOpenConnection().setCatalog(catalog);
     }
 
     /**
@@ -180,7 +244,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public String getCatalog() throws SQLException {
-        return wrappedConnection.getCatalog();
+        return getOpenConnection().getCatalog();
     }
 
     /**
@@ -188,7 +252,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setTransactionIsolation(int level) throws SQLException {
-        wrappedConnection.setTransactionIsolation(level);
+        getOpenConnection().setTransactionIsolation(level);
     }
 
     /**
@@ -196,7 +260,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public int getTransactionIsolation() throws SQLException {
-        return wrappedConnection.getTransactionIsolation();
+        return getOpenConnection().getTransactionIsolation();
     }
 
     /**
@@ -204,7 +268,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public SQLWarning getWarnings() throws SQLException {
-        return wrappedConnection.getWarnings();
+        return getOpenConnection().getWarnings();
     }
 
     /**
@@ -212,7 +276,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void clearWarnings() throws SQLException {
-        wrappedConnection.clearWarnings();
+        getOpenConnection().clearWarnings();
     }
 
     /**
@@ -221,7 +285,7 @@ public class ProxyDriverConnection implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency)
             throws SQLException {
-        return wrappedConnection.createStatement(resultSetType, resultSetConcurrency);
+        return getOpenConnection().createStatement(resultSetType, resultSetConcurrency);
     }
 
     /**
@@ -229,7 +293,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return wrappedConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        return getOpenConnection().prepareStatement(sql, resultSetType, resultSetConcurrency);
     }
 
     /**
@@ -237,7 +301,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return wrappedConnection.prepareCall(sql, resultSetType, resultSetConcurrency);
+        return getOpenConnection().prepareCall(sql, resultSetType, resultSetConcurrency);
     }
 
     /**
@@ -245,7 +309,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Map<String, Class<?>> getTypeMap() throws SQLException {
-        return wrappedConnection.getTypeMap();
+        return getOpenConnection().getTypeMap();
     }
 
     /**
@@ -253,7 +317,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
-        wrappedConnection.setTypeMap(map);
+        getOpenConnection().setTypeMap(map);
     }
 
     /**
@@ -261,7 +325,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setHoldability(int holdability) throws SQLException {
-        wrappedConnection.setHoldability(holdability);
+        getOpenConnection().setHoldability(holdability);
     }
 
     /**
@@ -269,7 +333,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public int getHoldability() throws SQLException {
-        return wrappedConnection.getHoldability();
+        return getOpenConnection().getHoldability();
     }
 
     /**
@@ -277,7 +341,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Savepoint setSavepoint() throws SQLException {
-        return wrappedConnection.setSavepoint();
+        return getOpenConnection().setSavepoint();
     }
 
     /**
@@ -285,7 +349,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Savepoint setSavepoint(String name) throws SQLException {
-        return wrappedConnection.setSavepoint(name);
+        return getOpenConnection().setSavepoint(name);
     }
 
     /**
@@ -293,7 +357,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void rollback(Savepoint savepoint) throws SQLException {
-        wrappedConnection.rollback(savepoint);
+        getOpenConnection().rollback(savepoint);
     }
 
     /**
@@ -301,7 +365,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-        wrappedConnection.releaseSavepoint(savepoint);
+        getOpenConnection().releaseSavepoint(savepoint);
     }
 
     /**
@@ -309,7 +373,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return wrappedConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+        return getOpenConnection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     /**
@@ -317,7 +381,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return wrappedConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        return getOpenConnection().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     /**
@@ -325,7 +389,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return wrappedConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        return getOpenConnection().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     /**
@@ -333,7 +397,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        return wrappedConnection.prepareStatement(sql, autoGeneratedKeys);
+        return getOpenConnection().prepareStatement(sql, autoGeneratedKeys);
     }
 
     /**
@@ -341,7 +405,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        return wrappedConnection.prepareStatement(sql, columnIndexes);
+        return getOpenConnection().prepareStatement(sql, columnIndexes);
     }
 
     /**
@@ -349,7 +413,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-        return wrappedConnection.prepareStatement(sql, columnNames);
+        return getOpenConnection().prepareStatement(sql, columnNames);
     }
 
     /**
@@ -357,7 +421,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Clob createClob() throws SQLException {
-        return wrappedConnection.createClob();
+        return getOpenConnection().createClob();
     }
 
     /**
@@ -365,7 +429,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Blob createBlob() throws SQLException {
-        return wrappedConnection.createBlob();
+        return getOpenConnection().createBlob();
     }
 
     /**
@@ -373,7 +437,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public NClob createNClob() throws SQLException {
-        return wrappedConnection.createNClob();
+        return getOpenConnection().createNClob();
     }
 
     /**
@@ -381,7 +445,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public SQLXML createSQLXML() throws SQLException {
-        return wrappedConnection.createSQLXML();
+        return getOpenConnection().createSQLXML();
     }
 
     /**
@@ -389,6 +453,9 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public boolean isValid(int timeout) throws SQLException {
+        if (isReturnedToPool()) {
+            return false;
+        }
         return wrappedConnection.isValid(timeout);
     }
 
@@ -397,6 +464,9 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        if (isReturnedToPool()) {
+            throw new SQLClientInfoException(CLOSED_MESSAGE, null);
+        }
         wrappedConnection.setClientInfo(name, value);
     }
 
@@ -405,6 +475,9 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        if (isReturnedToPool()) {
+            throw new SQLClientInfoException(CLOSED_MESSAGE, null);
+        }
         wrappedConnection.setClientInfo(properties);
     }
 
@@ -413,7 +486,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public String getClientInfo(String name) throws SQLException {
-        return wrappedConnection.getClientInfo(name);
+        return getOpenConnection().getClientInfo(name);
     }
 
     /**
@@ -421,7 +494,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Properties getClientInfo() throws SQLException {
-        return wrappedConnection.getClientInfo();
+        return getOpenConnection().getClientInfo();
     }
 
     /**
@@ -429,7 +502,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
-        return wrappedConnection.createArrayOf(typeName, elements);
+        return getOpenConnection().createArrayOf(typeName, elements);
     }
 
     /**
@@ -437,7 +510,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
-        return wrappedConnection.createStruct(typeName, attributes);
+        return getOpenConnection().createStruct(typeName, attributes);
     }
 
     /**
@@ -445,7 +518,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setSchema(String schema) throws SQLException {
-        wrappedConnection.setSchema(schema);
+        getOpenConnection().setSchema(schema);
     }
 
     /**
@@ -453,7 +526,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public String getSchema() throws SQLException {
-        return wrappedConnection.getSchema();
+        return getOpenConnection().getSchema();
     }
 
     /**
@@ -461,7 +534,10 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void abort(Executor executor) throws SQLException {
-        wrappedConnection.abort(executor);
+        // aborting a closed connection is a no-op, a returned pooled connection may already be used by another borrower
+        if (!isReturnedToPool()) {
+            wrappedConnection.abort(executor);
+        }
     }
 
     /**
@@ -469,7 +545,7 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
-        wrappedConnection.setNetworkTimeout(executor, milliseconds);
+        getOpenConnection().setNetworkTimeout(executor, milliseconds);
     }
 
     /**
@@ -477,8 +553,21 @@ public class ProxyDriverConnection implements Connection {
      */
     @Override
     public int getNetworkTimeout() throws SQLException {
-        return wrappedConnection.getNetworkTimeout();
+        return getOpenConnection().getNetworkTimeout();
     }
 
+    private boolean isReturnedToPool() {
+        return dataSource != null && closed.get();
+    }
 
-}
\ No newline at end of file
+    /**
+     * Returns the wrapped connection unless this connection was returned to the pool of its data source. The pooled
+     * connection is then idle in the pool or already handed out to another borrower and must not be used anymore.
+     */
+    private Connection getOpenConnection() throws SQLException {
+        if (isReturnedToPool()) {
+            throw new SQLException(CLOSED_MESSAGE);
+        }
+        return wrappedConnection;
+    }
+}
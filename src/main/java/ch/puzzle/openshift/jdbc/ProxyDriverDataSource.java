@@ -0,0 +1,517 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.jdbc;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Pooling {@link DataSource} for the proxy driver. Physical connections to the target database (and their shared
+ * port forwarding) are kept open in a pool. Closing a connection returns it to the pool.
+ * <p/>
+ * The pool is configured with bean properties: {@link #setUrl(String)}, {@link #setUser(String)} and
+ * {@link #setPassword(String)} are mandatory, all other properties are optional. The pool starts with
+ * {@link #initialize()} or the first {@link #getConnection()}, only then min idle connections are opened in advance.
+ * <p/>
+ * The data source owns its proxy driver (openshift connections, tunnels and caches). The driver is closed once the
+ * data source is closed and the last borrowed connection is returned. Returned connections get the auto commit, read
+ * only, transaction isolation, catalog and holdability they were opened with.
+ */
+public class ProxyDriverDataSource implements DataSource {
+
+    static final int DEFAULT_MIN_IDLE = 0;
+    static final int DEFAULT_MAX_SIZE = 10;
+    static final long DEFAULT_MAX_WAIT_IN_MILLIS = 30_000;
+    static final long DEFAULT_IDLE_TIMEOUT_IN_MILLIS = 600_000;
+    static final long DEFAULT_MAINTENANCE_INTERVAL_IN_MILLIS = 30_000;
+    static final int DEFAULT_VALIDATION_TIMEOUT_IN_SECONDS = 5;
+
+    private Logger logger = Logger.getLogger(ProxyDriverDataSource.class.getName());
+
+    private OpenshiftProxyDriver driver = new OpenshiftProxyDriver();
+
+    private String url;
+    private final Properties properties = new Properties();
+    private int minIdle = DEFAULT_MIN_IDLE;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long maxWaitInMillis = DEFAULT_MAX_WAIT_IN_MILLIS;
+    private long idleTimeoutInMillis = DEFAULT_IDLE_TIMEOUT_IN_MILLIS;
+    private long maintenanceIntervalInMillis = DEFAULT_MAINTENANCE_INTERVAL_IN_MILLIS;
+    private int validationTimeoutInSeconds = DEFAULT_VALIDATION_TIMEOUT_IN_SECONDS;
+    private int loginTimeout;
+    private PrintWriter logWriter;
+
+    private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final ConcurrentMap<Connection, InitialState> initialStates = new ConcurrentHashMap<>();
+    private final AtomicBoolean driverClosed = new AtomicBoolean(false);
+    private final Object maintenanceLock = new Object();
+    private Semaphore borrowPermits;
+    private ScheduledExecutorService maintenanceScheduler;
+    private volatile boolean closed;
+
+    /**
+     * Borrows a connection from the pool. Idle connections are validated before they are handed out, a new physical
+     * connection is opened if no valid idle connection is available and the pool is not exhausted.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        final Semaphore permits = initializePool();
+        try {
+            if (!permits.tryAcquire(maxWaitInMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timeout waiting for a pooled connection, all " + maxSize + " connections are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+
+        try {
+            return new ProxyDriverConnection(this, driver, borrowPhysicalConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            closeDriverWhenUnused();
+            throw e;
+        }
+    }
+
+    private Connection borrowPhysicalConnection() throws SQLException {
+        IdleConnection idleConnection;
+        while ((idleConnection = idleConnections.pollFirst()) != null) {
+            if (isValid(idleConnection.connection)) {
+                return idleConnection.connection;
+            }
+            logger.info("Discard invalid pooled connection");
+            closePhysicalConnection(idleConnection.connection);
+        }
+        return openPhysicalConnection();
+    }
+
+    private Connection openPhysicalConnection() throws SQLException {
+        final Properties info = new Properties();
+        info.putAll(properties);
+        final Connection connection = driver.connect(url, info);
+        if (connection == null) {
+            throw new SQLException("Proxy driver does not accept url " + url);
+        }
+        try {
+            initialStates.put(connection, new InitialState(connection));
+        } catch (SQLException e) {
+            closePhysicalConnection(connection);
+            throw e;
+        }
+        return connection;
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(validationTimeoutInSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Callback of {@link ProxyDriverConnection#close()} to give a borrowed physical connection back to the pool.
+     */
+    void returnConnection(Connection connection) {
+        try {
+            if (closed || connection.isClosed()) {
+                closePhysicalConnection(connection);
+            } else {
+                resetConnection(connection);
+                offerIdleConnection(connection, true);
+            }
+        } catch (SQLException e) {
+            logger.info("Discard pooled connection which could not be reset. Reason: " + e.getMessage());
+            closePhysicalConnection(connection);
+        } finally {
+            borrowPermits.release();
+            closeDriverWhenUnused();
+        }
+    }
+
+    /**
+     * Rolls back an open transaction and restores the state the connection was opened with, so no settings of a
+     * borrower leak to the next one.
+     */
+    private void resetConnection(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+        final InitialState initialState = initialStates.get(connection);
+        if (initialState != null) {
+            initialState.restore(connection);
+        } else {
+            connection.setAutoCommit(true);
+        }
+        connection.clearWarnings();
+    }
+
+    /**
+     * Adds the connection to the idle connections unless the data source was closed meanwhile, close drains the idle
+     * connections while holding the same lock.
+     */
+    private synchronized void offerIdleConnection(Connection connection, boolean first) {
+        if (closed) {
+            closePhysicalConnection(connection);
+        } else if (first) {
+            idleConnections.offerFirst(new IdleConnection(connection, currentTimeMillis()));
+        } else {
+            idleConnections.offerLast(new IdleConnection(connection, currentTimeMillis()));
+        }
+    }
+
+    private void closePhysicalConnection(Connection connection) {
+        initialStates.remove(connection);
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.fine("Error closing pooled connection. Reason: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the driver once the data source is closed and no connection is borrowed anymore, borrowed connections
+     * still use its tunnels.
+     */
+    private void closeDriverWhenUnused() {
+        if (closed && borrowedConnections() == 0 && driverClosed.compareAndSet(false, true)) {
+            logger.info("Close proxy driver of data source");
+            driver.close();
+        }
+    }
+
+    /**
+     * Evicts connections which have been idle for longer than the idle timeout (keeping at least min idle
+     * connections) and opens connections until min idle connections are available. Opening a connection takes a
+     * borrow permit like {@link #getConnection()}, so idle and borrowed connections never exceed the max size.
+     */
+    void maintainPool() {
+        if (borrowPermits == null) {
+            return;
+        }
+        synchronized (maintenanceLock) {
+            final long now = currentTimeMillis();
+            for (Iterator<IdleConnection> iterator = idleConnections.descendingIterator(); iterator.hasNext(); ) {
+                final IdleConnection idleConnection = iterator.next();
+                if (idleConnections.size() > minIdle && now - idleConnection.idleSinceMillis >= idleTimeoutInMillis && idleConnections.remove(idleConnection)) {
+                    logger.fine("Evict idle pooled connection");
+                    closePhysicalConnection(idleConnection.connection);
+                }
+            }
+
+            while (!closed && idleConnections.size() < minIdle) {
+                if (!warmUpConnection()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean warmUpConnection() {
+        if (!borrowPermits.tryAcquire()) {
+            return false;
+        }
+        try {
+            // the permit counts as borrowed, so this holds for all connections including the one being opened
+            if (idleConnections.size() + borrowedConnections() > maxSize) {
+                return false;
+            }
+            offerIdleConnection(openPhysicalConnection(), false);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            logger.warning("Could not open pooled connection. Reason: " + e.getMessage());
+            return false;
+        } finally {
+            borrowPermits.release();
+            closeDriverWhenUnused();
+        }
+    }
+
+    private int borrowedConnections() {
+        return borrowPermits != null ? maxSize - borrowPermits.availablePermits() : 0;
+    }
+
+    /**
+     * Validates the configuration and starts the pool, which opens min idle connections in the background. Called by
+     * the first {@link #getConnection()} if the pool was not started before.
+     */
+    public void initialize() throws SQLException {
+        initializePool();
+    }
+
+    private synchronized Semaphore initializePool() throws SQLException {
+        if (closed) {
+            throw new SQLException("Data source is closed");
+        }
+        if (borrowPermits == null) {
+            if (url == null) {
+                throw new SQLException("Url must be set");
+            }
+            if (minIdle < 0 || maxSize < 1 || minIdle > maxSize) {
+                throw new SQLException("Invalid pool size, min idle " + minIdle + " and max size " + maxSize);
+            }
+            borrowPermits = new Semaphore(maxSize, true);
+            maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "openshift-proxy-datasource-maintenance");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            maintenanceScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    maintainPool();
+                }
+            }, 0, maintenanceIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+        return borrowPermits;
+    }
+
+    /**
+     * Closes all idle connections and stops the pool. Borrowed connections are closed when they are returned, the
+     * proxy driver is closed with the last of them.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (maintenanceScheduler != null) {
+            maintenanceScheduler.shutdownNow();
+        }
+        IdleConnection idleConnection;
+        while ((idleConnection = idleConnections.pollFirst()) != null) {
+            closePhysicalConnection(idleConnection.connection);
+        }
+        closeDriverWhenUnused();
+    }
+
+    int getIdleConnectionCount() {
+        return idleConnections.size();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Pooled connections all use the credentials configured on the data source.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the credentials configured on the data source");
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUser() {
+        return properties.getProperty(OpenshiftProxyDriver.USER_PROPERTY_KEY);
+    }
+
+    public void setUser(String user) {
+        properties.setProperty(OpenshiftProxyDriver.USER_PROPERTY_KEY, user);
+    }
+
+    public void setPassword(String password) {
+        properties.setProperty(OpenshiftProxyDriver.PASSWORD_PROPERTY_KEY, password);
+    }
+
+    public String getPrivateSshKeyFilePath() {
+        return properties.getProperty(OpenshiftProxyDriver.SSH_PRIVATE_KEY_PROPERTY_KEY);
+    }
+
+    public void setPrivateSshKeyFilePath(String privateSshKeyFilePath) {
+        properties.setProperty(OpenshiftProxyDriver.SSH_PRIVATE_KEY_PROPERTY_KEY, privateSshKeyFilePath);
+    }
+
+    public String getProxyTrafficClass() {
+        return properties.getProperty(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY);
+    }
+
+    /**
+     * Traffic class (interactive or bulk) of the pooled connections, see {@link ch.puzzle.openshift.openshift.TrafficClass}.
+     */
+    public void setProxyTrafficClass(String trafficClass) {
+        properties.setProperty(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY, trafficClass);
+    }
+
+    /**
+     * Additional properties passed to the proxy and target driver.
+     */
+    public void setProperties(Properties properties) {
+        this.properties.putAll(properties);
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxWaitInMillis() {
+        return maxWaitInMillis;
+    }
+
+    public void setMaxWaitInMillis(long maxWaitInMillis) {
+        this.maxWaitInMillis = maxWaitInMillis;
+    }
+
+    public long getIdleTimeoutInMillis() {
+        return idleTimeoutInMillis;
+    }
+
+    public void setIdleTimeoutInMillis(long idleTimeoutInMillis) {
+        this.idleTimeoutInMillis = idleTimeoutInMillis;
+    }
+
+    public long getMaintenanceIntervalInMillis() {
+        return maintenanceIntervalInMillis;
+    }
+
+    public void setMaintenanceIntervalInMillis(long maintenanceIntervalInMillis) {
+        this.maintenanceIntervalInMillis = maintenanceIntervalInMillis;
+    }
+
+    public int getValidationTimeoutInSeconds() {
+        return validationTimeoutInSeconds;
+    }
+
+    public void setValidationTimeoutInSeconds(int validationTimeoutInSeconds) {
+        this.validationTimeoutInSeconds = validationTimeoutInSeconds;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Data source is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    void setDriver(OpenshiftProxyDriver driver) {
+        this.driver = Objects.requireNonNull(driver, "Driver must not be null");
+    }
+
+    /**
+     * State of a physical connection when it was opened.
+     */
+    private static class InitialState {
+        private final boolean autoCommit;
+        private final boolean readOnly;
+        private final int transactionIsolation;
+        private final String catalog;
+        private final int holdability;
+
+        private InitialState(Connection connection) throws SQLException {
+            this.autoCommit = connection.getAutoCommit();
+            this.readOnly = connection.isReadOnly();
+            this.transactionIsolation = connection.getTransactionIsolation();
+            this.catalog = connection.getCatalog();
+            this.holdability = connection.getHoldability();
+        }
+
+        private void restore(Connection connection) throws SQLException {
+            if (connection.getAutoCommit() != autoCommit) {
+                connection.setAutoCommit(autoCommit);
+            }
+            if (connection.isReadOnly() != readOnly) {
+                connection.setReadOnly(readOnly);
+            }
+            if (connection.getTransactionIsolation() != transactionIsolation) {
+                connection.setTransactionIsolation(transactionIsolation);
+            }
+            if (catalog != null && !catalog.equals(connection.getCatalog())) {
+                connection.setCatalog(catalog);
+            }
+            if (connection.getHoldability() != holdability) {
+                connection.setHoldability(holdability);
+            }
+        }
+    }
+
+    private static class IdleConnection {
+        private final Connection connection;
+        private final long idleSinceMillis;
+
+        private IdleConnection(Connection connection, long idleSinceMillis) {
+            this.connection = connection;
+            this.idleSinceMillis = idleSinceMillis;
+        }
+    }
+}
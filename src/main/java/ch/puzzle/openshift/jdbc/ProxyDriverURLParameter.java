@@ -16,6 +16,10 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.SshTuning;
+import ch.puzzle.openshift.openshift.StripingStrategy;
+import ch.puzzle.openshift.openshift.WakeUpStrategy;
+
 import java.util.Properties;
 
 /**
@@ -28,26 +32,56 @@ public class ProxyDriverURLParameter {
     static final String DOMAIN_PARAMETER_PREFIX = "domain=";
     static final String CARTRIDGE_PARAMETER_PREFIX = "cartridge=";
     static final String FORWARDED_PORT_PARAMETER_PREFIX = "externalforwardedport=";
+    static final String WAKE_UP_PARAMETER_PREFIX = "wakeup=";
+    static final String STRIPES_PARAMETER_PREFIX = "stripes=";
+    static final String STRIPING_PARAMETER_PREFIX = "striping=";
+    static final String SSH_WINDOW_PARAMETER_PREFIX = "sshwindow=";
+    static final String SSH_MAX_PACKET_PARAMETER_PREFIX = "sshmaxpacket=";
+    static final String TCP_NO_DELAY_PARAMETER_PREFIX = "tcpnodelay=";
+    static final String SOCKET_SEND_BUFFER_PARAMETER_PREFIX = "socketsendbuffer=";
+    static final String SOCKET_RECEIVE_BUFFER_PARAMETER_PREFIX = "socketreceivebuffer=";
 
     static final String SERVER = "openshiftServerKey";
     static final String APPLICATION = "applicationKey";
     static final String DOMAIN = "domainKey";
     static final String CARTRIDGE = "cartridgeKey";
     static final String EXTERNAL_FORWARDED_PORT = "externalForwardedPortKey";
+    static final String WAKE_UP = "wakeUpKey";
+    static final String STRIPES = "stripesKey";
+    static final String STRIPING = "stripingKey";
+    static final String SSH_WINDOW = "sshWindowKey";
+    static final String SSH_MAX_PACKET = "sshMaxPacketKey";
+    static final String TCP_NO_DELAY = "tcpNoDelayKey";
+    static final String SOCKET_SEND_BUFFER = "socketSendBufferKey";
+    static final String SOCKET_RECEIVE_BUFFER = "socketReceiveBufferKey";
+
 
+    /**
+     * Every stripe is a separate ssh session to the gear, opened on demand.
+     */
+    static final int MAX_STRIPES = 8;
 
     private final String server;
     private final String application;
     private final String domain;
     private final String cartridge;
     private final Integer externalForwardedPort;
+    private final WakeUpStrategy wakeUpStrategy;
+    private final int stripes;
+    private final StripingStrategy stripingStrategy;
+    private final SshTuning sshTuning;
 
-    private ProxyDriverURLParameter(String server, String application, String domain, String cartridge, String externalForwardedPort) {
+    private ProxyDriverURLParameter(String server, String application, String domain, String cartridge, String externalForwardedPort, String wakeUpStrategy, String stripes, String stripingStrategy,
+                                    SshTuning sshTuning) {
         this.server = verifyNotNullAndNotEmpty(server);
         this.application = verifyNotNullAndNotEmpty(application);
         this.domain = verifyNotNullAndNotEmpty(domain);
         this.cartridge = verifyNotNullAndNotEmpty(cartridge);
         this.externalForwardedPort = convertIfNotNull(externalForwardedPort);
+        this.wakeUpStrategy = wakeUpStrategy != null ? WakeUpStrategy.fromParameter(wakeUpStrategy) : WakeUpStrategy.SSH;
+        this.stripes = stripes != null ? verifyAtMost(verifyPositive(Integer.parseInt(stripes)), MAX_STRIPES) : 1;
+        this.stripingStrategy = stripingStrategy != null ? StripingStrategy.fromParameter(stripingStrategy) : StripingStrategy.LEAST_LOADED;
+        this.sshTuning = sshTuning;
     }
 
     private Integer convertIfNotNull(String externalForwardedPort) {
@@ -65,7 +99,31 @@ public class ProxyDriverURLParameter {
      */
     public static ProxyDriverURLParameter createValid(String connectionUrl) {
         Properties parameter = extractProxyDriverParametersFromUrl(DRIVER_PROTOCOL_URL_PREFIX, connectionUrl);
-        return new ProxyDriverURLParameter(parameter.getProperty(SERVER), parameter.getProperty(APPLICATION), parameter.getProperty(DOMAIN), parameter.getProperty(CARTRIDGE), parameter.getProperty(EXTERNAL_FORWARDED_PORT));
+        return new ProxyDriverURLParameter(parameter.getProperty(SERVER), parameter.getProperty(APPLICATION), parameter.getProperty(DOMAIN), parameter.getProperty(CARTRIDGE), parameter.getProperty(EXTERNAL_FORWARDED_PORT), parameter.getProperty(WAKE_UP), parameter.getProperty(STRIPES), parameter.getProperty(STRIPING), createSshTuning(parameter));
+    }
+
+    private static SshTuning createSshTuning(Properties parameter) {
+        final String windowSize = parameter.getProperty(SSH_WINDOW);
+        final String tcpNoDelay = parameter.getProperty(TCP_NO_DELAY);
+        return new SshTuning(windowSize != null ? SshTuning.parseWindowSize(windowSize) : SshTuning.DEFAULT_SIZE, parseSize(parameter.getProperty(SSH_MAX_PACKET)),
+                tcpNoDelay != null ? parseBoolean(tcpNoDelay) : null, parseSize(parameter.getProperty(SOCKET_SEND_BUFFER)), parseSize(parameter.getProperty(SOCKET_RECEIVE_BUFFER)));
+    }
+
+    /**
+     * Accepts only true or false, a typo must not silently turn into false like with {@link Boolean#valueOf(String)}.
+     */
+    private static boolean parseBoolean(String argument) {
+        if ("true".equalsIgnoreCase(argument.trim())) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(argument.trim())) {
+            return false;
+        }
+        throw new IllegalArgumentException("Argument " + argument + " must be true or false");
+    }
+
+    private static int parseSize(String size) {
+        return size != null ? Integer.parseInt(size) : SshTuning.DEFAULT_SIZE;
     }
 
     private static Properties extractProxyDriverParametersFromUrl(String proxyDriverURLPrefix, String url) {
@@ -102,6 +160,30 @@ public class ProxyDriverURLParameter {
             if (parameterValues.startsWith(FORWARDED_PORT_PARAMETER_PREFIX)) {
                 properties.put(EXTERNAL_FORWARDED_PORT, parameterValues.substring(FORWARDED_PORT_PARAMETER_PREFIX.length()));
             }
+            if (parameterValues.startsWith(WAKE_UP_PARAMETER_PREFIX)) {
+                properties.put(WAKE_UP, parameterValues.substring(WAKE_UP_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(STRIPES_PARAMETER_PREFIX)) {
+                properties.put(STRIPES, parameterValues.substring(STRIPES_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(STRIPING_PARAMETER_PREFIX)) {
+                properties.put(STRIPING, parameterValues.substring(STRIPING_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(SSH_WINDOW_PARAMETER_PREFIX)) {
+                properties.put(SSH_WINDOW, parameterValues.substring(SSH_WINDOW_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(SSH_MAX_PACKET_PARAMETER_PREFIX)) {
+                properties.put(SSH_MAX_PACKET, parameterValues.substring(SSH_MAX_PACKET_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(TCP_NO_DELAY_PARAMETER_PREFIX)) {
+                properties.put(TCP_NO_DELAY, parameterValues.substring(TCP_NO_DELAY_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(SOCKET_SEND_BUFFER_PARAMETER_PREFIX)) {
+                properties.put(SOCKET_SEND_BUFFER, parameterValues.substring(SOCKET_SEND_BUFFER_PARAMETER_PREFIX.length()));
+            }
+            if (parameterValues.startsWith(SOCKET_RECEIVE_BUFFER_PARAMETER_PREFIX)) {
+                properties.put(SOCKET_RECEIVE_BUFFER, parameterValues.substring(SOCKET_RECEIVE_BUFFER_PARAMETER_PREFIX.length()));
+            }
         }
         return properties;
     }
@@ -131,6 +213,43 @@ public class ProxyDriverURLParameter {
         return externalForwardedPort != null;
     }
 
+    public WakeUpStrategy getWakeUpStrategy() {
+        return wakeUpStrategy;
+    }
+
+    /**
+     * Returns the number of ssh sessions the connections to the database are spread over.
+     */
+    public int getStripes() {
+        return stripes;
+    }
+
+    public StripingStrategy getStripingStrategy() {
+        return stripingStrategy;
+    }
+
+    /**
+     * Returns the flow control and socket tuning of the ssh sessions, {@link SshTuning#DEFAULT} if the url has no
+     * tuning parameters.
+     */
+    public SshTuning getSshTuning() {
+        return sshTuning;
+    }
+
+    private int verifyPositive(int argument) {
+        if (argument < 1) {
+            throw new IllegalArgumentException("Argument " + argument + " must be positive");
+        }
+        return argument;
+    }
+
+    private int verifyAtMost(int argument, int max) {
+        if (argument > max) {
+            throw new IllegalArgumentException("Argument " + argument + " must not be greater than " + max);
+        }
+        return argument;
+    }
+
     private String verifyNotNullAndNotEmpty(String argument) {
         if (argument == null || argument.isEmpty()) {
             throw new IllegalArgumentException("Argument " + argument + " must not be null or empty");
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.jdbc;
+
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Detects whether the target driver of a url accepts the socketFactory property, which direct channels depend on.
+ * The loaded driver is asked for its properties: pgjdbc lists socketFactory since 9.4, older versions like
+ * 9.3-1102 or 9.1-901 silently ignore it and would connect to the gear internal database host. The answer is kept per
+ * driver class.
+ */
+class SocketFactorySupport {
+
+    private final Logger logger = Logger.getLogger(SocketFactorySupport.class.getName());
+
+    private final ConcurrentMap<Class<?>, Boolean> supportByDriverClass = new ConcurrentHashMap<>();
+
+    /**
+     * Returns true if the driver registered for the url lists the socketFactory property, false if no driver accepts
+     * the url.
+     */
+    boolean isSupported(String targetUrl) {
+        final Driver driver;
+        try {
+            driver = DriverManager.getDriver(targetUrl);
+        } catch (SQLException e) {
+            logger.fine("No driver found for " + targetUrl + ". Reason: " + e.getMessage());
+            return false;
+        }
+        return isSupported(driver, targetUrl);
+    }
+
+    boolean isSupported(Driver driver, String targetUrl) {
+        final Boolean cachedSupport = supportByDriverClass.get(driver.getClass());
+        if (cachedSupport != null) {
+            return cachedSupport;
+        }
+        final boolean support = listsSocketFactory(driver, targetUrl);
+        if (!support) {
+            logger.info(driver.getClass().getName() + " " + driver.getMajorVersion() + "." + driver.getMinorVersion() + " does not support "
+                    + OpenshiftProxyDriver.SOCKET_FACTORY_PROPERTY_KEY + ", use port forwarding");
+        }
+        supportByDriverClass.putIfAbsent(driver.getClass(), support);
+        return support;
+    }
+
+    private boolean listsSocketFactory(Driver driver, String targetUrl) {
+        try {
+            final DriverPropertyInfo[] propertyInfos = driver.getPropertyInfo(targetUrl, new Properties());
+            if (propertyInfos != null) {
+                for (DriverPropertyInfo propertyInfo : propertyInfos) {
+                    if (OpenshiftProxyDriver.SOCKET_FACTORY_PROPERTY_KEY.equals(propertyInfo.name)) {
+                        return true;
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.warning("Could not read properties of " + driver.getClass().getName() + ". Reason: " + e.getMessage());
+        }
+        return false;
+    }
+}
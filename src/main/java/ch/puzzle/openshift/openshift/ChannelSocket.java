@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import com.jcraft.jsch.JSchException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Socket whose streams are the streams of a direct-tcpip channel. No input stream is set on the channel, so JSch
+ * does not start a copy thread: writes are sent as channel data packets by the writing thread and received data is
+ * piped to the reading thread by the session thread. Socket options of the tcp layer do not apply to a channel and
+ * are ignored, only the read timeout is honored. The channel window and packet size are set by the {@link ChannelTuner}
+ * of the session, which is told the time to open the channel and the throughput of the received data.
+ */
+class ChannelSocket extends Socket {
+
+    static final String DIRECT_TCPIP_CHANNEL_TYPE = "direct-tcpip";
+
+    private final DirectChannelTarget target;
+    private ChannelDirectTCPIP channel;
+    private ChannelTuner tuner;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+    private SocketAddress remoteAddress;
+    private volatile int soTimeout;
+    private volatile boolean closed;
+
+    ChannelSocket(DirectChannelTarget target) {
+        this.target = target;
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint) throws IOException {
+        connect(endpoint, 0);
+    }
+
+    @Override
+    public synchronized void connect(SocketAddress endpoint, int timeout) throws IOException {
+        if (closed) {
+            throw new SocketException("Socket is closed");
+        }
+        if (channel != null) {
+            throw new SocketException("Already connected");
+        }
+        try {
+            final ChannelDirectTCPIP directChannel = (ChannelDirectTCPIP) target.getSession().openChannel(DIRECT_TCPIP_CHANNEL_TYPE);
+            directChannel.setHost(target.getRemoteHost());
+            directChannel.setPort(target.getRemotePort());
+            tuner = ChannelTuner.of(target.getSession());
+            tuner.tune(directChannel);
+            // the receiving pipe must exist before the channel is opened
+            final InputStream channelInputStream = directChannel.getInputStream();
+            final long openStart = System.nanoTime();
+            directChannel.connect(timeout);
+            tuner.recordRoundTrip(System.nanoTime() - openStart);
+            inputStream = new ChannelInputStream(channelInputStream, directChannel);
+            outputStream = directChannel.getOutputStream();
+            channel = directChannel;
+            remoteAddress = endpoint;
+        } catch (JSchException e) {
+            throw new ConnectException("Could not open channel to " + target + ". Reason: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        verifyConnected();
+        return inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        verifyConnected();
+        return outputStream;
+    }
+
+    private void verifyConnected() throws SocketException {
+        if (closed) {
+            throw new SocketException("Socket is closed");
+        }
+        if (channel == null) {
+            throw new SocketException("Socket is not connected");
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (channel != null) {
+            channel.disconnect();
+            ((ChannelInputStream) inputStream).recordTransfer();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    @Override
+    public boolean isBound() {
+        return channel != null;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return remoteAddress instanceof InetSocketAddress ? ((InetSocketAddress) remoteAddress).getAddress() : null;
+    }
+
+    @Override
+    public int getPort() {
+        return remoteAddress instanceof InetSocketAddress ? ((InetSocketAddress) remoteAddress).getPort() : 0;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return -1;
+    }
+
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        this.soTimeout = timeout;
+    }
+
+    @Override
+    public int getSoTimeout() {
+        return soTimeout;
+    }
+
+    @Override
+    public void setTcpNoDelay(boolean on) {
+        // channel data is sent immediately
+    }
+
+    @Override
+    public boolean getTcpNoDelay() {
+        return true;
+    }
+
+    @Override
+    public void setKeepAlive(boolean on) {
+        // the session is kept alive by ssh keepalive messages
+    }
+
+    @Override
+    public boolean getKeepAlive() {
+        return false;
+    }
+
+    @Override
+    public void setSoLinger(boolean on, int linger) {
+        // not applicable to a channel
+    }
+
+    @Override
+    public int getSoLinger() {
+        return -1;
+    }
+
+    @Override
+    public void setReceiveBufferSize(int size) {
+        // the channel window is negotiated by the session
+    }
+
+    @Override
+    public void setSendBufferSize(int size) {
+        // the channel window is negotiated by the session
+    }
+
+    @Override
+    public void setTrafficClass(int trafficClass) {
+        // applies to the ssh connection, not to a single channel
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelSocket [" + target + (closed ? " closed" : channel != null ? " connected" : "") + "]";
+    }
+
+    /**
+     * Channel input stream that fails reads with a {@link SocketTimeoutException} when no data arrives within the
+     * socket timeout, like a tcp socket does.
+     */
+    private class ChannelInputStream extends FilterInputStream {
+
+        private final ChannelDirectTCPIP directChannel;
+        private long bytesRead;
+        private long firstReadNanos;
+        private long lastReadNanos;
+
+        private ChannelInputStream(InputStream in, ChannelDirectTCPIP directChannel) {
+            super(in);
+            this.directChannel = directChannel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            awaitData();
+            final int b = super.read();
+            count(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            awaitData();
+            final int read = super.read(b, off, len);
+            count(read);
+            return read;
+        }
+
+        private synchronized void count(int read) {
+            if (read <= 0) {
+                return;
+            }
+            lastReadNanos = System.nanoTime();
+            if (bytesRead == 0) {
+                firstReadNanos = lastReadNanos;
+            }
+            bytesRead += read;
+        }
+
+        private synchronized void recordTransfer() {
+            tuner.recordTransfer(bytesRead, lastReadNanos - firstReadNanos);
+        }
+
+        private void awaitData() throws IOException {
+            final int timeout = soTimeout;
+            if (timeout == 0) {
+                return;
+            }
+            final long deadline = System.currentTimeMillis() + timeout;
+            // the session thread notifies the pipe when it received data or the end of the stream
+            synchronized (in) {
+                while (in.available() == 0 && !directChannel.isEOF() && !directChannel.isClosed()) {
+                    final long remainingMillis = deadline - System.currentTimeMillis();
+                    if (remainingMillis <= 0) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    try {
+                        in.wait(remainingMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for data");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Socket factory for target drivers with a pluggable socket factory (e.g. the PostgreSQL driver properties
+ * socketFactory and socketFactoryArg). The sockets map their streams directly onto direct-tcpip channels of the ssh
+ * session to the gear, so there is no local listener, accept thread or loopback hop per connection.
+ * <p/>
+ * The target driver instantiates the factory with the key of a registered {@link DirectChannelTarget}. The host and
+ * port the target driver connects to are ignored, every socket connects to the database port of the target.
+ */
+public class ChannelSocketFactory extends SocketFactory {
+
+    private static final ConcurrentMap<String, DirectChannelTarget> TARGETS = new ConcurrentHashMap<>();
+
+    private final DirectChannelTarget target;
+
+    public ChannelSocketFactory(String targetKey) {
+        this.target = TARGETS.get(targetKey);
+        if (target == null) {
+            throw new IllegalArgumentException("No direct channel target registered for key " + targetKey);
+        }
+    }
+
+    static void register(DirectChannelTarget target) {
+        TARGETS.put(target.getKey(), target);
+    }
+
+    static void unregister(DirectChannelTarget target) {
+        TARGETS.remove(target.getKey(), target);
+    }
+
+    @Override
+    public Socket createSocket() {
+        return new ChannelSocket(target);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connect(InetSocketAddress.createUnresolved(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException {
+        return connect(InetSocketAddress.createUnresolved(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port) throws IOException {
+        return connect(new InetSocketAddress(address, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return connect(new InetSocketAddress(address, port));
+    }
+
+    private Socket connect(InetSocketAddress address) throws IOException {
+        final Socket socket = createSocket();
+        socket.connect(address);
+        return socket;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.Session;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Applies the {@link SshTuning} of a session to the direct-tcpip channels opened on it and to the local sockets
+ * forwarded to them. JSch has no public api for the window and packet size of a channel, they are set through its
+ * package private setters before the channel is opened. If they are not accessible the defaults of JSch are kept.
+ * <p/>
+ * With an automatic window size the round trip time is measured when a channel is opened and the throughput when a
+ * channel is closed. The window starts with the default of JSch and is set to twice the bandwidth-delay product
+ * (throughput * round trip time). If a transfer used the whole window, the window limited the throughput and is
+ * doubled, up to {@link #MAX_AUTO_WINDOW_SIZE}. New windows apply to channels opened afterwards. The measured round
+ * trip time and throughput are passed to the {@link LinkSampleListener} of the session regardless of the window size.
+ * <p/>
+ * The tuner of a session is registered by the {@link SessionConnector}, sessions are referenced weakly.
+ */
+class ChannelTuner {
+
+    static final int JSCH_WINDOW_SIZE = 128 * 1024;
+    static final int MAX_AUTO_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(ChannelTuner.class.getName());
+    private static final ChannelTuner DEFAULT_TUNER = new ChannelTuner(SshTuning.DEFAULT);
+    private static final Map<Session, ChannelTuner> TUNERS = Collections.synchronizedMap(new WeakHashMap<Session, ChannelTuner>());
+    private static final Method SET_LOCAL_WINDOW_SIZE_MAX = findChannelSetter("setLocalWindowSizeMax");
+    private static final Method SET_LOCAL_WINDOW_SIZE = findChannelSetter("setLocalWindowSize");
+    private static final Method SET_LOCAL_PACKET_SIZE = findChannelSetter("setLocalPacketSize");
+
+    private final SshTuning tuning;
+    private long smoothedRoundTripInNanos;
+    private long smoothedThroughputInBytesPerSecond;
+    private int autoWindowSize = JSCH_WINDOW_SIZE;
+    private LinkSampleListener linkSampleListener;
+
+    ChannelTuner(SshTuning tuning) {
+        this.tuning = tuning;
+    }
+
+    private static Method findChannelSetter(String name) {
+        try {
+            final Method setter = Channel.class.getDeclaredMethod(name, int.class);
+            setter.setAccessible(true);
+            return setter;
+        } catch (NoSuchMethodException | SecurityException e) {
+            LOGGER.warning("Channel window and packet size can not be tuned, " + name + " is not accessible. Reason: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static void register(Session session, ChannelTuner tuner) {
+        TUNERS.put(session, tuner);
+    }
+
+    /**
+     * Returns the tuner registered for the session, or a tuner keeping all defaults.
+     */
+    static ChannelTuner of(Session session) {
+        final ChannelTuner tuner = TUNERS.get(session);
+        return tuner != null ? tuner : DEFAULT_TUNER;
+    }
+
+    SshTuning getTuning() {
+        return tuning;
+    }
+
+    synchronized void setLinkSampleListener(LinkSampleListener linkSampleListener) {
+        this.linkSampleListener = linkSampleListener;
+    }
+
+    /**
+     * Sets the window and packet size of a channel that is not connected yet.
+     */
+    void tune(Channel channel) {
+        final int windowSize = getWindowSize();
+        if (windowSize != SshTuning.DEFAULT_SIZE) {
+            invoke(SET_LOCAL_WINDOW_SIZE_MAX, channel, windowSize);
+            invoke(SET_LOCAL_WINDOW_SIZE, channel, windowSize);
+        }
+        if (tuning.getMaxPacketSize() != SshTuning.DEFAULT_SIZE) {
+            invoke(SET_LOCAL_PACKET_SIZE, channel, tuning.getMaxPacketSize());
+        }
+    }
+
+    private void invoke(Method setter, Channel channel, int value) {
+        if (setter == null) {
+            return;
+        }
+        try {
+            setter.invoke(channel, value);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            LOGGER.fine("Could not tune channel with " + setter.getName() + ". Reason: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies tcp no delay (on by default) and the socket buffer sizes to a local socket forwarded to a channel.
+     */
+    void configureLocalSocket(Socket socket) throws SocketException {
+        socket.setTcpNoDelay(tuning.getTcpNoDelay() == null || tuning.getTcpNoDelay());
+        if (tuning.getSocketSendBufferSize() != SshTuning.DEFAULT_SIZE) {
+            socket.setSendBufferSize(tuning.getSocketSendBufferSize());
+        }
+        if (tuning.getSocketReceiveBufferSize() != SshTuning.DEFAULT_SIZE) {
+            socket.setReceiveBufferSize(tuning.getSocketReceiveBufferSize());
+        }
+    }
+
+    /**
+     * Returns the window size for the next channel, {@link SshTuning#DEFAULT_SIZE} for the default of JSch.
+     */
+    synchronized int getWindowSize() {
+        return tuning.isAutoWindowSize() ? autoWindowSize : tuning.getWindowSize();
+    }
+
+    /**
+     * Records the time it took to open a channel, which is one round trip to the gear.
+     */
+    synchronized void recordRoundTrip(long roundTripInNanos) {
+        if (roundTripInNanos <= 0) {
+            return;
+        }
+        // smoothed like the round trip time of tcp
+        smoothedRoundTripInNanos = smoothedRoundTripInNanos == 0 ? roundTripInNanos : smoothedRoundTripInNanos + (roundTripInNanos - smoothedRoundTripInNanos) / 8;
+    }
+
+    /**
+     * Records the bytes a channel received from the gear and the time between the first and the last received data.
+     * Transfers smaller than the current window say nothing about the link and are ignored.
+     */
+    void recordTransfer(long bytes, long durationInNanos) {
+        final LinkSampleListener listener;
+        final long roundTripInNanos;
+        final long throughput;
+        synchronized (this) {
+            final int windowSize = getWindowSize();
+            if (bytes < (windowSize != SshTuning.DEFAULT_SIZE ? windowSize : JSCH_WINDOW_SIZE) || durationInNanos <= 0) {
+                return;
+            }
+            final long sample = bytes * TimeUnit.SECONDS.toNanos(1) / durationInNanos;
+            smoothedThroughputInBytesPerSecond = smoothedThroughputInBytesPerSecond == 0 ? sample : smoothedThroughputInBytesPerSecond + (sample - smoothedThroughputInBytesPerSecond) / 4;
+            if (smoothedRoundTripInNanos == 0) {
+                return;
+            }
+            if (tuning.isAutoWindowSize()) {
+                resizeWindow();
+            }
+            listener = linkSampleListener;
+            roundTripInNanos = smoothedRoundTripInNanos;
+            throughput = smoothedThroughputInBytesPerSecond;
+        }
+        if (listener != null) {
+            listener.linkSampled(roundTripInNanos, throughput);
+        }
+    }
+
+    private void resizeWindow() {
+        final long bandwidthDelayProduct = smoothedThroughputInBytesPerSecond * smoothedRoundTripInNanos / TimeUnit.SECONDS.toNanos(1);
+        final long windowSize;
+        if (bandwidthDelayProduct * 4 >= autoWindowSize * 3L) {
+            // the window was (nearly) exhausted every round trip, so it limited the throughput
+            windowSize = autoWindowSize * 2L;
+        } else {
+            windowSize = bandwidthDelayProduct * 2;
+        }
+        final int previousWindowSize = autoWindowSize;
+        autoWindowSize = (int) Math.max(JSCH_WINDOW_SIZE, Math.min(MAX_AUTO_WINDOW_SIZE, windowSize));
+        if (autoWindowSize != previousWindowSize) {
+            LOGGER.fine("Channel window resized from " + previousWindowSize + " to " + autoWindowSize + " bytes (round trip "
+                    + TimeUnit.NANOSECONDS.toMillis(smoothedRoundTripInNanos) + "ms, " + smoothedThroughputInBytesPerSecond + " bytes/s)");
+        }
+    }
+
+    /**
+     * Notified with the smoothed round trip time and throughput of the session after every recorded transfer.
+     */
+    interface LinkSampleListener {
+        void linkSampled(long roundTripInNanos, long throughputInBytesPerSecond);
+    }
+}
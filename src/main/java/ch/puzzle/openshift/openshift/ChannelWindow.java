@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Buffer;
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.Packet;
+import com.jcraft.jsch.Session;
+
+import java.lang.reflect.Field;
+import java.util.logging.Logger;
+
+/**
+ * Withholds and grants the local window of a channel, the number of bytes the gear may still send on it. The session
+ * thread of JSch subtracts every received packet from the local window after it was written to the output stream of
+ * the channel and grants the gear a new window as soon as less than half is left, whether the data was consumed or
+ * not. Adding the packet to the local window while it is written keeps JSch from granting it again, so the gear runs
+ * out of window and stops sending. The withheld bytes are granted with a window adjust message once the data is
+ * consumed.
+ * <p/>
+ * The remote window, the number of bytes the gear still accepts on the channel, is read the same way. Writing more than
+ * the remote window to the channel blocks until the gear adjusts it.
+ * <p/>
+ * JSch has no api for the window of a channel, its package private fields are accessed by reflection. If they are not
+ * accessible, no window is withheld and the remote window is considered unbounded.
+ */
+final class ChannelWindow {
+
+    static final byte SSH_MSG_CHANNEL_WINDOW_ADJUST = 93;
+
+    private static final Logger LOGGER = Logger.getLogger(ChannelWindow.class.getName());
+    private static final Field LOCAL_WINDOW_SIZE = findChannelField("lwsize");
+    private static final Field LOCAL_WINDOW_SIZE_MAX = findChannelField("lwsize_max");
+    private static final Field RECIPIENT = findChannelField("recipient");
+    private static final Field REMOTE_WINDOW_SIZE = findChannelField("rwsize");
+
+    private ChannelWindow() {
+    }
+
+    private static Field findChannelField(String name) {
+        try {
+            final Field field = Channel.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | SecurityException e) {
+            LOGGER.warning("Channel window is not accessible, " + name + " is missing. Reason: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return LOCAL_WINDOW_SIZE != null && LOCAL_WINDOW_SIZE_MAX != null && RECIPIENT != null;
+    }
+
+    /**
+     * Returns the maximum local window of the channel, the most the gear can send without a window adjust.
+     */
+    static int getMaxSize(Channel channel) {
+        return isSupported() ? getInt(LOCAL_WINDOW_SIZE_MAX, channel) : ChannelTuner.JSCH_WINDOW_SIZE;
+    }
+
+    /**
+     * Returns the remote window of the channel, the most that can be written to it without waiting for a window
+     * adjust of the gear, or {@link Long#MAX_VALUE} if it is not accessible.
+     */
+    static long getRemoteSize(Channel channel) {
+        if (REMOTE_WINDOW_SIZE == null) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return REMOTE_WINDOW_SIZE.getLong(channel);
+        } catch (IllegalAccessException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Withholds the given bytes of a packet the session thread is writing to the output stream of the channel. Must
+     * only be called by the session thread from within that write. Returns false if the window can not be withheld.
+     */
+    static boolean withhold(Channel channel, int bytes) {
+        if (!isSupported()) {
+            return false;
+        }
+        try {
+            LOCAL_WINDOW_SIZE.setInt(channel, LOCAL_WINDOW_SIZE.getInt(channel) + bytes);
+            return true;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Grants the gear withheld bytes of the local window again.
+     */
+    static void grant(Session session, Channel channel, int bytes) throws Exception {
+        final Buffer buffer = new Buffer();
+        final Packet packet = new Packet(buffer);
+        packet.reset();
+        buffer.putByte(SSH_MSG_CHANNEL_WINDOW_ADJUST);
+        buffer.putInt(getInt(RECIPIENT, channel));
+        buffer.putInt(bytes);
+        // like JSch, no window adjust is sent for a closed channel
+        synchronized (channel) {
+            if (!channel.isClosed()) {
+                session.write(packet);
+            }
+        }
+    }
+
+    private static int getInt(Field field, Channel channel) {
+        try {
+            return field.getInt(channel);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Channel field " + field.getName() + " is not accessible", e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * Compression of the ssh transport to the gears, see {@link SessionConnector}.
+ */
+public enum CompressionMode {
+    /**
+     * No compression, the cheapest choice on fast links.
+     */
+    OFF,
+    /**
+     * zlib@openssh.com (or zlib) compression for every session.
+     */
+    ON,
+    /**
+     * Sessions start uncompressed and are switched to compression by a key re-exchange as soon as the measured
+     * round trip time and throughput show a slow link. Later sessions to the same gear start compressed.
+     */
+    ADAPTIVE;
+
+    /**
+     * Returns the compression mode for the (case insensitive) property value.
+     */
+    public static CompressionMode fromParameter(String parameter) {
+        for (CompressionMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(parameter)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression mode " + parameter);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Session;
+
+import java.lang.reflect.Field;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Bytes sent to and received from a gear through a compressed ssh session, before and after compression. Counted
+ * since compression was negotiated for the session.
+ */
+public class CompressionStatistics {
+
+    private static final Logger LOGGER = Logger.getLogger(CompressionStatistics.class.getName());
+    private static final Field DEFLATER_FIELD = findSessionField("deflater");
+    private static final Field INFLATER_FIELD = findSessionField("inflater");
+
+    private final String sshUrl;
+    private final long sentBytes;
+    private final long sentCompressedBytes;
+    private final long receivedBytes;
+    private final long receivedCompressedBytes;
+
+    CompressionStatistics(String sshUrl, long sentBytes, long sentCompressedBytes, long receivedBytes, long receivedCompressedBytes) {
+        this.sshUrl = sshUrl;
+        this.sentBytes = sentBytes;
+        this.sentCompressedBytes = sentCompressedBytes;
+        this.receivedBytes = receivedBytes;
+        this.receivedCompressedBytes = receivedCompressedBytes;
+    }
+
+    private static Field findSessionField(String name) {
+        try {
+            final Field field = Session.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | SecurityException e) {
+            LOGGER.warning("Compression statistics are not available, " + name + " of the session is not accessible. Reason: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the statistics of the {@link ZlibCompression}s JSch created for the session. Returns null if the session
+     * is not compressed by a {@link ZlibCompression}.
+     */
+    static CompressionStatistics of(String sshUrl, Session session) {
+        final ZlibCompression deflater = readCompression(DEFLATER_FIELD, session);
+        final ZlibCompression inflater = readCompression(INFLATER_FIELD, session);
+        if (deflater == null && inflater == null) {
+            return null;
+        }
+        return new CompressionStatistics(sshUrl, deflater != null ? deflater.getUncompressedBytes() : 0, deflater != null ? deflater.getCompressedBytes() : 0,
+                inflater != null ? inflater.getUncompressedBytes() : 0, inflater != null ? inflater.getCompressedBytes() : 0);
+    }
+
+    private static ZlibCompression readCompression(Field field, Session session) {
+        if (field == null) {
+            return null;
+        }
+        try {
+            final Object compression = field.get(session);
+            return compression instanceof ZlibCompression ? (ZlibCompression) compression : null;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public String getSshUrl() {
+        return sshUrl;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    public long getSentCompressedBytes() {
+        return sentCompressedBytes;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public long getReceivedCompressedBytes() {
+        return receivedCompressedBytes;
+    }
+
+    /**
+     * Returns uncompressed / compressed size of the sent data, 1 if nothing was sent yet.
+     */
+    public double getSentRatio() {
+        return ratio(sentBytes, sentCompressedBytes);
+    }
+
+    /**
+     * Returns uncompressed / compressed size of the received data, 1 if nothing was received yet.
+     */
+    public double getReceivedRatio() {
+        return ratio(receivedBytes, receivedCompressedBytes);
+    }
+
+    private static double ratio(long bytes, long compressedBytes) {
+        return compressedBytes > 0 ? (double) bytes / compressedBytes : 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "CompressionStatistics [%s sent %d/%d bytes (ratio %.2f), received %d/%d bytes (ratio %.2f)]", sshUrl, sentBytes, sentCompressedBytes,
+                getSentRatio(), receivedBytes, receivedCompressedBytes, getReceivedRatio());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Thread-safe in-process cache of {@link DatabaseData} read from database cartridges. Entries expire after the
+ * configured time to live and the least recently used entry is evicted once the maximum size is reached. Entries are
+ * scoped by a hash of the openshift password as well, so only callers presenting the credentials that read the database
+ * data get it from the cache.
+ */
+public class DatabaseDataCache {
+
+    static final String TIME_TO_LIVE_SYSTEM_PROPERTY = "ch.puzzle.openshift.databaseDataCache.timeToLiveInMillis";
+    static final String MAX_SIZE_SYSTEM_PROPERTY = "ch.puzzle.openshift.databaseDataCache.maxSize";
+
+    static final long DEFAULT_TIME_TO_LIVE_IN_MILLIS = 300_000;
+    static final int DEFAULT_MAX_SIZE = 100;
+
+    private final long timeToLiveInMillis;
+    private final Map<Key, Entry> entries;
+
+    public DatabaseDataCache() {
+        this(Long.getLong(TIME_TO_LIVE_SYSTEM_PROPERTY, DEFAULT_TIME_TO_LIVE_IN_MILLIS), Integer.getInteger(MAX_SIZE_SYSTEM_PROPERTY, DEFAULT_MAX_SIZE));
+    }
+
+    public DatabaseDataCache(long timeToLiveInMillis, final int maxSize) {
+        if (timeToLiveInMillis < 0 || maxSize < 0) {
+            throw new IllegalArgumentException("Time to live and max size must not be negative");
+        }
+        this.timeToLiveInMillis = timeToLiveInMillis;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached database data or null if there is no entry or the entry has expired.
+     */
+    public synchronized DatabaseData get(Key key) {
+        final Entry entry = entries.get(Objects.requireNonNull(key, "Key must not be null"));
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(currentTimeMillis())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.databaseData;
+    }
+
+    public synchronized void put(Key key, DatabaseData databaseData) {
+        Objects.requireNonNull(key, "Key must not be null");
+        Objects.requireNonNull(databaseData, "DatabaseData must not be null");
+        if (timeToLiveInMillis > 0) {
+            entries.put(key, new Entry(databaseData, currentTimeMillis() + timeToLiveInMillis));
+        }
+    }
+
+    /**
+     * Removes the entry for the given key so the next lookup forces a refresh from the cartridge.
+     */
+    public synchronized void invalidate(Key key) {
+        entries.remove(Objects.requireNonNull(key, "Key must not be null"));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public static Key createKey(String server, String domain, String application, String cartridge, String openshiftUser, String openshiftPassword) {
+        return new Key(server, domain, application, cartridge, openshiftUser, openshiftPassword);
+    }
+
+    private static class Entry {
+        private final DatabaseData databaseData;
+        private final long expiresAtMillis;
+
+        private Entry(DatabaseData databaseData, long expiresAtMillis) {
+            this.databaseData = databaseData;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private boolean isExpired(long nowMillis) {
+            return nowMillis >= expiresAtMillis;
+        }
+    }
+
+    public static final class Key {
+        private final String server;
+        private final String domain;
+        private final String application;
+        private final String cartridge;
+        private final String openshiftUser;
+        private final String openshiftPasswordHash;
+
+        private Key(String server, String domain, String application, String cartridge, String openshiftUser, String openshiftPassword) {
+            this.server = Objects.requireNonNull(server, "Server must not be null");
+            this.domain = Objects.requireNonNull(domain, "Domain must not be null");
+            this.application = Objects.requireNonNull(application, "Application must not be null");
+            this.cartridge = Objects.requireNonNull(cartridge, "Cartridge must not be null");
+            this.openshiftUser = Objects.requireNonNull(openshiftUser, "Openshift user must not be null");
+            this.openshiftPasswordHash = OpenshiftConnectionCache.hashPassword(Objects.requireNonNull(openshiftPassword, "Openshift password must not be null"));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return server.equals(other.server) && domain.equals(other.domain) && application.equals(other.application)
+                    && cartridge.equals(other.cartridge) && openshiftUser.equals(other.openshiftUser) && openshiftPasswordHash.equals(other.openshiftPasswordHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(server, domain, application, cartridge, openshiftUser, openshiftPasswordHash);
+        }
+
+        @Override
+        public String toString() {
+            return openshiftUser + "@" + server + "/" + domain + "/" + application + "/" + cartridge;
+        }
+    }
+}
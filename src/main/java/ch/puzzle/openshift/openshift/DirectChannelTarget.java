@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Session;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Database port on a gear that is reached through direct-tcpip channels of a borrowed ssh session instead of a local
+ * port forwarding. The target is registered with the {@link ChannelSocketFactory} under its key while it is open and
+ * must be released with {@link OpenshiftCommunicationHandler#releaseDirectChannelTarget(DirectChannelTarget)}.
+ * <p/>
+ * Unlike a port forwarding the target is not tracked by the {@link TunnelRegistry}, so it is neither checked by the
+ * {@link TunnelHealthMonitor} nor reported as {@link TunnelState#BROKEN}. If its session is lost the channel of its
+ * connection fails and the connection has to be reopened.
+ */
+public class DirectChannelTarget {
+
+    private final String key;
+    private final String sshUrl;
+    private final Session session;
+    private final String remoteHost;
+    private final int remotePort;
+
+    DirectChannelTarget(String sshUrl, Session session, String remoteHost, int remotePort) {
+        this.key = UUID.randomUUID().toString();
+        this.sshUrl = sshUrl;
+        this.session = Objects.requireNonNull(session, "Session must not be null");
+        this.remoteHost = Objects.requireNonNull(remoteHost, "Remote host must not be null");
+        this.remotePort = remotePort;
+    }
+
+    /**
+     * Key to pass as socket factory argument to the {@link ChannelSocketFactory}.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public String getSshUrl() {
+        return sshUrl;
+    }
+
+    public String getRemoteHost() {
+        return remoteHost;
+    }
+
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectChannelTarget [" + sshUrl + " " + remoteHost + ":" + remotePort + "]";
+    }
+}
@@ -21,7 +21,6 @@ import com.jcraft.jsch.Session;
 import com.openshift.client.OpenShiftSSHOperationException;
 
 import java.net.BindException;
-import java.util.Arrays;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -37,13 +36,10 @@ public class ForwardablePort {
      */
     private static final Pattern REGEX_FORWARDED_PORT = Pattern.compile("([^ ]+) -> ([^:]+):(\\d+)");
     /**
-     * The range 49152–65535 (215+214 to 216−1)—above the registered ports—contains dynamic or private ports that cannot be registered with IANA.[174] This range is used for custom or temporary purposes and for automatic allocation of ephemeral ports.
+     * Number of port forwarding attempts with another allocated port if the allocated port is bound by another
+     * process
      */
-    static final int INITIAL_STARTING_PORT = 49152;
-    /**
-     * Number of port forwarding retiry attempts with incremented port number
-     */
-    static final int PORT_ITERATION_RANGE = 10;
+    static final int MAX_BIND_ATTEMPTS = 10;
 
     static final int INITIAL_LOCAL_PORT = -1;
 
@@ -53,13 +49,27 @@ public class ForwardablePort {
     private final int remotePort;
 
     private int localPort = INITIAL_LOCAL_PORT;
+    private PortForwarder portForwarder = new JschPortForwarder();
 
 
     private ForwardablePort(String name, String remoteHost, String remotePortString) {
+        this(name, remoteHost, Integer.parseInt(remotePortString));
+    }
+
+    private ForwardablePort(String name, String remoteHost, int remotePort) {
         this.name = Objects.requireNonNull(name, "Name must not be null");
         this.remoteHost = Objects.requireNonNull(remoteHost, "Remote host must not be null");
-        int remotePort = Integer.parseInt(remotePortString);
-        this.remotePort = Objects.requireNonNull(remotePort, "Remote port must not be null");
+        this.remotePort = remotePort;
+    }
+
+    /**
+     * Returns a not yet forwarded port with the same name and remote host and port, e.g. to start a new port
+     * forwarding from a cached port description.
+     */
+    ForwardablePort copyNotForwarded() {
+        final ForwardablePort copy = new ForwardablePort(name, remoteHost, remotePort);
+        copy.portForwarder = portForwarder;
+        return copy;
     }
 
 
@@ -79,9 +89,33 @@ public class ForwardablePort {
         return matcher;
     }
 
-    public int startPortForwarding(Session session) {
+    /**
+     * Starts the port forwarding on a local port allocated by the given allocator. The local port must be returned
+     * to the allocator when the port forwarding is no longer used.
+     */
+    public int startPortForwarding(Session session, LocalPortAllocator allocator) {
         if (!isPortforwardingStarted(session)) {
-            localPort = doPortForward(session);
+            localPort = doPortForward(session, allocator);
+        }
+        return localPort;
+    }
+
+    /**
+     * Starts the port forwarding on the preferred local port, e.g. to re-establish a broken tunnel where its users
+     * expect it. The preferred port must have been allocated by the given allocator before. If it is bound by
+     * another process meanwhile it is returned to the allocator and another port is allocated.
+     */
+    public int startPortForwarding(Session session, LocalPortAllocator allocator, int preferredLocalPort) {
+        if (!isPortforwardingStarted(session)) {
+            try {
+                localPort = portForwarder.forward(session, preferredLocalPort, remoteHost, remotePort);
+            } catch (JSchException e) {
+                if (!(e.getCause() instanceof BindException)) {
+                    throw new RuntimeException("Failed to portforward. Reason: " + e.getMessage(), e);
+                }
+                allocator.releaseInUse(preferredLocalPort);
+                localPort = doPortForward(session, allocator);
+            }
         }
         return localPort;
     }
@@ -93,39 +127,34 @@ public class ForwardablePort {
             return false;
         }
         try {
-            // returned format : localPort:remoteHost:remotePort
-            final String[] portForwardingL = session.getPortForwardingL();
-            final String key = getLocalPort() + ":" + getRemoteHost() + ":" + getRemotePort();
-            Arrays.sort(portForwardingL);
-            final int r = Arrays.binarySearch(portForwardingL, key);
-            return r >= 0;
+            return portForwarder.isForwarding(session, localPort, remoteHost, remotePort);
         } catch (JSchException e) {
             throw new RuntimeException("Failed to retrieve SSH ports forwarding", e);
         }
     }
 
-    private int doPortForward(Session session) {
-        int startingPort = INITIAL_STARTING_PORT;
-
-        for (int i = 0; i < PORT_ITERATION_RANGE; i++) {
+    private int doPortForward(Session session, LocalPortAllocator allocator) {
+        for (int i = 0; i < MAX_BIND_ATTEMPTS; i++) {
+            final int allocatedPort = allocator.allocate();
             try {
-                return session.setPortForwardingL(startingPort, remoteHost, remotePort);
+                return portForwarder.forward(session, allocatedPort, remoteHost, remotePort);
             } catch (JSchException e) {
                 if (e.getCause() instanceof BindException) {
-                    // port already in use, try next port
-                    startingPort++;
+                    // port bound by another process, try another port
+                    allocator.releaseInUse(allocatedPort);
                 } else {
+                    allocator.release(allocatedPort);
                     throw new RuntimeException("Failed to portforward. Reason: " + e.getMessage(), e);
                 }
             }
         }
-        throw new RuntimeException("All ports from " + INITIAL_STARTING_PORT + " to " + (INITIAL_STARTING_PORT + PORT_ITERATION_RANGE) + " are already in use.");
+        throw new RuntimeException("No free local port found within " + MAX_BIND_ATTEMPTS + " attempts.");
     }
 
     public void stopPortForwarding(Session session) {
         if (isPortforwardingStarted(session)) {
             try {
-                session.delPortForwardingL(localPort);
+                portForwarder.stop(session, localPort);
                 localPort = INITIAL_LOCAL_PORT;
             } catch (JSchException e) {
                 throw new RuntimeException("Could not stop portforwarding", e);
@@ -134,6 +163,13 @@ public class ForwardablePort {
     }
 
 
+    /**
+     * Sets the forwarder used to start the port forwarding, JSch's local port forwarding by default.
+     */
+    void setPortForwarder(PortForwarder portForwarder) {
+        this.portForwarder = Objects.requireNonNull(portForwarder, "PortForwarder must not be null");
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe cache of the forwardable ports listed by rhc-list-ports per gear ssh url. The internal host and port
+ * mapping of a gear only changes when the gear is moved or restarted, so entries are kept for the time to live or
+ * until they are invalidated because a connect through a forwarded port failed.
+ */
+public class ForwardablePortCache {
+
+    static final String TIME_TO_LIVE_SYSTEM_PROPERTY = "ch.puzzle.openshift.forwardablePortCache.timeToLiveInMillis";
+
+    static final long DEFAULT_TIME_TO_LIVE_IN_MILLIS = 600_000;
+
+    private final long timeToLiveInMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ForwardablePortCache() {
+        this(Long.getLong(TIME_TO_LIVE_SYSTEM_PROPERTY, DEFAULT_TIME_TO_LIVE_IN_MILLIS));
+    }
+
+    public ForwardablePortCache(long timeToLiveInMillis) {
+        if (timeToLiveInMillis < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+        this.timeToLiveInMillis = timeToLiveInMillis;
+    }
+
+    /**
+     * Returns the cached forwardable ports of the gear or null if there are none or they have expired.
+     */
+    public ForwardablePorts get(String sshUrl) {
+        if (sshUrl == null) {
+            return null;
+        }
+        final Entry entry = entries.get(sshUrl);
+        if (entry == null) {
+            return null;
+        }
+        if (currentTimeMillis() - entry.createdMillis >= timeToLiveInMillis) {
+            entries.remove(sshUrl, entry);
+            return null;
+        }
+        return entry.forwardablePorts;
+    }
+
+    public void put(String sshUrl, ForwardablePorts forwardablePorts) {
+        Objects.requireNonNull(forwardablePorts, "Forwardable ports must not be null");
+        if (sshUrl != null && timeToLiveInMillis > 0) {
+            entries.put(sshUrl, new Entry(forwardablePorts, currentTimeMillis()));
+        }
+    }
+
+    public void invalidate(String sshUrl) {
+        if (sshUrl != null) {
+            entries.remove(sshUrl);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Entry {
+        private final ForwardablePorts forwardablePorts;
+        private final long createdMillis;
+
+        private Entry(ForwardablePorts forwardablePorts, long createdMillis) {
+            this.forwardablePorts = forwardablePorts;
+            this.createdMillis = createdMillis;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Forwardable ports listed by rhc-list-ports on a gear. The list is incomplete if reading the output was stopped
+ * early after the required port was found.
+ */
+public class ForwardablePorts {
+
+    private final List<ForwardablePort> ports;
+    private final boolean complete;
+
+    ForwardablePorts(List<ForwardablePort> ports, boolean complete) {
+        this.ports = Collections.unmodifiableList(new ArrayList<>(Objects.requireNonNull(ports, "Ports must not be null")));
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the first port whose service name the connection url starts with, or null if there is none.
+     */
+    ForwardablePort findMatching(String connectionUrl) {
+        if (connectionUrl == null) {
+            return null;
+        }
+        for (ForwardablePort port : ports) {
+            if (connectionUrl.startsWith(port.getName())) {
+                return port;
+            }
+        }
+        return null;
+    }
+
+    List<ForwardablePort> getPorts() {
+        return ports;
+    }
+
+    boolean isEmpty() {
+        return ports.isEmpty();
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+}
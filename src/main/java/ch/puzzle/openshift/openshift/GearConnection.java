@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Session;
+
+import java.util.Objects;
+
+/**
+ * A woken up application gear with a borrowed ssh session and the ports listed by its rhc-list-ports command. Opened by
+ * {@link OpenshiftCommunicationHandler#openGearConnection(com.openshift.client.IOpenShiftConnection, String, String, String)}
+ * and released with {@link OpenshiftCommunicationHandler#releaseGearConnection(GearConnection)}.
+ */
+public class GearConnection {
+
+    private final String sshUrl;
+    private final String privateSshKeyFilePath;
+    private final Session session;
+    private final ForwardablePorts forwardablePorts;
+
+    GearConnection(String sshUrl, String privateSshKeyFilePath, Session session, ForwardablePorts forwardablePorts) {
+        this.sshUrl = sshUrl;
+        this.privateSshKeyFilePath = privateSshKeyFilePath;
+        this.session = Objects.requireNonNull(session, "Session must not be null");
+        this.forwardablePorts = Objects.requireNonNull(forwardablePorts, "Forwardable ports must not be null");
+    }
+
+    public String getSshUrl() {
+        return sshUrl;
+    }
+
+    String getPrivateSshKeyFilePath() {
+        return privateSshKeyFilePath;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    ForwardablePorts getForwardablePorts() {
+        return forwardablePorts;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the gears with open tunnels awake during a daily time window (e.g. office hours), so connects do not pay
+ * the cold wake-up of an idled gear. Each gear is woken up at most once per minimum interval plus a random jitter,
+ * which spreads the wake-ups of several gears. The scheduler is disabled if no time window is configured.
+ */
+public class GearKeepAwakeScheduler {
+
+    static final String WINDOW_SYSTEM_PROPERTY = "ch.puzzle.openshift.keepAwake.window";
+    static final String MIN_INTERVAL_SYSTEM_PROPERTY = "ch.puzzle.openshift.keepAwake.minIntervalInMillis";
+    static final String JITTER_SYSTEM_PROPERTY = "ch.puzzle.openshift.keepAwake.jitterInMillis";
+
+    static final long DEFAULT_MIN_INTERVAL_IN_MILLIS = 900_000;
+    static final long DEFAULT_JITTER_IN_MILLIS = 60_000;
+    static final long MAX_CHECK_PERIOD_IN_MILLIS = 60_000;
+
+    private static final Pattern WINDOW_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})-(\\d{1,2}):(\\d{2})");
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private Logger logger = Logger.getLogger(GearKeepAwakeScheduler.class.getName());
+
+    private final OpenshiftCommunicationHandler communicator;
+    private final boolean enabled;
+    private final int windowStartMinute;
+    private final int windowEndMinute;
+    private final long minIntervalInMillis;
+    private final long jitterInMillis;
+    private final ConcurrentMap<String, Long> nextWakeUpMillisBySshUrl = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public GearKeepAwakeScheduler(OpenshiftCommunicationHandler communicator) {
+        this(communicator, System.getProperty(WINDOW_SYSTEM_PROPERTY),
+                Long.getLong(MIN_INTERVAL_SYSTEM_PROPERTY, DEFAULT_MIN_INTERVAL_IN_MILLIS),
+                Long.getLong(JITTER_SYSTEM_PROPERTY, DEFAULT_JITTER_IN_MILLIS));
+    }
+
+    /**
+     * @param window daily time window in local time formatted as HH:mm-HH:mm (e.g. 07:00-19:00, a window ending
+     *               before its start spans midnight), null or empty disables the scheduler
+     */
+    public GearKeepAwakeScheduler(OpenshiftCommunicationHandler communicator, String window, long minIntervalInMillis, long jitterInMillis) {
+        if (minIntervalInMillis <= 0) {
+            throw new IllegalArgumentException("Minimum interval must be positive");
+        }
+        if (jitterInMillis < 0) {
+            throw new IllegalArgumentException("Jitter must not be negative");
+        }
+        this.communicator = communicator;
+        this.minIntervalInMillis = minIntervalInMillis;
+        this.jitterInMillis = jitterInMillis;
+        this.enabled = window != null && !window.trim().isEmpty();
+        if (enabled) {
+            final Matcher matcher = WINDOW_PATTERN.matcher(window.trim());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Keep awake window must be formatted as HH:mm-HH:mm but was " + window);
+            }
+            this.windowStartMinute = toMinuteOfDay(matcher.group(1), matcher.group(2));
+            this.windowEndMinute = toMinuteOfDay(matcher.group(3), matcher.group(4));
+        } else {
+            this.windowStartMinute = 0;
+            this.windowEndMinute = 0;
+        }
+    }
+
+    private static int toMinuteOfDay(String hours, String minutes) {
+        final int hour = Integer.parseInt(hours);
+        final int minute = Integer.parseInt(minutes);
+        if (hour > 24 || minute > 59 || hour * 60 + minute > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Invalid time of day " + hours + ":" + minutes);
+        }
+        return hour * 60 + minute;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the periodic check of the tunneled gears. Does nothing if the scheduler is disabled or already started.
+     */
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "openshift-proxy-keep-awake");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final long checkPeriodInMillis = Math.min(minIntervalInMillis, MAX_CHECK_PERIOD_IN_MILLIS);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    keepGearsAwake();
+                } catch (RuntimeException e) {
+                    logger.info("Keep awake run failed. Reason: " + e.getMessage());
+                }
+            }
+        }, checkPeriodInMillis, checkPeriodInMillis, TimeUnit.MILLISECONDS);
+        logger.info("Keep gears awake between " + formatMinuteOfDay(windowStartMinute) + " and " + formatMinuteOfDay(windowEndMinute));
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        nextWakeUpMillisBySshUrl.clear();
+    }
+
+    /**
+     * Wakes up every tunneled gear whose next wake-up is due, provided the current time is within the window.
+     */
+    void keepGearsAwake() {
+        final long now = currentTimeMillis();
+        if (!isWithinWindow(now)) {
+            return;
+        }
+        final Map<String, String> tunneledGears = communicator.getTunneledGears();
+        nextWakeUpMillisBySshUrl.keySet().retainAll(tunneledGears.keySet());
+        for (Map.Entry<String, String> gear : tunneledGears.entrySet()) {
+            final String sshUrl = gear.getKey();
+            final Long nextWakeUpMillis = nextWakeUpMillisBySshUrl.get(sshUrl);
+            if (nextWakeUpMillis != null && now < nextWakeUpMillis) {
+                continue;
+            }
+            nextWakeUpMillisBySshUrl.put(sshUrl, now + minIntervalInMillis + nextJitter());
+            try {
+                communicator.keepGearAwake(sshUrl, gear.getValue());
+            } catch (RuntimeException e) {
+                logger.info("Could not keep gear " + sshUrl + " awake. Reason: " + e.getMessage());
+            }
+        }
+    }
+
+    boolean isWithinWindow(long millis) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        final int minuteOfDay = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+        if (windowStartMinute <= windowEndMinute) {
+            return minuteOfDay >= windowStartMinute && minuteOfDay < windowEndMinute;
+        }
+        return minuteOfDay >= windowStartMinute || minuteOfDay < windowEndMinute;
+    }
+
+    private static String formatMinuteOfDay(int minuteOfDay) {
+        return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    long nextJitter() {
+        return jitterInMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterInMillis + 1) : 0;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
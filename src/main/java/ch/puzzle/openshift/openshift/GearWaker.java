@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.openshift.client.IApplication;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.logging.Logger;
+
+/**
+ * Wakes an idled gear from outside the gear, either by starting the application through the broker REST API or by
+ * requesting the application url. Readiness is polled with exponential backoff until the application url no longer
+ * answers with 503 (service unavailable) or the timeout is reached.
+ */
+public class GearWaker {
+
+    static final long INITIAL_POLL_DELAY_IN_MILLIS = 250;
+    static final long MAX_POLL_DELAY_IN_MILLIS = 5_000;
+    static final int REQUEST_TIMEOUT_IN_MILLIS = 5_000;
+    static final int NOT_READY_STATUS = -1;
+
+    private Logger logger = Logger.getLogger(GearWaker.class.getName());
+
+    private final long timeoutInMillis;
+
+    public GearWaker(long timeoutInMillis) {
+        if (timeoutInMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    /**
+     * Wakes the gear of the application up and returns when it is ready. Must not be called with
+     * {@link WakeUpStrategy#SSH}, which wakes the gear from within the gear.
+     */
+    public void wakeUp(IApplication application, WakeUpStrategy strategy) {
+        if (strategy == WakeUpStrategy.SSH) {
+            throw new IllegalArgumentException("Ssh wake up is done within the gear");
+        }
+        if (strategy == WakeUpStrategy.REST) {
+            logger.info("Start application " + application.getName() + " through REST API");
+            application.start();
+        }
+        waitUntilReady(application.getApplicationUrl());
+    }
+
+    private void waitUntilReady(String applicationUrl) {
+        final long deadline = currentTimeMillis() + timeoutInMillis;
+        long pollDelay = INITIAL_POLL_DELAY_IN_MILLIS;
+        while (true) {
+            final int status = requestStatus(applicationUrl);
+            if (isReady(status)) {
+                logger.info("Gear of " + applicationUrl + " is ready (HTTP status " + status + ")");
+                return;
+            }
+            final long remainingMillis = deadline - currentTimeMillis();
+            if (remainingMillis <= 0) {
+                throw new RuntimeException("Gear of " + applicationUrl + " did not get ready within " + timeoutInMillis + " ms");
+            }
+            logger.fine("Gear of " + applicationUrl + " is not ready yet (HTTP status " + status + "), retry in " + pollDelay + " ms");
+            sleep(Math.min(pollDelay, remainingMillis));
+            pollDelay = Math.min(pollDelay * 2, MAX_POLL_DELAY_IN_MILLIS);
+        }
+    }
+
+    private boolean isReady(int status) {
+        return status != NOT_READY_STATUS && status != HttpURLConnection.HTTP_UNAVAILABLE;
+    }
+
+    /**
+     * Returns the HTTP status of a GET request to the url or {@link #NOT_READY_STATUS} if the request failed.
+     */
+    int requestStatus(String url) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(REQUEST_TIMEOUT_IN_MILLIS);
+            connection.setReadTimeout(REQUEST_TIMEOUT_IN_MILLIS);
+            connection.setInstanceFollowRedirects(false);
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            logger.fine("Request to " + url + " failed. Reason: " + e.getMessage());
+            return NOT_READY_STATUS;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for gear", e);
+        }
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * Port forwarder using the local port forwarding of JSch, which starts a thread per forwarded connection.
+ */
+class JschPortForwarder implements PortForwarder {
+
+    @Override
+    public int forward(Session session, int localPort, String remoteHost, int remotePort) throws JSchException {
+        return session.setPortForwardingL(localPort, remoteHost, remotePort);
+    }
+
+    @Override
+    public void stop(Session session, int localPort) throws JSchException {
+        session.delPortForwardingL(localPort);
+    }
+
+    @Override
+    public boolean isForwarding(Session session, int localPort, String remoteHost, int remotePort) throws JSchException {
+        // returned format : localPort:remoteHost:remotePort
+        final String key = localPort + ":" + remoteHost + ":" + remotePort;
+        for (String portForwarding : session.getPortForwardingL()) {
+            if (key.equals(portForwarding)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        // the forwarding threads belong to the sessions
+    }
+}
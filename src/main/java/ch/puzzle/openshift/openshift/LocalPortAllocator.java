@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hands out local ports for port forwardings in constant time. Ports of the configured range are handed out in
+ * ascending order first, released ports are reused afterwards. A port that turns out to be bound by another process
+ * is dropped from the range, so it is not probed again. Alternatively the local port can be chosen by the operating
+ * system by binding port 0.
+ * <p/>
+ * The allocator is thread-safe.
+ */
+public class LocalPortAllocator {
+
+    static final String RANGE_SYSTEM_PROPERTY = "ch.puzzle.openshift.localPorts.range";
+    static final String OS_ASSIGNED_SYSTEM_PROPERTY = "ch.puzzle.openshift.localPorts.osAssigned";
+
+    /**
+     * The dynamic or private ports above the IANA registered ports.
+     */
+    static final String DEFAULT_RANGE = "49152-65535";
+    static final int OS_ASSIGNED_PORT = 0;
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("(\\d+)-(\\d+)");
+
+    private Logger logger = Logger.getLogger(LocalPortAllocator.class.getName());
+
+    private final int firstPort;
+    private final int lastPort;
+    private final boolean osAssigned;
+    private int nextUnusedPort;
+    private final Deque<Integer> releasedPorts = new ArrayDeque<>();
+    private final Set<Integer> allocatedPorts = new HashSet<>();
+
+    public LocalPortAllocator() {
+        this(System.getProperty(RANGE_SYSTEM_PROPERTY, DEFAULT_RANGE), Boolean.getBoolean(OS_ASSIGNED_SYSTEM_PROPERTY));
+    }
+
+    /**
+     * @param range      local port range formatted as firstPort-lastPort (inclusive)
+     * @param osAssigned true to let the operating system choose a free port instead of allocating from the range
+     */
+    public LocalPortAllocator(String range, boolean osAssigned) {
+        final Matcher matcher = RANGE_PATTERN.matcher(range != null ? range.trim() : "");
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Local port range must be formatted as firstPort-lastPort but was " + range);
+        }
+        this.firstPort = Integer.parseInt(matcher.group(1));
+        this.lastPort = Integer.parseInt(matcher.group(2));
+        if (firstPort < 1 || lastPort > 65535 || firstPort > lastPort) {
+            throw new IllegalArgumentException("Invalid local port range " + range);
+        }
+        this.osAssigned = osAssigned;
+        this.nextUnusedPort = firstPort;
+    }
+
+    /**
+     * Returns a local port not allocated by anyone else in this JVM, or 0 if the operating system chooses the port.
+     * Every allocated port must be returned with {@link #release(int)} or {@link #releaseInUse(int)}.
+     */
+    public synchronized int allocate() {
+        if (osAssigned) {
+            return OS_ASSIGNED_PORT;
+        }
+        final Integer releasedPort = releasedPorts.pollFirst();
+        final int port;
+        if (releasedPort != null) {
+            port = releasedPort;
+        } else if (nextUnusedPort <= lastPort) {
+            port = nextUnusedPort++;
+        } else {
+            throw new RuntimeException("All local ports from " + firstPort + " to " + lastPort + " are already in use.");
+        }
+        allocatedPorts.add(port);
+        return port;
+    }
+
+    /**
+     * Returns a port that is no longer forwarded, so it can be allocated again.
+     */
+    public synchronized void release(int port) {
+        if (allocatedPorts.remove(port)) {
+            releasedPorts.offerLast(port);
+        }
+    }
+
+    /**
+     * Returns a port that could not be bound because another process uses it. The port is not allocated again.
+     */
+    public synchronized void releaseInUse(int port) {
+        if (allocatedPorts.remove(port)) {
+            logger.fine("Local port " + port + " is used by another process, skip it");
+        }
+    }
+
+    synchronized int getAllocatedCount() {
+        return allocatedPorts.size();
+    }
+}
@@ -0,0 +1,752 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Port forwarder pumping bytes between local socket channels and direct-tcpip channels of the ssh session with a
+ * single selector thread, instead of the thread JSch starts for every forwarded connection. Data to the gear is
+ * written to the ssh channel by the selector thread. Data from the gear is queued in pooled direct buffers by the
+ * session thread and written to the local socket channel as soon as it is writable. Opening an ssh channel waits for
+ * the confirmation of the gear, so channels are opened by a small fixed pool of threads. The number of threads does
+ * not grow with the number of forwarded connections. The channels and local sockets are tuned by the
+ * {@link ChannelTuner} of the session.
+ * <p/>
+ * The session thread never waits for a client, it is shared by all channels of the session. Once more than
+ * {@link #QUEUE_HIGH_WATER_BUFFERS} buffers of data are queued for a client, the received data is withheld from the
+ * ssh flow control window of the channel (see {@link ChannelWindow}), so the gear stops sending on that channel when
+ * its window is used up. The withheld window is granted again when the client read the queue down to half. A queue
+ * growing beyond the high water mark plus the window of the channel means the gear ignores the window, the connection
+ * is closed then.
+ * <p/>
+ * Likewise the selector thread never waits for the gear. It reads from a client only as much as the remote window of
+ * the channel allows, writing more would block until the gear adjusts the window and stall all other connections.
+ * A connection whose remote window is used up stops reading from its client. JSch does not notify window adjusts, so
+ * the stalled connections are polled every {@link #REMOTE_WINDOW_POLL_INTERVAL_IN_MILLIS} milliseconds and resume
+ * reading once the gear granted window again.
+ */
+class NioPortForwarder implements PortForwarder {
+
+    static final String BUFFER_SIZE_SYSTEM_PROPERTY = "ch.puzzle.openshift.nioForwarder.bufferSizeInBytes";
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+    static final int MAX_POOLED_BUFFERS = 256;
+    static final int QUEUE_HIGH_WATER_BUFFERS = 8;
+    static final int CHANNEL_OPEN_THREADS = 2;
+    static final int CHANNEL_CONNECT_TIMEOUT_IN_MILLIS = 10000;
+    static final long REMOTE_WINDOW_POLL_INTERVAL_IN_MILLIS = 10;
+    private static final long SELECTOR_TASK_TIMEOUT_IN_MILLIS = 10000;
+
+    private Logger logger = Logger.getLogger(NioPortForwarder.class.getName());
+
+    private final DirectBufferPool bufferPool;
+    /**
+     * Copy of the data read from a client for the ssh channel, only used by the selector thread
+     */
+    private final byte[] transferBuffer;
+    private final ConcurrentMap<Integer, Binding> bindings = new ConcurrentHashMap<>();
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    /**
+     * Connections waiting for the gear to adjust the remote window, only used by the selector thread
+     */
+    private final Set<Connection> stalledConnections = new HashSet<>();
+    private volatile Selector selector;
+    private Thread selectorThread;
+    private ExecutorService channelOpenExecutor;
+
+    NioPortForwarder() {
+        this(Integer.getInteger(BUFFER_SIZE_SYSTEM_PROPERTY, DEFAULT_BUFFER_SIZE));
+    }
+
+    NioPortForwarder(int bufferSize) {
+        this.bufferPool = new DirectBufferPool(bufferSize, MAX_POOLED_BUFFERS);
+        this.transferBuffer = new byte[bufferSize];
+    }
+
+    @Override
+    public int forward(Session session, int localPort, String remoteHost, int remotePort) throws JSchException {
+        final ServerSocketChannel serverChannel = openServerChannel(localPort);
+        final int boundPort = serverChannel.socket().getLocalPort();
+        final Binding binding = new Binding(session, serverChannel, remoteHost, remotePort);
+        try {
+            final Selector bindingSelector = start();
+            bindings.put(boundPort, binding);
+            runOnSelectorThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        binding.key = serverChannel.register(bindingSelector, SelectionKey.OP_ACCEPT, binding);
+                    } catch (IOException e) {
+                        logger.warning("Could not accept connections on local port " + boundPort + ". Reason: " + e.getMessage());
+                        closeQuietly(serverChannel);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            bindings.remove(boundPort, binding);
+            closeQuietly(serverChannel);
+            throw new JSchException("Could not start selector. Reason: " + e.getMessage(), e);
+        }
+        return boundPort;
+    }
+
+    private ServerSocketChannel openServerChannel(int localPort) throws JSchException {
+        final ServerSocketChannel serverChannel;
+        try {
+            serverChannel = ServerSocketChannel.open();
+        } catch (IOException e) {
+            throw new JSchException("Could not open server socket channel. Reason: " + e.getMessage(), e);
+        }
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort));
+            serverChannel.configureBlocking(false);
+            return serverChannel;
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            // same message and cause as the local port forwarding of JSch
+            throw new JSchException("PortForwardingL: local port " + ForwardablePort.LOCALHOST + ":" + localPort + " cannot be bound.", e);
+        }
+    }
+
+    @Override
+    public void stop(Session session, int localPort) {
+        final Binding binding = bindings.get(localPort);
+        if (binding == null || binding.session != session || !bindings.remove(localPort, binding)) {
+            return;
+        }
+        runOnSelectorThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                close(binding);
+            }
+        });
+        // the port is released even if the selector thread did not respond
+        closeQuietly(binding.serverChannel);
+    }
+
+    @Override
+    public boolean isForwarding(Session session, int localPort, String remoteHost, int remotePort) {
+        final Binding binding = bindings.get(localPort);
+        return binding != null && binding.session == session && session.isConnected() && binding.serverChannel.isOpen()
+                && binding.remoteHost.equals(remoteHost) && binding.remotePort == remotePort;
+    }
+
+    /**
+     * Stops all forwardings and the selector thread. The thread is started again by the next forwarding.
+     */
+    @Override
+    public void shutdown() {
+        for (Binding binding : new ArrayList<>(bindings.values())) {
+            stop(binding.session, binding.serverChannel.socket().getLocalPort());
+        }
+        synchronized (this) {
+            if (selectorThread == null) {
+                return;
+            }
+            selectorThread.interrupt();
+            selector.wakeup();
+            channelOpenExecutor.shutdownNow();
+            selectorThread = null;
+            selector = null;
+            channelOpenExecutor = null;
+        }
+    }
+
+    private synchronized Selector start() throws IOException {
+        if (selectorThread == null) {
+            selector = Selector.open();
+            channelOpenExecutor = Executors.newFixedThreadPool(CHANNEL_OPEN_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "openshift-proxy-nio-channel-open");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            final Selector loopSelector = selector;
+            selectorThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runSelectorLoop(loopSelector);
+                }
+            }, "openshift-proxy-nio-forwarder");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+        }
+        return selector;
+    }
+
+    private void runSelectorLoop(Selector loopSelector) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (stalledConnections.isEmpty()) {
+                    loopSelector.select();
+                } else {
+                    loopSelector.select(REMOTE_WINDOW_POLL_INTERVAL_IN_MILLIS);
+                }
+                runSelectorTasks();
+                resumeStalledConnections();
+                final Iterator<SelectionKey> selectedKeys = loopSelector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.warning("Selector loop failed. Reason: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : loopSelector.keys()) {
+                closeQuietly(key.channel());
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            closeQuietly(loopSelector);
+            selectorTasks.clear();
+            stalledConnections.clear();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (key.attachment() instanceof Binding) {
+            accept((Binding) key.attachment());
+            return;
+        }
+        final Connection connection = (Connection) key.attachment();
+        if (key.isWritable()) {
+            connection.writeToClient();
+        }
+        if (key.isValid() && key.isReadable()) {
+            connection.readFromClient();
+        }
+    }
+
+    private void resumeStalledConnections() {
+        final Iterator<Connection> stalled = stalledConnections.iterator();
+        while (stalled.hasNext()) {
+            final Connection connection = stalled.next();
+            if (connection.closed) {
+                stalled.remove();
+            } else if (ChannelWindow.getRemoteSize(connection.channel) > 0) {
+                stalled.remove();
+                connection.resumeReading();
+            }
+        }
+    }
+
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Selector task failed", e);
+            }
+        }
+    }
+
+    private void runOnSelectorThread(Runnable task) {
+        final Selector currentSelector = selector;
+        selectorTasks.add(task);
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+
+    private void runOnSelectorThreadAndWait(Runnable task) {
+        if (Thread.currentThread() == selectorThread) {
+            task.run();
+            return;
+        }
+        final FutureTask<Void> futureTask = new FutureTask<>(task, null);
+        runOnSelectorThread(futureTask);
+        try {
+            futureTask.get(SELECTOR_TASK_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("Selector task did not complete. Reason: " + e.getMessage());
+        }
+    }
+
+    private void accept(final Binding binding) {
+        try {
+            SocketChannel client;
+            while ((client = binding.serverChannel.accept()) != null) {
+                final Connection connection = new Connection(binding, client);
+                binding.connections.add(connection);
+                channelOpenExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        openChannel(connection);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            logger.info("Could not accept connection on " + binding + ". Reason: " + e.getMessage());
+        }
+    }
+
+    private void openChannel(final Connection connection) {
+        final Binding binding = connection.binding;
+        try {
+            final ChannelTuner tuner = ChannelTuner.of(binding.session);
+            connection.client.configureBlocking(false);
+            tuner.configureLocalSocket(connection.client.socket());
+            final ChannelDirectTCPIP channel = (ChannelDirectTCPIP) binding.session.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE);
+            channel.setHost(binding.remoteHost);
+            channel.setPort(binding.remotePort);
+            tuner.tune(channel);
+            final SocketAddress origin = connection.client.getRemoteAddress();
+            if (origin instanceof InetSocketAddress) {
+                channel.setOrgIPAddress(((InetSocketAddress) origin).getAddress().getHostAddress());
+                channel.setOrgPort(((InetSocketAddress) origin).getPort());
+            }
+            // no input stream is set, so JSch does not start a thread for the channel
+            channel.setOutputStream(connection.sink);
+            connection.channel = channel;
+            connection.tuner = tuner;
+            final long openStart = System.nanoTime();
+            channel.connect(CHANNEL_CONNECT_TIMEOUT_IN_MILLIS);
+            tuner.recordRoundTrip(System.nanoTime() - openStart);
+            connection.channelOut = channel.getOutputStream();
+            runOnSelectorThread(new Runnable() {
+                @Override
+                public void run() {
+                    connection.register();
+                }
+            });
+        } catch (JSchException | IOException e) {
+            logger.info("Could not open channel for " + binding + ". Reason: " + e.getMessage());
+            runOnSelectorThread(new Runnable() {
+                @Override
+                public void run() {
+                    connection.close();
+                }
+            });
+        }
+    }
+
+    private void close(Binding binding) {
+        if (binding.key != null) {
+            binding.key.cancel();
+        }
+        closeQuietly(binding.serverChannel);
+        for (Connection connection : new ArrayList<>(binding.connections)) {
+            connection.close();
+        }
+        try {
+            // deregisters the cancelled keys, which releases the local port
+            selector.selectNow();
+        } catch (IOException e) {
+            logger.fine("Could not deregister closed channels");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    int getConnectionCount() {
+        int connections = 0;
+        for (Binding binding : bindings.values()) {
+            connections += binding.connections.size();
+        }
+        return connections;
+    }
+
+    long getQueuedBytes() {
+        long queuedBytes = 0;
+        for (Binding binding : bindings.values()) {
+            for (Connection connection : binding.connections) {
+                queuedBytes += connection.sink.getQueuedBytes();
+            }
+        }
+        return queuedBytes;
+    }
+
+    DirectBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private static final class Binding {
+        private final Session session;
+        private final ServerSocketChannel serverChannel;
+        private final String remoteHost;
+        private final int remotePort;
+        private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+        private SelectionKey key;
+
+        private Binding(Session session, ServerSocketChannel serverChannel, String remoteHost, int remotePort) {
+            this.session = session;
+            this.serverChannel = serverChannel;
+            this.remoteHost = remoteHost;
+            this.remotePort = remotePort;
+        }
+
+        @Override
+        public String toString() {
+            return "Binding [" + serverChannel.socket().getLocalPort() + " -> " + remoteHost + ":" + remotePort + "]";
+        }
+    }
+
+    private final class Connection {
+        private final Binding binding;
+        private final SocketChannel client;
+        private final ChannelSink sink = new ChannelSink(this);
+        private volatile ChannelDirectTCPIP channel;
+        private volatile ChannelTuner tuner;
+        private OutputStream channelOut;
+        private SelectionKey key;
+        private volatile boolean closed;
+        private final AtomicBoolean channelDisconnected = new AtomicBoolean();
+
+        private Connection(Binding binding, SocketChannel client) {
+            this.binding = binding;
+            this.client = client;
+        }
+
+        private void register() {
+            if (closed) {
+                disconnectChannel();
+                return;
+            }
+            try {
+                final int interestOps = sink.hasData() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+                key = client.register(selector, interestOps, this);
+            } catch (IOException e) {
+                logger.info("Could not register connection on " + binding + ". Reason: " + e.getMessage());
+                close();
+            }
+        }
+
+        private void readFromClient() {
+            final long remoteWindow = ChannelWindow.getRemoteSize(channel);
+            if (remoteWindow <= 0) {
+                stallReading();
+                return;
+            }
+            final ByteBuffer buffer = bufferPool.acquire();
+            try {
+                if (remoteWindow < buffer.remaining()) {
+                    // writing beyond the remote window would block the selector thread
+                    buffer.limit((int) remoteWindow);
+                }
+                final int read = client.read(buffer);
+                if (read < 0) {
+                    // the client closed the connection, like JSch does the channel is closed as well
+                    close();
+                    return;
+                }
+                buffer.flip();
+                buffer.get(transferBuffer, 0, read);
+                channelOut.write(transferBuffer, 0, read);
+                channelOut.flush();
+            } catch (IOException e) {
+                logger.fine("Could not forward data to the gear. Reason: " + e.getMessage());
+                close();
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+
+        private void stallReading() {
+            logger.fine("Remote window of " + binding + " is used up, stop reading from the client");
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            stalledConnections.add(this);
+        }
+
+        private void resumeReading() {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private void writeToClient() {
+            try {
+                // the connection is closed once all data up to the end of file is written
+                if (sink.writeTo(client) && !closed) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                logger.fine("Could not forward data to the client. Reason: " + e.getMessage());
+                close();
+                return;
+            }
+            grantWithheldWindow();
+        }
+
+        private void grantWithheldWindow() {
+            final int bytes = sink.takeWindowToGrant();
+            if (bytes == 0 || closed) {
+                return;
+            }
+            try {
+                ChannelWindow.grant(binding.session, channel, bytes);
+            } catch (Exception e) {
+                logger.fine("Could not grant the gear window for " + bytes + " bytes. Reason: " + e.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * Disconnects the channel once, the channel may still be opened while the connection is closed.
+         */
+        private void disconnectChannel() {
+            final ChannelDirectTCPIP openedChannel = channel;
+            if (openedChannel != null && channelDisconnected.compareAndSet(false, true)) {
+                openedChannel.disconnect();
+            }
+        }
+
+        private void requestWrite() {
+            if (!closed && key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            binding.connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(client);
+            disconnectChannel();
+            sink.discard();
+            if (tuner != null) {
+                sink.recordTransfer(tuner);
+            }
+        }
+    }
+
+    /**
+     * Receives the data of the ssh channel from the session thread and queues it for the selector thread. Consecutive
+     * small packets share a buffer, so the buffers held by the queue are bounded by its size in bytes.
+     */
+    private final class ChannelSink extends OutputStream {
+        private final Connection connection;
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private long queuedBytes;
+        private int withheldWindow;
+        private boolean eof;
+        private boolean discarded;
+        private long bytesReceived;
+        private long firstReceivedNanos;
+        private long lastReceivedNanos;
+
+        private ChannelSink(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        /**
+         * Called by the session thread, queues the data without waiting for the client.
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (this) {
+                if (discarded) {
+                    throw new IOException("Connection closed");
+                }
+                final long highWaterBytes = (long) QUEUE_HIGH_WATER_BUFFERS * bufferPool.getBufferSize();
+                final long maxQueuedBytes = highWaterBytes + ChannelWindow.getMaxSize(connection.channel) + bufferPool.getBufferSize();
+                if (queuedBytes + len > maxQueuedBytes) {
+                    discard();
+                    closeConnection();
+                    throw new IOException("Gear sent " + (queuedBytes + len) + " bytes beyond the window of the channel, the client does not read");
+                }
+                lastReceivedNanos = System.nanoTime();
+                if (bytesReceived == 0) {
+                    firstReceivedNanos = lastReceivedNanos;
+                }
+                bytesReceived += len;
+                enqueue(b, off, len);
+                if (queuedBytes > highWaterBytes && ChannelWindow.withhold(connection.channel, len)) {
+                    withheldWindow += len;
+                }
+            }
+            requestWrite();
+        }
+
+        private void enqueue(byte[] b, int off, int len) {
+            int offset = off;
+            int remaining = len;
+            final ByteBuffer tail = queue.peekLast();
+            if (tail != null && tail.limit() < tail.capacity()) {
+                final int length = Math.min(remaining, tail.capacity() - tail.limit());
+                final int position = tail.position();
+                tail.position(tail.limit());
+                tail.limit(tail.capacity());
+                tail.put(b, offset, length);
+                tail.limit(tail.position());
+                tail.position(position);
+                offset += length;
+                remaining -= length;
+            }
+            while (remaining > 0) {
+                final ByteBuffer buffer = bufferPool.acquire();
+                final int length = Math.min(remaining, buffer.remaining());
+                buffer.put(b, offset, length);
+                buffer.flip();
+                queue.add(buffer);
+                offset += length;
+                remaining -= length;
+            }
+            queuedBytes += len;
+        }
+
+        private void closeConnection() {
+            runOnSelectorThread(new Runnable() {
+                @Override
+                public void run() {
+                    connection.close();
+                }
+            });
+        }
+
+        /**
+         * Called by JSch on end of file or close of the channel, the connection is closed once the queued data is
+         * written.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                eof = true;
+            }
+            requestWrite();
+        }
+
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                runOnSelectorThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeRequested.set(false);
+                        connection.requestWrite();
+                    }
+                });
+            }
+        }
+
+        private synchronized boolean hasData() {
+            return !queue.isEmpty() || eof;
+        }
+
+        /**
+         * Writes queued data to the client until it would block. Returns true if all data was written.
+         */
+        private boolean writeTo(SocketChannel client) throws IOException {
+            final boolean closeConnection;
+            synchronized (this) {
+                ByteBuffer buffer;
+                while ((buffer = queue.peek()) != null) {
+                    queuedBytes -= client.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return false;
+                    }
+                    queue.poll();
+                    bufferPool.release(buffer);
+                }
+                closeConnection = eof;
+            }
+            if (closeConnection) {
+                connection.close();
+            }
+            return true;
+        }
+
+        /**
+         * Returns the withheld window once the client read the queue down to half of the high water mark.
+         */
+        private synchronized int takeWindowToGrant() {
+            if (withheldWindow == 0 || queuedBytes > (long) QUEUE_HIGH_WATER_BUFFERS * bufferPool.getBufferSize() / 2) {
+                return 0;
+            }
+            final int bytes = withheldWindow;
+            withheldWindow = 0;
+            return bytes;
+        }
+
+        synchronized long getQueuedBytes() {
+            return queuedBytes;
+        }
+
+        private synchronized void recordTransfer(ChannelTuner tuner) {
+            tuner.recordTransfer(bytesReceived, lastReceivedNanos - firstReceivedNanos);
+        }
+
+        private synchronized void discard() {
+            discarded = true;
+            ByteBuffer buffer;
+            while ((buffer = queue.poll()) != null) {
+                bufferPool.release(buffer);
+            }
+            queuedBytes = 0;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.openshift.client.IApplication;
 import com.openshift.client.IDomain;
 import com.openshift.client.IOpenShiftConnection;
 import com.openshift.client.IUser;
+import com.openshift.client.InvalidCredentialsOpenShiftException;
 import com.openshift.client.cartridge.IEmbeddedCartridge;
 import com.openshift.internal.client.response.CartridgeResourceProperties;
 import com.openshift.internal.client.utils.StreamUtils;
@@ -31,11 +32,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
  * Created by bschwaller on 11.02.15.
+ * <p/>
+ * Communicates with the openshift server and the application gears. The handler holds no connection specific state
+ * and may be shared by concurrent connects, openshift connections, ssh sessions and tunnels are kept in thread-safe
+ * registries.
  */
 public class OpenshiftCommunicationHandler {
 
@@ -48,70 +62,391 @@ public class OpenshiftCommunicationHandler {
     static final String RHC_LIST_PORT_COMMAND = "rhc-list-ports";
     static final int COMMAND_TIMEOUT_IN_MILLIS = 90_000;
 
+    static final String BATCHED_GEAR_COMMANDS_SYSTEM_PROPERTY = "ch.puzzle.openshift.batchedGearCommands";
+    static final String WAKE_UP_GEAR_SECTION = "wakeup";
+    static final String RHC_LIST_PORTS_SECTION = "rhc-list-ports";
+
 
     private Logger logger = Logger.getLogger(OpenshiftCommunicationHandler.class.getName());
 
     private OpenshiftConnector connectionCreator;
     private SessionConnector sessionConnector;
-    private IOpenShiftConnection connection;
-    private Session session;
-
-    private ForwardablePort port;
+    private TunnelRegistry tunnelRegistry;
+    private TunnelSetupTracker tunnelSetupTracker;
+    private ForwardablePortCache forwardablePortCache;
+    private boolean batchedGearCommands;
+    private GearWaker gearWaker;
+    private GearKeepAwakeScheduler keepAwakeScheduler;
+    private TunnelHealthMonitor tunnelHealthMonitor;
+    private final ExecutorService wakeUpExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "openshift-proxy-gear-wakeup");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final SingleFlight<List<String>, ForwardablePorts> forwardablePortRequests = new SingleFlight<>();
 
     public OpenshiftCommunicationHandler() {
         this.connectionCreator = new OpenshiftConnector();
         this.sessionConnector = new SessionConnector();
+        this.tunnelRegistry = new TunnelRegistry(sessionConnector);
+        this.tunnelHealthMonitor = new TunnelHealthMonitor(tunnelRegistry);
+        this.tunnelSetupTracker = new TunnelSetupTracker();
+        this.forwardablePortCache = new ForwardablePortCache();
+        this.batchedGearCommands = Boolean.parseBoolean(System.getProperty(BATCHED_GEAR_COMMANDS_SYSTEM_PROPERTY, "true"));
+        this.gearWaker = new GearWaker(COMMAND_TIMEOUT_IN_MILLIS);
+        this.keepAwakeScheduler = new GearKeepAwakeScheduler(this);
+    }
+
+    /**
+     * Returns a (possibly shared) connection to the openshift server authenticated with the given credentials.
+     */
+    public IOpenShiftConnection connect(String openshiftServer, String openshiftUser, String openshiftPassword) {
+        return connectionCreator.getConnection(openshiftServer, openshiftUser, openshiftPassword);
+    }
+
+
+    /**
+     * Starts (or reuses) the port forwarding to the database of the given application and returns the local port.
+     * The port forwarding must be released with {@link #releasePortForwarding(int)}.
+     */
+    public int startPortForwarding(IOpenShiftConnection connection, String applicationName, String domainName, String connectionUrl, String privateSshKeyFilePath) {
+        final GearConnection gearConnection = openGearConnection(connection, applicationName, domainName, privateSshKeyFilePath, WakeUpStrategy.SSH, connectionUrl);
+        try {
+            return startPortForwarding(gearConnection, connectionUrl);
+        } finally {
+            releaseGearConnection(gearConnection);
+        }
+    }
+
+    /**
+     * Connects a (pooled) ssh session to the gear of the given application, wakes the gear up and lists its
+     * forwardable ports. The wake-up is skipped if a tunnel to the gear was set up recently (see {@link TunnelSetupTracker}),
+     * the port listing if the forwardable ports of the gear are cached (see {@link ForwardablePortCache}).
+     * Independent of the database data, so it may run concurrently to
+     * {@link #readDatabaseData(IOpenShiftConnection, String, String, String)}. Concurrent calls for the same gear share
+     * one wake-up and port lookup. The gear connection must be released with {@link #releaseGearConnection(GearConnection)}.
+     */
+    public GearConnection openGearConnection(IOpenShiftConnection connection, String applicationName, String domainName, String privateSshKeyFilePath) {
+        return openGearConnection(connection, applicationName, domainName, privateSshKeyFilePath, WakeUpStrategy.SSH, null);
+    }
+
+    /**
+     * Opens the gear connection like {@link #openGearConnection(IOpenShiftConnection, String, String, String)}, waking
+     * the gear up with the given strategy. The {@link WakeUpStrategy#REST} and {@link WakeUpStrategy#HTTP} wake-ups run
+     * concurrently to the ssh session setup. If the database connection url is already known (e.g. from cached
+     * database data), reading the rhc-list-ports output stops as soon as the matching port is listed.
+     */
+    public GearConnection openGearConnection(IOpenShiftConnection connection, String applicationName, String domainName, String privateSshKeyFilePath,
+                                             final WakeUpStrategy wakeUpStrategy, final String connectionUrlHint) {
+        final IApplication application;
+        final String sshUrl;
+        synchronized (getResourceLock(connection)) {
+            application = getApplication(connection, applicationName, domainName, false);
+            sshUrl = application.getSshUrl();
+        }
+        // the rest wake-up only posts a start request on the application, it does not change the cached resources
+        final Future<?> wakeUp = wakeUpFromOutsideUnlessActive(application, sshUrl, wakeUpStrategy);
+        final Session session = sessionConnector.getAndConnectSession(sshUrl, privateSshKeyFilePath);
+        try {
+            final ForwardablePorts forwardablePorts = forwardablePortRequests.execute(Arrays.asList(sshUrl, privateSshKeyFilePath), new Callable<ForwardablePorts>() {
+                @Override
+                public ForwardablePorts call() {
+                    return wakeUpGearAndListPorts(sshUrl, session, wakeUpStrategy == WakeUpStrategy.SSH, connectionUrlHint);
+                }
+            });
+            awaitWakeUp(wakeUp, sshUrl);
+            return new GearConnection(sshUrl, privateSshKeyFilePath, session, forwardablePorts);
+        } catch (RuntimeException e) {
+            sessionConnector.releaseSession(session);
+            throw e;
+        }
     }
 
-    public void connect(String openshiftServer, String openshiftUser, String openshiftPassword) {
-        if (!isConnectedToOpenshiftServer()) {
-            connection = connectionCreator.getConnection(openshiftServer, openshiftUser, openshiftPassword);
+    private Future<?> wakeUpFromOutsideUnlessActive(final IApplication application, String sshUrl, final WakeUpStrategy wakeUpStrategy) {
+        if (wakeUpStrategy == WakeUpStrategy.SSH || tunnelSetupTracker.isRecentlySetUp(sshUrl)) {
+            return null;
         }
+        return wakeUpExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                gearWaker.wakeUp(application, wakeUpStrategy);
+            }
+        });
     }
 
+    private void awaitWakeUp(Future<?> wakeUp, String sshUrl) {
+        if (wakeUp == null) {
+            return;
+        }
+        try {
+            wakeUp.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waking up gear", e);
+        } catch (ExecutionException e) {
+            tunnelSetupTracker.forget(sshUrl);
+            throw new RuntimeException("Could not wake up gear. Reason: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Starts (or reuses) the port forwarding to the database identified by the connection url on the opened gear and
+     * returns the local port. The port forwarding must be released with {@link #releasePortForwarding(int)}.
+     */
+    public int startPortForwarding(GearConnection gearConnection, String connectionUrl) {
+        return startPortForwarding(gearConnection, connectionUrl, TunnelOptions.DEFAULT);
+    }
 
-    boolean isConnectedToOpenshiftServer() {
-        return connection != null;
+    /**
+     * Starts the port forwarding like {@link #startPortForwarding(GearConnection, String)} on a stripe of the tunnel
+     * with the given options, see {@link TunnelRegistry#acquire(String, String, ForwardablePort, TunnelOptions)}.
+     */
+    public int startPortForwarding(GearConnection gearConnection, String connectionUrl, TunnelOptions options) {
+        final ForwardablePort port = findForwardableDatabasePort(gearConnection, connectionUrl);
+        final int localPort = tunnelRegistry.acquire(gearConnection.getSshUrl(), gearConnection.getPrivateSshKeyFilePath(), port, options);
+        tunnelHealthMonitor.start();
+        keepAwakeScheduler.start();
+        tunnelSetupTracker.recordTunnelSetup(gearConnection.getSshUrl());
+        return localPort;
     }
 
+    /**
+     * Returns the ssh session borrowed by {@link #openGearConnection(IOpenShiftConnection, String, String, String)},
+     * port forwardings started on the gear stay active.
+     */
+    public void releaseGearConnection(GearConnection gearConnection) {
+        sessionConnector.releaseSession(gearConnection.getSession());
+    }
 
-    public int startPortForwarding(String applicationName, String domainName, String connectionUrl, String privateSshKeyFilePath) {
-        final IApplication application = getApplication(applicationName, domainName);
-        final String sshUrl = application.getSshUrl();
-        session = sessionConnector.getAndConnectSession(sshUrl, privateSshKeyFilePath);
-        port = requestForwardablePort(connectionUrl);
-        port.startPortForwarding(session);
-        logger.info("Started port forwarding " + port.toString());
-        return port.getLocalPort();
+    /**
+     * Opens a target for direct-tcpip channels to the database identified by the connection url on a borrowed
+     * session, as alternative to a local port forwarding. The target is registered with the
+     * {@link ChannelSocketFactory} until it is released with {@link #releaseDirectChannelTarget(DirectChannelTarget)}.
+     */
+    public DirectChannelTarget openDirectChannelTarget(GearConnection gearConnection, String connectionUrl) {
+        return openDirectChannelTarget(gearConnection, connectionUrl, TunnelOptions.DEFAULT);
     }
 
-    private ForwardablePort requestForwardablePort(String connectionUrl) {
+    /**
+     * Opens a target for direct-tcpip channels like {@link #openDirectChannelTarget(GearConnection, String)} on a
+     * session of the traffic class and tuning of the options. Direct channels are not striped.
+     */
+    public DirectChannelTarget openDirectChannelTarget(GearConnection gearConnection, String connectionUrl, TunnelOptions options) {
+        final ForwardablePort port = findForwardableDatabasePort(gearConnection, connectionUrl);
+        final Session session = options.getTrafficClass() == TrafficClass.INTERACTIVE && SshTuning.DEFAULT.equals(options.getTuning())
+                ? sessionConnector.getAndConnectSession(gearConnection.getSshUrl(), gearConnection.getPrivateSshKeyFilePath())
+                : sessionConnector.getAndConnectSession(gearConnection.getSshUrl(), gearConnection.getPrivateSshKeyFilePath(), options, 0);
+        final DirectChannelTarget target = new DirectChannelTarget(gearConnection.getSshUrl(), session, port.getRemoteHost(), port.getRemotePort());
+        ChannelSocketFactory.register(target);
+        tunnelSetupTracker.recordTunnelSetup(gearConnection.getSshUrl());
+        return target;
+    }
+
+    public void releaseDirectChannelTarget(DirectChannelTarget target) {
+        ChannelSocketFactory.unregister(target);
+        tunnelSetupTracker.recordTunnelSetup(target.getSshUrl());
+        sessionConnector.releaseSession(target.getSession());
+    }
+
+    private ForwardablePort findForwardableDatabasePort(GearConnection gearConnection, String connectionUrl) {
+        ForwardablePorts forwardablePorts = gearConnection.getForwardablePorts();
+        if (forwardablePorts.findMatching(connectionUrl) == null && !forwardablePorts.isComplete()) {
+            logger.info("Port listing stopped before the required port, list all ports");
+            forwardablePorts = executeRhcListPorts(gearConnection.getSession(), null);
+            forwardablePortCache.put(gearConnection.getSshUrl(), forwardablePorts);
+        }
+        return extractForwardableDatabasePort(forwardablePorts, connectionUrl);
+    }
+
+    /**
+     * Releases a port forwarding started by {@link #startPortForwarding(IOpenShiftConnection, String, String, String, String)}.
+     * The tunnel is closed when no other connection uses it.
+     */
+    public void releasePortForwarding(int localPort) {
+        // the connection used the gear until now
+        tunnelSetupTracker.recordTunnelSetup(tunnelRegistry.getSshUrl(localPort));
+        tunnelRegistry.release(localPort);
+    }
+
+    /**
+     * Invalidates what is known about the gear the given local port forwards to, e.g. after the target driver could
+     * not connect through the port forwarding. The next connect wakes the gear up and lists its ports again.
+     */
+    public void invalidateGearState(int localPort) {
+        invalidateGearState(tunnelRegistry.getSshUrl(localPort));
+    }
+
+    /**
+     * Invalidates the cached state of the gear of a direct channel target, like
+     * {@link #invalidateGearState(int)} does for port forwardings.
+     */
+    public void invalidateGearState(DirectChannelTarget target) {
+        invalidateGearState(target.getSshUrl());
+    }
+
+    private void invalidateGearState(String sshUrl) {
+        if (sshUrl != null) {
+            logger.info("Invalidate cached forwardable ports and last tunnel setup of gear " + sshUrl);
+            forwardablePortCache.invalidate(sshUrl);
+            tunnelSetupTracker.forget(sshUrl);
+        }
+    }
+
+    private ForwardablePorts wakeUpGearAndListPorts(String sshUrl, Session session, boolean sshWakeUp, String connectionUrlHint) {
+        try {
+            final boolean wakeUp = sshWakeUp && !tunnelSetupTracker.isRecentlySetUp(sshUrl);
+            if (sshWakeUp && !wakeUp) {
+                logger.fine("Tunnel to gear was set up recently, skip wakeup");
+            }
+            ForwardablePorts forwardablePorts = forwardablePortCache.get(sshUrl);
+            if (forwardablePorts != null) {
+                logger.fine("Use cached forwardable ports of gear " + sshUrl);
+                if (wakeUp) {
+                    wakeUpGear(session);
+                }
+            } else {
+                forwardablePorts = wakeUp ? wakeUpGearAndExecuteRhcListPorts(session, connectionUrlHint) : executeRhcListPorts(session, connectionUrlHint);
+                if (!forwardablePorts.isEmpty()) {
+                    forwardablePortCache.put(sshUrl, forwardablePorts);
+                }
+            }
+            tunnelSetupTracker.recordTunnelSetup(sshUrl);
+            return forwardablePorts;
+        } catch (RuntimeException e) {
+            tunnelSetupTracker.forget(sshUrl);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the ssh urls of the gears with open tunnels mapped to their private ssh key file path.
+     */
+    Map<String, String> getTunneledGears() {
+        return tunnelRegistry.getTunneledGears();
+    }
+
+    /**
+     * Wakes the gear up on a pooled session like a connect does, so openshift does not idle it.
+     */
+    void keepGearAwake(String sshUrl, String privateSshKeyFilePath) {
+        final Session session = sessionConnector.getAndConnectSession(sshUrl, privateSshKeyFilePath);
+        try {
+            wakeUpGear(session);
+            tunnelSetupTracker.recordTunnelSetup(sshUrl);
+        } finally {
+            sessionConnector.releaseSession(session);
+        }
+    }
+
+    private void wakeUpGear(Session session) {
         logger.info("Wakeup gear");
         executeCommand(WAKE_UP_GEAR_COMMAND, session, COMMAND_TIMEOUT_IN_MILLIS);
+    }
+
+    private ForwardablePorts executeRhcListPorts(Session session, String connectionUrlHint) {
         logger.info("Execute list-port-forward command");
-        List<String> rhcListPortsOutput = executeCommand(RHC_LIST_PORT_COMMAND, session, COMMAND_TIMEOUT_IN_MILLIS);
-        return extractForwardableDatabasePort(rhcListPortsOutput, connectionUrl);
+        final ForwardablePortCollector collector = new ForwardablePortCollector(connectionUrlHint);
+        executeCommand(RHC_LIST_PORT_COMMAND, session, COMMAND_TIMEOUT_IN_MILLIS, collector);
+        return collector.getForwardablePorts();
+    }
+
+    /**
+     * Wakes the gear up and lists its ports. Unless disabled by {@link #BATCHED_GEAR_COMMANDS_SYSTEM_PROPERTY} both
+     * commands run in a single exec channel.
+     */
+    private ForwardablePorts wakeUpGearAndExecuteRhcListPorts(Session session, String connectionUrlHint) {
+        if (!batchedGearCommands) {
+            wakeUpGear(session);
+            return executeRhcListPorts(session, connectionUrlHint);
+        }
+        logger.info("Wakeup gear and execute list-port-forward command");
+        final RemoteCommandBatch batch = new RemoteCommandBatch()
+                .add(WAKE_UP_GEAR_SECTION, WAKE_UP_GEAR_COMMAND)
+                .add(RHC_LIST_PORTS_SECTION, RHC_LIST_PORT_COMMAND);
+        final ForwardablePortCollector collector = new ForwardablePortCollector(connectionUrlHint);
+        final RemoteCommandBatch.OutputParser parser = batch.createOutputParser(Collections.<String, OutputLineHandler>singletonMap(RHC_LIST_PORTS_SECTION, collector));
+        executeCommand(batch.toCommand(), session, COMMAND_TIMEOUT_IN_MILLIS, parser);
+
+        if (!parser.isSuccessful(WAKE_UP_GEAR_SECTION)) {
+            logger.warning("Wakeup gear failed with exit status " + parser.getExitStatus(WAKE_UP_GEAR_SECTION));
+        }
+        if (!parser.hasStarted(RHC_LIST_PORTS_SECTION)) {
+            throw new RuntimeException("Error while executing rhc-list-ports on session, command did not run");
+        }
+        if (collector.isComplete() && !parser.isSuccessful(RHC_LIST_PORTS_SECTION)) {
+            logger.info("rhc-list-ports finished with exit status " + parser.getExitStatus(RHC_LIST_PORTS_SECTION));
+        }
+        return collector.getForwardablePorts();
     }
 
 
-    private IApplication getApplication(String applicationName, String domainName) {
-        if (isConnectedToOpenshiftServer()) {
-            IUser user = connection.getUser();
-            if (user != null) {
-                IDomain domain = user.getDomain(domainName);
-                if (domain != null) {
-                    final IApplication application = domain.getApplicationByName(applicationName);
-                    if (application != null) {
-                        return application;
-                    }
+    /**
+     * The openshift client loads users, domains, applications and cartridges lazily and caches them in unsynchronized
+     * resource objects. Cached connections are shared by concurrent connects, so their resources are only accessed
+     * while holding the lock of the connection.
+     */
+    private Object getResourceLock(IOpenShiftConnection connection) {
+        if (connection == null) {
+            throw new RuntimeException("Not connected to openshift");
+        }
+        return connection;
+    }
+
+    /**
+     * Looks the application up in the resources cached by the connection. With refresh the domain is reloaded if it
+     * does not know the application (yet) and the application is reloaded, so a reused connection does not return the
+     * state it read on first access.
+     */
+    private IApplication getApplication(IOpenShiftConnection connection, String applicationName, String domainName, boolean refresh) {
+        IUser user = getUser(connection);
+        if (user != null) {
+            IDomain domain = user.getDomain(domainName);
+            if (domain != null) {
+                IApplication application = domain.getApplicationByName(applicationName);
+                if (application == null && refresh) {
+                    domain.refresh();
+                    application = domain.getApplicationByName(applicationName);
+                } else if (application != null && refresh) {
+                    application.refresh();
+                }
+                if (application != null) {
+                    return application;
                 }
             }
         }
         throw new RuntimeException("Could not open application " + applicationName + " on domainName " + domainName);
     }
 
+    private IUser getUser(IOpenShiftConnection connection) {
+        try {
+            return connection.getUser();
+        } catch (InvalidCredentialsOpenShiftException e) {
+            logger.warning("Openshift server rejected credentials, evict connection");
+            connectionCreator.invalidateConnection(connection);
+            throw new RuntimeException("Openshift server rejected credentials", e);
+        }
+    }
+
     private List<String> executeCommand(String command, Session session, int timeout) {
-        List<String> forwardablePorts = new ArrayList<>();
+        final List<String> lines = new ArrayList<>();
+        executeCommand(command, session, timeout, new OutputLineHandler() {
+            @Override
+            public boolean handleLine(String line) {
+                lines.add(line);
+                return true;
+            }
+        });
+        return lines;
+    }
+
+    /**
+     * Executes the command and passes its output to the handler while it is read. The channel is closed as soon as
+     * the handler needs no more output.
+     */
+    private void executeCommand(String command, Session session, int timeout, OutputLineHandler outputLineHandler) {
         InputStream in = null;
         ChannelExec channel = null;
         try {
@@ -121,7 +456,7 @@ public class OpenshiftCommunicationHandler {
             in = channel.getInputStream();
             channel.connect(timeout);
 
-            forwardablePorts = readLines(in);
+            readLines(in, outputLineHandler);
         } catch (Exception e) {
             logger.warning("Error while executing rhc-list-ports on session. Reason: " + e.getMessage());
             throw new RuntimeException("Error while executing rhc-list-ports on session", e);
@@ -135,45 +470,42 @@ public class OpenshiftCommunicationHandler {
                 logger.warning("Could not disconnect channel to ssh server");
             }
         }
-        return forwardablePorts;
     }
 
-    private ForwardablePort extractForwardableDatabasePort(List<String> rhcListPortsOutput, String connectionUrl) {
-        boolean hasValidPortOutput = false;
-        for (String line : rhcListPortsOutput) {
-            ForwardablePort port = ForwardablePort.createForValidRhcListPortsOutputLine(line);
-
-            if (port != null) {
-                hasValidPortOutput = true;
-                if (connectionUrl.startsWith(port.getName())) {
-                    return port;
-                } else {
-                    logger.fine("Output line " + line + " is not matching the port service");
-                }
-            }
+    private ForwardablePort extractForwardableDatabasePort(ForwardablePorts forwardablePorts, String connectionUrl) {
+        if (forwardablePorts.isEmpty()) {
+            throw new RuntimeException("No forwardable port found!");
         }
-
-        if (hasValidPortOutput) {
+        final ForwardablePort port = forwardablePorts.findMatching(connectionUrl);
+        if (port == null) {
             throw new RuntimeException("No forwardable port found matching the required service defined by " + connectionUrl);
-        } else {
-            throw new RuntimeException("No forwardable port found!");
         }
+        // cached ports are shared, every tunnel forwards its own copy
+        return port.copyNotForwarded();
     }
 
-
-    public List<String> readLines(InputStream inputStream) throws IOException {
+    private void readLines(InputStream inputStream, OutputLineHandler outputLineHandler) throws IOException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        List<String> lines = new ArrayList<String>();
         String line;
         while ((line = reader.readLine()) != null) {
-            lines.add(line);
+            if (!outputLineHandler.handleLine(line)) {
+                return;
+            }
         }
-        return lines;
     }
 
 
-    public DatabaseData readDatabaseData(String applicationName, String domainName, String cartridgeName) {
-        final IApplication application = getApplication(applicationName, domainName);
+    /**
+     * Reads the database data from the current environment of the cartridge. The application is reloaded from the
+     * openshift server, the connection may be cached and would otherwise return the data it read first.
+     */
+    public DatabaseData readDatabaseData(IOpenShiftConnection connection, String applicationName, String domainName, String cartridgeName) {
+        synchronized (getResourceLock(connection)) {
+            return readDatabaseDataOfApplication(getApplication(connection, applicationName, domainName, true), cartridgeName);
+        }
+    }
+
+    private DatabaseData readDatabaseDataOfApplication(IApplication application, String cartridgeName) {
         final IEmbeddedCartridge databaseCartridge = application.getEmbeddedCartridge(cartridgeName);
 
         if (databaseCartridge != null) {
@@ -189,45 +521,102 @@ public class OpenshiftCommunicationHandler {
         }
     }
 
+    /**
+     * Returns the state of the port forwarding on the given local port.
+     */
+    public TunnelState getTunnelState(int localPort) {
+        return tunnelRegistry.getTunnelState(localPort);
+    }
+
+    /**
+     * Returns the compression statistics of the compressed ssh sessions to the gears.
+     */
+    public List<CompressionStatistics> getCompressionStatistics() {
+        return sessionConnector.getCompressionStatistics();
+    }
+
+    public void addTunnelStateListener(TunnelStateListener listener) {
+        tunnelRegistry.addTunnelStateListener(listener);
+    }
+
+    public void removeTunnelStateListener(TunnelStateListener listener) {
+        tunnelRegistry.removeTunnelStateListener(listener);
+    }
+
+    /**
+     * Closes all port forwardings regardless of other connections still using them.
+     */
     public void disconnect() {
-        if (hasSession()) {
-            stopPortforwarding();
-            session.disconnect();
-            session = null;
-            logger.info("Session closed");
-        }
+        tunnelHealthMonitor.stop();
+        keepAwakeScheduler.stop();
+        tunnelRegistry.closeAll();
+    }
 
-        if (isConnectedToOpenshiftServer()) {
-            connection = null;
-        }
+    void setOpenshiftConnector(OpenshiftConnector connectionCreator) {
+        this.connectionCreator = connectionCreator;
     }
 
-    private void stopPortforwarding() {
-        if (hasForwardedPort()) {
-            try {
-                logger.info("Stop port forwarding for " + port.toString());
-                port.stopPortForwarding(session);
-            } catch (RuntimeException e) {
-                logger.info("Error stopping port forwarding");
-            } finally {
-                port = null;
+    void setTunnelSetupTracker(TunnelSetupTracker tunnelSetupTracker) {
+        this.tunnelSetupTracker = tunnelSetupTracker;
+    }
+
+    /**
+     * Parses rhc-list-ports output lines into forwardable ports while they are read. Stops at the first port matching
+     * the connection url hint, if there is one.
+     */
+    private class ForwardablePortCollector implements OutputLineHandler {
+        private final String connectionUrlHint;
+        private final List<ForwardablePort> ports = new ArrayList<>();
+        private boolean complete = true;
+
+        private ForwardablePortCollector(String connectionUrlHint) {
+            this.connectionUrlHint = connectionUrlHint;
+        }
+
+        @Override
+        public boolean handleLine(String line) {
+            final ForwardablePort port = ForwardablePort.createForValidRhcListPortsOutputLine(line);
+            if (port == null) {
+                logger.fine("Output line " + line + " is no forwardable port");
+                return true;
+            }
+            ports.add(port);
+            if (connectionUrlHint != null && connectionUrlHint.startsWith(port.getName())) {
+                logger.fine("Found port " + port.getName() + ", stop reading rhc-list-ports output");
+                complete = false;
+                return false;
             }
+            return true;
+        }
+
+        private boolean isComplete() {
+            return complete;
+        }
+
+        private ForwardablePorts getForwardablePorts() {
+            return new ForwardablePorts(ports, complete);
         }
     }
 
-    private boolean hasForwardedPort() {
-        return port != null;
+    void setKeepAwakeScheduler(GearKeepAwakeScheduler keepAwakeScheduler) {
+        this.keepAwakeScheduler = keepAwakeScheduler;
     }
 
-    private boolean hasSession() {
-        return session != null;
+    void setGearWaker(GearWaker gearWaker) {
+        this.gearWaker = gearWaker;
     }
 
-    void setOpenshiftConnector(OpenshiftConnector connectionCreator) {
-        this.connectionCreator = connectionCreator;
+    void setBatchedGearCommands(boolean batchedGearCommands) {
+        this.batchedGearCommands = batchedGearCommands;
+    }
+
+    void setForwardablePortCache(ForwardablePortCache forwardablePortCache) {
+        this.forwardablePortCache = forwardablePortCache;
     }
 
     void setSessionConnector(SessionConnector sessionConnector) {
         this.sessionConnector = sessionConnector;
+        this.tunnelRegistry = new TunnelRegistry(sessionConnector);
+        this.tunnelHealthMonitor = new TunnelHealthMonitor(tunnelRegistry);
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.openshift.client.IOpenShiftConnection;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe cache of authenticated openshift connections scoped by server url, user and a hash of the password.
+ * Entries which have not been used within the idle timeout are evicted.
+ */
+public class OpenshiftConnectionCache {
+
+    static final String IDLE_TIMEOUT_SYSTEM_PROPERTY = "ch.puzzle.openshift.connectionCache.idleTimeoutInMillis";
+
+    static final long DEFAULT_IDLE_TIMEOUT_IN_MILLIS = 600_000;
+
+    private static final String PASSWORD_HASH_ALGORITHM = "SHA-256";
+
+    private final long idleTimeoutInMillis;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public OpenshiftConnectionCache() {
+        this(Long.getLong(IDLE_TIMEOUT_SYSTEM_PROPERTY, DEFAULT_IDLE_TIMEOUT_IN_MILLIS));
+    }
+
+    public OpenshiftConnectionCache(long idleTimeoutInMillis) {
+        if (idleTimeoutInMillis < 0) {
+            throw new IllegalArgumentException("Idle timeout must not be negative");
+        }
+        this.idleTimeoutInMillis = idleTimeoutInMillis;
+    }
+
+    /**
+     * Returns the cached connection or null if there is none or it has been idle for longer than the idle timeout.
+     */
+    public IOpenShiftConnection get(String openshiftServerUrl, String openshiftUser, String openshiftPassword) {
+        final Key key = new Key(openshiftServerUrl, openshiftUser, openshiftPassword);
+        final long now = currentTimeMillis();
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isIdle(now, idleTimeoutInMillis)) {
+            entries.remove(key, entry);
+            return null;
+        }
+        entry.lastAccessMillis = now;
+        return entry.connection;
+    }
+
+    public void put(String openshiftServerUrl, String openshiftUser, String openshiftPassword, IOpenShiftConnection connection) {
+        Objects.requireNonNull(connection, "Connection must not be null");
+        if (idleTimeoutInMillis > 0) {
+            evictIdleConnections();
+            entries.put(new Key(openshiftServerUrl, openshiftUser, openshiftPassword), new Entry(connection, currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Removes the given connection, e.g. because the openshift server rejected its credentials.
+     */
+    public void invalidate(IOpenShiftConnection connection) {
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().connection == connection) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictIdleConnections() {
+        final long now = currentTimeMillis();
+        for (Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getValue().isIdle(now, idleTimeoutInMillis)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    static String hashPassword(String openshiftPassword) {
+        try {
+            final byte[] hash = MessageDigest.getInstance(PASSWORD_HASH_ALGORITHM).digest(openshiftPassword.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Could not hash openshift password", e);
+        }
+    }
+
+    private static class Entry {
+        private final IOpenShiftConnection connection;
+        private volatile long lastAccessMillis;
+
+        private Entry(IOpenShiftConnection connection, long lastAccessMillis) {
+            this.connection = connection;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+
+        private boolean isIdle(long nowMillis, long idleTimeoutInMillis) {
+            return nowMillis - lastAccessMillis >= idleTimeoutInMillis;
+        }
+    }
+
+    private static final class Key {
+        private final String server;
+        private final String user;
+        private final String passwordHash;
+
+        private Key(String server, String user, String password) {
+            this.server = Objects.requireNonNull(server, "Server must not be null");
+            this.user = Objects.requireNonNull(user, "User must not be null");
+            this.passwordHash = hashPassword(Objects.requireNonNull(password, "Password must not be null"));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return server.equals(other.server) && user.equals(other.user) && passwordHash.equals(other.passwordHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(server, user, passwordHash);
+        }
+    }
+}
@@ -19,10 +19,41 @@ package ch.puzzle.openshift.openshift;
 import com.openshift.client.ConnectionBuilder;
 import com.openshift.client.IOpenShiftConnection;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 public class OpenshiftConnector {
     private static final int OPENSHIFT_CONNECTION_TIMEOUT = 90_000;
 
-    public IOpenShiftConnection getConnection(String openshiftServerUrl, String openshiftUser, String openshiftPassword) {
+    private OpenshiftConnectionCache connectionCache;
+    private final SingleFlight<List<String>, IOpenShiftConnection> connectionCreations = new SingleFlight<>();
+
+    public OpenshiftConnector() {
+        this.connectionCache = new OpenshiftConnectionCache();
+    }
+
+    /**
+     * Returns a cached connection for the server and credentials or creates (and caches) a new one. Concurrent
+     * callers for the same server and credentials share a single connection creation.
+     */
+    public IOpenShiftConnection getConnection(final String openshiftServerUrl, final String openshiftUser, final String openshiftPassword) {
+        IOpenShiftConnection connection = connectionCache.get(openshiftServerUrl, openshiftUser, openshiftPassword);
+        if (connection != null) {
+            return connection;
+        }
+        final List<String> key = Arrays.asList(openshiftServerUrl, openshiftUser, OpenshiftConnectionCache.hashPassword(openshiftPassword));
+        return connectionCreations.execute(key, new Callable<IOpenShiftConnection>() {
+            @Override
+            public IOpenShiftConnection call() {
+                IOpenShiftConnection createdConnection = createConnection(openshiftServerUrl, openshiftUser, openshiftPassword);
+                connectionCache.put(openshiftServerUrl, openshiftUser, openshiftPassword, createdConnection);
+                return createdConnection;
+            }
+        });
+    }
+
+    IOpenShiftConnection createConnection(String openshiftServerUrl, String openshiftUser, String openshiftPassword) {
         try {
             ConnectionBuilder builder = new ConnectionBuilder(openshiftServerUrl);
             return builder.credentials(openshiftUser, openshiftPassword).timeout(OPENSHIFT_CONNECTION_TIMEOUT).create();
@@ -30,4 +61,15 @@ public class OpenshiftConnector {
             throw new RuntimeException("Could not create connection to openshift server", e);
         }
     }
+
+    /**
+     * Removes the connection from the cache, e.g. after the openshift server rejected its credentials.
+     */
+    public void invalidateConnection(IOpenShiftConnection connection) {
+        connectionCache.invalidate(connection);
+    }
+
+    void setConnectionCache(OpenshiftConnectionCache connectionCache) {
+        this.connectionCache = connectionCache;
+    }
 }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * Consumes the output of a remote command line by line while it is read from the channel.
+ */
+interface OutputLineHandler {
+
+    /**
+     * Handles the next output line and returns false if no more output is needed, reading stops and the channel is
+     * closed.
+     */
+    boolean handleLine(String line);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * Forwards connections accepted on a local port to a remote host and port through an ssh session.
+ */
+interface PortForwarder {
+
+    /**
+     * Starts forwarding the local port, or a port chosen by the operating system if the local port is 0. Throws a
+     * JSchException caused by a {@link java.net.BindException} if the local port is bound by another process.
+     *
+     * @return the bound local port
+     */
+    int forward(Session session, int localPort, String remoteHost, int remotePort) throws JSchException;
+
+    /**
+     * Stops forwarding the local port and closes the connections accepted on it.
+     */
+    void stop(Session session, int localPort) throws JSchException;
+
+    boolean isForwarding(Session session, int localPort, String remoteHost, int remotePort) throws JSchException;
+
+    /**
+     * Releases the resources of the forwarder after all forwardings were stopped.
+     */
+    void shutdown();
+}
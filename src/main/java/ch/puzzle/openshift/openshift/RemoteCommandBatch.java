@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Several remote commands executed in a single exec channel. The output of each command is delimited by a section
+ * marker and followed by a marker with its exit status, so one round trip replaces a channel per command.
+ */
+class RemoteCommandBatch {
+
+    static final String SECTION_MARKER_PREFIX = "#openshift-proxy-section:";
+    static final String EXIT_STATUS_MARKER_PREFIX = "#openshift-proxy-exit-status:";
+
+    private final Map<String, String> commandsBySection = new LinkedHashMap<>();
+
+    RemoteCommandBatch add(String section, String command) {
+        Objects.requireNonNull(section, "Section must not be null");
+        Objects.requireNonNull(command, "Command must not be null");
+        commandsBySection.put(section, command);
+        return this;
+    }
+
+    /**
+     * Returns the shell command running all commands one after another, each framed by its section and exit status
+     * marker.
+     */
+    String toCommand() {
+        StringBuilder command = new StringBuilder();
+        for (Map.Entry<String, String> sectionCommand : commandsBySection.entrySet()) {
+            if (command.length() > 0) {
+                command.append("; ");
+            }
+            command.append("echo '").append(SECTION_MARKER_PREFIX).append(sectionCommand.getKey()).append("'; ")
+                    .append(sectionCommand.getValue()).append("; ")
+                    .append("echo \"").append(EXIT_STATUS_MARKER_PREFIX).append("$?\"");
+        }
+        return command.toString();
+    }
+
+    /**
+     * Returns a parser for the batch command's output which passes the output lines of each section to the section's
+     * line handler while they are read. Output of sections without handler is skipped.
+     */
+    OutputParser createOutputParser(Map<String, OutputLineHandler> sectionHandlers) {
+        return new OutputParser(sectionHandlers);
+    }
+
+    static class OutputParser implements OutputLineHandler {
+        private final Map<String, OutputLineHandler> sectionHandlers;
+        private final Set<String> startedSections = new HashSet<>();
+        private final Map<String, Integer> exitStatuses = new HashMap<>();
+        private String currentSection;
+
+        private OutputParser(Map<String, OutputLineHandler> sectionHandlers) {
+            this.sectionHandlers = Objects.requireNonNull(sectionHandlers, "Section handlers must not be null");
+        }
+
+        @Override
+        public boolean handleLine(String line) {
+            final String trimmedLine = line.trim();
+            if (trimmedLine.startsWith(SECTION_MARKER_PREFIX)) {
+                currentSection = trimmedLine.substring(SECTION_MARKER_PREFIX.length());
+                startedSections.add(currentSection);
+            } else if (trimmedLine.startsWith(EXIT_STATUS_MARKER_PREFIX) && currentSection != null) {
+                exitStatuses.put(currentSection, parseExitStatus(trimmedLine.substring(EXIT_STATUS_MARKER_PREFIX.length())));
+                currentSection = null;
+            } else if (currentSection != null) {
+                final OutputLineHandler sectionHandler = sectionHandlers.get(currentSection);
+                if (sectionHandler != null) {
+                    return sectionHandler.handleLine(line);
+                }
+            }
+            return true;
+        }
+
+        private Integer parseExitStatus(String exitStatus) {
+            try {
+                return Integer.valueOf(exitStatus);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        boolean hasStarted(String section) {
+            return startedSections.contains(section);
+        }
+
+        /**
+         * Exit status of the section's command or null if the command did not run or its output was not read to the
+         * end.
+         */
+        Integer getExitStatus(String section) {
+            return exitStatuses.get(section);
+        }
+
+        boolean isSuccessful(String section) {
+            final Integer exitStatus = getExitStatus(section);
+            return exitStatus != null && exitStatus == 0;
+        }
+    }
+}
@@ -20,25 +20,157 @@ import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 /**
  * Created by bschwaller on 18.02.15.
+ * <p/>
+ * Opens ssh sessions to application gears. Connected sessions are pooled per ssh url, identity, traffic class,
+ * stripe and {@link SshTuning} and shared (reference-counted) between all users. Traffic classes and stripes are separate sessions to the
+ * same gear, each with its own tcp connection and flow control window. A session is disconnected when the last user released it and it has not
+ * been borrowed again within the linger timeout. Concurrent connects to the same gear are coalesced into one.
+ * <p/>
+ * The ssh transport is compressed according to the {@link CompressionMode} (system property
+ * ch.puzzle.openshift.ssh.compression, off by default) with a {@link ZlibCompression}. In adaptive mode a session is
+ * switched to compression by a key re-exchange when its {@link ChannelTuner} measured a round trip time of at least
+ * ch.puzzle.openshift.ssh.compression.minRoundTripInMillis and a throughput of at most
+ * ch.puzzle.openshift.ssh.compression.maxThroughputInBytesPerSecond, later sessions to that gear start compressed. The
+ * compression ratio of a session is logged when it is disconnected.
+ * <p/>
+ * The offered ciphers, macs and key exchange methods are taken from the {@link SshAlgorithms} profile of the system
+ * property ch.puzzle.openshift.ssh.algorithms (default or throughput), each list can be replaced by the system
+ * properties ch.puzzle.openshift.ssh.ciphers, ch.puzzle.openshift.ssh.macs and ch.puzzle.openshift.ssh.kex.
  */
 public class SessionConnector {
 
     static final String SSH_URL_PREFIX = "ssh://";
     static final String DEFAULT_PRIVATE_SSH_KEY_FILE = "~/.ssh/id_rsa";
 
+    static final String SESSION_LINGER_SYSTEM_PROPERTY = "ch.puzzle.openshift.sessionPool.lingerInMillis";
+    static final long DEFAULT_SESSION_LINGER_IN_MILLIS = 30_000;
+    static final String SERVER_ALIVE_INTERVAL_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.serverAliveIntervalInMillis";
+    static final int DEFAULT_SERVER_ALIVE_INTERVAL_IN_MILLIS = 15_000;
+    static final String SERVER_ALIVE_COUNT_MAX_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.serverAliveCountMax";
+    static final int DEFAULT_SERVER_ALIVE_COUNT_MAX = 3;
+    static final String COMPRESSION_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.compression";
+    static final String COMPRESSION_MIN_ROUND_TRIP_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.compression.minRoundTripInMillis";
+    static final long DEFAULT_COMPRESSION_MIN_ROUND_TRIP_IN_MILLIS = 10;
+    static final String COMPRESSION_MAX_THROUGHPUT_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.compression.maxThroughputInBytesPerSecond";
+    static final long DEFAULT_COMPRESSION_MAX_THROUGHPUT_IN_BYTES_PER_SECOND = 10 * 1024 * 1024;
+    /**
+     * Delayed compression after authentication is preferred, plain zlib for older servers.
+     */
+    static final String COMPRESSION_METHODS = "zlib@openssh.com,zlib,none";
+    static final String ALGORITHMS_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.algorithms";
+    static final String CIPHERS_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.ciphers";
+    static final String MACS_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.macs";
+    static final String KEX_SYSTEM_PROPERTY = "ch.puzzle.openshift.ssh.kex";
+
+    private Logger logger = Logger.getLogger(SessionConnector.class.getName());
+
     private JSch jsch;
+    private final long sessionLingerInMillis;
+    private final int serverAliveIntervalInMillis;
+    private final int serverAliveCountMax;
+    private CompressionMode compressionMode;
+    private SshAlgorithms algorithms;
+    private final long compressionMinRoundTripInNanos;
+    private final long compressionMaxThroughputInBytesPerSecond;
+    private final Set<String> compressedGears = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<SessionKey, PooledSession> pooledSessions = new HashMap<>();
+    private final SingleFlight<SessionKey, PooledSession> sessionConnects = new SingleFlight<>();
+    private ScheduledExecutorService lingerScheduler;
 
     public SessionConnector() {
+        this(Long.getLong(SESSION_LINGER_SYSTEM_PROPERTY, DEFAULT_SESSION_LINGER_IN_MILLIS),
+                Integer.getInteger(SERVER_ALIVE_INTERVAL_SYSTEM_PROPERTY, DEFAULT_SERVER_ALIVE_INTERVAL_IN_MILLIS),
+                Integer.getInteger(SERVER_ALIVE_COUNT_MAX_SYSTEM_PROPERTY, DEFAULT_SERVER_ALIVE_COUNT_MAX));
+    }
+
+    public SessionConnector(long sessionLingerInMillis) {
+        this(sessionLingerInMillis, DEFAULT_SERVER_ALIVE_INTERVAL_IN_MILLIS, DEFAULT_SERVER_ALIVE_COUNT_MAX);
+    }
+
+    /**
+     * @param serverAliveIntervalInMillis interval of ssh keepalive messages on idle sessions, 0 disables them
+     * @param serverAliveCountMax         number of unanswered keepalive messages after which the session is
+     *                                    disconnected
+     */
+    public SessionConnector(long sessionLingerInMillis, int serverAliveIntervalInMillis, int serverAliveCountMax) {
+        if (sessionLingerInMillis < 0) {
+            throw new IllegalArgumentException("Session linger must not be negative");
+        }
+        if (serverAliveIntervalInMillis < 0) {
+            throw new IllegalArgumentException("Server alive interval must not be negative");
+        }
+        if (serverAliveCountMax < 1) {
+            throw new IllegalArgumentException("Server alive count max must be positive");
+        }
         this.jsch = new JSch();
+        this.sessionLingerInMillis = sessionLingerInMillis;
+        this.serverAliveIntervalInMillis = serverAliveIntervalInMillis;
+        this.serverAliveCountMax = serverAliveCountMax;
+        this.compressionMode = CompressionMode.fromParameter(System.getProperty(COMPRESSION_SYSTEM_PROPERTY, CompressionMode.OFF.name()));
+        this.compressionMinRoundTripInNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(COMPRESSION_MIN_ROUND_TRIP_SYSTEM_PROPERTY, DEFAULT_COMPRESSION_MIN_ROUND_TRIP_IN_MILLIS));
+        this.compressionMaxThroughputInBytesPerSecond = Long.getLong(COMPRESSION_MAX_THROUGHPUT_SYSTEM_PROPERTY, DEFAULT_COMPRESSION_MAX_THROUGHPUT_IN_BYTES_PER_SECOND);
+        this.algorithms = SshAlgorithms.forProfile(System.getProperty(ALGORITHMS_SYSTEM_PROPERTY, SshAlgorithms.DEFAULT_PROFILE))
+                .override(System.getProperty(CIPHERS_SYSTEM_PROPERTY), System.getProperty(MACS_SYSTEM_PROPERTY), System.getProperty(KEX_SYSTEM_PROPERTY));
     }
 
+    /**
+     * Borrows a connected session to the gear from the pool or opens a new one. Every borrowed session must be
+     * returned with {@link #releaseSession(Session)}.
+     */
     public Session getAndConnectSession(String sshUrl, String privateSshKeyFilePath) {
+        return getAndConnectSession(sshUrl, privateSshKeyFilePath, TunnelOptions.DEFAULT, 0);
+    }
+
+    /**
+     * Borrows the connected session of the given stripe like {@link #getAndConnectSession(String, String)}, which
+     * returns stripe 0 with the default options. The session is of the traffic class of the options and tuned with
+     * their socket options and channel flow control, the number of stripes and the striping strategy do not apply.
+     */
+    public Session getAndConnectSession(final String sshUrl, String privateSshKeyFilePath, TunnelOptions options, int stripe) {
+        final TrafficClass trafficClass = options.getTrafficClass();
+        final SshTuning tuning = options.getTuning();
+        if (stripe < 0) {
+            throw new IllegalArgumentException("Stripe must not be negative");
+        }
+        final String usedPrivateSshKeyFilePath = privateSshKeyFilePath != null ? privateSshKeyFilePath : DEFAULT_PRIVATE_SSH_KEY_FILE;
+        final SessionKey key = new SessionKey(sshUrl, usedPrivateSshKeyFilePath, trafficClass, stripe, tuning);
+
+        final Session pooledSession = borrowPooledSession(key);
+        if (pooledSession != null) {
+            logger.fine("Reuse pooled session to " + sshUrl);
+            return pooledSession;
+        }
+        final PooledSession connectedSession = sessionConnects.execute(key, new Callable<PooledSession>() {
+            @Override
+            public PooledSession call() {
+                return registerSession(key, connectSession(sshUrl, usedPrivateSshKeyFilePath, tuning));
+            }
+        });
+        return borrow(connectedSession);
+    }
+
+    private Session connectSession(String sshUrl, String usedPrivateSshKeyFilePath, SshTuning tuning) {
         try {
-            String usedPrivateSshKeyFilePath = privateSshKeyFilePath != null ? privateSshKeyFilePath : DEFAULT_PRIVATE_SSH_KEY_FILE;
             jsch.addIdentity(usedPrivateSshKeyFilePath);
 
             String[] userHost = extractApplicationUserAndHost(sshUrl);
@@ -47,14 +179,166 @@ public class SessionConnector {
 
             Session session = jsch.getSession(applicationUser, applicationHost);
             session.setConfig("StrictHostKeyChecking", "no");
+            algorithms.applyTo(session);
+            if (serverAliveIntervalInMillis > 0) {
+                session.setServerAliveInterval(serverAliveIntervalInMillis);
+                session.setServerAliveCountMax(serverAliveCountMax);
+            }
+            if (tuning.hasSocketOptions()) {
+                session.setSocketFactory(new TunedSocketFactory(tuning));
+            }
+            final boolean compressed = compressionMode == CompressionMode.ON || (compressionMode == CompressionMode.ADAPTIVE && compressedGears.contains(sshUrl));
+            if (compressed) {
+                enableCompression(session);
+            }
 
             session.connect();
+            if (!SshTuning.DEFAULT.equals(tuning) || compressionMode == CompressionMode.ADAPTIVE) {
+                final ChannelTuner tuner = new ChannelTuner(tuning);
+                if (compressionMode == CompressionMode.ADAPTIVE && !compressed) {
+                    tuner.setLinkSampleListener(new AdaptiveCompression(sshUrl, session));
+                }
+                ChannelTuner.register(session, tuner);
+            }
             return session;
         } catch (JSchException | NullPointerException e) {
             throw new RuntimeException("Could not open session", e);
         }
     }
 
+    private static void enableCompression(Session session) {
+        session.setConfig("zlib@openssh.com", ZlibCompression.class.getName());
+        session.setConfig("zlib", ZlibCompression.class.getName());
+        session.setConfig("compression.s2c", COMPRESSION_METHODS);
+        session.setConfig("compression.c2s", COMPRESSION_METHODS);
+    }
+
+    private synchronized Session borrowPooledSession(SessionKey key) {
+        final PooledSession pooledSession = pooledSessions.get(key);
+        if (pooledSession == null) {
+            return null;
+        }
+        if (!pooledSession.session.isConnected()) {
+            pooledSessions.remove(key);
+            pooledSession.cancelLinger();
+            return null;
+        }
+        pooledSession.borrow();
+        return pooledSession.session;
+    }
+
+    private synchronized PooledSession registerSession(SessionKey key, Session session) {
+        final PooledSession existingSession = pooledSessions.get(key);
+        if (existingSession != null && existingSession.session.isConnected()) {
+            // another thread connected concurrently, keep the pooled one
+            session.disconnect();
+            return existingSession;
+        }
+        final PooledSession pooledSession = new PooledSession(key, session);
+        pooledSessions.put(key, pooledSession);
+        return pooledSession;
+    }
+
+    private synchronized Session borrow(PooledSession pooledSession) {
+        pooledSession.borrow();
+        return pooledSession.session;
+    }
+
+    /**
+     * Returns a session borrowed by {@link #getAndConnectSession(String, String)}. The session is disconnected when
+     * it is no longer used by anyone after the linger timeout.
+     */
+    public synchronized void releaseSession(Session session) {
+        final PooledSession pooledSession = findPooledSession(session);
+        if (pooledSession == null) {
+            session.disconnect();
+            return;
+        }
+        if (pooledSession.release() > 0) {
+            return;
+        }
+        if (sessionLingerInMillis == 0) {
+            disconnectIfUnused(pooledSession);
+        } else {
+            pooledSession.lingerTask = getLingerScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    disconnectIfUnused(pooledSession);
+                }
+            }, sessionLingerInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void disconnectIfUnused(PooledSession pooledSession) {
+        if (pooledSession.references == 0 && pooledSessions.get(pooledSession.key) == pooledSession) {
+            pooledSessions.remove(pooledSession.key);
+            logCompressionStatistics(pooledSession);
+            pooledSession.session.disconnect();
+            logger.info("Session closed");
+        }
+    }
+
+    private PooledSession findPooledSession(Session session) {
+        for (PooledSession pooledSession : pooledSessions.values()) {
+            if (pooledSession.session == session) {
+                return pooledSession;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Disconnects all pooled sessions regardless of their users.
+     */
+    public synchronized void disconnectAll() {
+        for (Iterator<PooledSession> iterator = pooledSessions.values().iterator(); iterator.hasNext(); ) {
+            final PooledSession pooledSession = iterator.next();
+            iterator.remove();
+            pooledSession.cancelLinger();
+            logCompressionStatistics(pooledSession);
+            pooledSession.session.disconnect();
+        }
+    }
+
+    private void logCompressionStatistics(PooledSession pooledSession) {
+        final CompressionStatistics statistics = CompressionStatistics.of(pooledSession.key.sshUrl, pooledSession.session);
+        if (statistics != null) {
+            logger.info("Disconnect compressed session: " + statistics);
+        }
+    }
+
+    /**
+     * Returns the compression statistics of all pooled sessions that are compressed.
+     */
+    public synchronized List<CompressionStatistics> getCompressionStatistics() {
+        final List<CompressionStatistics> compressionStatistics = new ArrayList<>();
+        for (PooledSession pooledSession : pooledSessions.values()) {
+            final CompressionStatistics statistics = CompressionStatistics.of(pooledSession.key.sshUrl, pooledSession.session);
+            if (statistics != null) {
+                compressionStatistics.add(statistics);
+            }
+        }
+        return compressionStatistics;
+    }
+
+    synchronized int getReferenceCount(Session session) {
+        final PooledSession pooledSession = findPooledSession(session);
+        return pooledSession != null ? pooledSession.references : 0;
+    }
+
+    private ScheduledExecutorService getLingerScheduler() {
+        if (lingerScheduler == null) {
+            lingerScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "openshift-proxy-session-linger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return lingerScheduler;
+    }
 
     private String[] extractApplicationUserAndHost(String sshUrl) {
         Objects.requireNonNull(sshUrl, "SshUrl must not be empty");
@@ -72,4 +356,110 @@ public class SessionConnector {
     void setJsch(JSch jsch) {
         this.jsch = jsch;
     }
+
+    void setAlgorithms(SshAlgorithms algorithms) {
+        this.algorithms = algorithms;
+    }
+
+    void setCompressionMode(CompressionMode compressionMode) {
+        this.compressionMode = compressionMode;
+    }
+
+    /**
+     * Switches a session to compression once the link to its gear turned out to be slow. Compression pays off when
+     * the link, not the cpu, limits the throughput, which is not the case on localhost or in a LAN.
+     */
+    private class AdaptiveCompression implements ChannelTuner.LinkSampleListener {
+        private final String sshUrl;
+        private final Session session;
+        private final AtomicBoolean enabled = new AtomicBoolean();
+
+        private AdaptiveCompression(String sshUrl, Session session) {
+            this.sshUrl = sshUrl;
+            this.session = session;
+        }
+
+        @Override
+        public void linkSampled(long roundTripInNanos, long throughputInBytesPerSecond) {
+            if (roundTripInNanos < compressionMinRoundTripInNanos || throughputInBytesPerSecond > compressionMaxThroughputInBytesPerSecond
+                    || !enabled.compareAndSet(false, true)) {
+                return;
+            }
+            logger.info("Enable compression for " + sshUrl + " (round trip " + TimeUnit.NANOSECONDS.toMillis(roundTripInNanos) + "ms, "
+                    + throughputInBytesPerSecond + " bytes/s)");
+            compressedGears.add(sshUrl);
+            enableCompression(session);
+            try {
+                // the key re-exchange negotiates the compression anew
+                session.rekey();
+            } catch (Exception e) {
+                logger.warning("Could not enable compression for " + sshUrl + ". Reason: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class PooledSession {
+        private final SessionKey key;
+        private final Session session;
+        private int references;
+        private ScheduledFuture<?> lingerTask;
+
+        private PooledSession(SessionKey key, Session session) {
+            this.key = key;
+            this.session = session;
+        }
+
+        private void borrow() {
+            references++;
+            cancelLinger();
+        }
+
+        private int release() {
+            if (references > 0) {
+                references--;
+            }
+            return references;
+        }
+
+        private void cancelLinger() {
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+        }
+    }
+
+    private static final class SessionKey {
+        private final String sshUrl;
+        private final String privateSshKeyFilePath;
+        private final TrafficClass trafficClass;
+        private final int stripe;
+        private final SshTuning tuning;
+
+        private SessionKey(String sshUrl, String privateSshKeyFilePath, TrafficClass trafficClass, int stripe, SshTuning tuning) {
+            this.sshUrl = sshUrl;
+            this.privateSshKeyFilePath = privateSshKeyFilePath;
+            this.trafficClass = trafficClass;
+            this.stripe = stripe;
+            this.tuning = tuning;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SessionKey)) {
+                return false;
+            }
+            SessionKey other = (SessionKey) o;
+            return stripe == other.stripe && trafficClass == other.trafficClass && Objects.equals(sshUrl, other.sshUrl) && Objects.equals(privateSshKeyFilePath, other.privateSshKeyFilePath)
+                    && tuning.equals(other.tuning);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sshUrl, privateSshKeyFilePath, trafficClass, stripe, tuning);
+        }
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+
+import java.util.Objects;
+
+/**
+ * Ordered preference lists of the ciphers, macs and key exchange methods offered by the ssh sessions to the gears.
+ * The first algorithm of a list the gear supports as well is used. A list that is not set keeps the default of JSch,
+ * which prefers aes128-ctr, hmac-md5 and diffie-hellman-group1-sha1 but falls back to 3des and blowfish.
+ * <p/>
+ * The {@link #THROUGHPUT} profile offers only AES and leaves out 3des and blowfish. Counter mode comes before cbc,
+ * which is open to plaintext recovery in ssh. Encrypting and signing outgoing packets runs on the writing thread, so
+ * the cipher can bound the throughput of large transfers. How fast the ciphers and macs are relative to each other
+ * depends on the jvm and the cpu, no speed is claimed here: measure them on the target host with the CipherBenchmark
+ * of the test sources, which by default runs the JCE implementations in process and only with benchmark.sshUrl
+ * through a real ssh session.
+ */
+public final class SshAlgorithms {
+
+    public static final SshAlgorithms DEFAULT = new SshAlgorithms(null, null, null);
+    public static final SshAlgorithms THROUGHPUT = new SshAlgorithms("aes128-ctr,aes192-ctr,aes256-ctr,aes128-cbc,aes192-cbc,aes256-cbc", "hmac-sha1,hmac-sha2-256,hmac-md5",
+            "diffie-hellman-group14-sha1,diffie-hellman-group-exchange-sha256,diffie-hellman-group-exchange-sha1,diffie-hellman-group1-sha1");
+
+    static final String DEFAULT_PROFILE = "default";
+    static final String THROUGHPUT_PROFILE = "throughput";
+
+    private final String ciphers;
+    private final String macs;
+    private final String keyExchanges;
+
+    /**
+     * @param ciphers      comma separated ciphers, e.g. aes128-ctr,aes256-ctr, or null for the default of JSch
+     * @param macs         comma separated macs, e.g. hmac-sha1,hmac-sha2-256, or null for the default of JSch
+     * @param keyExchanges comma separated key exchange methods, e.g. diffie-hellman-group14-sha1, or null for the
+     *                     default of JSch
+     */
+    public SshAlgorithms(String ciphers, String macs, String keyExchanges) {
+        this.ciphers = verifySupported(ciphers);
+        this.macs = verifySupported(macs);
+        this.keyExchanges = verifySupported(keyExchanges);
+    }
+
+    private static String verifySupported(String algorithms) {
+        if (algorithms == null) {
+            return null;
+        }
+        final String trimmedAlgorithms = algorithms.replaceAll("\\s", "");
+        if (trimmedAlgorithms.isEmpty()) {
+            throw new IllegalArgumentException("Algorithm list must not be empty");
+        }
+        for (String algorithm : trimmedAlgorithms.split(",")) {
+            if (JSch.getConfig(algorithm) == null) {
+                throw new IllegalArgumentException("Algorithm " + algorithm + " is not supported by JSch");
+            }
+        }
+        return trimmedAlgorithms;
+    }
+
+    /**
+     * Returns the algorithms of the profile with the given (case insensitive) name, default or throughput.
+     */
+    public static SshAlgorithms forProfile(String profile) {
+        if (DEFAULT_PROFILE.equalsIgnoreCase(profile)) {
+            return DEFAULT;
+        }
+        if (THROUGHPUT_PROFILE.equalsIgnoreCase(profile)) {
+            return THROUGHPUT;
+        }
+        throw new IllegalArgumentException("Unknown algorithm profile " + profile);
+    }
+
+    /**
+     * Returns a copy with the lists that are not null replaced.
+     */
+    public SshAlgorithms override(String otherCiphers, String otherMacs, String otherKeyExchanges) {
+        return new SshAlgorithms(otherCiphers != null ? otherCiphers : ciphers, otherMacs != null ? otherMacs : macs,
+                otherKeyExchanges != null ? otherKeyExchanges : keyExchanges);
+    }
+
+    /**
+     * Offers the algorithms in both directions of a session that is not connected yet.
+     */
+    void applyTo(Session session) {
+        if (ciphers != null) {
+            session.setConfig("cipher.c2s", ciphers);
+            session.setConfig("cipher.s2c", ciphers);
+        }
+        if (macs != null) {
+            session.setConfig("mac.c2s", macs);
+            session.setConfig("mac.s2c", macs);
+        }
+        if (keyExchanges != null) {
+            session.setConfig("kex", keyExchanges);
+        }
+    }
+
+    public String getCiphers() {
+        return ciphers;
+    }
+
+    public String getMacs() {
+        return macs;
+    }
+
+    public String getKeyExchanges() {
+        return keyExchanges;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SshAlgorithms)) {
+            return false;
+        }
+        SshAlgorithms other = (SshAlgorithms) o;
+        return Objects.equals(ciphers, other.ciphers) && Objects.equals(macs, other.macs) && Objects.equals(keyExchanges, other.keyExchanges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ciphers, macs, keyExchanges);
+    }
+
+    @Override
+    public String toString() {
+        return "SshAlgorithms [ciphers=" + ciphers + ", macs=" + macs + ", kex=" + keyExchanges + "]";
+    }
+}
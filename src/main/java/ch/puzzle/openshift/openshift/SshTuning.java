@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.Objects;
+
+/**
+ * Flow control and socket tuning of the ssh sessions to a gear. The channel window and maximum packet size are
+ * announced to the gear when a direct-tcpip channel is opened, so they bound the data the gear sends before it waits
+ * for a window adjustment. The defaults of JSch (128 KiB window, 16 KiB packets) limit the throughput of a channel to
+ * 128 KiB per round trip. An {@link #AUTO_WINDOW_SIZE automatic} window is sized from the round trip time and
+ * throughput measured on the session, see {@link ChannelTuner}.
+ * <p/>
+ * Sessions with different tuning are never shared. A size of 0 keeps the default of JSch or the operating system, a
+ * null tcp no delay keeps the default of the respective socket.
+ */
+public final class SshTuning {
+
+    public static final int DEFAULT_SIZE = 0;
+    public static final int AUTO_WINDOW_SIZE = -1;
+    public static final SshTuning DEFAULT = new SshTuning(DEFAULT_SIZE, DEFAULT_SIZE, null, DEFAULT_SIZE, DEFAULT_SIZE);
+
+    static final String AUTO = "auto";
+    static final int MIN_SIZE = 1024;
+    static final int MAX_WINDOW_SIZE = 64 * 1024 * 1024;
+    /**
+     * JSch rejects packets larger than 256 KiB including padding and mac.
+     */
+    static final int MAX_PACKET_SIZE = 128 * 1024;
+
+    private final int windowSize;
+    private final int maxPacketSize;
+    private final Boolean tcpNoDelay;
+    private final int socketSendBufferSize;
+    private final int socketReceiveBufferSize;
+
+    /**
+     * @param windowSize              local window of the channels in bytes, {@link #AUTO_WINDOW_SIZE} or
+     *                                {@link #DEFAULT_SIZE}
+     * @param maxPacketSize           maximum packet size of the channels in bytes or {@link #DEFAULT_SIZE}
+     * @param tcpNoDelay              TCP_NODELAY of the ssh socket and the local forwarded sockets, null for the
+     *                                defaults
+     * @param socketSendBufferSize    SO_SNDBUF of the ssh socket and the local forwarded sockets or {@link #DEFAULT_SIZE}
+     * @param socketReceiveBufferSize SO_RCVBUF of the ssh socket and the local forwarded sockets or {@link #DEFAULT_SIZE}
+     */
+    public SshTuning(int windowSize, int maxPacketSize, Boolean tcpNoDelay, int socketSendBufferSize, int socketReceiveBufferSize) {
+        if (windowSize != AUTO_WINDOW_SIZE) {
+            verifySize(windowSize, MAX_WINDOW_SIZE, "Window size");
+        }
+        verifySize(maxPacketSize, MAX_PACKET_SIZE, "Max packet size");
+        verifySize(socketSendBufferSize, Integer.MAX_VALUE, "Socket send buffer size");
+        verifySize(socketReceiveBufferSize, Integer.MAX_VALUE, "Socket receive buffer size");
+        if (windowSize > DEFAULT_SIZE && maxPacketSize > windowSize) {
+            throw new IllegalArgumentException("Max packet size " + maxPacketSize + " must not exceed the window size " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.maxPacketSize = maxPacketSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.socketSendBufferSize = socketSendBufferSize;
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+    }
+
+    private static void verifySize(int size, int maxSize, String name) {
+        if (size != DEFAULT_SIZE && (size < MIN_SIZE || size > maxSize)) {
+            throw new IllegalArgumentException(name + " must be between " + MIN_SIZE + " and " + maxSize + " bytes but was " + size);
+        }
+    }
+
+    /**
+     * Parses a window size parameter, either a number of bytes or auto.
+     */
+    public static int parseWindowSize(String parameter) {
+        return AUTO.equalsIgnoreCase(parameter.trim()) ? AUTO_WINDOW_SIZE : Integer.parseInt(parameter.trim());
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public boolean isAutoWindowSize() {
+        return windowSize == AUTO_WINDOW_SIZE;
+    }
+
+    public int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    /**
+     * Returns true if the ssh socket is not created with the defaults of JSch.
+     */
+    boolean hasSocketOptions() {
+        return tcpNoDelay != null || socketSendBufferSize != DEFAULT_SIZE || socketReceiveBufferSize != DEFAULT_SIZE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SshTuning)) {
+            return false;
+        }
+        SshTuning other = (SshTuning) o;
+        return windowSize == other.windowSize && maxPacketSize == other.maxPacketSize && Objects.equals(tcpNoDelay, other.tcpNoDelay)
+                && socketSendBufferSize == other.socketSendBufferSize && socketReceiveBufferSize == other.socketReceiveBufferSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(windowSize, maxPacketSize, tcpNoDelay, socketSendBufferSize, socketReceiveBufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return "SshTuning [window=" + (isAutoWindowSize() ? AUTO : windowSize) + ", maxPacket=" + maxPacketSize + ", tcpNoDelay=" + tcpNoDelay
+                + ", sendBuffer=" + socketSendBufferSize + ", receiveBuffer=" + socketReceiveBufferSize + "]";
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * How the stripe of a striped tunnel is chosen for a new connection, see
+ * {@link TunnelRegistry#acquire(String, String, ForwardablePort, TunnelOptions)}.
+ */
+public enum StripingStrategy {
+    /**
+     * Uses the stripes in turn.
+     */
+    ROUND_ROBIN,
+    /**
+     * Uses the stripe with the fewest connections, the first one on a tie.
+     */
+    LEAST_LOADED;
+
+    /**
+     * Returns the strategy for the (case insensitive) url parameter value, e.g. roundrobin or least-loaded.
+     */
+    public static StripingStrategy fromParameter(String parameter) {
+        final String normalizedParameter = parameter.replace("-", "").replace("_", "");
+        for (StripingStrategy strategy : values()) {
+            if (strategy.name().replace("_", "").equalsIgnoreCase(normalizedParameter)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown striping strategy " + parameter);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * Traffic class of a database connection. Every class uses its own ssh sessions to a gear, so latency sensitive
+ * queries never queue behind bulk transfers on the same ssh transport.
+ */
+public enum TrafficClass {
+    /**
+     * Short, latency sensitive queries. Shares the session used for the commands on the gear.
+     */
+    INTERACTIVE,
+    /**
+     * Large result sets and batch jobs.
+     */
+    BULK;
+
+    /**
+     * Returns the traffic class for the (case insensitive) property value.
+     */
+    public static TrafficClass fromParameter(String parameter) {
+        for (TrafficClass trafficClass : values()) {
+            if (trafficClass.name().equalsIgnoreCase(parameter)) {
+                return trafficClass;
+            }
+        }
+        throw new IllegalArgumentException("Unknown traffic class " + parameter);
+    }
+}
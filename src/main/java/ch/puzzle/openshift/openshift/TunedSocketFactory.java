@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.SocketFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Creates the tcp connection of an ssh session with the socket options of a {@link SshTuning}. The buffer sizes are
+ * set before connecting, so the tcp window scale is negotiated for them.
+ */
+class TunedSocketFactory implements SocketFactory {
+
+    private final SshTuning tuning;
+
+    TunedSocketFactory(SshTuning tuning) {
+        this.tuning = tuning;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            configure(socket);
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    void configure(Socket socket) throws IOException {
+        if (tuning.getTcpNoDelay() != null) {
+            socket.setTcpNoDelay(tuning.getTcpNoDelay());
+        }
+        if (tuning.getSocketSendBufferSize() != SshTuning.DEFAULT_SIZE) {
+            socket.setSendBufferSize(tuning.getSocketSendBufferSize());
+        }
+        if (tuning.getSocketReceiveBufferSize() != SshTuning.DEFAULT_SIZE) {
+            socket.setReceiveBufferSize(tuning.getSocketReceiveBufferSize());
+        }
+    }
+
+    @Override
+    public InputStream getInputStream(Socket socket) throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream(Socket socket) throws IOException {
+        return socket.getOutputStream();
+    }
+}
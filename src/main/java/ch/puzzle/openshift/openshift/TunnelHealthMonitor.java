@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Periodically checks the sessions and port forwardings of all tunnels, so a tunnel killed by a NAT or idle timeout
+ * is detected and marked broken before a query hangs on it. Broken tunnels are re-established on their local port
+ * in the background, retrying with exponential backoff until the gear is reachable again or the tunnel was closed.
+ * Direct channels are not monitored, they are not registered with the {@link TunnelRegistry}.
+ */
+public class TunnelHealthMonitor implements TunnelStateListener {
+
+    static final String CHECK_INTERVAL_SYSTEM_PROPERTY = "ch.puzzle.openshift.tunnelHealth.checkIntervalInMillis";
+    static final String REESTABLISH_INITIAL_DELAY_SYSTEM_PROPERTY = "ch.puzzle.openshift.tunnelHealth.reestablishInitialDelayInMillis";
+    static final String REESTABLISH_MAX_DELAY_SYSTEM_PROPERTY = "ch.puzzle.openshift.tunnelHealth.reestablishMaxDelayInMillis";
+
+    static final long DEFAULT_CHECK_INTERVAL_IN_MILLIS = 10_000;
+    static final long DEFAULT_REESTABLISH_INITIAL_DELAY_IN_MILLIS = 500;
+    static final long DEFAULT_REESTABLISH_MAX_DELAY_IN_MILLIS = 30_000;
+
+    private Logger logger = Logger.getLogger(TunnelHealthMonitor.class.getName());
+
+    private final TunnelRegistry tunnelRegistry;
+    private final long checkIntervalInMillis;
+    private final long reestablishInitialDelayInMillis;
+    private final long reestablishMaxDelayInMillis;
+    private ScheduledExecutorService scheduler;
+
+    public TunnelHealthMonitor(TunnelRegistry tunnelRegistry) {
+        this(tunnelRegistry, Long.getLong(CHECK_INTERVAL_SYSTEM_PROPERTY, DEFAULT_CHECK_INTERVAL_IN_MILLIS),
+                Long.getLong(REESTABLISH_INITIAL_DELAY_SYSTEM_PROPERTY, DEFAULT_REESTABLISH_INITIAL_DELAY_IN_MILLIS),
+                Long.getLong(REESTABLISH_MAX_DELAY_SYSTEM_PROPERTY, DEFAULT_REESTABLISH_MAX_DELAY_IN_MILLIS));
+    }
+
+    /**
+     * @param checkIntervalInMillis           interval between two checks of all tunnels, 0 disables the monitor
+     * @param reestablishInitialDelayInMillis delay of the first attempt to re-establish a broken tunnel, doubled
+     *                                        after each failed attempt
+     * @param reestablishMaxDelayInMillis     upper bound of the delay between two attempts
+     */
+    public TunnelHealthMonitor(TunnelRegistry tunnelRegistry, long checkIntervalInMillis, long reestablishInitialDelayInMillis, long reestablishMaxDelayInMillis) {
+        if (checkIntervalInMillis < 0) {
+            throw new IllegalArgumentException("Check interval must not be negative");
+        }
+        if (reestablishInitialDelayInMillis <= 0 || reestablishMaxDelayInMillis < reestablishInitialDelayInMillis) {
+            throw new IllegalArgumentException("Re-establish delays must be positive and the maximum not below the initial delay");
+        }
+        this.tunnelRegistry = Objects.requireNonNull(tunnelRegistry, "TunnelRegistry must not be null");
+        this.checkIntervalInMillis = checkIntervalInMillis;
+        this.reestablishInitialDelayInMillis = reestablishInitialDelayInMillis;
+        this.reestablishMaxDelayInMillis = reestablishMaxDelayInMillis;
+    }
+
+    /**
+     * Starts the periodic checks. Does nothing if the monitor is disabled or already started.
+     */
+    public synchronized void start() {
+        if (checkIntervalInMillis == 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "openshift-proxy-tunnel-health");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tunnelRegistry.checkTunnels();
+                } catch (RuntimeException e) {
+                    logger.info("Tunnel health check failed. Reason: " + e.getMessage());
+                }
+            }
+        }, checkIntervalInMillis, checkIntervalInMillis, TimeUnit.MILLISECONDS);
+        tunnelRegistry.addTunnelStateListener(this);
+    }
+
+    public synchronized void stop() {
+        tunnelRegistry.removeTunnelStateListener(this);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public void tunnelStateChanged(String sshUrl, int localPort, TunnelState state) {
+        if (state == TunnelState.BROKEN) {
+            scheduleReestablish(localPort, reestablishInitialDelayInMillis);
+        }
+    }
+
+    private synchronized void scheduleReestablish(final int localPort, final long delayInMillis) {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reestablish(localPort, delayInMillis);
+            }
+        }, delayInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Attempts to re-establish the tunnel and schedules the next attempt with doubled delay if it failed.
+     */
+    void reestablish(int localPort, long delayInMillis) {
+        try {
+            tunnelRegistry.reestablish(localPort);
+        } catch (RuntimeException e) {
+            final long nextDelayInMillis = Math.min(delayInMillis * 2, reestablishMaxDelayInMillis);
+            logger.info("Could not re-establish tunnel on port " + localPort + ", retry in " + nextDelayInMillis + " ms. Reason: " + e.getMessage());
+            scheduleReestablish(localPort, nextDelayInMillis);
+        }
+    }
+}
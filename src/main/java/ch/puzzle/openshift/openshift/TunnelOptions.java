@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.Objects;
+
+/**
+ * Options of the tunnel a connection is opened through: the {@link TrafficClass} of its sessions, the number of
+ * stripes with the {@link StripingStrategy} choosing one of them and the {@link SshTuning} of the sessions. Tunnels
+ * with different traffic class or tuning never share a session. Direct channels use the traffic class and tuning
+ * only, they are not striped.
+ */
+public final class TunnelOptions {
+
+    public static final TunnelOptions DEFAULT = new TunnelOptions(TrafficClass.INTERACTIVE, 1, StripingStrategy.LEAST_LOADED, SshTuning.DEFAULT);
+
+    private final TrafficClass trafficClass;
+    private final int stripes;
+    private final StripingStrategy stripingStrategy;
+    private final SshTuning tuning;
+
+    /**
+     * @param trafficClass     traffic class of the sessions
+     * @param stripes          number of separate sessions (and local ports) the connections are spread over
+     * @param stripingStrategy chooses the stripe of a new connection
+     * @param tuning           flow control and socket options of the sessions
+     */
+    public TunnelOptions(TrafficClass trafficClass, int stripes, StripingStrategy stripingStrategy, SshTuning tuning) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be positive but was " + stripes);
+        }
+        this.trafficClass = Objects.requireNonNull(trafficClass, "Traffic class must not be null");
+        this.stripes = stripes;
+        this.stripingStrategy = Objects.requireNonNull(stripingStrategy, "Striping strategy must not be null");
+        this.tuning = Objects.requireNonNull(tuning, "Tuning must not be null");
+    }
+
+    public TunnelOptions withTrafficClass(TrafficClass otherTrafficClass) {
+        return new TunnelOptions(otherTrafficClass, stripes, stripingStrategy, tuning);
+    }
+
+    public TunnelOptions withStripes(int otherStripes, StripingStrategy otherStripingStrategy) {
+        return new TunnelOptions(trafficClass, otherStripes, otherStripingStrategy, tuning);
+    }
+
+    public TunnelOptions withTuning(SshTuning otherTuning) {
+        return new TunnelOptions(trafficClass, stripes, stripingStrategy, otherTuning);
+    }
+
+    public TrafficClass getTrafficClass() {
+        return trafficClass;
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    public StripingStrategy getStripingStrategy() {
+        return stripingStrategy;
+    }
+
+    public SshTuning getTuning() {
+        return tuning;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TunnelOptions)) {
+            return false;
+        }
+        TunnelOptions other = (TunnelOptions) o;
+        return trafficClass == other.trafficClass && stripes == other.stripes && stripingStrategy == other.stripingStrategy && tuning.equals(other.tuning);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(trafficClass, stripes, stripingStrategy, tuning);
+    }
+
+    @Override
+    public String toString() {
+        return "TunnelOptions [trafficClass=" + trafficClass + ", stripes=" + stripes + ", strategy=" + stripingStrategy + ", tuning=" + tuning + "]";
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Session;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Registry of port forwardings shared by all connections to the same gear database port. Each tunnel is identified
+ * by gear ssh url, remote host and remote port and counts its users. The forwarding is stopped and its session
+ * released when the last user releases the tunnel.
+ * <p/>
+ * The registry is thread-safe, tunnels are locked individually so setting up a tunnel to one gear never blocks
+ * connects to other gears.
+ * <p/>
+ * Connections are forwarded by the local port forwarding of JSch, or by a {@link NioPortForwarder} sharing one
+ * selector thread among all connections if the system property ch.puzzle.openshift.nioForwarder is true. The channel
+ * window and packet size of a {@link SshTuning} only apply to the NIO forwarder, JSch opens the channels of its port
+ * forwarding with its defaults.
+ * <p/>
+ * A striped tunnel spreads its connections over several tunnels with separate sessions and local ports, one per
+ * stripe, so the throughput is not capped by a single ssh connection and its flow control window. Tunnels of
+ * different {@link TrafficClass}es never share a session.
+ * <p/>
+ * A tunnel whose session was disconnected or whose port forwarding vanished is marked broken by
+ * {@link #checkTunnels()} and re-established on the same local port by {@link #reestablish(int)} or its next
+ * acquirer. Its users keep their references, so releasing them still closes the tunnel eventually. State changes are published to the registered {@link TunnelStateListener}s.
+ * <p/>
+ * {@link DirectChannelTarget}s are not registered. A target belongs to a single connection and opens its channel once,
+ * so there is no tunnel to re-establish: a lost session fails that connection like it fails the open connections of
+ * a broken tunnel, and the next connect borrows a connected session again.
+ */
+public class TunnelRegistry {
+
+    static final String NIO_FORWARDER_SYSTEM_PROPERTY = "ch.puzzle.openshift.nioForwarder";
+
+    private Logger logger = Logger.getLogger(TunnelRegistry.class.getName());
+
+    private final SessionConnector sessionConnector;
+    private final LocalPortAllocator localPortAllocator;
+    private final PortForwarder portForwarder;
+    private final ConcurrentMap<TunnelKey, Tunnel> tunnels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Tunnel> tunnelsByLocalPort = new ConcurrentHashMap<>();
+    private final List<TunnelStateListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<TunnelKey, AtomicInteger> roundRobinCounters = new ConcurrentHashMap<>();
+
+    public TunnelRegistry(SessionConnector sessionConnector) {
+        this(sessionConnector, new LocalPortAllocator());
+    }
+
+    public TunnelRegistry(SessionConnector sessionConnector, LocalPortAllocator localPortAllocator) {
+        this(sessionConnector, localPortAllocator, Boolean.getBoolean(NIO_FORWARDER_SYSTEM_PROPERTY) ? new NioPortForwarder() : new JschPortForwarder());
+    }
+
+    TunnelRegistry(SessionConnector sessionConnector, LocalPortAllocator localPortAllocator, PortForwarder portForwarder) {
+        this.sessionConnector = Objects.requireNonNull(sessionConnector, "SessionConnector must not be null");
+        this.localPortAllocator = Objects.requireNonNull(localPortAllocator, "LocalPortAllocator must not be null");
+        this.portForwarder = Objects.requireNonNull(portForwarder, "PortForwarder must not be null");
+    }
+
+    /**
+     * Returns the local port of the tunnel to the given forwardable port. The port forwarding is started if there is
+     * no active tunnel yet. Every acquired tunnel must be released with {@link #release(int)}.
+     */
+    public int acquire(String sshUrl, String privateSshKeyFilePath, ForwardablePort port) {
+        return acquire(sshUrl, privateSshKeyFilePath, port, TunnelOptions.DEFAULT);
+    }
+
+    /**
+     * Returns the local port of one of the stripes of the tunnel to the forwardable port, chosen by the striping
+     * strategy of the options. Each stripe is a tunnel on its own session and local port, which is started if it is
+     * not active yet. Tunnels of different traffic classes or tuning use separate sessions and local ports. Every
+     * acquired tunnel must be released with {@link #release(int)}.
+     */
+    public int acquire(String sshUrl, String privateSshKeyFilePath, ForwardablePort port, TunnelOptions options) {
+        // stripes share their tunnels regardless of the number of stripes and the strategy a connection asks for
+        final TunnelKey firstStripe = new TunnelKey(sshUrl, port.getRemoteHost(), port.getRemotePort(), options.withStripes(1, StripingStrategy.LEAST_LOADED), 0);
+        final TunnelKey key = selectStripe(firstStripe, options.getStripes(), options.getStripingStrategy());
+        while (true) {
+            final Tunnel tunnel = getOrRegisterTunnel(key);
+            synchronized (tunnel) {
+                if (tunnel.removed) {
+                    // closed concurrently by its last user
+                    continue;
+                }
+                if (tunnel.isStarted()) {
+                    if (tunnel.isActive()) {
+                        tunnel.references++;
+                        logger.fine("Reuse " + tunnel + " (" + tunnel.references + " users)");
+                        return tunnel.getLocalPort();
+                    }
+                    markBroken(tunnel);
+                }
+                if (tunnel.broken) {
+                    logger.info("Restart broken " + tunnel);
+                }
+                start(tunnel, privateSshKeyFilePath, port);
+                return tunnel.getLocalPort();
+            }
+        }
+    }
+
+    private TunnelKey selectStripe(TunnelKey firstStripe, int stripes, StripingStrategy strategy) {
+        if (stripes == 1) {
+            return firstStripe;
+        }
+        if (strategy == StripingStrategy.ROUND_ROBIN) {
+            AtomicInteger counter = roundRobinCounters.get(firstStripe);
+            if (counter == null) {
+                final AtomicInteger newCounter = new AtomicInteger();
+                counter = roundRobinCounters.putIfAbsent(firstStripe, newCounter);
+                counter = counter != null ? counter : newCounter;
+            }
+            return firstStripe.withStripe((counter.getAndIncrement() & Integer.MAX_VALUE) % stripes);
+        }
+        TunnelKey leastLoadedStripe = firstStripe;
+        int leastReferences = Integer.MAX_VALUE;
+        for (int stripe = 0; stripe < stripes && leastReferences > 0; stripe++) {
+            final TunnelKey stripeKey = firstStripe.withStripe(stripe);
+            final int references = getReferenceCount(tunnels.get(stripeKey));
+            if (references < leastReferences) {
+                leastReferences = references;
+                leastLoadedStripe = stripeKey;
+            }
+        }
+        return leastLoadedStripe;
+    }
+
+    private Tunnel getOrRegisterTunnel(TunnelKey key) {
+        final Tunnel newTunnel = new Tunnel(key);
+        final Tunnel registeredTunnel = tunnels.putIfAbsent(key, newTunnel);
+        return registeredTunnel != null ? registeredTunnel : newTunnel;
+    }
+
+    private void start(Tunnel tunnel, String privateSshKeyFilePath, ForwardablePort port) {
+        final Session session = getAndConnectSession(tunnel.key, privateSshKeyFilePath);
+        port.setPortForwarder(portForwarder);
+        try {
+            if (tunnel.broken) {
+                port.startPortForwarding(session, localPortAllocator, tunnel.localPort);
+            } else {
+                port.startPortForwarding(session, localPortAllocator);
+            }
+        } catch (RuntimeException e) {
+            sessionConnector.releaseSession(session);
+            remove(tunnel);
+            if (tunnel.broken) {
+                publish(tunnel, TunnelState.CLOSED);
+            }
+            throw e;
+        }
+        tunnel.references++;
+        bind(tunnel, session, privateSshKeyFilePath, port);
+    }
+
+    private Session getAndConnectSession(TunnelKey key, String privateSshKeyFilePath) {
+        if (key.stripe == 0 && TunnelOptions.DEFAULT.equals(key.options)) {
+            // the first interactive stripe shares the session used for the commands on the gear
+            return sessionConnector.getAndConnectSession(key.sshUrl, privateSshKeyFilePath);
+        }
+        return sessionConnector.getAndConnectSession(key.sshUrl, privateSshKeyFilePath, key.options, key.stripe);
+    }
+
+    private void bind(Tunnel tunnel, Session session, String privateSshKeyFilePath, ForwardablePort port) {
+        tunnel.session = session;
+        tunnel.privateSshKeyFilePath = privateSshKeyFilePath;
+        tunnel.port = port;
+        tunnel.localPort = port.getLocalPort();
+        tunnel.broken = false;
+        tunnel.localPorts.add(tunnel.localPort);
+        tunnelsByLocalPort.put(tunnel.localPort, tunnel);
+        logger.info("Started port forwarding " + port);
+        publish(tunnel, TunnelState.STARTED);
+    }
+
+    /**
+     * Re-establishes the broken tunnel that listened on the given local port with a new session, binding the same
+     * local port again if it is still free. Does nothing if the tunnel was closed or restarted meanwhile. Throws a
+     * RuntimeException if the gear is not reachable yet.
+     */
+    public void reestablish(int localPort) {
+        final Tunnel tunnel = tunnelsByLocalPort.get(localPort);
+        if (tunnel == null) {
+            return;
+        }
+        synchronized (tunnel) {
+            if (tunnel.removed || !tunnel.broken) {
+                return;
+            }
+            final ForwardablePort port = tunnel.port.copyNotForwarded();
+            final Session session = getAndConnectSession(tunnel.key, tunnel.privateSshKeyFilePath);
+            try {
+                port.startPortForwarding(session, localPortAllocator, tunnel.localPort);
+            } catch (RuntimeException e) {
+                sessionConnector.releaseSession(session);
+                throw e;
+            }
+            logger.info("Re-established " + tunnel);
+            bind(tunnel, session, tunnel.privateSshKeyFilePath, port);
+        }
+    }
+
+    /**
+     * Marks the tunnel broken and releases its session. The users keep their references, the local port is kept
+     * registered until they released it.
+     */
+    private void markBroken(Tunnel tunnel) {
+        logger.warning("Port forwarding of " + tunnel + " is broken");
+        try {
+            tunnel.port.stopPortForwarding(tunnel.session);
+        } catch (RuntimeException e) {
+            logger.fine("Error stopping broken port forwarding");
+        }
+        sessionConnector.releaseSession(tunnel.session);
+        tunnel.session = null;
+        tunnel.broken = true;
+        publish(tunnel, TunnelState.BROKEN);
+    }
+
+    /**
+     * Checks the session and port forwarding of every started tunnel and marks broken ones, so their users fail
+     * fast and the next acquirer restarts them.
+     */
+    public void checkTunnels() {
+        for (Tunnel tunnel : tunnels.values()) {
+            synchronized (tunnel) {
+                if (!tunnel.removed && tunnel.isStarted() && !tunnel.isActive()) {
+                    markBroken(tunnel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the state of the tunnel listening (or having listened) on the given local port.
+     */
+    public TunnelState getTunnelState(int localPort) {
+        final Tunnel tunnel = tunnelsByLocalPort.get(localPort);
+        if (tunnel == null) {
+            return TunnelState.CLOSED;
+        }
+        synchronized (tunnel) {
+            if (tunnel.removed) {
+                return TunnelState.CLOSED;
+            }
+            if (tunnel.broken || !tunnel.isStarted() || !tunnel.isActive() || tunnel.getLocalPort() != localPort) {
+                return TunnelState.BROKEN;
+            }
+            return TunnelState.STARTED;
+        }
+    }
+
+    public void addTunnelStateListener(TunnelStateListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "Listener must not be null"));
+    }
+
+    public void removeTunnelStateListener(TunnelStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void publish(Tunnel tunnel, TunnelState state) {
+        for (TunnelStateListener listener : listeners) {
+            try {
+                listener.tunnelStateChanged(tunnel.key.sshUrl, tunnel.localPort, state);
+            } catch (RuntimeException e) {
+                logger.info("Tunnel state listener failed. Reason: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Releases one user of the tunnel listening on the given local port and closes the tunnel if it is no longer used.
+     */
+    public void release(int localPort) {
+        final Tunnel tunnel = tunnelsByLocalPort.get(localPort);
+        if (tunnel == null) {
+            logger.fine("No tunnel registered for local port " + localPort);
+            return;
+        }
+        synchronized (tunnel) {
+            if (tunnel.removed) {
+                return;
+            }
+            tunnel.references--;
+            if (tunnel.references <= 0) {
+                remove(tunnel);
+                close(tunnel);
+            }
+        }
+    }
+
+    /**
+     * Closes all tunnels regardless of their users and releases the resources of the port forwarder.
+     */
+    public void closeAll() {
+        for (Tunnel tunnel : tunnels.values()) {
+            synchronized (tunnel) {
+                if (!tunnel.removed) {
+                    remove(tunnel);
+                    close(tunnel);
+                }
+            }
+        }
+        portForwarder.shutdown();
+    }
+
+    /**
+     * Returns the ssh url of the gear the tunnel on the given local port forwards to, or null if there is none.
+     */
+    public String getSshUrl(int localPort) {
+        final Tunnel tunnel = tunnelsByLocalPort.get(localPort);
+        return tunnel != null ? tunnel.key.sshUrl : null;
+    }
+
+    /**
+     * Returns the ssh urls of the gears with started tunnels mapped to the private ssh key file path used for them.
+     */
+    public Map<String, String> getTunneledGears() {
+        final Map<String, String> tunneledGears = new HashMap<>();
+        for (Tunnel tunnel : tunnels.values()) {
+            synchronized (tunnel) {
+                if (!tunnel.removed && tunnel.isStarted()) {
+                    tunneledGears.put(tunnel.key.sshUrl, tunnel.privateSshKeyFilePath);
+                }
+            }
+        }
+        return tunneledGears;
+    }
+
+    int getReferenceCount(int localPort) {
+        return getReferenceCount(tunnelsByLocalPort.get(localPort));
+    }
+
+    private int getReferenceCount(Tunnel tunnel) {
+        if (tunnel == null) {
+            return 0;
+        }
+        synchronized (tunnel) {
+            return tunnel.references;
+        }
+    }
+
+    private void remove(Tunnel tunnel) {
+        tunnel.removed = true;
+        tunnels.remove(tunnel.key, tunnel);
+        for (Integer localPort : tunnel.localPorts) {
+            tunnelsByLocalPort.remove(localPort, tunnel);
+        }
+        localPortAllocator.release(tunnel.localPort);
+    }
+
+    private void close(Tunnel tunnel) {
+        if (!tunnel.isStarted()) {
+            if (tunnel.broken) {
+                publish(tunnel, TunnelState.CLOSED);
+            }
+            return;
+        }
+        try {
+            logger.info("Stop port forwarding for " + tunnel.port);
+            tunnel.port.stopPortForwarding(tunnel.session);
+        } catch (RuntimeException e) {
+            logger.info("Error stopping port forwarding");
+        } finally {
+            sessionConnector.releaseSession(tunnel.session);
+            publish(tunnel, TunnelState.CLOSED);
+            tunnel.session = null;
+            tunnel.privateSshKeyFilePath = null;
+            tunnel.port = null;
+            tunnel.references = 0;
+        }
+    }
+
+    private static class Tunnel {
+        private final TunnelKey key;
+        private Session session;
+        private String privateSshKeyFilePath;
+        private ForwardablePort port;
+        private int localPort;
+        private final Set<Integer> localPorts = new HashSet<>();
+        private int references;
+        private boolean removed;
+        private boolean broken;
+
+        private Tunnel(TunnelKey key) {
+            this.key = key;
+        }
+
+        private boolean isStarted() {
+            return session != null;
+        }
+
+        private boolean isActive() {
+            try {
+                return port.isPortforwardingStarted(session);
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        private int getLocalPort() {
+            return localPort;
+        }
+
+        @Override
+        public String toString() {
+            return "Tunnel [" + key.sshUrl + " " + key.options.getTrafficClass() + (key.stripe > 0 ? " stripe " + key.stripe : "") + " " + port + "]";
+        }
+    }
+
+    private static final class TunnelKey {
+        private final String sshUrl;
+        private final String remoteHost;
+        private final int remotePort;
+        private final TunnelOptions options;
+        private final int stripe;
+
+        private TunnelKey(String sshUrl, String remoteHost, int remotePort, TunnelOptions options, int stripe) {
+            this.sshUrl = sshUrl;
+            this.remoteHost = remoteHost;
+            this.remotePort = remotePort;
+            this.options = options;
+            this.stripe = stripe;
+        }
+
+        private TunnelKey withStripe(int otherStripe) {
+            return new TunnelKey(sshUrl, remoteHost, remotePort, options, otherStripe);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TunnelKey)) {
+                return false;
+            }
+            TunnelKey other = (TunnelKey) o;
+            return remotePort == other.remotePort && stripe == other.stripe && options.equals(other.options) && Objects.equals(sshUrl, other.sshUrl) && Objects.equals(remoteHost, other.remoteHost);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sshUrl, remoteHost, remotePort, options, stripe);
+        }
+    }
+}
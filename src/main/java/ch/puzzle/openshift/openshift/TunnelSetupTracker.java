@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the last tunnel setup of a gear: a successful wake-up or port lookup, the start of a port forwarding or
+ * direct channel target and its release. A gear set up within the idle threshold cannot have been idled by openshift
+ * since, afterwards it might have been and needs a wake-up.
+ * <p/>
+ * The traffic through a tunnel is not tracked, neither JSch port forwardings nor direct channels offer a hook for it.
+ * A gear used by a long running connection without any tunnel setup is therefore woken up again once the threshold
+ * has passed.
+ */
+public class TunnelSetupTracker {
+
+    static final String IDLE_THRESHOLD_SYSTEM_PROPERTY = "ch.puzzle.openshift.tunnelSetup.idleThresholdInMillis";
+
+    static final long DEFAULT_IDLE_THRESHOLD_IN_MILLIS = 600_000;
+
+    private final long idleThresholdInMillis;
+    private final ConcurrentMap<String, Long> lastSetupMillisBySshUrl = new ConcurrentHashMap<>();
+
+    public TunnelSetupTracker() {
+        this(Long.getLong(IDLE_THRESHOLD_SYSTEM_PROPERTY, DEFAULT_IDLE_THRESHOLD_IN_MILLIS));
+    }
+
+    public TunnelSetupTracker(long idleThresholdInMillis) {
+        if (idleThresholdInMillis < 0) {
+            throw new IllegalArgumentException("Idle threshold must not be negative");
+        }
+        this.idleThresholdInMillis = idleThresholdInMillis;
+    }
+
+    public void recordTunnelSetup(String sshUrl) {
+        if (sshUrl != null && idleThresholdInMillis > 0) {
+            lastSetupMillisBySshUrl.put(sshUrl, currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns true if a tunnel to the gear was set up within the idle threshold, so it cannot have been idled since.
+     */
+    public boolean isRecentlySetUp(String sshUrl) {
+        if (sshUrl == null) {
+            return false;
+        }
+        final Long lastSetupMillis = lastSetupMillisBySshUrl.get(sshUrl);
+        if (lastSetupMillis == null) {
+            return false;
+        }
+        if (currentTimeMillis() - lastSetupMillis >= idleThresholdInMillis) {
+            lastSetupMillisBySshUrl.remove(sshUrl, lastSetupMillis);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the last tunnel setup of the gear, e.g. after a command on the gear failed.
+     */
+    public void forget(String sshUrl) {
+        if (sshUrl != null) {
+            lastSetupMillisBySshUrl.remove(sshUrl);
+        }
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * State of a port forwarding tunnel as published to {@link TunnelStateListener}s.
+ */
+public enum TunnelState {
+    /**
+     * The port forwarding is started and its session connected.
+     */
+    STARTED,
+    /**
+     * The session was disconnected or the port forwarding vanished. Connections through the tunnel fail, the tunnel
+     * is restarted by the next connect.
+     */
+    BROKEN,
+    /**
+     * The port forwarding was stopped after its last user released it.
+     */
+    CLOSED
+}
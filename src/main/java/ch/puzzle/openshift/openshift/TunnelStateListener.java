@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * Listener notified when a port forwarding tunnel is started, detected broken or closed.
+ */
+public interface TunnelStateListener {
+
+    /**
+     * Called on state changes of the tunnel to the gear with the given ssh url. Must return quickly, it is called
+     * while the tunnel is locked.
+     */
+    void tunnelStateChanged(String sshUrl, int localPort, TunnelState state);
+}
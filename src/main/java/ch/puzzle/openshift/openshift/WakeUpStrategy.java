@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+/**
+ * How an idled gear is woken up before its database is used.
+ */
+public enum WakeUpStrategy {
+    /**
+     * Requests the gear dns from within the gear over ssh (after the ssh session is established).
+     */
+    SSH,
+    /**
+     * Starts the application through the broker REST API concurrently to the ssh session setup and polls the
+     * application url until the gear is ready.
+     */
+    REST,
+    /**
+     * Requests the application url concurrently to the ssh session setup until the gear is ready.
+     */
+    HTTP;
+
+    /**
+     * Returns the strategy for the (case insensitive) url parameter value.
+     */
+    public static WakeUpStrategy fromParameter(String parameter) {
+        for (WakeUpStrategy strategy : values()) {
+            if (strategy.name().equalsIgnoreCase(parameter)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown wake up strategy " + parameter);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Compression;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * zlib compression of ssh packets with the {@link Deflater} and {@link Inflater} of the jdk, so JSch does not need
+ * jzlib on the classpath. Every packet is compressed with a sync flush, as required by the ssh protocol. The
+ * compressed and uncompressed bytes are counted to report the compression ratio of a session.
+ * <p/>
+ * Instantiated by JSch, which calls {@link #compress(byte[], int, int[])} while holding the write lock of the session
+ * and {@link #uncompress(byte[], int, int[])} from the session thread only.
+ */
+public class ZlibCompression implements Compression {
+
+    /**
+     * Free space JSch needs behind a compressed payload for the padding and the mac of the packet.
+     */
+    private static final int PACKET_MARGIN = 256;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private volatile long uncompressedBytes;
+    private volatile long compressedBytes;
+
+    @Override
+    public void init(int type, int level) {
+        if (type == DEFLATER) {
+            deflater = new Deflater(level);
+        } else {
+            inflater = new Inflater();
+        }
+    }
+
+    /**
+     * Compresses the payload from start to len[0] in place and sets len[0] to the end of the compressed payload.
+     */
+    @Override
+    public byte[] compress(byte[] packet, int start, int[] len) {
+        final int payloadLength = len[0] - start;
+        deflater.setInput(packet, start, payloadLength);
+        int compressedLength = 0;
+        while (true) {
+            compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength, Deflater.SYNC_FLUSH);
+            if (compressedLength < buffer.length) {
+                // the flushed output fit into the buffer, nothing is pending
+                break;
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        uncompressedBytes += payloadLength;
+        compressedBytes += compressedLength;
+        final byte[] compressedPacket = packet.length >= start + compressedLength + PACKET_MARGIN ? packet : Arrays.copyOf(packet, start + compressedLength + PACKET_MARGIN);
+        System.arraycopy(buffer, 0, compressedPacket, start, compressedLength);
+        len[0] = start + compressedLength;
+        return compressedPacket;
+    }
+
+    /**
+     * Uncompresses the len[0] bytes at start in place and sets len[0] to the uncompressed length. Returns null if the
+     * data is corrupt.
+     */
+    @Override
+    public byte[] uncompress(byte[] packet, int start, int[] len) {
+        inflater.setInput(packet, start, len[0]);
+        int uncompressedLength = 0;
+        try {
+            while (true) {
+                if (uncompressedLength == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                final int inflated = inflater.inflate(buffer, uncompressedLength, buffer.length - uncompressedLength);
+                uncompressedLength += inflated;
+                if (inflated == 0) {
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                    return null;
+                }
+            }
+        } catch (DataFormatException e) {
+            return null;
+        }
+        compressedBytes += len[0];
+        uncompressedBytes += uncompressedLength;
+        final byte[] uncompressedPacket = packet.length >= start + uncompressedLength ? packet : Arrays.copyOf(packet, start + uncompressedLength);
+        System.arraycopy(buffer, 0, uncompressedPacket, start, uncompressedLength);
+        len[0] = uncompressedLength;
+        return uncompressedPacket;
+    }
+
+    long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+}
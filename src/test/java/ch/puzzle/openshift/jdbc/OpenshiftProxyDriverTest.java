@@ -16,19 +16,41 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.ChannelSocketFactory;
 import ch.puzzle.openshift.openshift.DatabaseData;
+import ch.puzzle.openshift.openshift.DirectChannelTarget;
+import ch.puzzle.openshift.openshift.GearConnection;
 import ch.puzzle.openshift.openshift.OpenshiftCommunicationHandler;
+import ch.puzzle.openshift.openshift.SshTuning;
+import ch.puzzle.openshift.openshift.StripingStrategy;
+import ch.puzzle.openshift.openshift.TrafficClass;
+import ch.puzzle.openshift.openshift.TunnelOptions;
+import ch.puzzle.openshift.openshift.WakeUpStrategy;
+import com.openshift.client.IOpenShiftConnection;
 import com.openshift.client.OpenShiftException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -57,12 +79,23 @@ public class OpenshiftProxyDriverTest {
     private OpenshiftCommunicationHandler communicatorMock;
     @Mock
     private ConnectionWrapper connectionProxyMock;
+    @Mock
+    private IOpenShiftConnection openshiftConnectionMock;
+    @Mock
+    private GearConnection gearConnectionMock;
+    @Mock
+    private SocketFactorySupport socketFactorySupportMock;
 
     @Before
     public void setUp() {
         proxy = new OpenshiftProxyDriver();
         proxy.setOpenshiftCommunicator(communicatorMock);
         proxy.setConnectionProxy(connectionProxyMock);
+        proxy.setDirectChannels(false);
+        proxy.setSocketFactorySupport(socketFactorySupportMock);
+        when(socketFactorySupportMock.isSupported(anyString())).thenReturn(true);
+        when(communicatorMock.connect(anyString(), anyString(), anyString())).thenReturn(openshiftConnectionMock);
+        when(communicatorMock.openGearConnection(eq(openshiftConnectionMock), anyString(), anyString(), anyString(), any(WakeUpStrategy.class), anyString())).thenReturn(gearConnectionMock);
 
         properties = createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD);
         connectionUrl = createConnectionUrlWithoutPortForwardParameter(ProxyDriverURLParameter.DRIVER_PROTOCOL_URL_PREFIX, OPENSHIFT_SERVER_NAME, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
@@ -240,7 +273,7 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(communicatorMock).readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        verify(communicatorMock).readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
     }
 
     @Test
@@ -259,7 +292,7 @@ public class OpenshiftProxyDriverTest {
 
         // then
         ArgumentCaptor<Properties> argCapt = ArgumentCaptor.forClass(Properties.class);
-        verify(connectionProxyMock).wrap(anyString(), argCapt.capture());
+        verify(connectionProxyMock).wrap(anyString(), argCapt.capture(), any(Integer.class));
 
         final Properties properties = argCapt.getAllValues().get(0);
         assertEquals(dbUser, properties.get(OpenshiftProxyDriver.USER_PROPERTY_KEY));
@@ -278,7 +311,7 @@ public class OpenshiftProxyDriverTest {
 
         // then
         ArgumentCaptor<Properties> argCapt = ArgumentCaptor.forClass(Properties.class);
-        verify(connectionProxyMock).wrap(anyString(), argCapt.capture());
+        verify(connectionProxyMock).wrap(anyString(), argCapt.capture(), any(Integer.class));
 
         final Properties properties = argCapt.getAllValues().get(0);
         assertFalse(properties.containsKey(OpenshiftProxyDriver.SSH_PRIVATE_KEY_PROPERTY_KEY));
@@ -300,7 +333,7 @@ public class OpenshiftProxyDriverTest {
 
         // then
         ArgumentCaptor<Properties> argCapt = ArgumentCaptor.forClass(Properties.class);
-        verify(connectionProxyMock).wrap(anyString(), argCapt.capture());
+        verify(connectionProxyMock).wrap(anyString(), argCapt.capture(), any(Integer.class));
 
         final Properties properties = argCapt.getAllValues().get(0);
         assertTrue(properties.containsKey(targetDriverProperty1));
@@ -308,9 +341,87 @@ public class OpenshiftProxyDriverTest {
     }
 
 
+    @Test
+    public void onConnectShouldUseCachedDatabaseDataOnSubsequentConnect() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+
+        // when
+        proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+
+        // then
+        verify(communicatorMock, times(1)).readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+    }
+
+    @Test
+    public void onConnectShouldNotShareCachedDatabaseDataBetweenOpenshiftUsers() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+
+        // when
+        proxy.connect(connectionUrl, createProperties("otherUser", OPENSHIFT_PASSWORD));
+
+        // then
+        verify(communicatorMock, times(2)).readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+    }
+
+    @Test
+    public void onConnectWithWrongPasswordShouldFailDespiteCachedDatabaseData() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.FORWARDED_PORT_PARAMETER_PREFIX + "9999";
+        proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+        doThrow(new OpenShiftException("invalid credentials")).when(communicatorMock).connect(OPENSHIFT_SERVER_NAME, OPENSHIFT_USER_NAME, "wrongPassword");
+
+        // when
+        try {
+            proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, "wrongPassword"));
+            fail("Connect with wrong password must fail");
+        } catch (SQLException e) {
+            // then
+            verify(communicatorMock).connect(OPENSHIFT_SERVER_NAME, OPENSHIFT_USER_NAME, "wrongPassword");
+            verify(connectionProxyMock, times(1)).wrap(anyString(), any(Properties.class), any(Integer.class));
+        }
+    }
+
+    @Test
+    public void onConnectShouldRefreshCachedDatabaseDataWhenTargetDriverRejectsCredentials() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class)))
+                .thenThrow(new SQLException("password authentication failed", "28P01"))
+                .thenReturn(mock(Connection.class));
+
+        // when
+        final Connection connection = proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+
+        // then
+        assertNotNull(connection);
+        verify(communicatorMock, times(2)).readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+    }
+
+    @Test(expected = SQLException.class)
+    public void onConnectShouldNotRefreshCachedDatabaseDataOnOtherTargetDriverFailures() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class))).thenThrow(new SQLException("connection refused", "08001"));
+
+        try {
+            // when
+            proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+        } finally {
+            // then
+            verify(communicatorMock, times(1)).readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        }
+    }
+
     private void mockOpenshiftDatabaseDataResponse(String dbUser, String dbPwd, String dbConnectionUrl, String dbName) {
         DatabaseData databaseTO = new DatabaseData(dbUser, dbPwd, dbConnectionUrl, dbName);
-        when(communicatorMock.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME)).thenReturn(databaseTO);
+        when(communicatorMock.readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME)).thenReturn(databaseTO);
     }
 
 
@@ -350,7 +461,7 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(connectionProxyMock).wrap(startsWith("jdbc:" + protocol), any(Properties.class));
+        verify(connectionProxyMock).wrap(startsWith("jdbc:" + protocol), any(Properties.class), any(Integer.class));
 
     }
 
@@ -363,7 +474,7 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(connectionProxyMock).wrap(contains("localhost"), any(Properties.class));
+        verify(connectionProxyMock).wrap(contains("localhost"), any(Properties.class), any(Integer.class));
     }
 
     @Test
@@ -375,7 +486,8 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(communicatorMock).startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, OPENSHIFT_DB_CONNECTION_URL, null);
+        verify(communicatorMock).openGearConnection(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.SSH, null);
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT);
     }
 
     @Test
@@ -389,7 +501,8 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(communicatorMock, never()).startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, OPENSHIFT_DB_CONNECTION_URL, null);
+        verify(communicatorMock, never()).openGearConnection(any(IOpenShiftConnection.class), anyString(), anyString(), anyString(), any(WakeUpStrategy.class), anyString());
+        verify(communicatorMock, never()).startPortForwarding(any(GearConnection.class), anyString(), any(TunnelOptions.class));
     }
 
     @Test
@@ -403,7 +516,7 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(communicatorMock).startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, OPENSHIFT_DB_CONNECTION_URL, sshKeyPath);
+        verify(communicatorMock).openGearConnection(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, sshKeyPath, WakeUpStrategy.SSH, null);
     }
 
     @Test
@@ -417,7 +530,7 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(connectionProxyMock).wrap(contains(String.valueOf(forwardedPort)), any(Properties.class));
+        verify(connectionProxyMock).wrap(contains(String.valueOf(forwardedPort)), any(Properties.class), any(Integer.class));
     }
 
     @Test(expected = SQLException.class)
@@ -436,13 +549,13 @@ public class OpenshiftProxyDriverTest {
         // given
         int forwardedPort = 9999;
         mockOpenshiftDatabaseDataResponse();
-        when(communicatorMock.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, OPENSHIFT_DB_CONNECTION_URL, null)).thenReturn(forwardedPort);
+        when(communicatorMock.startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(forwardedPort);
 
         // when
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(connectionProxyMock).wrap(contains(String.valueOf(forwardedPort)), any(Properties.class));
+        verify(connectionProxyMock).wrap(contains(String.valueOf(forwardedPort)), any(Properties.class), any(Integer.class));
     }
 
     @Test
@@ -457,7 +570,530 @@ public class OpenshiftProxyDriverTest {
         proxy.connect(connectionUrl, properties);
 
         // then
-        verify(connectionProxyMock).wrap(contains(dbName), any(Properties.class));
+        verify(connectionProxyMock).wrap(contains(dbName), any(Properties.class), any(Integer.class));
+    }
+
+    @Test
+    public void onConnectShouldPassForwardedPortToWrappedConnection() throws SQLException {
+        // given
+        int forwardedPort = 9999;
+        mockOpenshiftDatabaseDataResponse();
+        when(communicatorMock.startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(forwardedPort);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(connectionProxyMock).wrap(anyString(), any(Properties.class), eq(forwardedPort));
+    }
+
+    @Test
+    public void onConnectShouldOpenDirectChannelTargetWhenDirectChannelsAreEnabled() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        mockOpenshiftDatabaseDataResponse();
+        final DirectChannelTarget directChannelTarget = mockDirectChannelTarget();
+        when(communicatorMock.openDirectChannelTarget(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(directChannelTarget);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock, never()).startPortForwarding(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+        verify(connectionProxyMock).wrap(eq("jdbc:postgresql://127.1.2.3:5432/dbName"), any(Properties.class), eq(directChannelTarget));
+    }
+
+    @Test
+    public void onConnectShouldPassChannelSocketFactoryToTargetDriverWhenDirectChannelsAreEnabled() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        mockOpenshiftDatabaseDataResponse();
+        final DirectChannelTarget directChannelTarget = mockDirectChannelTarget();
+        when(communicatorMock.openDirectChannelTarget(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(directChannelTarget);
+        final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(connectionProxyMock).wrap(anyString(), captor.capture(), eq(directChannelTarget));
+        assertEquals(ChannelSocketFactory.class.getName(), captor.getValue().getProperty(OpenshiftProxyDriver.SOCKET_FACTORY_PROPERTY_KEY));
+        assertEquals("targetKey", captor.getValue().getProperty(OpenshiftProxyDriver.SOCKET_FACTORY_ARG_PROPERTY_KEY));
+    }
+
+    @Test
+    public void onConnectShouldStartPortForwardingWhenTargetDriverDoesNotSupportSocketFactory() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        final String dbConnectionUrl = "mysql://$OPENSHIFT_MYSQL_DB_HOST:$OPENSHIFT_MYSQL_DB_PORT";
+        mockOpenshiftDatabaseDataResponse("dbUser", "dbPwd", dbConnectionUrl, "dbName");
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock, never()).openDirectChannelTarget(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, dbConnectionUrl, TunnelOptions.DEFAULT);
+    }
+
+    @Test
+    public void onConnectShouldStartPortForwardingWhenBundledPostgresqlDriverIgnoresSocketFactory() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        proxy.setSocketFactorySupport(new SocketFactorySupport());
+        mockOpenshiftDatabaseDataResponse();
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock, never()).openDirectChannelTarget(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT);
+    }
+
+    @Test
+    public void onConnectShouldStartPortForwardingWhenDirectChannelsAreNotEnabled() throws SQLException {
+        // given
+        proxy = new OpenshiftProxyDriver();
+        proxy.setOpenshiftCommunicator(communicatorMock);
+        proxy.setConnectionProxy(connectionProxyMock);
+        proxy.setSocketFactorySupport(socketFactorySupportMock);
+        mockOpenshiftDatabaseDataResponse();
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock, never()).openDirectChannelTarget(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT);
+    }
+
+    @Test
+    public void onConnectShouldStartPortForwardingWhenSocketFactoryIsConfiguredByUser() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        mockOpenshiftDatabaseDataResponse();
+        properties.setProperty(OpenshiftProxyDriver.SOCKET_FACTORY_PROPERTY_KEY, "org.example.CustomSocketFactory");
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock, never()).openDirectChannelTarget(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT);
+    }
+
+    @Test
+    public void onConnectShouldReleaseDirectChannelTargetWhenTargetDriverConnectFails() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        mockOpenshiftDatabaseDataResponse();
+        final DirectChannelTarget directChannelTarget = mockDirectChannelTarget();
+        when(communicatorMock.openDirectChannelTarget(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(directChannelTarget);
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), eq(directChannelTarget))).thenThrow(new SQLException("connection refused", "08001"));
+
+        try {
+            // when
+            proxy.connect(connectionUrl, properties);
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            // then
+            verify(communicatorMock).invalidateGearState(directChannelTarget);
+            verify(communicatorMock).releaseDirectChannelTarget(directChannelTarget);
+        }
+    }
+
+    @Test
+    public void onConnectShouldStartStripedPortForwardingConfiguredInUrl() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        mockOpenshiftDatabaseDataResponse();
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPES_PARAMETER_PREFIX + "4"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPING_PARAMETER_PREFIX + "roundrobin";
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT.withStripes(4, StripingStrategy.ROUND_ROBIN));
+        verify(communicatorMock, never()).openDirectChannelTarget(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+    }
+
+    @Test
+    public void onConnectShouldStartPortForwardingForTrafficClassProperty() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        properties.setProperty(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY, "bulk");
+        final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK));
+        verify(connectionProxyMock).wrap(anyString(), captor.capture(), any(Integer.class));
+        assertFalse(captor.getValue().containsKey(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY));
+    }
+
+    @Test
+    public void onConnectShouldOpenDirectChannelTargetForTrafficClassProperty() throws SQLException {
+        // given
+        proxy.setDirectChannels(true);
+        mockOpenshiftDatabaseDataResponse();
+        properties.setProperty(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY, "bulk");
+        final DirectChannelTarget directChannelTarget = mockDirectChannelTarget();
+        when(communicatorMock.openDirectChannelTarget(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK))).thenReturn(directChannelTarget);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(connectionProxyMock).wrap(anyString(), any(Properties.class), eq(directChannelTarget));
+    }
+
+    @Test(expected = SQLException.class)
+    public void onConnectShouldThrowExceptionForUnknownTrafficClass() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        properties.setProperty(OpenshiftProxyDriver.TRAFFIC_CLASS_PROPERTY_KEY, "realtime");
+
+        // when
+        proxy.connect(connectionUrl, properties);
+    }
+
+    private DirectChannelTarget mockDirectChannelTarget() {
+        final DirectChannelTarget directChannelTarget = mock(DirectChannelTarget.class);
+        when(directChannelTarget.getKey()).thenReturn("targetKey");
+        when(directChannelTarget.getRemoteHost()).thenReturn("127.1.2.3");
+        when(directChannelTarget.getRemotePort()).thenReturn(5432);
+        return directChannelTarget;
+    }
+
+    @Test
+    public void onConnectShouldReleasePortForwardingWhenTargetDriverConnectFails() throws SQLException {
+        // given
+        int forwardedPort = 9999;
+        mockOpenshiftDatabaseDataResponse();
+        when(communicatorMock.startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(forwardedPort);
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class))).thenThrow(new SQLException("connection refused", "08001"));
+
+        // when
+        try {
+            proxy.connect(connectionUrl, properties);
+            fail("Failing target driver connect should throw exception");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        // then
+        verify(communicatorMock).releasePortForwarding(forwardedPort);
+    }
+
+    @Test
+    public void onConnectShouldInvalidateGearStateWhenTargetDriverConnectThroughPortForwardingFails() throws SQLException {
+        // given
+        int forwardedPort = 9999;
+        mockOpenshiftDatabaseDataResponse();
+        when(communicatorMock.startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(forwardedPort);
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class))).thenThrow(new SQLException("connection refused", "08001"));
+
+        // when
+        try {
+            proxy.connect(connectionUrl, properties);
+            fail("Failing target driver connect should throw exception");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        // then
+        verify(communicatorMock).invalidateGearState(forwardedPort);
+    }
+
+    @Test
+    public void onConnectShouldNotInvalidateGearStateWhenTargetDriverRejectsCredentials() throws SQLException {
+        // given
+        int forwardedPort = 9999;
+        mockOpenshiftDatabaseDataResponse();
+        when(communicatorMock.startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT)).thenReturn(forwardedPort);
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class))).thenThrow(new SQLException("password authentication failed", "28P01"));
+
+        // when
+        try {
+            proxy.connect(connectionUrl, properties);
+            fail("Failing target driver connect should throw exception");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        // then
+        verify(communicatorMock, never()).invalidateGearState(anyInt());
+    }
+
+    @Test
+    public void onConnectWithCachedDatabaseDataShouldPassConnectionUrlAsHintToOpenGearConnection() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        proxy.connect(connectionUrl, properties);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).openGearConnection(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.SSH, OPENSHIFT_DB_CONNECTION_URL);
+    }
+
+    @Test
+    public void onConnectShouldPassWakeUpStrategyOfUrlToOpenGearConnection() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.WAKE_UP_PARAMETER_PREFIX + "http";
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).openGearConnection(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.HTTP, null);
+    }
+
+    @Test
+    public void onConnectShouldReleaseGearConnectionAfterPortForwardingIsStarted() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).releaseGearConnection(gearConnectionMock);
+    }
+
+    @Test
+    public void onConnectShouldReleaseGearConnectionWhenReadingDatabaseDataFails() throws Exception {
+        // given
+        when(communicatorMock.readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME)).thenThrow(new OpenShiftException("cartridge not found"));
+
+        // when
+        try {
+            proxy.connect(connectionUrl, properties);
+            fail("Failing database data request should throw exception");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        // then
+        verify(communicatorMock, timeout(5000)).releaseGearConnection(gearConnectionMock);
+        verify(communicatorMock, never()).startPortForwarding(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+    }
+
+    @Test
+    public void onConnectShouldOpenGearConnectionWhileReadingDatabaseData() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        final CountDownLatch databaseDataRequested = new CountDownLatch(1);
+        when(communicatorMock.openGearConnection(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.SSH, null)).thenAnswer(new Answer<GearConnection>() {
+            @Override
+            public GearConnection answer(InvocationOnMock invocation) throws Throwable {
+                // completes only if the database data is requested concurrently
+                assertTrue(databaseDataRequested.await(5, TimeUnit.SECONDS));
+                return gearConnectionMock;
+            }
+        });
+        final DatabaseData databaseData = new DatabaseData("dbUser", "dbPwd", OPENSHIFT_DB_CONNECTION_URL, "dbName");
+        when(communicatorMock.readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME)).thenAnswer(new Answer<DatabaseData>() {
+            @Override
+            public DatabaseData answer(InvocationOnMock invocation) throws Throwable {
+                databaseDataRequested.countDown();
+                return databaseData;
+            }
+        });
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT);
+    }
+
+    @Test
+    public void connectAsyncShouldReturnWrappedConnection() throws Exception {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        Connection connectionMock = mock(Connection.class);
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class))).thenReturn(connectionMock);
+
+        // when
+        final Future<Connection> connection = proxy.connectAsync(connectionUrl, properties);
+
+        // then
+        assertSame(connectionMock, connection.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void connectAsyncShouldNotConnectWhenCancelledBeforeStart() {
+        // given
+        final List<Runnable> submittedTasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submittedTasks.add(command);
+            }
+        };
+
+        // when
+        proxy.connectAsync(connectionUrl, properties, executor).cancel(false);
+        submittedTasks.get(0).run();
+
+        // then
+        verifyZeroInteractions(communicatorMock, connectionProxyMock);
+    }
+
+    @Test
+    public void connectAsyncShouldReleaseGearConnectionAndNotStartPortForwardingWhenCancelledWhileReadingDatabaseData() throws Exception {
+        // given
+        final AtomicReference<Future<Connection>> connection = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final DatabaseData databaseData = new DatabaseData("dbUser", "dbPwd", OPENSHIFT_DB_CONNECTION_URL, "dbName");
+        when(communicatorMock.readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME)).thenAnswer(new Answer<DatabaseData>() {
+            @Override
+            public DatabaseData answer(InvocationOnMock invocation) throws Throwable {
+                started.await(5, TimeUnit.SECONDS);
+                connection.get().cancel(false);
+                return databaseData;
+            }
+        });
+
+        // when
+        connection.set(proxy.connectAsync(connectionUrl, properties));
+        started.countDown();
+
+        // then
+        verify(communicatorMock, timeout(5000)).releaseGearConnection(gearConnectionMock);
+        verify(communicatorMock, never()).startPortForwarding(any(GearConnection.class), anyString(), any(TunnelOptions.class));
+        verify(connectionProxyMock, never()).wrap(anyString(), any(Properties.class), any(Integer.class));
+    }
+
+    @Test
+    public void connectAsyncShouldCloseConnectionEstablishedAfterCancel() throws Exception {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        final AtomicReference<Future<Connection>> connection = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final Connection connectionMock = mock(Connection.class);
+        when(connectionProxyMock.wrap(anyString(), any(Properties.class), any(Integer.class))).thenAnswer(new Answer<Connection>() {
+            @Override
+            public Connection answer(InvocationOnMock invocation) throws Throwable {
+                started.await(5, TimeUnit.SECONDS);
+                connection.get().cancel(false);
+                return connectionMock;
+            }
+        });
+
+        // when
+        connection.set(proxy.connectAsync(connectionUrl, properties));
+        started.countDown();
+
+        // then
+        verify(connectionMock, timeout(5000)).close();
+        assertTrue(connection.get().isCancelled());
+    }
+
+    @Test
+    public void onReleasePortForwardingShouldDelegateToCommunicator() {
+        // when
+        proxy.releasePortForwarding(9999);
+
+        // then
+        verify(communicatorMock).releasePortForwarding(9999);
+        verify(communicatorMock, never()).disconnect();
+    }
+
+    @Test
+    public void onConnectShouldSupportConcurrentConnectsOnSharedDriver() throws Exception {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        final int numberOfConnects = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfConnects);
+        List<Future<Connection>> connects = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < numberOfConnects; i++) {
+            connects.add(executor.submit(new Callable<Connection>() {
+                @Override
+                public Connection call() throws Exception {
+                    return proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+                }
+            }));
+        }
+        for (Future<Connection> connect : connects) {
+            connect.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        verify(connectionProxyMock, times(numberOfConnects)).wrap(anyString(), any(Properties.class), any(Integer.class));
+    }
+
+    @Test
+    public void onConnectWithWrongPasswordShouldNotShareConcurrentDatabaseDataRead() throws Exception {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.FORWARDED_PORT_PARAMETER_PREFIX + "9999";
+        final CountDownLatch databaseDataRequested = new CountDownLatch(1);
+        final CountDownLatch wrongPasswordConnectFinished = new CountDownLatch(1);
+        final DatabaseData databaseData = new DatabaseData("dbUser", "dbPwd", OPENSHIFT_DB_CONNECTION_URL, "dbName");
+        when(communicatorMock.readDatabaseData(openshiftConnectionMock, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME)).thenAnswer(new Answer<DatabaseData>() {
+            @Override
+            public DatabaseData answer(InvocationOnMock invocation) throws Throwable {
+                databaseDataRequested.countDown();
+                // keeps the read in flight until the connect with the wrong password is done
+                wrongPasswordConnectFinished.await(5, TimeUnit.SECONDS);
+                return databaseData;
+            }
+        });
+        doThrow(new OpenShiftException("invalid credentials")).when(communicatorMock).connect(OPENSHIFT_SERVER_NAME, OPENSHIFT_USER_NAME, "wrongPassword");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<Connection> validConnect = executor.submit(new Callable<Connection>() {
+            @Override
+            public Connection call() throws Exception {
+                return proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, OPENSHIFT_PASSWORD));
+            }
+        });
+        assertTrue(databaseDataRequested.await(5, TimeUnit.SECONDS));
+
+        // when
+        final Future<Connection> wrongPasswordConnect = executor.submit(new Callable<Connection>() {
+            @Override
+            public Connection call() throws Exception {
+                try {
+                    return proxy.connect(connectionUrl, createProperties(OPENSHIFT_USER_NAME, "wrongPassword"));
+                } finally {
+                    wrongPasswordConnectFinished.countDown();
+                }
+            }
+        });
+
+        // then
+        try {
+            wrongPasswordConnect.get(10, TimeUnit.SECONDS);
+            fail("Connect with wrong password must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        validConnect.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        verify(connectionProxyMock, times(1)).wrap(anyString(), any(Properties.class), any(Integer.class));
+    }
+
+    @Test
+    public void onConnectShouldNotModifyCallerProperties() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        assertEquals(OPENSHIFT_USER_NAME, properties.getProperty(OpenshiftProxyDriver.USER_PROPERTY_KEY));
+        assertEquals(OPENSHIFT_PASSWORD, properties.getProperty(OpenshiftProxyDriver.PASSWORD_PROPERTY_KEY));
     }
 
     @Test
@@ -533,4 +1169,18 @@ public class OpenshiftProxyDriverTest {
         assertEquals(OpenshiftProxyDriver.MINOR_VERSION, minorVersion);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void onConnectShouldPassSshTuningConfiguredInUrl() throws SQLException {
+        // given
+        mockOpenshiftDatabaseDataResponse();
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SSH_WINDOW_PARAMETER_PREFIX + "auto"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.TCP_NO_DELAY_PARAMETER_PREFIX + "true";
+        final SshTuning tuning = new SshTuning(SshTuning.AUTO_WINDOW_SIZE, SshTuning.DEFAULT_SIZE, true, SshTuning.DEFAULT_SIZE, SshTuning.DEFAULT_SIZE);
+
+        // when
+        proxy.connect(connectionUrl, properties);
+
+        // then
+        verify(communicatorMock).startPortForwarding(gearConnectionMock, OPENSHIFT_DB_CONNECTION_URL, TunnelOptions.DEFAULT.withTuning(tuning));
+    }
+}
@@ -16,6 +16,7 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.DirectChannelTarget;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,16 +43,59 @@ public class ProxyDriverConnectionTest {
     }
 
     @Test
-    public void onCloseShouldCallCloseOnDriver() throws SQLException {
+    public void onCloseShouldReleasePortForwardingOnDriver() throws SQLException {
+        // given
+        int forwardedPort = 9999;
+        proxyDriverConnection = new ProxyDriverConnection(proxyDriverMock, wrappedConnectionMock, forwardedPort);
 
         // when
         proxyDriverConnection.close();
 
         //then
-        Mockito.verify(proxyDriverMock).close();
+        Mockito.verify(proxyDriverMock).releasePortForwarding(forwardedPort);
+        Mockito.verify(proxyDriverMock, Mockito.never()).close();
         Mockito.verify(wrappedConnectionMock).close();
     }
 
+    @Test
+    public void onCloseTwiceShouldReleasePortForwardingOnlyOnce() throws SQLException {
+        // given
+        int forwardedPort = 9999;
+        proxyDriverConnection = new ProxyDriverConnection(proxyDriverMock, wrappedConnectionMock, forwardedPort);
+
+        // when
+        proxyDriverConnection.close();
+        proxyDriverConnection.close();
+
+        //then
+        Mockito.verify(proxyDriverMock, Mockito.times(1)).releasePortForwarding(forwardedPort);
+    }
+
+    @Test
+    public void onCloseShouldReleaseDirectChannelTarget() throws SQLException {
+        // given
+        DirectChannelTarget directChannelTarget = Mockito.mock(DirectChannelTarget.class);
+        proxyDriverConnection = new ProxyDriverConnection(proxyDriverMock, wrappedConnectionMock, directChannelTarget);
+
+        // when
+        proxyDriverConnection.close();
+        proxyDriverConnection.close();
+
+        //then
+        Mockito.verify(proxyDriverMock, Mockito.times(1)).releaseDirectChannelTarget(directChannelTarget);
+        Mockito.verify(proxyDriverMock, Mockito.never()).releasePortForwarding(Mockito.anyInt());
+    }
+
+    @Test
+    public void onCloseWithoutForwardedPortShouldNotCallDriver() throws SQLException {
+
+        // when
+        proxyDriverConnection.close();
+
+        //then
+        Mockito.verifyZeroInteractions(proxyDriverMock);
+    }
+
     @Test
     public void onCloseShouldDelegateCloseOnWrappedConnection() throws SQLException {
 
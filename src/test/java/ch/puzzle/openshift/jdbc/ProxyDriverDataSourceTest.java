@@ -0,0 +1,389 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.jdbc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProxyDriverDataSourceTest {
+
+    private static final String URL = "jdbc:openshiftproxy://server/application?domain=domain&cartridge=cartridge";
+
+    private ProxyDriverDataSource dataSource;
+
+    @Mock
+    private OpenshiftProxyDriver driverMock;
+    @Mock
+    private Connection physicalConnectionMock;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new ProxyDriverDataSource();
+        dataSource.setDriver(driverMock);
+        dataSource.setUrl(URL);
+        dataSource.setUser("user");
+        dataSource.setPassword("password");
+        dataSource.setMaxSize(2);
+        dataSource.setMaxWaitInMillis(10);
+        dataSource.setMaintenanceIntervalInMillis(60_000);
+
+        when(driverMock.connect(eq(URL), any(Properties.class))).thenReturn(physicalConnectionMock);
+        when(physicalConnectionMock.isValid(anyInt())).thenReturn(true);
+        when(physicalConnectionMock.getAutoCommit()).thenReturn(true);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void getConnectionShouldOpenPhysicalConnectionWithCredentials() throws SQLException {
+        // when
+        final Connection connection = dataSource.getConnection();
+
+        // then
+        assertNotNull(connection);
+        assertTrue(connection instanceof ProxyDriverConnection);
+    }
+
+    @Test
+    public void closeShouldReturnConnectionToPoolInsteadOfClosingIt() throws SQLException {
+        // given
+        final Connection connection = dataSource.getConnection();
+
+        // when
+        connection.close();
+
+        // then
+        verify(physicalConnectionMock, never()).close();
+        assertTrue(connection.isClosed());
+        assertEquals(1, dataSource.getIdleConnectionCount());
+    }
+
+    @Test
+    public void getConnectionShouldReusePooledConnection() throws SQLException {
+        // given
+        dataSource.getConnection().close();
+
+        // when
+        dataSource.getConnection();
+
+        // then
+        verify(driverMock, times(1)).connect(eq(URL), any(Properties.class));
+    }
+
+    @Test
+    public void getConnectionShouldDiscardPooledConnectionFailingValidation() throws SQLException {
+        // given
+        dataSource.getConnection().close();
+        when(physicalConnectionMock.isValid(anyInt())).thenReturn(false);
+
+        // when
+        dataSource.getConnection();
+
+        // then
+        verify(physicalConnectionMock).close();
+        verify(driverMock, times(2)).connect(eq(URL), any(Properties.class));
+    }
+
+    @Test(expected = SQLException.class)
+    public void getConnectionShouldThrowExceptionWhenPoolIsExhausted() throws SQLException {
+        // given
+        dataSource.getConnection();
+        dataSource.getConnection();
+
+        // when
+        dataSource.getConnection();
+    }
+
+    @Test
+    public void getConnectionShouldReleasePermitWhenOpeningConnectionFails() throws SQLException {
+        // given
+        when(driverMock.connect(anyString(), any(Properties.class))).thenThrow(new SQLException("connect failed")).thenThrow(new SQLException("connect failed")).thenReturn(physicalConnectionMock);
+        getConnectionAcceptingException();
+        getConnectionAcceptingException();
+
+        // when
+        final Connection connection = dataSource.getConnection();
+
+        // then
+        assertNotNull(connection);
+    }
+
+    private void getConnectionAcceptingException() {
+        try {
+            dataSource.getConnection();
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void closeShouldRollbackOpenTransactionBeforeReturningToPool() throws SQLException {
+        // given
+        final Connection connection = dataSource.getConnection();
+        when(physicalConnectionMock.getAutoCommit()).thenReturn(false);
+
+        // when
+        connection.close();
+
+        // then
+        verify(physicalConnectionMock).rollback();
+        verify(physicalConnectionMock).setAutoCommit(true);
+    }
+
+    @Test
+    public void maintainPoolShouldWarmUpMinIdleConnections() throws SQLException {
+        // given
+        dataSource.setMinIdle(2);
+        dataSource.getConnection().close();
+
+        // when
+        dataSource.maintainPool();
+
+        // then
+        assertEquals(2, dataSource.getIdleConnectionCount());
+    }
+
+    @Test
+    public void maintainPoolShouldEvictConnectionsIdleLongerThanIdleTimeout() throws SQLException {
+        // given
+        dataSource.setIdleTimeoutInMillis(0);
+        dataSource.getConnection().close();
+
+        // when
+        dataSource.maintainPool();
+
+        // then
+        assertEquals(0, dataSource.getIdleConnectionCount());
+        verify(physicalConnectionMock).close();
+    }
+
+    @Test
+    public void closeDataSourceShouldClosePhysicalConnections() throws SQLException {
+        // given
+        dataSource.getConnection().close();
+
+        // when
+        dataSource.close();
+
+        // then
+        verify(physicalConnectionMock).close();
+    }
+
+    @Test
+    public void closeShouldRestoreInitialConnectionStateBeforeReturningToPool() throws SQLException {
+        // given
+        when(physicalConnectionMock.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_READ_COMMITTED);
+        when(physicalConnectionMock.getCatalog()).thenReturn("database");
+        when(physicalConnectionMock.getHoldability()).thenReturn(ResultSet.HOLD_CURSORS_OVER_COMMIT);
+        final Connection connection = dataSource.getConnection();
+        when(physicalConnectionMock.isReadOnly()).thenReturn(true);
+        when(physicalConnectionMock.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_SERIALIZABLE);
+        when(physicalConnectionMock.getCatalog()).thenReturn("otherDatabase");
+        when(physicalConnectionMock.getHoldability()).thenReturn(ResultSet.CLOSE_CURSORS_AT_COMMIT);
+
+        // when
+        connection.close();
+
+        // then
+        verify(physicalConnectionMock).setReadOnly(false);
+        verify(physicalConnectionMock).setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        verify(physicalConnectionMock).setCatalog("database");
+        verify(physicalConnectionMock).setHoldability(ResultSet.HOLD_CURSORS_OVER_COMMIT);
+        verify(physicalConnectionMock, never()).setAutoCommit(anyBoolean());
+    }
+
+    @Test
+    public void closeDataSourceShouldCloseDriver() throws SQLException {
+        // given
+        dataSource.getConnection().close();
+
+        // when
+        dataSource.close();
+
+        // then
+        verify(driverMock).close();
+    }
+
+    @Test
+    public void closeDataSourceShouldCloseDriverWhenLastBorrowedConnectionIsReturned() throws SQLException {
+        // given
+        final Connection connection = dataSource.getConnection();
+        dataSource.close();
+        verify(driverMock, never()).close();
+
+        // when
+        connection.close();
+
+        // then
+        verify(physicalConnectionMock).close();
+        verify(driverMock, times(1)).close();
+    }
+
+    @Test
+    public void connectionShouldNotBeUsableAfterReturningToPool() throws SQLException {
+        // given
+        final Connection connection = dataSource.getConnection();
+        connection.close();
+
+        // when
+        try {
+            connection.createStatement();
+            fail("Returned connection must not be usable");
+        } catch (SQLException e) {
+            // then
+            assertEquals(ProxyDriverConnection.CLOSED_MESSAGE, e.getMessage());
+        }
+        verify(physicalConnectionMock, never()).createStatement();
+    }
+
+    @Test
+    public void returnedConnectionShouldNotReachPhysicalConnectionLentToNextBorrower() throws SQLException {
+        // given
+        final Connection returnedConnection = dataSource.getConnection();
+        returnedConnection.close();
+        final Connection nextConnection = dataSource.getConnection();
+
+        // when
+        try {
+            returnedConnection.setAutoCommit(false);
+            fail("Returned connection must not be usable");
+        } catch (SQLException e) {
+            // then
+            assertFalse(returnedConnection.isValid(1));
+        }
+        nextConnection.commit();
+        verify(physicalConnectionMock, never()).setAutoCommit(false);
+        verify(physicalConnectionMock).commit();
+    }
+
+    @Test
+    public void initializeShouldWarmUpMinIdleConnectionsWithoutBorrowing() throws SQLException, InterruptedException {
+        // given
+        dataSource.setMinIdle(1);
+
+        // when
+        dataSource.initialize();
+
+        // then
+        awaitIdleConnectionCount(1);
+        verify(driverMock, times(1)).connect(eq(URL), any(Properties.class));
+    }
+
+    @Test
+    public void warmUpShouldCountConnectionBeingOpenedTowardsMaxSize() throws SQLException, InterruptedException {
+        // given
+        dataSource.setMinIdle(1);
+        final CountDownLatch warmUpConnecting = new CountDownLatch(1);
+        final CountDownLatch warmUpConnected = new CountDownLatch(1);
+        blockFirstConnect(warmUpConnecting, warmUpConnected);
+        dataSource.initialize();
+        assertTrue(warmUpConnecting.await(1, TimeUnit.SECONDS));
+        dataSource.getConnection();
+
+        // when
+        try {
+            dataSource.getConnection();
+            fail("Pool must be exhausted while the warm-up connection is opened");
+        } catch (SQLException e) {
+            // then
+            warmUpConnected.countDown();
+            awaitIdleConnectionCount(1);
+            verify(driverMock, times(2)).connect(eq(URL), any(Properties.class));
+        }
+    }
+
+    @Test
+    public void closeDataSourceShouldCloseConnectionWarmedUpMeanwhile() throws SQLException, InterruptedException {
+        // given
+        dataSource.setMinIdle(1);
+        final CountDownLatch warmUpConnecting = new CountDownLatch(1);
+        final CountDownLatch warmUpConnected = new CountDownLatch(1);
+        blockFirstConnect(warmUpConnecting, warmUpConnected);
+        dataSource.initialize();
+        assertTrue(warmUpConnecting.await(1, TimeUnit.SECONDS));
+
+        // when
+        dataSource.close();
+        warmUpConnected.countDown();
+
+        // then
+        verify(physicalConnectionMock, timeout(1000)).close();
+        verify(driverMock, timeout(1000)).close();
+        assertEquals(0, dataSource.getIdleConnectionCount());
+    }
+
+    private void blockFirstConnect(final CountDownLatch connecting, final CountDownLatch connected) throws SQLException {
+        final AtomicInteger connects = new AtomicInteger();
+        when(driverMock.connect(eq(URL), any(Properties.class))).thenAnswer(new Answer<Connection>() {
+            @Override
+            public Connection answer(InvocationOnMock invocation) throws Throwable {
+                if (connects.getAndIncrement() == 0) {
+                    connecting.countDown();
+                    awaitIgnoringInterrupts(connected);
+                }
+                return physicalConnectionMock;
+            }
+        });
+    }
+
+    /**
+     * Like a socket connect, which does not stop when the maintenance thread is interrupted by closing the data source.
+     */
+    private void awaitIgnoringInterrupts(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // keep connecting
+            }
+        }
+    }
+
+    private void awaitIdleConnectionCount(int expectedCount) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (dataSource.getIdleConnectionCount() != expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedCount, dataSource.getIdleConnectionCount());
+    }
+}
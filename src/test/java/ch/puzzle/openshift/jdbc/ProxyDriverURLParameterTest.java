@@ -16,6 +16,9 @@
 
 package ch.puzzle.openshift.jdbc;
 
+import ch.puzzle.openshift.openshift.SshTuning;
+import ch.puzzle.openshift.openshift.StripingStrategy;
+import ch.puzzle.openshift.openshift.WakeUpStrategy;
 import org.junit.Test;
 
 import java.sql.SQLException;
@@ -172,4 +175,154 @@ public class ProxyDriverURLParameterTest {
         return prefix + server + "/" + application + "?" + ProxyDriverURLParameter.DOMAIN_PARAMETER_PREFIX + namespace + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.CARTRIDGE_PARAMETER_PREFIX + cartridge + ProxyDriverURLParameter.PARAMETER_DELIMITER;
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void onCreateValidShouldUseSshWakeUpStrategyByDefault() throws SQLException {
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(WakeUpStrategy.SSH, proxyDriverURLParameter.getWakeUpStrategy());
+    }
+
+    @Test
+    public void onCreateValidShouldParseWakeUpStrategy() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.WAKE_UP_PARAMETER_PREFIX + "rest";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(WakeUpStrategy.REST, proxyDriverURLParameter.getWakeUpStrategy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onCreateValidShouldThrowExceptionForUnknownWakeUpStrategy() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.WAKE_UP_PARAMETER_PREFIX + "telnet";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+    }
+
+    @Test
+    public void onCreateValidShouldUseSingleLeastLoadedStripeByDefault() throws SQLException {
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(1, proxyDriverURLParameter.getStripes());
+        assertEquals(StripingStrategy.LEAST_LOADED, proxyDriverURLParameter.getStripingStrategy());
+    }
+
+    @Test
+    public void onCreateValidShouldParseStripesAndStripingStrategy() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPES_PARAMETER_PREFIX + "4"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPING_PARAMETER_PREFIX + "round-robin";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(4, proxyDriverURLParameter.getStripes());
+        assertEquals(StripingStrategy.ROUND_ROBIN, proxyDriverURLParameter.getStripingStrategy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onCreateValidShouldThrowExceptionForNonPositiveStripes() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPES_PARAMETER_PREFIX + "0";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onCreateValidShouldThrowExceptionForStripesAboveMaximum() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPES_PARAMETER_PREFIX + (ProxyDriverURLParameter.MAX_STRIPES + 1);
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onCreateValidShouldThrowExceptionForUnknownStripingStrategy() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.STRIPING_PARAMETER_PREFIX + "random";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+    }
+
+    @Test
+    public void onCreateValidShouldUseDefaultSshTuning() throws SQLException {
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(SshTuning.DEFAULT, proxyDriverURLParameter.getSshTuning());
+    }
+
+    @Test
+    public void onCreateValidShouldParseSshTuning() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SSH_WINDOW_PARAMETER_PREFIX + "auto"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SSH_MAX_PACKET_PARAMETER_PREFIX + "32768"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.TCP_NO_DELAY_PARAMETER_PREFIX + "false"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SOCKET_SEND_BUFFER_PARAMETER_PREFIX + "65536"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SOCKET_RECEIVE_BUFFER_PARAMETER_PREFIX + "4194304";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(new SshTuning(SshTuning.AUTO_WINDOW_SIZE, 32768, false, 65536, 4194304), proxyDriverURLParameter.getSshTuning());
+    }
+
+    @Test
+    public void onCreateValidShouldParseSshWindowSizeInBytes() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SSH_WINDOW_PARAMETER_PREFIX + "2097152";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(2097152, proxyDriverURLParameter.getSshTuning().getWindowSize());
+        assertFalse(proxyDriverURLParameter.getSshTuning().isAutoWindowSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onCreateValidShouldThrowExceptionForMaxPacketSizeLargerThanWindow() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SSH_WINDOW_PARAMETER_PREFIX + "16384"
+                + ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.SSH_MAX_PACKET_PARAMETER_PREFIX + "32768";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+    }
+
+    @Test
+    public void onCreateValidShouldParseTcpNoDelayIgnoringCase() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.TCP_NO_DELAY_PARAMETER_PREFIX + "TRUE";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+
+        // then
+        assertEquals(Boolean.TRUE, proxyDriverURLParameter.getSshTuning().getTcpNoDelay());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onCreateValidShouldThrowExceptionForInvalidTcpNoDelay() throws SQLException {
+        // given
+        connectionUrl += ProxyDriverURLParameter.PARAMETER_DELIMITER + ProxyDriverURLParameter.TCP_NO_DELAY_PARAMETER_PREFIX + "ture";
+
+        // when
+        proxyDriverURLParameter = ProxyDriverURLParameter.createValid(connectionUrl);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.jdbc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SocketFactorySupportTest {
+
+    private static final String TARGET_URL = "jdbc:postgresql://localhost/dbName";
+
+    private SocketFactorySupport socketFactorySupport;
+
+    @Mock
+    private Driver driverMock;
+
+    @Before
+    public void setUp() {
+        socketFactorySupport = new SocketFactorySupport();
+    }
+
+    @Test
+    public void isSupportedShouldReturnFalseForBundledPostgresqlDriver() {
+        // when
+        final boolean supported = socketFactorySupport.isSupported(TARGET_URL);
+
+        // then
+        assertFalse(supported);
+    }
+
+    @Test
+    public void isSupportedShouldReturnFalseWithoutDriverForUrl() {
+        // when
+        final boolean supported = socketFactorySupport.isSupported("jdbc:unknownprotocol://localhost/dbName");
+
+        // then
+        assertFalse(supported);
+    }
+
+    @Test
+    public void isSupportedShouldReturnTrueForDriverListingSocketFactory() throws SQLException {
+        // given
+        when(driverMock.getPropertyInfo(anyString(), any(Properties.class))).thenReturn(new DriverPropertyInfo[]{new DriverPropertyInfo("ssl", null),
+                new DriverPropertyInfo(OpenshiftProxyDriver.SOCKET_FACTORY_PROPERTY_KEY, null)});
+
+        // when
+        final boolean supported = socketFactorySupport.isSupported(driverMock, TARGET_URL);
+
+        // then
+        assertTrue(supported);
+    }
+
+    @Test
+    public void isSupportedShouldReturnFalseWhenDriverPropertiesCannotBeRead() throws SQLException {
+        // given
+        when(driverMock.getPropertyInfo(anyString(), any(Properties.class))).thenThrow(new SQLException("invalid url"));
+
+        // when
+        final boolean supported = socketFactorySupport.isSupported(driverMock, TARGET_URL);
+
+        // then
+        assertFalse(supported);
+    }
+
+    @Test
+    public void isSupportedShouldAskDriverOnlyOnce() throws SQLException {
+        // given
+        when(driverMock.getPropertyInfo(anyString(), any(Properties.class))).thenReturn(new DriverPropertyInfo[]{new DriverPropertyInfo(OpenshiftProxyDriver.SOCKET_FACTORY_PROPERTY_KEY, null)});
+        socketFactorySupport.isSupported(driverMock, TARGET_URL);
+
+        // when
+        final boolean supported = socketFactorySupport.isSupported(driverMock, TARGET_URL);
+
+        // then
+        assertTrue(supported);
+        verify(driverMock, times(1)).getPropertyInfo(anyString(), any(Properties.class));
+    }
+}
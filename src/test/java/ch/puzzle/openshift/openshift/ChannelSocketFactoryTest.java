@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChannelSocketFactoryTest {
+
+    private static final String REMOTE_HOST = "127.1.2.3";
+    private static final int REMOTE_PORT = 5432;
+
+    @Mock
+    private Session sessionMock;
+
+    @Mock
+    private ChannelDirectTCPIP channelMock;
+
+    private DirectChannelTarget target;
+    private PipedOutputStream channelData;
+    private ByteArrayOutputStream sentData;
+
+    @Before
+    public void setUp() throws JSchException, IOException {
+        target = new DirectChannelTarget("ssh://user@host", sessionMock, REMOTE_HOST, REMOTE_PORT);
+        ChannelSocketFactory.register(target);
+        channelData = new PipedOutputStream();
+        sentData = new ByteArrayOutputStream();
+        when(sessionMock.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE)).thenReturn(channelMock);
+        when(channelMock.getInputStream()).thenReturn(new PipedInputStream(channelData));
+        when(channelMock.getOutputStream()).thenReturn(sentData);
+    }
+
+    @After
+    public void tearDown() {
+        ChannelSocketFactory.unregister(target);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowExceptionWhenTargetIsNotRegistered() {
+        // when
+        new ChannelSocketFactory("unknownKey");
+    }
+
+    @Test
+    public void createSocketShouldOpenDirectChannelToRemoteDatabasePort() throws IOException, JSchException {
+        // given
+        ChannelSocketFactory factory = new ChannelSocketFactory(target.getKey());
+
+        // when
+        final Socket socket = factory.createSocket("localhost", 9999);
+
+        // then
+        assertTrue(socket.isConnected());
+        verify(channelMock).setHost(REMOTE_HOST);
+        verify(channelMock).setPort(REMOTE_PORT);
+        verify(channelMock).connect(anyInt());
+    }
+
+    @Test
+    public void createSocketShouldUseChannelStreams() throws IOException {
+        // given
+        final Socket socket = new ChannelSocketFactory(target.getKey()).createSocket("localhost", 9999);
+        channelData.write(42);
+
+        // when
+        socket.getOutputStream().write(7);
+        final int received = socket.getInputStream().read();
+
+        // then
+        assertEquals(42, received);
+        assertArrayEquals(new byte[]{7}, sentData.toByteArray());
+    }
+
+    @Test(expected = ConnectException.class)
+    public void createSocketShouldThrowConnectExceptionWhenChannelCannotBeOpened() throws IOException, JSchException {
+        // given
+        doThrow(new JSchException("channel is not opened")).when(channelMock).connect(anyInt());
+
+        // when
+        new ChannelSocketFactory(target.getKey()).createSocket("localhost", 9999);
+    }
+
+    @Test
+    public void closeShouldDisconnectChannel() throws IOException {
+        // given
+        final Socket socket = new ChannelSocketFactory(target.getKey()).createSocket("localhost", 9999);
+
+        // when
+        socket.close();
+
+        // then
+        assertTrue(socket.isClosed());
+        verify(channelMock).disconnect();
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void readShouldTimeOutWhenNoDataArrivesWithinSoTimeout() throws IOException {
+        // given
+        final Socket socket = new ChannelSocketFactory(target.getKey()).createSocket("localhost", 9999);
+        socket.setSoTimeout(50);
+        final InputStream inputStream = socket.getInputStream();
+
+        // when
+        inputStream.read();
+    }
+}
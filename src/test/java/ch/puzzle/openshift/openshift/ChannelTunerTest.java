@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelTunerTest {
+
+    private static final long ROUND_TRIP_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void tuneShouldSetWindowAndPacketSizeOfChannel() throws Exception {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(new SshTuning(2 * 1024 * 1024, 32768, null, SshTuning.DEFAULT_SIZE, SshTuning.DEFAULT_SIZE));
+        final ChannelDirectTCPIP channel = createChannel();
+
+        // when
+        tuner.tune(channel);
+
+        // then
+        assertEquals(2 * 1024 * 1024, getChannelField(channel, "lwsize_max"));
+        assertEquals(2 * 1024 * 1024, getChannelField(channel, "lwsize"));
+        assertEquals(32768, getChannelField(channel, "lmpsize"));
+    }
+
+    @Test
+    public void tuneShouldKeepDefaultsOfJsch() throws Exception {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(SshTuning.DEFAULT);
+        final ChannelDirectTCPIP channel = createChannel();
+
+        // when
+        tuner.tune(channel);
+
+        // then
+        assertEquals(ChannelTuner.JSCH_WINDOW_SIZE, getChannelField(channel, "lwsize_max"));
+        assertEquals(16384, getChannelField(channel, "lmpsize"));
+    }
+
+    private ChannelDirectTCPIP createChannel() throws Exception {
+        final Constructor<ChannelDirectTCPIP> constructor = ChannelDirectTCPIP.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    private int getChannelField(Channel channel, String name) throws Exception {
+        final Field field = Channel.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.getInt(channel);
+    }
+
+    @Test
+    public void autoWindowSizeShouldStartWithDefaultOfJsch() {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(createAutoTuning());
+
+        // when
+        final int windowSize = tuner.getWindowSize();
+
+        // then
+        assertEquals(ChannelTuner.JSCH_WINDOW_SIZE, windowSize);
+    }
+
+    @Test
+    public void autoWindowSizeShouldBeDoubledWhenWindowLimitedTheThroughput() {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(createAutoTuning());
+        tuner.recordRoundTrip(ROUND_TRIP_IN_NANOS);
+
+        // when: one window per round trip
+        tuner.recordTransfer(10 * ChannelTuner.JSCH_WINDOW_SIZE, 10 * ROUND_TRIP_IN_NANOS);
+
+        // then
+        assertEquals(2 * ChannelTuner.JSCH_WINDOW_SIZE, tuner.getWindowSize());
+    }
+
+    @Test
+    public void autoWindowSizeShouldBeTwiceTheBandwidthDelayProduct() {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(createAutoTuning());
+        tuner.recordRoundTrip(ROUND_TRIP_IN_NANOS);
+        tuner.recordTransfer(10 * ChannelTuner.JSCH_WINDOW_SIZE, 10 * ROUND_TRIP_IN_NANOS);
+        tuner.recordTransfer(40 * ChannelTuner.JSCH_WINDOW_SIZE, 10 * ROUND_TRIP_IN_NANOS);
+        final int windowLimitedSize = tuner.getWindowSize();
+
+        // when: the throughput dropped to a tenth of a window per round trip
+        tuner.recordTransfer(100 * ChannelTuner.JSCH_WINDOW_SIZE, 1000 * ROUND_TRIP_IN_NANOS);
+        tuner.recordTransfer(100 * ChannelTuner.JSCH_WINDOW_SIZE, 1000 * ROUND_TRIP_IN_NANOS);
+        tuner.recordTransfer(100 * ChannelTuner.JSCH_WINDOW_SIZE, 1000 * ROUND_TRIP_IN_NANOS);
+        tuner.recordTransfer(100 * ChannelTuner.JSCH_WINDOW_SIZE, 1000 * ROUND_TRIP_IN_NANOS);
+        tuner.recordTransfer(100 * ChannelTuner.JSCH_WINDOW_SIZE, 1000 * ROUND_TRIP_IN_NANOS);
+
+        // then
+        assertEquals(4 * ChannelTuner.JSCH_WINDOW_SIZE, windowLimitedSize);
+        assertTrue(tuner.getWindowSize() < windowLimitedSize);
+        assertTrue(tuner.getWindowSize() >= ChannelTuner.JSCH_WINDOW_SIZE);
+    }
+
+    @Test
+    public void autoWindowSizeShouldNotExceedMaximum() {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(createAutoTuning());
+        tuner.recordRoundTrip(ROUND_TRIP_IN_NANOS);
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            tuner.recordTransfer(ChannelTuner.MAX_AUTO_WINDOW_SIZE * 10L, ROUND_TRIP_IN_NANOS);
+        }
+
+        // then
+        assertEquals(ChannelTuner.MAX_AUTO_WINDOW_SIZE, tuner.getWindowSize());
+    }
+
+    @Test
+    public void autoWindowSizeShouldIgnoreTransfersSmallerThanWindow() {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(createAutoTuning());
+        tuner.recordRoundTrip(ROUND_TRIP_IN_NANOS);
+
+        // when
+        tuner.recordTransfer(ChannelTuner.JSCH_WINDOW_SIZE - 1, 1);
+
+        // then
+        assertEquals(ChannelTuner.JSCH_WINDOW_SIZE, tuner.getWindowSize());
+    }
+
+    @Test
+    public void fixedWindowSizeShouldNotBeResized() {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(new SshTuning(1024 * 1024, SshTuning.DEFAULT_SIZE, null, SshTuning.DEFAULT_SIZE, SshTuning.DEFAULT_SIZE));
+        tuner.recordRoundTrip(ROUND_TRIP_IN_NANOS);
+
+        // when
+        tuner.recordTransfer(100 * 1024 * 1024, ROUND_TRIP_IN_NANOS);
+
+        // then
+        assertEquals(1024 * 1024, tuner.getWindowSize());
+    }
+
+    @Test
+    public void configureLocalSocketShouldEnableTcpNoDelayByDefault() throws Exception {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(SshTuning.DEFAULT);
+
+        try (Socket socket = new Socket()) {
+            // when
+            tuner.configureLocalSocket(socket);
+
+            // then
+            assertTrue(socket.getTcpNoDelay());
+        }
+    }
+
+    @Test
+    public void configureLocalSocketShouldApplyTuning() throws Exception {
+        // given
+        final ChannelTuner tuner = new ChannelTuner(new SshTuning(SshTuning.DEFAULT_SIZE, SshTuning.DEFAULT_SIZE, false, 65536, 65536));
+
+        try (Socket socket = new Socket()) {
+            // when
+            tuner.configureLocalSocket(socket);
+
+            // then
+            assertFalse(socket.getTcpNoDelay());
+            assertTrue(socket.getSendBufferSize() >= 65536);
+            assertTrue(socket.getReceiveBufferSize() >= 65536);
+        }
+    }
+
+    private SshTuning createAutoTuning() {
+        return new SshTuning(SshTuning.AUTO_WINDOW_SIZE, SshTuning.DEFAULT_SIZE, null, SshTuning.DEFAULT_SIZE, SshTuning.DEFAULT_SIZE);
+    }
+}
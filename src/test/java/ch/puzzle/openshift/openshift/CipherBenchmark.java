@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Cipher;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.MAC;
+import com.jcraft.jsch.Session;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures the throughput in bytes/s of the ciphers and macs offered by {@link SshAlgorithms}.
+ * <p/>
+ * Without arguments every cipher/mac pair runs through an in-process stand-in of both ssh ends: the packets are
+ * encrypted and signed as JSch sends them and decrypted and verified as the server receives them. With the vm argument
+ * -Dbenchmark.sshUrl=ssh://<user>@<host> (e.g. a local sshd) the data is additionally pushed through a real session per
+ * cipher, -Dbenchmark.keyFile=<file> selects the private key (default ~/.ssh/id_rsa). -Dbenchmark.megabytes=<n> sets
+ * the amount of data per measurement (default 256).
+ */
+public class CipherBenchmark {
+
+    private static final int PACKET_SIZE = 32 * 1024;
+    private static final String ALL_CIPHERS = "aes128-ctr,aes192-ctr,aes256-ctr,aes128-cbc,aes192-cbc,aes256-cbc,3des-ctr,3des-cbc,blowfish-cbc,arcfour128,arcfour256";
+    private static final String ALL_MACS = "hmac-sha1,hmac-sha2-256,hmac-md5,hmac-sha1-96,hmac-md5-96";
+
+    public static void main(String[] args) throws Exception {
+        final long bytes = Long.getLong("benchmark.megabytes", 256) * 1024 * 1024;
+        final String sshUrl = System.getProperty("benchmark.sshUrl");
+        final String keyFile = System.getProperty("benchmark.keyFile", SessionConnector.DEFAULT_PRIVATE_SSH_KEY_FILE);
+
+        warmUp();
+        System.out.println("In-process encrypt/sign and decrypt/verify of " + bytes / (1024 * 1024) + " MiB");
+        for (String cipher : split(ALL_CIPHERS)) {
+            for (String mac : split(ALL_MACS)) {
+                try {
+                    report(cipher + " / " + mac, bytes, measurePipeline(cipher, mac, bytes));
+                } catch (Exception e) {
+                    System.out.println(String.format(Locale.ROOT, "%-30s not available: %s", cipher + " / " + mac, e));
+                }
+            }
+        }
+
+        if (sshUrl != null) {
+            System.out.println("Ssh session to " + sshUrl + " writing " + bytes / (1024 * 1024) + " MiB to cat > /dev/null");
+            for (String cipher : split(ALL_CIPHERS)) {
+                try {
+                    report(cipher, bytes, measureSession(sshUrl, keyFile, new SshAlgorithms(cipher, null, null), bytes));
+                } catch (Exception e) {
+                    System.out.println(String.format(Locale.ROOT, "%-30s failed: %s", cipher, e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs every pair once so that the jit has compiled the shared code before the first measurement.
+     */
+    private static void warmUp() {
+        for (String cipher : split(ALL_CIPHERS)) {
+            for (String mac : split(ALL_MACS)) {
+                try {
+                    measurePipeline(cipher, mac, 4 * 1024 * 1024);
+                } catch (Exception e) {
+                    // reported by the measurement
+                }
+            }
+        }
+    }
+
+    private static Set<String> split(String algorithms) {
+        return new LinkedHashSet<>(Arrays.asList(algorithms.split(",")));
+    }
+
+    private static void report(String name, long bytes, long nanos) {
+        final double bytesPerSecond = bytes * 1e9 / nanos;
+        System.out.println(String.format(Locale.ROOT, "%-30s %,15.0f bytes/s  %8.1f MiB/s", name, bytesPerSecond, bytesPerSecond / (1024 * 1024)));
+    }
+
+    private static long measurePipeline(String cipherName, String macName, long bytes) throws Exception {
+        final Cipher encryptor = createCipher(cipherName, Cipher.ENCRYPT_MODE);
+        final Cipher decryptor = createCipher(cipherName, Cipher.DECRYPT_MODE);
+        final MAC clientMac = createMac(macName);
+        final MAC serverMac = createMac(macName);
+
+        final byte[] plain = new byte[PACKET_SIZE];
+        new Random(42).nextBytes(plain);
+        final byte[] encrypted = new byte[PACKET_SIZE];
+        final byte[] decrypted = new byte[PACKET_SIZE];
+        final byte[] clientDigest = new byte[64];
+        final byte[] serverDigest = new byte[64];
+
+        final long start = System.nanoTime();
+        transfer(encryptor, decryptor, clientMac, serverMac, plain, encrypted, decrypted, clientDigest, serverDigest, bytes / PACKET_SIZE);
+        final long nanos = System.nanoTime() - start;
+
+        if (!Arrays.equals(plain, decrypted)) {
+            throw new IllegalStateException("Decrypted packet differs from sent packet");
+        }
+        return nanos;
+    }
+
+    private static void transfer(Cipher encryptor, Cipher decryptor, MAC clientMac, MAC serverMac, byte[] plain, byte[] encrypted, byte[] decrypted,
+                                 byte[] clientDigest, byte[] serverDigest, long packets) throws Exception {
+        for (int sequence = 0; sequence < packets; sequence++) {
+            clientMac.update(sequence);
+            clientMac.update(plain, 0, plain.length);
+            clientMac.doFinal(clientDigest, 0);
+            encryptor.update(plain, 0, plain.length, encrypted, 0);
+
+            decryptor.update(encrypted, 0, encrypted.length, decrypted, 0);
+            serverMac.update(sequence);
+            serverMac.update(decrypted, 0, decrypted.length);
+            serverMac.doFinal(serverDigest, 0);
+            if (!Arrays.equals(clientDigest, serverDigest)) {
+                throw new IllegalStateException("Mac of packet " + sequence + " does not match");
+            }
+        }
+    }
+
+    private static Cipher createCipher(String name, int mode) throws Exception {
+        final Cipher cipher = (Cipher) Class.forName(JSch.getConfig(name)).newInstance();
+        cipher.init(mode, new byte[cipher.getBlockSize()], new byte[cipher.getIVSize()]);
+        return cipher;
+    }
+
+    private static MAC createMac(String name) throws Exception {
+        final MAC mac = (MAC) Class.forName(JSch.getConfig(name)).newInstance();
+        mac.init(new byte[mac.getBlockSize()]);
+        return mac;
+    }
+
+    private static long measureSession(String sshUrl, String keyFile, SshAlgorithms algorithms, long bytes) throws Exception {
+        final String[] userAndHost = sshUrl.substring(SessionConnector.SSH_URL_PREFIX.length()).split("@");
+        final JSch jsch = new JSch();
+        jsch.addIdentity(keyFile);
+        final Session session = jsch.getSession(userAndHost[0], userAndHost[1]);
+        session.setConfig("StrictHostKeyChecking", "no");
+        algorithms.applyTo(session);
+        session.connect();
+        try {
+            final ChannelExec channel = (ChannelExec) session.openChannel("exec");
+            channel.setCommand("cat > /dev/null");
+            final OutputStream out = channel.getOutputStream();
+            channel.connect();
+
+            final byte[] packet = new byte[PACKET_SIZE];
+            new Random(42).nextBytes(packet);
+            final long start = System.nanoTime();
+            for (long written = 0; written < bytes; written += packet.length) {
+                out.write(packet);
+            }
+            out.close();
+            waitForExit(channel);
+            final long nanos = System.nanoTime() - start;
+            channel.disconnect();
+            return nanos;
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    private static void waitForExit(Channel channel) throws InterruptedException {
+        while (!channel.isClosed()) {
+            Thread.sleep(10);
+        }
+    }
+}
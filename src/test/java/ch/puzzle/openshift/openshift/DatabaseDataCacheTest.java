@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DatabaseDataCacheTest {
+
+    private static final long TIME_TO_LIVE = 1_000;
+    private static final int MAX_SIZE = 2;
+
+    private TestDatabaseDataCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new TestDatabaseDataCache(TIME_TO_LIVE, MAX_SIZE);
+    }
+
+    @Test
+    public void getShouldReturnNullWhenNoEntryExists() {
+        // when
+        final DatabaseData databaseData = cache.get(createKey("application"));
+
+        // then
+        assertNull(databaseData);
+    }
+
+    @Test
+    public void getShouldReturnCachedDatabaseDataForEqualKey() {
+        // given
+        DatabaseData databaseData = createDatabaseData();
+        cache.put(createKey("application"), databaseData);
+
+        // when
+        final DatabaseData cachedDatabaseData = cache.get(createKey("application"));
+
+        // then
+        assertSame(databaseData, cachedDatabaseData);
+    }
+
+    @Test
+    public void getShouldReturnNullForDifferentOpenshiftPassword() {
+        // given
+        cache.put(createKey("application"), createDatabaseData());
+
+        // when
+        final DatabaseData cachedDatabaseData = cache.get(DatabaseDataCache.createKey("server", "domain", "application", "cartridge", "user", "wrongPassword"));
+
+        // then
+        assertNull(cachedDatabaseData);
+    }
+
+    @Test
+    public void getShouldReturnNullForDifferentOpenshiftUser() {
+        // given
+        cache.put(createKey("application"), createDatabaseData());
+
+        // when
+        final DatabaseData cachedDatabaseData = cache.get(DatabaseDataCache.createKey("server", "domain", "application", "cartridge", "otherUser", "password"));
+
+        // then
+        assertNull(cachedDatabaseData);
+    }
+
+    @Test
+    public void getShouldReturnNullWhenEntryHasExpired() {
+        // given
+        cache.put(createKey("application"), createDatabaseData());
+        cache.now += TIME_TO_LIVE;
+
+        // when
+        final DatabaseData cachedDatabaseData = cache.get(createKey("application"));
+
+        // then
+        assertNull(cachedDatabaseData);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void putShouldEvictLeastRecentlyUsedEntryWhenMaxSizeIsReached() {
+        // given
+        cache.put(createKey("first"), createDatabaseData());
+        cache.put(createKey("second"), createDatabaseData());
+        cache.get(createKey("first"));
+
+        // when
+        cache.put(createKey("third"), createDatabaseData());
+
+        // then
+        assertNotNull(cache.get(createKey("first")));
+        assertNull(cache.get(createKey("second")));
+        assertNotNull(cache.get(createKey("third")));
+    }
+
+    @Test
+    public void putShouldNotCacheWhenTimeToLiveIsZero() {
+        // given
+        cache = new TestDatabaseDataCache(0, MAX_SIZE);
+
+        // when
+        cache.put(createKey("application"), createDatabaseData());
+
+        // then
+        assertNull(cache.get(createKey("application")));
+    }
+
+    @Test
+    public void invalidateShouldRemoveEntry() {
+        // given
+        cache.put(createKey("application"), createDatabaseData());
+
+        // when
+        cache.invalidate(createKey("application"));
+
+        // then
+        assertNull(cache.get(createKey("application")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowExceptionOnNegativeTimeToLive() {
+        new DatabaseDataCache(-1, MAX_SIZE);
+    }
+
+    private DatabaseDataCache.Key createKey(String application) {
+        return DatabaseDataCache.createKey("server", "domain", application, "cartridge", "user", "password");
+    }
+
+    private DatabaseData createDatabaseData() {
+        return new DatabaseData("dbUser", "dbPassword", "postgresql://host:port", "dbName");
+    }
+
+    private static class TestDatabaseDataCache extends DatabaseDataCache {
+        private long now = 0;
+
+        private TestDatabaseDataCache(long timeToLiveInMillis, int maxSize) {
+            super(timeToLiveInMillis, maxSize);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void acquireShouldAllocateDirectBufferOfConfiguredSize() {
+        // given
+        DirectBufferPool pool = new DirectBufferPool(1024, 2);
+
+        // when
+        final ByteBuffer buffer = pool.acquire();
+
+        // then
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+    }
+
+    @Test
+    public void acquireShouldReuseReleasedBufferCleared() {
+        // given
+        DirectBufferPool pool = new DirectBufferPool(1024, 2);
+        final ByteBuffer buffer = pool.acquire();
+        buffer.put((byte) 1).flip();
+
+        // when
+        pool.release(buffer);
+        final ByteBuffer reusedBuffer = pool.acquire();
+
+        // then
+        assertSame(buffer, reusedBuffer);
+        assertEquals(0, reusedBuffer.position());
+        assertEquals(1024, reusedBuffer.limit());
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void releaseShouldNotPoolMoreThanMaxBuffers() {
+        // given
+        DirectBufferPool pool = new DirectBufferPool(1024, 2);
+
+        // when
+        pool.release(ByteBuffer.allocateDirect(1024));
+        pool.release(ByteBuffer.allocateDirect(1024));
+        pool.release(ByteBuffer.allocateDirect(1024));
+
+        // then
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowExceptionWhenBufferSizeIsNotPositive() {
+        // when
+        new DirectBufferPool(0, 2);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ForwardablePortCacheTest {
+
+    private static final long TIME_TO_LIVE = 1_000;
+    private static final String SSH_URL = "ssh://user@host";
+
+    private TestForwardablePortCache cache;
+    private ForwardablePorts forwardablePorts;
+
+    @Before
+    public void setUp() {
+        cache = new TestForwardablePortCache(TIME_TO_LIVE);
+        forwardablePorts = new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine("postgresql -> 127.0.250.1:5432")), true);
+    }
+
+    @Test
+    public void getShouldReturnCachedForwardablePorts() {
+        // given
+        cache.put(SSH_URL, forwardablePorts);
+
+        // when
+        final ForwardablePorts cachedPorts = cache.get(SSH_URL);
+
+        // then
+        assertSame(forwardablePorts, cachedPorts);
+    }
+
+    @Test
+    public void getShouldReturnNullAfterTimeToLive() {
+        // given
+        cache.put(SSH_URL, forwardablePorts);
+        cache.now += TIME_TO_LIVE;
+
+        // when
+        final ForwardablePorts cachedPorts = cache.get(SSH_URL);
+
+        // then
+        assertNull(cachedPorts);
+    }
+
+    @Test
+    public void getShouldReturnNullAfterInvalidate() {
+        // given
+        cache.put(SSH_URL, forwardablePorts);
+        cache.invalidate(SSH_URL);
+
+        // when
+        final ForwardablePorts cachedPorts = cache.get(SSH_URL);
+
+        // then
+        assertNull(cachedPorts);
+    }
+
+    @Test
+    public void putShouldNotCacheWhenTimeToLiveIsZero() {
+        // given
+        cache = new TestForwardablePortCache(0);
+        cache.put(SSH_URL, forwardablePorts);
+
+        // when
+        final ForwardablePorts cachedPorts = cache.get(SSH_URL);
+
+        // then
+        assertNull(cachedPorts);
+    }
+
+    private static class TestForwardablePortCache extends ForwardablePortCache {
+        private long now = 0;
+
+        private TestForwardablePortCache(long timeToLiveInMillis) {
+            super(timeToLiveInMillis);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -36,9 +36,13 @@ public class ForwardablePortTest {
     private static final int REMOTE_PORT = 5432;
 
     private static final int FORWARDED_PORT = 123456;
+    private static final int FIRST_LOCAL_PORT = 49152;
+    private static final int LAST_LOCAL_PORT = 49199;
 
     private ForwardablePort forwardablePort;
 
+    private final LocalPortAllocator localPortAllocator = new LocalPortAllocator(FIRST_LOCAL_PORT + "-" + LAST_LOCAL_PORT, false);
+
     @Mock
     private Session sessionMock;
 
@@ -161,8 +165,8 @@ public class ForwardablePortTest {
     }
 
     private void mockStartPortForwardingTo(int forwardedPort) throws JSchException {
-        Mockito.when(sessionMock.setPortForwardingL(ForwardablePort.INITIAL_STARTING_PORT, REMOTE_HOST, REMOTE_PORT)).thenReturn(forwardedPort);
-        forwardablePort.startPortForwarding(sessionMock);
+        Mockito.when(sessionMock.setPortForwardingL(FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT)).thenReturn(forwardedPort);
+        forwardablePort.startPortForwarding(sessionMock, localPortAllocator);
     }
 
     @Test
@@ -228,10 +232,10 @@ public class ForwardablePortTest {
         forwardablePort = createForwardablePort();
 
         // when
-        forwardablePort.startPortForwarding(sessionMock);
+        forwardablePort.startPortForwarding(sessionMock, localPortAllocator);
 
         // then
-        Mockito.verify(sessionMock).setPortForwardingL(ForwardablePort.INITIAL_STARTING_PORT, REMOTE_HOST, REMOTE_PORT);
+        Mockito.verify(sessionMock).setPortForwardingL(FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT);
     }
 
 
@@ -239,40 +243,84 @@ public class ForwardablePortTest {
     public void startPortForwardingWhenNotYetStartedShouldThrowExceptionOnSessionPortForwardFailure() throws Exception {
         // given
         forwardablePort = createForwardablePort();
-        int forwardingPort = ForwardablePort.INITIAL_STARTING_PORT;
+        int forwardingPort = FIRST_LOCAL_PORT;
         Mockito.when(sessionMock.setPortForwardingL(forwardingPort, REMOTE_HOST, REMOTE_PORT)).thenThrow(new JSchException("Portforwarding exception", new RuntimeException("Some exception other than bindingexception")));
 
         // when
-        forwardablePort.startPortForwarding(sessionMock);
+        forwardablePort.startPortForwarding(sessionMock, localPortAllocator);
     }
 
     @Test
-    public void startPortForwardingWhenNotYetStartedShouldRetryPortForwardingWithIncrementedPortnumberWhenPortIsAlreadyInUse() throws Exception {
+    public void startPortForwardingWhenNotYetStartedShouldRetryPortForwardingWithNextAllocatedPortWhenPortIsBoundByAnotherProcess() throws Exception {
         // given
         forwardablePort = createForwardablePort();
-        int forwardingPort = ForwardablePort.INITIAL_STARTING_PORT;
+        int forwardingPort = FIRST_LOCAL_PORT;
         Mockito.when(sessionMock.setPortForwardingL(forwardingPort, REMOTE_HOST, REMOTE_PORT)).thenThrow(new JSchException("Portforwarding exception", new BindException("Port allready in use")));
 
         // when
-        forwardablePort.startPortForwarding(sessionMock);
+        forwardablePort.startPortForwarding(sessionMock, localPortAllocator);
 
         // then
         Mockito.verify(sessionMock).setPortForwardingL((forwardingPort + 1), REMOTE_HOST, REMOTE_PORT);
+        assertEquals(1, localPortAllocator.getAllocatedCount());
     }
 
     @Test(expected = RuntimeException.class)
     public void startPortForwardingWhenNotYetStartedShouldThrowExceptionWhenAllPortsAreAlreadyInUse() throws Exception {
         // given
         forwardablePort = createForwardablePort();
-        int forwardingPort = ForwardablePort.INITIAL_STARTING_PORT;
-        for (; forwardingPort < ForwardablePort.INITIAL_STARTING_PORT + ForwardablePort.PORT_ITERATION_RANGE; forwardingPort++) {
+        int forwardingPort = FIRST_LOCAL_PORT;
+        for (; forwardingPort < FIRST_LOCAL_PORT + ForwardablePort.MAX_BIND_ATTEMPTS; forwardingPort++) {
             Mockito.when(sessionMock.setPortForwardingL(forwardingPort, REMOTE_HOST, REMOTE_PORT)).thenThrow(new JSchException("Portforwarding exception", new BindException("Port allready in use")));
         }
 
         // when
-        forwardablePort.startPortForwarding(sessionMock);
+        forwardablePort.startPortForwarding(sessionMock, localPortAllocator);
+    }
+
+
+    @Test
+    public void startPortForwardingShouldBindPortZeroWhenLocalPortIsAssignedByOperatingSystem() throws Exception {
+        // given
+        forwardablePort = createForwardablePort();
+        Mockito.when(sessionMock.setPortForwardingL(0, REMOTE_HOST, REMOTE_PORT)).thenReturn(FORWARDED_PORT);
+
+        // when
+        final int localPort = forwardablePort.startPortForwarding(sessionMock, new LocalPortAllocator(FIRST_LOCAL_PORT + "-" + LAST_LOCAL_PORT, true));
+
+        // then
+        assertEquals(FORWARDED_PORT, localPort);
+    }
+
+    @Test
+    public void startPortForwardingWithPreferredLocalPortShouldBindPreferredPort() throws Exception {
+        // given
+        forwardablePort = createForwardablePort();
+        int preferredPort = 50_000;
+        Mockito.when(sessionMock.setPortForwardingL(preferredPort, REMOTE_HOST, REMOTE_PORT)).thenReturn(preferredPort);
+
+        // when
+        final int localPort = forwardablePort.startPortForwarding(sessionMock, localPortAllocator, preferredPort);
+
+        // then
+        assertEquals(preferredPort, localPort);
+        Mockito.verify(sessionMock, Mockito.never()).setPortForwardingL(FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT);
     }
 
+    @Test
+    public void startPortForwardingWithPreferredLocalPortShouldFallBackToPortRangeWhenPreferredPortIsInUse() throws Exception {
+        // given
+        forwardablePort = createForwardablePort();
+        int preferredPort = 50_000;
+        Mockito.when(sessionMock.setPortForwardingL(preferredPort, REMOTE_HOST, REMOTE_PORT)).thenThrow(new JSchException("Portforwarding exception", new BindException("Port allready in use")));
+        Mockito.when(sessionMock.setPortForwardingL(FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT)).thenReturn(FIRST_LOCAL_PORT);
+
+        // when
+        final int localPort = forwardablePort.startPortForwarding(sessionMock, localPortAllocator, preferredPort);
+
+        // then
+        assertEquals(FIRST_LOCAL_PORT, localPort);
+    }
 
     @Test
     public void stopPortForwardingOnStartedPortForwardingShouldCallDelPortForwardingOnSession() throws Exception {
@@ -331,4 +379,35 @@ public class ForwardablePortTest {
     private String createOutputline(String name, String remoteHost, String remotePortString) {
         return name + " -> " + remoteHost + ":" + remotePortString;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void startPortForwardingShouldUseConfiguredPortForwarder() throws JSchException {
+        // given
+        PortForwarder portForwarderMock = Mockito.mock(PortForwarder.class);
+        Mockito.when(portForwarderMock.forward(sessionMock, FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT)).thenReturn(FIRST_LOCAL_PORT);
+        forwardablePort = ForwardablePort.createForValidRhcListPortsOutputLine(createOutputline(PORT_NAME, REMOTE_HOST, String.valueOf(REMOTE_PORT)));
+        forwardablePort.setPortForwarder(portForwarderMock);
+
+        // when
+        final int localPort = forwardablePort.startPortForwarding(sessionMock, localPortAllocator);
+
+        // then
+        assertEquals(FIRST_LOCAL_PORT, localPort);
+        Mockito.verify(sessionMock, Mockito.never()).setPortForwardingL(Mockito.anyInt(), Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void copyNotForwardedShouldKeepPortForwarder() throws JSchException {
+        // given
+        PortForwarder portForwarderMock = Mockito.mock(PortForwarder.class);
+        Mockito.when(portForwarderMock.forward(sessionMock, FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT)).thenReturn(FIRST_LOCAL_PORT);
+        forwardablePort = ForwardablePort.createForValidRhcListPortsOutputLine(createOutputline(PORT_NAME, REMOTE_HOST, String.valueOf(REMOTE_PORT)));
+        forwardablePort.setPortForwarder(portForwarderMock);
+
+        // when
+        forwardablePort.copyNotForwarded().startPortForwarding(sessionMock, localPortAllocator);
+
+        // then
+        Mockito.verify(portForwarderMock).forward(sessionMock, FIRST_LOCAL_PORT, REMOTE_HOST, REMOTE_PORT);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GearKeepAwakeSchedulerTest {
+
+    private static final long MIN_INTERVAL = 60_000;
+    private static final long JITTER = 1_000;
+    private static final String SSH_URL = "ssh://user@host";
+    private static final String OTHER_SSH_URL = "ssh://other@host";
+    private static final String KEY_PATH = "~/.ssh/key";
+
+    @Mock
+    private OpenshiftCommunicationHandler communicatorMock;
+
+    private TestGearKeepAwakeScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new TestGearKeepAwakeScheduler("07:00-19:00");
+        scheduler.now = timeOfDay(12, 0);
+        when(communicatorMock.getTunneledGears()).thenReturn(Collections.singletonMap(SSH_URL, KEY_PATH));
+    }
+
+    @Test
+    public void schedulerWithoutWindowShouldBeDisabled() {
+        // when
+        final GearKeepAwakeScheduler disabledScheduler = new GearKeepAwakeScheduler(communicatorMock, null, MIN_INTERVAL, JITTER);
+
+        // then
+        assertFalse(disabledScheduler.isEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void schedulerWithMalformedWindowShouldThrowException() {
+        // when
+        new GearKeepAwakeScheduler(communicatorMock, "7-19", MIN_INTERVAL, JITTER);
+    }
+
+    @Test
+    public void isWithinWindowShouldIncludeStartAndExcludeEnd() {
+        // then
+        assertTrue(scheduler.isWithinWindow(timeOfDay(7, 0)));
+        assertTrue(scheduler.isWithinWindow(timeOfDay(18, 59)));
+        assertFalse(scheduler.isWithinWindow(timeOfDay(19, 0)));
+        assertFalse(scheduler.isWithinWindow(timeOfDay(6, 59)));
+    }
+
+    @Test
+    public void isWithinWindowShouldSupportWindowSpanningMidnight() {
+        // given
+        final GearKeepAwakeScheduler nightScheduler = new GearKeepAwakeScheduler(communicatorMock, "22:00-06:00", MIN_INTERVAL, JITTER);
+
+        // then
+        assertTrue(nightScheduler.isWithinWindow(timeOfDay(23, 30)));
+        assertTrue(nightScheduler.isWithinWindow(timeOfDay(5, 0)));
+        assertFalse(nightScheduler.isWithinWindow(timeOfDay(12, 0)));
+    }
+
+    @Test
+    public void keepGearsAwakeShouldWakeUpTunneledGearWithinWindow() {
+        // when
+        scheduler.keepGearsAwake();
+
+        // then
+        verify(communicatorMock).keepGearAwake(SSH_URL, KEY_PATH);
+    }
+
+    @Test
+    public void keepGearsAwakeShouldNotWakeUpGearOutsideWindow() {
+        // given
+        scheduler.now = timeOfDay(20, 0);
+
+        // when
+        scheduler.keepGearsAwake();
+
+        // then
+        verify(communicatorMock, never()).keepGearAwake(anyString(), anyString());
+    }
+
+    @Test
+    public void keepGearsAwakeShouldWakeUpGearAgainOnlyAfterMinIntervalAndJitter() {
+        // given
+        scheduler.keepGearsAwake();
+
+        // when
+        scheduler.now += MIN_INTERVAL + JITTER - 1;
+        scheduler.keepGearsAwake();
+        scheduler.now += 1;
+        scheduler.keepGearsAwake();
+
+        // then
+        verify(communicatorMock, times(2)).keepGearAwake(SSH_URL, KEY_PATH);
+    }
+
+    @Test
+    public void keepGearsAwakeShouldContinueWithOtherGearsIfWakeUpFails() {
+        // given
+        final Map<String, String> tunneledGears = new HashMap<>();
+        tunneledGears.put(SSH_URL, KEY_PATH);
+        tunneledGears.put(OTHER_SSH_URL, KEY_PATH);
+        when(communicatorMock.getTunneledGears()).thenReturn(tunneledGears);
+        doThrow(new RuntimeException("failed")).when(communicatorMock).keepGearAwake(SSH_URL, KEY_PATH);
+
+        // when
+        scheduler.keepGearsAwake();
+
+        // then
+        verify(communicatorMock).keepGearAwake(OTHER_SSH_URL, KEY_PATH);
+    }
+
+    private static long timeOfDay(int hour, int minute) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(2015, Calendar.JUNE, 1, hour, minute, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private class TestGearKeepAwakeScheduler extends GearKeepAwakeScheduler {
+        private long now;
+
+        private TestGearKeepAwakeScheduler(String window) {
+            super(communicatorMock, window, MIN_INTERVAL, JITTER);
+        }
+
+        @Override
+        long nextJitter() {
+            return JITTER;
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
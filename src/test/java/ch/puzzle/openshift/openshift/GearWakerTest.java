@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.openshift.client.IApplication;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GearWakerTest {
+
+    private static final String APPLICATION_URL = "http://app-domain.rhcloud.com/";
+
+    @Mock
+    private IApplication applicationMock;
+
+    private TestGearWaker waker;
+
+    @Before
+    public void setUp() {
+        waker = new TestGearWaker(10_000);
+        when(applicationMock.getApplicationUrl()).thenReturn(APPLICATION_URL);
+    }
+
+    @Test
+    public void wakeUpWithRestStrategyShouldStartApplication() {
+        // given
+        waker.statuses.add(200);
+
+        // when
+        waker.wakeUp(applicationMock, WakeUpStrategy.REST);
+
+        // then
+        verify(applicationMock).start();
+    }
+
+    @Test
+    public void wakeUpWithHttpStrategyShouldNotStartApplication() {
+        // given
+        waker.statuses.add(200);
+
+        // when
+        waker.wakeUp(applicationMock, WakeUpStrategy.HTTP);
+
+        // then
+        verify(applicationMock, never()).start();
+        assertTrue(waker.sleeps.isEmpty());
+    }
+
+    @Test
+    public void wakeUpShouldPollWithExponentialBackoffUntilGearIsReady() {
+        // given
+        waker.statuses.addAll(Arrays.asList(503, GearWaker.NOT_READY_STATUS, 503, 404));
+
+        // when
+        waker.wakeUp(applicationMock, WakeUpStrategy.HTTP);
+
+        // then
+        assertEquals(Arrays.asList(250L, 500L, 1000L), waker.sleeps);
+    }
+
+    @Test
+    public void wakeUpShouldThrowExceptionWhenGearIsNotReadyWithinTimeout() {
+        // given
+        waker = new TestGearWaker(1_000);
+        for (int i = 0; i < 10; i++) {
+            waker.statuses.add(503);
+        }
+
+        // when
+        try {
+            waker.wakeUp(applicationMock, WakeUpStrategy.HTTP);
+            fail("Gear not getting ready should throw exception");
+        } catch (RuntimeException e) {
+            // then
+            assertEquals(Arrays.asList(250L, 500L, 250L), waker.sleeps);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wakeUpWithSshStrategyShouldThrowException() {
+        // when
+        waker.wakeUp(applicationMock, WakeUpStrategy.SSH);
+    }
+
+    private static class TestGearWaker extends GearWaker {
+        private final LinkedList<Integer> statuses = new LinkedList<>();
+        private final List<Long> sleeps = new ArrayList<>();
+        private long now = 0;
+
+        private TestGearWaker(long timeoutInMillis) {
+            super(timeoutInMillis);
+        }
+
+        @Override
+        int requestStatus(String url) {
+            return statuses.removeFirst();
+        }
+
+        @Override
+        void sleep(long millis) {
+            sleeps.add(millis);
+            now += millis;
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
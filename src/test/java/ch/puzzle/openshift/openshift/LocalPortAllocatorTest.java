@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocalPortAllocatorTest {
+
+    private final LocalPortAllocator allocator = new LocalPortAllocator("50000-50002", false);
+
+    @Test
+    public void allocateShouldHandOutPortsOfRangeInAscendingOrder() {
+        // when
+        final int firstPort = allocator.allocate();
+        final int secondPort = allocator.allocate();
+
+        // then
+        assertEquals(50000, firstPort);
+        assertEquals(50001, secondPort);
+    }
+
+    @Test
+    public void allocateShouldReuseReleasedPort() {
+        // given
+        final int port = allocator.allocate();
+        allocator.allocate();
+        allocator.release(port);
+
+        // when
+        final int reusedPort = allocator.allocate();
+
+        // then
+        assertEquals(port, reusedPort);
+    }
+
+    @Test
+    public void allocateShouldNotReusePortUsedByAnotherProcess() {
+        // given
+        final int port = allocator.allocate();
+        allocator.releaseInUse(port);
+
+        // when
+        final int nextPort = allocator.allocate();
+
+        // then
+        assertEquals(50001, nextPort);
+        assertEquals(1, allocator.getAllocatedCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void allocateShouldThrowExceptionWhenAllPortsAreAllocated() {
+        // given
+        allocator.allocate();
+        allocator.allocate();
+        allocator.allocate();
+
+        // when
+        allocator.allocate();
+    }
+
+    @Test
+    public void releaseOfNotAllocatedPortShouldBeIgnored() {
+        // given
+        allocator.release(50001);
+
+        // when
+        final int port = allocator.allocate();
+
+        // then
+        assertEquals(50000, port);
+    }
+
+    @Test
+    public void allocateShouldReturnPortZeroWhenOperatingSystemAssignsPorts() {
+        // given
+        final LocalPortAllocator osAssignedAllocator = new LocalPortAllocator("50000-50002", true);
+
+        // when
+        final int port = osAssignedAllocator.allocate();
+
+        // then
+        assertEquals(LocalPortAllocator.OS_ASSIGNED_PORT, port);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void allocatorWithMalformedRangeShouldThrowException() {
+        // when
+        new LocalPortAllocator("50000", false);
+    }
+}
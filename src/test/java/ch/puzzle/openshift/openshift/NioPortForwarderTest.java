@@ -0,0 +1,589 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Buffer;
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Packet;
+import com.jcraft.jsch.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NioPortForwarderTest {
+
+    private static final String REMOTE_HOST = "dbhost";
+    private static final int REMOTE_PORT = 5432;
+    private static final int TIMEOUT_IN_MILLIS = 5000;
+    private static final long REMOTE_WINDOW_SIZE = 2 * 1024 * 1024;
+
+    @Mock
+    private Session sessionMock;
+
+    @Mock
+    private ChannelDirectTCPIP channelMock;
+
+    private ByteArrayOutputStream sentData;
+    private NioPortForwarder forwarder;
+    private Socket client;
+
+    @Before
+    public void setUp() throws Exception {
+        forwarder = new NioPortForwarder(1024);
+        sentData = new ByteArrayOutputStream();
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(sessionMock.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE)).thenReturn(channelMock);
+        when(channelMock.getOutputStream()).thenReturn(sentData);
+        setRemoteWindow(channelMock, REMOTE_WINDOW_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        forwarder.shutdown();
+    }
+
+    private Socket connect(int localPort) throws IOException {
+        client = new Socket(InetAddress.getLoopbackAddress(), localPort);
+        client.setSoTimeout(TIMEOUT_IN_MILLIS);
+        return client;
+    }
+
+    private OutputStream captureChannelSink() throws JSchException {
+        verify(channelMock, timeout(TIMEOUT_IN_MILLIS)).connect(anyInt());
+        final ArgumentCaptor<OutputStream> sink = ArgumentCaptor.forClass(OutputStream.class);
+        verify(channelMock).setOutputStream(sink.capture());
+        return sink.getValue();
+    }
+
+    @Test
+    public void forwardShouldReturnPortChosenByOperatingSystemForPortZero() throws JSchException {
+        // when
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+
+        // then
+        assertTrue(localPort > 0);
+        assertTrue(forwarder.isForwarding(sessionMock, localPort, REMOTE_HOST, REMOTE_PORT));
+    }
+
+    @Test
+    public void forwardShouldThrowExceptionCausedByBindExceptionWhenPortIsBound() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            try {
+                // when
+                forwarder.forward(sessionMock, serverSocket.getLocalPort(), REMOTE_HOST, REMOTE_PORT);
+                fail("JSchException expected");
+            } catch (JSchException e) {
+                // then
+                assertTrue(e.getCause() instanceof BindException);
+            }
+        }
+    }
+
+    @Test
+    public void acceptedConnectionShouldOpenDirectChannelToRemoteHostAndPort() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+
+        // when
+        connect(localPort);
+
+        // then
+        verify(channelMock, timeout(TIMEOUT_IN_MILLIS)).connect(anyInt());
+        verify(channelMock).setHost(REMOTE_HOST);
+        verify(channelMock).setPort(REMOTE_PORT);
+        verify(channelMock, never()).setInputStream(any(InputStream.class));
+    }
+
+    @Test
+    public void connectionShouldForwardClientDataToChannel() throws IOException, JSchException, InterruptedException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        connect(localPort);
+        captureChannelSink();
+
+        // when
+        client.getOutputStream().write("query".getBytes());
+
+        // then
+        final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+        while (sentData.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("query", sentData.toString());
+    }
+
+    @Test
+    public void connectionShouldForwardChannelDataToClient() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        connect(localPort);
+        final OutputStream sink = captureChannelSink();
+        final byte[] data = new byte[5000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        // when
+        sink.write(data, 0, data.length);
+        sink.close();
+
+        // then
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final InputStream in = client.getInputStream();
+        int read;
+        while ((read = in.read()) != -1) {
+            received.write(read);
+        }
+        assertArrayEquals(data, received.toByteArray());
+        verify(channelMock, timeout(TIMEOUT_IN_MILLIS)).disconnect();
+    }
+
+    @Test
+    public void clientCloseShouldDisconnectChannel() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        connect(localPort);
+        captureChannelSink();
+
+        // when
+        client.close();
+
+        // then
+        verify(channelMock, timeout(TIMEOUT_IN_MILLIS)).disconnect();
+    }
+
+    @Test
+    public void connectionsShouldReturnBuffersToPool() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        connect(localPort);
+        final OutputStream sink = captureChannelSink();
+
+        // when
+        sink.write(new byte[3000], 0, 3000);
+        sink.close();
+        final InputStream in = client.getInputStream();
+        while (in.read() != -1) {
+            // drain
+        }
+
+        // then
+        verify(channelMock, timeout(TIMEOUT_IN_MILLIS)).disconnect();
+        assertEquals(3, forwarder.getBufferPool().getPooledCount());
+    }
+
+    @Test
+    public void stopShouldCloseConnectionsAndReleaseLocalPort() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        connect(localPort);
+        captureChannelSink();
+
+        // when
+        forwarder.stop(sessionMock, localPort);
+
+        // then
+        verify(channelMock).disconnect();
+        assertEquals(-1, client.getInputStream().read());
+        assertFalse(forwarder.isForwarding(sessionMock, localPort, REMOTE_HOST, REMOTE_PORT));
+        assertEquals(localPort, forwarder.forward(sessionMock, localPort, REMOTE_HOST, REMOTE_PORT));
+    }
+
+    @Test(expected = ConnectException.class)
+    public void stopShouldNoLongerAcceptConnections() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        forwarder.stop(sessionMock, localPort);
+
+        // when
+        connect(localPort);
+    }
+
+    @Test
+    public void isForwardingShouldReturnFalseForOtherSession() throws JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+
+        // when
+        final boolean forwarding = forwarder.isForwarding(mock(Session.class), localPort, REMOTE_HOST, REMOTE_PORT);
+
+        // then
+        assertFalse(forwarding);
+    }
+
+    @Test
+    public void isForwardingShouldReturnFalseWhenSessionIsDisconnected() throws JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        when(sessionMock.isConnected()).thenReturn(false);
+
+        // when
+        final boolean forwarding = forwarder.isForwarding(sessionMock, localPort, REMOTE_HOST, REMOTE_PORT);
+
+        // then
+        assertFalse(forwarding);
+    }
+
+    @Test
+    public void connectionsShouldNotStartThreadsPerConnection() throws IOException, JSchException {
+        // given
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        connect(localPort);
+        captureChannelSink();
+        final int threadsWithOneConnection = Thread.activeCount();
+        when(sessionMock.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE)).thenReturn(mock(ChannelDirectTCPIP.class));
+
+        // when
+        final Socket[] clients = new Socket[20];
+        try {
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new Socket(InetAddress.getLoopbackAddress(), localPort);
+            }
+
+            // then
+            verify(sessionMock, timeout(TIMEOUT_IN_MILLIS).times(21)).openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE);
+            assertTrue(Thread.activeCount() <= threadsWithOneConnection + NioPortForwarder.CHANNEL_OPEN_THREADS);
+        } finally {
+            for (Socket socket : clients) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void clientNotReadingShouldStopGearWithBoundedQueueWhileOtherChannelKeepsFlowing() throws Exception {
+        // given
+        final ChannelDirectTCPIP blockedChannel = mockChannel(1);
+        final ChannelDirectTCPIP flowingChannel = mockChannel(2);
+        when(sessionMock.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE)).thenReturn(blockedChannel, flowingChannel);
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        final Socket blockedClient = new Socket();
+        blockedClient.setReceiveBufferSize(1024);
+        blockedClient.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort));
+        final SimulatedGear blockedGear = new SimulatedGear(blockedChannel, captureChannelSink(blockedChannel));
+        final Socket flowingClient = connect(localPort);
+        final SimulatedGear flowingGear = new SimulatedGear(flowingChannel, captureChannelSink(flowingChannel));
+        final Map<Integer, SimulatedGear> gears = new HashMap<>();
+        gears.put(1, blockedGear);
+        gears.put(2, flowingGear);
+        grantWindowAdjustsTo(gears);
+
+        try {
+            // when
+            long sentToBlockedClient = 0;
+            while (sentToBlockedClient < 64 * 1024 * 1024 && blockedGear.send(1024)) {
+                sentToBlockedClient += 1024;
+            }
+
+            // then
+            assertTrue("Gear must run out of window", sentToBlockedClient < 64 * 1024 * 1024);
+            final long maxQueuedBytes = NioPortForwarder.QUEUE_HIGH_WATER_BUFFERS * 1024 + SimulatedGear.WINDOW_SIZE + 1024;
+            assertTrue("Queued " + forwarder.getQueuedBytes() + " bytes", forwarder.getQueuedBytes() <= maxQueuedBytes);
+            assertTrue("Allocated " + forwarder.getBufferPool().getAllocatedCount() + " buffers", forwarder.getBufferPool().getAllocatedCount() <= maxQueuedBytes / 1024 + 4);
+            verify(blockedChannel, never()).disconnect();
+
+            final int flowingBytes = 256 * 1024;
+            final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+            long received = 0;
+            for (int sent = 0; sent < flowingBytes && System.currentTimeMillis() < deadline; ) {
+                if (flowingGear.send(1024)) {
+                    sent += 1024;
+                } else {
+                    Thread.sleep(1);
+                }
+                received += drain(flowingClient.getInputStream());
+            }
+            while (received < flowingBytes) {
+                received += flowingClient.getInputStream().read(new byte[4096]);
+            }
+            assertEquals(flowingBytes, received);
+
+            drain(blockedClient.getInputStream());
+            final long grantDeadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+            while (!blockedGear.hasWindow() && System.currentTimeMillis() < grantDeadline) {
+                drain(blockedClient.getInputStream());
+                Thread.sleep(10);
+            }
+            assertTrue("Withheld window must be granted once the client reads", blockedGear.hasWindow());
+        } finally {
+            blockedClient.close();
+        }
+    }
+
+    @Test
+    public void gearIgnoringWindowShouldCloseConnection() throws Exception {
+        // given
+        final ChannelDirectTCPIP channel = mockChannel(1);
+        when(sessionMock.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE)).thenReturn(channel);
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        client = new Socket();
+        client.setReceiveBufferSize(1024);
+        client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort));
+        final OutputStream sink = captureChannelSink(channel);
+        new SimulatedGear(channel, sink);
+
+        // when
+        IOException failure = null;
+        for (int sent = 0; sent < 64 * 1024 * 1024 && failure == null; sent += 1024) {
+            try {
+                sink.write(new byte[1024], 0, 1024);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        // then
+        assertNotNull("Sink must fail once the queue exceeds its bound", failure);
+        verify(channel, timeout(TIMEOUT_IN_MILLIS)).disconnect();
+        assertEquals(0, forwarder.getQueuedBytes());
+    }
+
+    @Test
+    public void gearNotAdjustingRemoteWindowShouldNotStallOtherConnection() throws Exception {
+        // given
+        final ChannelDirectTCPIP stalledChannel = mockChannel(1);
+        final ChannelDirectTCPIP flowingChannel = mockChannel(2);
+        setRemoteWindow(stalledChannel, 0);
+        final RemoteWindowOutputStream stalledGear = new RemoteWindowOutputStream(stalledChannel);
+        final RemoteWindowOutputStream flowingGear = new RemoteWindowOutputStream(flowingChannel);
+        when(stalledChannel.getOutputStream()).thenReturn(stalledGear);
+        when(flowingChannel.getOutputStream()).thenReturn(flowingGear);
+        when(sessionMock.openChannel(ChannelSocket.DIRECT_TCPIP_CHANNEL_TYPE)).thenReturn(stalledChannel, flowingChannel);
+        final int localPort = forwarder.forward(sessionMock, 0, REMOTE_HOST, REMOTE_PORT);
+        final Socket stalledClient = connect(localPort);
+        captureChannelSink(stalledChannel);
+        final Socket flowingClient = new Socket(InetAddress.getLoopbackAddress(), localPort);
+        captureChannelSink(flowingChannel);
+
+        try {
+            // when
+            stalledClient.getOutputStream().write("stalled query".getBytes());
+            Thread.sleep(50);
+            flowingClient.getOutputStream().write("query".getBytes());
+
+            // then
+            assertEquals("query", flowingGear.awaitReceived(5));
+            assertEquals("", stalledGear.getReceived());
+
+            setRemoteWindow(stalledChannel, 7);
+            assertEquals("stalled", stalledGear.awaitReceived(7));
+            Thread.sleep(50);
+            assertEquals("Must not write beyond the remote window", "stalled", stalledGear.getReceived());
+
+            setRemoteWindow(stalledChannel, REMOTE_WINDOW_SIZE);
+            assertEquals("stalled query", stalledGear.awaitReceived(13));
+            verify(stalledChannel, never()).disconnect();
+        } finally {
+            flowingClient.close();
+        }
+    }
+
+    private ChannelDirectTCPIP mockChannel(int recipient) throws Exception {
+        final ChannelDirectTCPIP channel = mock(ChannelDirectTCPIP.class);
+        when(channel.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        setChannelField(channel, "recipient", recipient);
+        setRemoteWindow(channel, REMOTE_WINDOW_SIZE);
+        return channel;
+    }
+
+    private OutputStream captureChannelSink(ChannelDirectTCPIP channel) throws JSchException {
+        verify(channel, timeout(TIMEOUT_IN_MILLIS)).connect(anyInt());
+        final ArgumentCaptor<OutputStream> sink = ArgumentCaptor.forClass(OutputStream.class);
+        verify(channel).setOutputStream(sink.capture());
+        return sink.getValue();
+    }
+
+    /**
+     * Passes the window adjust messages the forwarder sends on the session to the gear of the channel.
+     */
+    private void grantWindowAdjustsTo(final Map<Integer, SimulatedGear> gears) throws Exception {
+        final Field packetBuffer = Packet.class.getDeclaredField("buffer");
+        packetBuffer.setAccessible(true);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final Buffer buffer = (Buffer) packetBuffer.get(invocation.getArguments()[0]);
+                // skips packet length and padding length
+                buffer.setOffSet(5);
+                assertEquals(ChannelWindow.SSH_MSG_CHANNEL_WINDOW_ADJUST, (byte) buffer.getByte());
+                final int recipient = buffer.getInt();
+                gears.get(recipient).grant(buffer.getInt());
+                return null;
+            }
+        }).when(sessionMock).write(any(Packet.class));
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        long drained = 0;
+        while (in.available() > 0) {
+            drained += in.read(buffer);
+        }
+        return drained;
+    }
+
+    private static void setChannelField(Channel channel, String name, int value) throws Exception {
+        final Field field = Channel.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.setInt(channel, value);
+    }
+
+    private static void setRemoteWindow(Channel channel, long size) throws Exception {
+        final Field field = Channel.class.getDeclaredField("rwsize");
+        field.setAccessible(true);
+        field.setLong(channel, size);
+    }
+
+    private static long getRemoteWindow(Channel channel) throws Exception {
+        final Field field = Channel.class.getDeclaredField("rwsize");
+        field.setAccessible(true);
+        return field.getLong(channel);
+    }
+
+    private static int getChannelField(Channel channel, String name) throws Exception {
+        final Field field = Channel.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.getInt(channel);
+    }
+
+    /**
+     * Receives the data written to a channel like the output stream of a JSch channel: a write waits until the remote
+     * window of the channel covers it and uses the window up.
+     */
+    private static final class RemoteWindowOutputStream extends OutputStream {
+        private final Channel channel;
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        private RemoteWindowOutputStream(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                while (getRemoteWindow(channel) < len) {
+                    Thread.sleep(1);
+                }
+                setRemoteWindow(channel, getRemoteWindow(channel) - len);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            synchronized (received) {
+                received.write(b, off, len);
+            }
+        }
+
+        private String getReceived() {
+            synchronized (received) {
+                return received.toString();
+            }
+        }
+
+        private String awaitReceived(int length) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+            while (getReceived().length() < length && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return getReceived();
+        }
+    }
+
+    /**
+     * Sends data to a channel sink like a gear on a session thread of JSch: the gear sends only within its window,
+     * JSch subtracts the data from the local window after writing it to the sink and grants a new window once less
+     * than half is left.
+     */
+    private static final class SimulatedGear {
+        private static final int WINDOW_SIZE = 64 * 1024;
+
+        private final Channel channel;
+        private final OutputStream sink;
+        private final AtomicLong window = new AtomicLong(WINDOW_SIZE);
+
+        private SimulatedGear(Channel channel, OutputStream sink) throws Exception {
+            this.channel = channel;
+            this.sink = sink;
+            setChannelField(channel, "lwsize_max", WINDOW_SIZE);
+            setChannelField(channel, "lwsize", WINDOW_SIZE);
+        }
+
+        /**
+         * Returns false if the gear has no window left for the data.
+         */
+        private boolean send(int length) throws Exception {
+            if (window.get() < length) {
+                return false;
+            }
+            window.addAndGet(-length);
+            sink.write(new byte[length], 0, length);
+            final int localWindow = getChannelField(channel, "lwsize") - length;
+            setChannelField(channel, "lwsize", localWindow);
+            if (localWindow < WINDOW_SIZE / 2) {
+                window.addAndGet(WINDOW_SIZE - localWindow);
+                setChannelField(channel, "lwsize", WINDOW_SIZE);
+            }
+            return true;
+        }
+
+        private void grant(int bytes) {
+            window.addAndGet(bytes);
+        }
+
+        private boolean hasWindow() {
+            return window.get() > 0;
+        }
+    }
+}
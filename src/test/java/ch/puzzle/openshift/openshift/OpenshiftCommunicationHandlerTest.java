@@ -23,12 +23,15 @@ import com.openshift.client.IApplication;
 import com.openshift.client.IDomain;
 import com.openshift.client.IOpenShiftConnection;
 import com.openshift.client.IUser;
+import com.openshift.client.InvalidCredentialsOpenShiftException;
 import com.openshift.client.cartridge.IEmbeddedCartridge;
 import com.openshift.internal.client.response.CartridgeResourceProperties;
 import com.openshift.internal.client.response.CartridgeResourceProperty;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -38,9 +41,12 @@ import org.mockito.stubbing.Answer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -52,9 +58,11 @@ public class OpenshiftCommunicationHandlerTest {
     private static final String DOMAIN_NAME = "domainName";
     private static final String CONNECTION_URL = "connectionUrl";
     private static final String CARTRIDGE_NAME = "cartridgeName";
+    private static final String SSH_URL = "ssh://user@host";
 
 
     private OpenshiftCommunicationHandler communicator;
+    private IOpenShiftConnection connection;
 
     @Mock
     private OpenshiftConnector openshiftConnectorMock;
@@ -91,11 +99,8 @@ public class OpenshiftCommunicationHandlerTest {
 
     @Test(expected = RuntimeException.class)
     public void startPortForwardingWhenNotConnectedShouldThrowException() {
-        // given
-        assertFalse(communicator.isConnectedToOpenshiftServer());
-
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
     @Test(expected = RuntimeException.class)
@@ -105,16 +110,29 @@ public class OpenshiftCommunicationHandlerTest {
         when(connectionMock.getUser()).thenReturn(null);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
 
+    @Test
+    public void startPortForwardingShouldInvalidateConnectionWhenCredentialsAreRejected() {
+        // given
+        mockConnectToOpenshift();
+        when(connectionMock.getUser()).thenThrow(mock(InvalidCredentialsOpenShiftException.class));
+
+        // when
+        startPortForwardingAcceptingMockException(null);
+
+        // then
+        verify(openshiftConnectorMock).invalidateConnection(connectionMock);
+    }
+
     private void mockConnectToOpenshift() {
         String openshiftServer = "openshiftServer";
         String openshiftUser = "openshiftUser";
         String openshiftPassword = "openshiftPassword";
         Mockito.when(openshiftConnectorMock.getConnection(anyString(), anyString(), anyString())).thenReturn(connectionMock);
-        communicator.connect(openshiftServer, openshiftUser, openshiftPassword);
+        connection = communicator.connect(openshiftServer, openshiftUser, openshiftPassword);
     }
 
     @Test(expected = RuntimeException.class)
@@ -126,7 +144,7 @@ public class OpenshiftCommunicationHandlerTest {
         when(userMock.getDomain(DOMAIN_NAME)).thenReturn(null);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
     @Test(expected = RuntimeException.class)
@@ -136,7 +154,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockGetApplicationFor(null);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
     @Test
@@ -198,8 +216,9 @@ public class OpenshiftCommunicationHandlerTest {
     }
 
     @Test
-    public void startPortForwardingOnExecuteRhcListPortsCommandShouldInvokeRhcListPortsChannelExecCommand() throws JSchException, IOException {
+    public void startPortForwardingOnExecuteRhcListPortsCommandShouldInvokeRhcListPortsChannelExecCommandWhenBatchingIsDisabled() throws JSchException, IOException {
         // given
+        communicator.setBatchedGearCommands(false);
         mockConnectToOpenshift();
         mockGetApplication();
         when(sessionConnectorMock.getAndConnectSession(anyString(), anyString())).thenReturn(sessionMock);
@@ -216,8 +235,9 @@ public class OpenshiftCommunicationHandlerTest {
     }
 
     @Test
-    public void startPortForwardingOnExecuteWakeUpGearCommandShouldInvokeWakeUpChannelExecCommand() throws JSchException, IOException {
+    public void startPortForwardingOnExecuteWakeUpGearCommandShouldInvokeWakeUpChannelExecCommandWhenBatchingIsDisabled() throws JSchException, IOException {
         // given
+        communicator.setBatchedGearCommands(false);
         mockConnectToOpenshift();
         mockGetApplication();
         when(sessionConnectorMock.getAndConnectSession(anyString(), anyString())).thenReturn(sessionMock);
@@ -234,6 +254,48 @@ public class OpenshiftCommunicationHandlerTest {
     }
 
 
+    @Test
+    public void startPortForwardingShouldWakeUpGearAndListPortsInSingleExecChannel() throws JSchException, IOException {
+        // given
+        mockConnectToOpenshift();
+        mockGetApplication();
+        mockExecuteRhcListPortCommand(createValidOutputline("portserviceName", "host", "1234"));
+        when(sessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenReturn(987654);
+
+        // when
+        final int localPort = communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, "portserviceName connection url", null);
+
+        // then
+        assertEquals(987654, localPort);
+        verify(sessionMock, times(1)).openChannel("exec");
+        final ArgumentCaptor<String> command = ArgumentCaptor.forClass(String.class);
+        verify((ChannelExec) sessionMock.openChannel("exec")).setCommand(command.capture());
+        assertTrue(command.getValue().contains(OpenshiftCommunicationHandler.WAKE_UP_GEAR_COMMAND));
+        assertTrue(command.getValue().contains(OpenshiftCommunicationHandler.RHC_LIST_PORT_COMMAND));
+    }
+
+    @Test
+    public void startPortForwardingShouldSkipWakeUpGearCommandWhenTunnelWasRecentlySetUp() throws JSchException, IOException {
+        // given
+        mockConnectToOpenshift();
+        mockGetApplication();
+        TunnelSetupTracker tunnelSetupTrackerMock = mock(TunnelSetupTracker.class);
+        when(tunnelSetupTrackerMock.isRecentlySetUp(anyString())).thenReturn(true);
+        communicator.setTunnelSetupTracker(tunnelSetupTrackerMock);
+        when(sessionConnectorMock.getAndConnectSession(anyString(), anyString())).thenReturn(sessionMock);
+        ChannelExec channelMock = mock(ChannelExec.class);
+        when(sessionMock.openChannel(anyString())).thenReturn(channelMock);
+        ByteArrayInputStream in = new ByteArrayInputStream("".getBytes());
+        when(channelMock.getInputStream()).thenReturn(in);
+
+        // when
+        startPortForwardingAcceptingMockException(null);
+
+        // then
+        verify(channelMock, never()).setCommand(OpenshiftCommunicationHandler.WAKE_UP_GEAR_COMMAND);
+        verify(channelMock).setCommand(OpenshiftCommunicationHandler.RHC_LIST_PORT_COMMAND);
+    }
+
     @Test
     public void startPortForwardingOnExecuteRhcListPortsShouldInvokeChannelExecCommands() throws JSchException, IOException {
         // given
@@ -280,12 +342,12 @@ public class OpenshiftCommunicationHandlerTest {
         when(channelMock.getInputStream()).thenThrow(new RuntimeException("Exception on inputstream"));
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
     private void startPortForwardingAcceptingMockException(String sshKeyPath) {
         try {
-            communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, sshKeyPath);
+            communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, sshKeyPath);
         } catch (RuntimeException e) {
             // exception thrown because not everything is mocked!
         }
@@ -299,7 +361,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockExecuteRhcListPortCommand("Any arbitary not valid command line output");
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
     @Test(expected = RuntimeException.class)
@@ -310,7 +372,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockExecuteRhcListPortCommand("");
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, CONNECTION_URL, null);
     }
 
     @Test(expected = RuntimeException.class)
@@ -326,7 +388,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockExecuteRhcListPortCommand(validRhcListPortOutputLine);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
     }
 
     @Test
@@ -344,7 +406,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockExecuteRhcListPortCommand(validRhcListPortOutputLine);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
 
         // then
         verify(sessionMock).setPortForwardingL(anyInt(), eq(host), eq(port));
@@ -365,7 +427,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockExecuteRhcListPortCommand("invalid commandline to be ignored", validRhcListPortOutputLine);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
 
         // then
         verify(sessionMock).setPortForwardingL(anyInt(), eq(host), eq(port));
@@ -389,7 +451,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockExecuteRhcListPortCommand(firstValidRhcListPortOutputLine, secondValidRhcListPortOutputLine);
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
 
         // then
         verify(sessionMock).setPortForwardingL(anyInt(), eq(firstHost), eq(port));
@@ -411,7 +473,7 @@ public class OpenshiftCommunicationHandlerTest {
         when(sessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenReturn(localPortReturnedByPortForwardingL);
 
         // when
-        final int portForwarding = communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        final int portForwarding = communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
 
         // then
         assertEquals(localPortReturnedByPortForwardingL, portForwarding);
@@ -432,7 +494,7 @@ public class OpenshiftCommunicationHandlerTest {
         when(sessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenThrow(new RuntimeException("Exception thrown by portforwarding"));
 
         // when
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
 
     }
 
@@ -455,7 +517,7 @@ public class OpenshiftCommunicationHandlerTest {
     public void readDatabaseDataShouldThrowExceptionWhenNotConnected() {
 
         // when
-        communicator.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        communicator.readDatabaseData(connection, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
     }
 
     @Test(expected = RuntimeException.class)
@@ -464,7 +526,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockConnectToOpenshift();
 
         // when
-        communicator.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        communicator.readDatabaseData(connection, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
     }
 
     @Test(expected = RuntimeException.class)
@@ -474,7 +536,7 @@ public class OpenshiftCommunicationHandlerTest {
         mockGetEmbeddedCartridgeFor(null);
 
         // when
-        communicator.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        communicator.readDatabaseData(connection, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
     }
 
 
@@ -494,7 +556,7 @@ public class OpenshiftCommunicationHandlerTest {
 
     private void readDatabaseDataAcceptingMockException() {
         try {
-            communicator.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+            communicator.readDatabaseData(connection, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
         } catch (RuntimeException e) {
             // exception thrown because not everything is mocked!
         }
@@ -590,7 +652,7 @@ public class OpenshiftCommunicationHandlerTest {
         when(propertyMock.getValue()).thenReturn(null);
 
         // when
-        communicator.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        communicator.readDatabaseData(connection, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
 
         // then
         verify(cartridgePropertiesMock).getProperty(OpenshiftCommunicationHandler.DATABASE_NAME_KEY);
@@ -612,7 +674,7 @@ public class OpenshiftCommunicationHandlerTest {
         when(propertyMock.getValue()).thenReturn(propertyValue);
 
         // when
-        final DatabaseData databaseData = communicator.readDatabaseData(APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
+        final DatabaseData databaseData = communicator.readDatabaseData(connection, APPLICATION_NAME, DOMAIN_NAME, CARTRIDGE_NAME);
 
         // then
         assertNotNull(databaseData);
@@ -623,12 +685,93 @@ public class OpenshiftCommunicationHandlerTest {
     }
 
 
+    @Test
+    public void readDatabaseDataShouldRefreshApplicationBeforeReadingCartridge() {
+        // given
+        mockConnectToOpenshift();
+        IApplication applicationMock = mock(IApplication.class);
+        mockGetApplicationFor(applicationMock);
+
+        // when
+        readDatabaseDataAcceptingMockException();
+
+        // then
+        final InOrder inOrder = inOrder(applicationMock);
+        inOrder.verify(applicationMock).refresh();
+        inOrder.verify(applicationMock).getEmbeddedCartridge(CARTRIDGE_NAME);
+    }
+
+    @Test
+    public void readDatabaseDataShouldRefreshDomainWhenApplicationIsUnknown() {
+        // given
+        mockConnectToOpenshift();
+        IUser userMock = mock(IUser.class);
+        IDomain domainMock = mock(IDomain.class);
+        IApplication applicationMock = mock(IApplication.class);
+        when(connectionMock.getUser()).thenReturn(userMock);
+        when(userMock.getDomain(DOMAIN_NAME)).thenReturn(domainMock);
+        when(domainMock.getApplicationByName(APPLICATION_NAME)).thenReturn(null, applicationMock);
+
+        // when
+        readDatabaseDataAcceptingMockException();
+
+        // then
+        verify(domainMock).refresh();
+        verify(applicationMock).getEmbeddedCartridge(CARTRIDGE_NAME);
+    }
+
+    @Test
+    public void openGearConnectionShouldNotRefreshApplication() {
+        // given
+        mockConnectToOpenshift();
+        IApplication applicationMock = mock(IApplication.class);
+        mockGetApplicationFor(applicationMock);
+
+        // when
+        startPortForwardingAcceptingMockException(null);
+
+        // then
+        verify(applicationMock).getSshUrl();
+        verify(applicationMock, never()).refresh();
+    }
+
     private void mockGetEmbeddedCartridgeFor(IEmbeddedCartridge cartridgeMock) {
         IApplication applicationMock = mock(IApplication.class);
         mockGetApplicationFor(applicationMock);
         when(applicationMock.getEmbeddedCartridge(CARTRIDGE_NAME)).thenReturn(cartridgeMock);
     }
 
+    @Test
+    public void keepGearAwakeShouldRunWakeUpCommandOnPooledSessionAndReleaseIt() throws IOException, JSchException {
+        // given
+        ChannelExec channelMock = mock(ChannelExec.class);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, "keyPath")).thenReturn(sessionMock);
+        when(sessionMock.openChannel(anyString())).thenReturn(channelMock);
+        when(channelMock.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        // when
+        communicator.keepGearAwake(SSH_URL, "keyPath");
+
+        // then
+        verify(channelMock).setCommand(OpenshiftCommunicationHandler.WAKE_UP_GEAR_COMMAND);
+        verify(sessionConnectorMock).releaseSession(sessionMock);
+    }
+
+    @Test
+    public void startPortForwardingShouldStartKeepAwakeSchedulerAndDisconnectShouldStopIt() throws IOException, JSchException {
+        // given
+        GearKeepAwakeScheduler keepAwakeSchedulerMock = mock(GearKeepAwakeScheduler.class);
+        communicator.setKeepAwakeScheduler(keepAwakeSchedulerMock);
+        connectAndStartPortForwarding();
+
+        // when
+        communicator.disconnect();
+
+        // then
+        verify(keepAwakeSchedulerMock).start();
+        verify(keepAwakeSchedulerMock).stop();
+    }
+
     @Test
     public void disconnectShouldDoNothingWhenNoSessionActive() {
         //when
@@ -639,18 +782,257 @@ public class OpenshiftCommunicationHandlerTest {
     }
 
     @Test
-    public void disconnectShouldDisconnectSessionWhenActive() throws IOException, JSchException {
+    public void disconnectShouldStopPortForwardingWhenActive() throws IOException, JSchException {
         // given
-        connectAndStartPortForwarding();
+        final int localPort = connectAndStartPortForwarding();
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(sessionMock.getPortForwardingL()).thenReturn(new String[]{localPort + ":host:1234"});
 
         //when
         communicator.disconnect();
 
         // then
-        verify(sessionMock).disconnect();
+        verify(sessionMock).delPortForwardingL(localPort);
+    }
+
+    @Test
+    public void startPortForwardingShouldReleaseSessionUsedForPortRequest() throws IOException, JSchException {
+        // when
+        connectAndStartPortForwarding();
+
+        // then
+        verify(sessionConnectorMock, times(2)).getAndConnectSession(anyString(), anyString());
+        verify(sessionConnectorMock, times(1)).releaseSession(sessionMock);
+    }
+
+    @Test
+    public void startPortForwardingTwiceShouldShareActivePortForwarding() throws IOException, JSchException {
+        // given
+        final int localPort = connectAndStartPortForwarding();
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(sessionMock.getPortForwardingL()).thenReturn(new String[]{localPort + ":host:1234"});
+
+        // when
+        final int secondLocalPort = communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, "portserviceName connection url", null);
+
+        // then
+        assertEquals(localPort, secondLocalPort);
+        verify(sessionMock, times(1)).setPortForwardingL(anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    public void releasePortForwardingShouldStopPortForwardingWhenLastConnectionReleases() throws IOException, JSchException {
+        // given
+        final int localPort = connectAndStartPortForwarding();
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(sessionMock.getPortForwardingL()).thenReturn(new String[]{localPort + ":host:1234"});
+        communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, "portserviceName connection url", null);
+
+        // when
+        communicator.releasePortForwarding(localPort);
+
+        // then
+        verify(sessionMock, never()).delPortForwardingL(localPort);
+
+        // when
+        communicator.releasePortForwarding(localPort);
+
+        // then
+        verify(sessionMock).delPortForwardingL(localPort);
+    }
+
+    @Test
+    public void startPortForwardingShouldCacheListedForwardablePortsAndInvalidateThemOnGearStateInvalidation() throws IOException, JSchException {
+        // given
+        ForwardablePortCache forwardablePortCacheMock = mock(ForwardablePortCache.class);
+        communicator.setForwardablePortCache(forwardablePortCacheMock);
+        mockConnectToOpenshift();
+        IApplication applicationMock = mock(IApplication.class);
+        when(applicationMock.getSshUrl()).thenReturn(SSH_URL);
+        mockGetApplicationFor(applicationMock);
+        mockExecuteRhcListPortCommand(createValidOutputline("portserviceName", "host", "1234"));
+        when(sessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenReturn(987654);
+        final int localPort = communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, "portserviceName connection url", null);
+
+        // when
+        communicator.invalidateGearState(localPort);
+
+        // then
+        verify(forwardablePortCacheMock).put(eq(SSH_URL), any(ForwardablePorts.class));
+        verify(forwardablePortCacheMock).invalidate(SSH_URL);
+    }
+
+    @Test
+    public void openGearConnectionWithRestWakeUpStrategyShouldWakeUpThroughGearWakerInsteadOfSsh() throws IOException, JSchException {
+        // given
+        GearWaker gearWakerMock = mock(GearWaker.class);
+        communicator.setGearWaker(gearWakerMock);
+        mockConnectToOpenshift();
+        IApplication applicationMock = mock(IApplication.class);
+        mockGetApplicationFor(applicationMock);
+        ChannelExec channelMock = mock(ChannelExec.class);
+        when(sessionConnectorMock.getAndConnectSession(anyString(), anyString())).thenReturn(sessionMock);
+        when(sessionMock.openChannel(anyString())).thenReturn(channelMock);
+        when(channelMock.getInputStream()).thenReturn(new ByteArrayInputStream(createValidOutputline("portserviceName", "host", "1234").getBytes()));
+
+        // when
+        final GearConnection gearConnection = communicator.openGearConnection(connection, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.REST, null);
+
+        // then
+        verify(gearWakerMock).wakeUp(applicationMock, WakeUpStrategy.REST);
+        verify(channelMock).setCommand(OpenshiftCommunicationHandler.RHC_LIST_PORT_COMMAND);
+        verify(channelMock, never()).setCommand(contains(OpenshiftCommunicationHandler.WAKE_UP_GEAR_COMMAND));
+        assertEquals(1, gearConnection.getForwardablePorts().getPorts().size());
+    }
+
+    @Test
+    public void openGearConnectionShouldReleaseSessionWhenWakeUpFails() throws IOException, JSchException {
+        // given
+        GearWaker gearWakerMock = mock(GearWaker.class);
+        doThrow(new RuntimeException("not ready")).when(gearWakerMock).wakeUp(any(IApplication.class), eq(WakeUpStrategy.HTTP));
+        communicator.setGearWaker(gearWakerMock);
+        mockConnectToOpenshift();
+        mockGetApplication();
+        mockExecuteRhcListPortCommand(createValidOutputline("portserviceName", "host", "1234"));
+
+        // when
+        try {
+            communicator.openGearConnection(connection, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.HTTP, null);
+            fail("Failing wake up should throw exception");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // then
+        verify(sessionConnectorMock).releaseSession(sessionMock);
+    }
+
+    @Test
+    public void openGearConnectionWithConnectionUrlHintShouldStopReadingPortsAtMatchingPort() throws IOException, JSchException {
+        // given
+        mockConnectToOpenshift();
+        mockGetApplication();
+        mockExecuteRhcListPortCommand(createValidOutputline("other", "host", "1111"), createValidOutputline("portserviceName", "host", "1234"), createValidOutputline("third", "host", "3333"));
+
+        // when
+        final GearConnection gearConnection = communicator.openGearConnection(connection, APPLICATION_NAME, DOMAIN_NAME, null, WakeUpStrategy.SSH, "portserviceName connection url");
+
+        // then
+        assertFalse(gearConnection.getForwardablePorts().isComplete());
+        assertEquals(2, gearConnection.getForwardablePorts().getPorts().size());
+        assertNull(gearConnection.getForwardablePorts().findMatching("third connection url"));
+    }
+
+    @Test
+    public void startPortForwardingShouldNotExecuteRhcListPortsCommandWhenForwardablePortsAreCached() throws IOException, JSchException {
+        // given
+        ForwardablePortCache forwardablePortCacheMock = mock(ForwardablePortCache.class);
+        when(forwardablePortCacheMock.get(anyString())).thenReturn(new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine(createValidOutputline("portserviceName", "host", "1234"))), true));
+        communicator.setForwardablePortCache(forwardablePortCacheMock);
+        mockConnectToOpenshift();
+        mockGetApplication();
+        ChannelExec channelMock = mock(ChannelExec.class);
+        when(sessionConnectorMock.getAndConnectSession(anyString(), anyString())).thenReturn(sessionMock);
+        when(sessionMock.openChannel(anyString())).thenReturn(channelMock);
+        when(channelMock.getInputStream()).thenReturn(new ByteArrayInputStream("".getBytes()));
+        when(sessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenReturn(987654);
+
+        // when
+        final int localPort = communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, "portserviceName connection url", null);
+
+        // then
+        assertEquals(987654, localPort);
+        verify(channelMock, never()).setCommand(OpenshiftCommunicationHandler.RHC_LIST_PORT_COMMAND);
+        verify(sessionMock).setPortForwardingL(anyInt(), eq("host"), eq(1234));
+    }
+
+    @Test
+    public void openDirectChannelTargetShouldTargetDatabasePortOnBorrowedSession() throws JSchException {
+        // given
+        final GearConnection gearConnection = new GearConnection(SSH_URL, "keyPath", sessionMock, new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine(createValidOutputline("portserviceName", "host", "1234"))), true));
+        final Session channelSessionMock = mock(Session.class);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, "keyPath")).thenReturn(channelSessionMock);
+
+        // when
+        final DirectChannelTarget target = communicator.openDirectChannelTarget(gearConnection, "portserviceName connection url");
+
+        // then
+        assertSame(channelSessionMock, target.getSession());
+        assertEquals(SSH_URL, target.getSshUrl());
+        assertEquals("host", target.getRemoteHost());
+        assertEquals(1234, target.getRemotePort());
+        assertNotNull(new ChannelSocketFactory(target.getKey()));
+        verify(sessionMock, never()).setPortForwardingL(anyInt(), anyString(), anyInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseDirectChannelTargetShouldUnregisterTargetAndReleaseSession() {
+        // given
+        final GearConnection gearConnection = new GearConnection(SSH_URL, "keyPath", sessionMock, new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine(createValidOutputline("portserviceName", "host", "1234"))), true));
+        final Session channelSessionMock = mock(Session.class);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, "keyPath")).thenReturn(channelSessionMock);
+        final DirectChannelTarget target = communicator.openDirectChannelTarget(gearConnection, "portserviceName connection url");
+
+        // when
+        communicator.releaseDirectChannelTarget(target);
+
+        // then
+        verify(sessionConnectorMock).releaseSession(channelSessionMock);
+        new ChannelSocketFactory(target.getKey());
+    }
+
+    @Test
+    public void openDirectChannelTargetShouldUseSessionOfTrafficClass() {
+        // given
+        final GearConnection gearConnection = new GearConnection(SSH_URL, "keyPath", sessionMock, new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine(createValidOutputline("portserviceName", "host", "1234"))), true));
+        final Session bulkSessionMock = mock(Session.class);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, "keyPath", TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK), 0)).thenReturn(bulkSessionMock);
+
+        // when
+        final DirectChannelTarget target = communicator.openDirectChannelTarget(gearConnection, "portserviceName connection url", TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK));
+
+        // then
+        assertSame(bulkSessionMock, target.getSession());
+        verify(sessionConnectorMock, never()).getAndConnectSession(SSH_URL, "keyPath");
+        communicator.releaseDirectChannelTarget(target);
+    }
+
+    @Test
+    public void openDirectChannelTargetShouldNotRegisterTunnel() throws JSchException {
+        // given
+        final GearConnection gearConnection = new GearConnection(SSH_URL, "keyPath", sessionMock, new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine(createValidOutputline("portserviceName", "host", "1234"))), true));
+        final Session channelSessionMock = mock(Session.class);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, "keyPath")).thenReturn(channelSessionMock);
+
+        // when
+        final DirectChannelTarget target = communicator.openDirectChannelTarget(gearConnection, "portserviceName connection url");
+
+        // then
+        assertTrue(communicator.getTunneledGears().isEmpty());
+        verify(channelSessionMock, never()).setPortForwardingL(anyInt(), anyString(), anyInt());
+        communicator.releaseDirectChannelTarget(target);
+    }
+
+    @Test
+    public void openDirectChannelTargetShouldBorrowSessionAgainAfterSessionWasLost() {
+        // given
+        final GearConnection gearConnection = new GearConnection(SSH_URL, "keyPath", sessionMock, new ForwardablePorts(Collections.singletonList(ForwardablePort.createForValidRhcListPortsOutputLine(createValidOutputline("portserviceName", "host", "1234"))), true));
+        final Session lostSessionMock = mock(Session.class);
+        final Session reconnectedSessionMock = mock(Session.class);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, "keyPath")).thenReturn(lostSessionMock, reconnectedSessionMock);
+        final DirectChannelTarget lostTarget = communicator.openDirectChannelTarget(gearConnection, "portserviceName connection url");
+        communicator.releaseDirectChannelTarget(lostTarget);
+
+        // when
+        final DirectChannelTarget target = communicator.openDirectChannelTarget(gearConnection, "portserviceName connection url");
+
+        // then
+        assertSame(reconnectedSessionMock, target.getSession());
+        verify(sessionConnectorMock).releaseSession(lostSessionMock);
+        communicator.releaseDirectChannelTarget(target);
     }
 
-    private void connectAndStartPortForwarding() throws IOException, JSchException {
+    private int connectAndStartPortForwarding() throws IOException, JSchException {
         mockConnectToOpenshift();
         mockGetApplication();
         when(sessionConnectorMock.getAndConnectSession(anyString(), anyString())).thenReturn(sessionMock);
@@ -664,7 +1046,7 @@ public class OpenshiftCommunicationHandlerTest {
         int localPortReturnedByPortForwardingL = 987654;
         when(sessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenReturn(localPortReturnedByPortForwardingL);
 
-        communicator.startPortForwarding(APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
+        return communicator.startPortForwarding(connection, APPLICATION_NAME, DOMAIN_NAME, connectionUrl, null);
     }
 
     private class InputStreamAnswer implements Answer<InputStream> {
@@ -680,7 +1062,10 @@ public class OpenshiftCommunicationHandlerTest {
         }
 
         private String createOutputLine(String[] rhcListPortOutputLines) {
-            String rhcListPortOutputLine = "";
+            // output of the batched wake-up and rhc-list-ports command
+            String rhcListPortOutputLine = RemoteCommandBatch.SECTION_MARKER_PREFIX + OpenshiftCommunicationHandler.WAKE_UP_GEAR_SECTION + COMMANDLINE_NEWLINE_CHAR
+                    + RemoteCommandBatch.EXIT_STATUS_MARKER_PREFIX + "0" + COMMANDLINE_NEWLINE_CHAR
+                    + RemoteCommandBatch.SECTION_MARKER_PREFIX + OpenshiftCommunicationHandler.RHC_LIST_PORTS_SECTION + COMMANDLINE_NEWLINE_CHAR;
             for (String line : rhcListPortOutputLines) {
                 rhcListPortOutputLine += line + COMMANDLINE_NEWLINE_CHAR;
             }
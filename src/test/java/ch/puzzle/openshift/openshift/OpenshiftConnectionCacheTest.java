@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.openshift.client.IOpenShiftConnection;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OpenshiftConnectionCacheTest {
+
+    private static final long IDLE_TIMEOUT = 1_000;
+    private static final String SERVER = "server";
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+
+    private TestOpenshiftConnectionCache cache;
+
+    @Mock
+    private IOpenShiftConnection connectionMock;
+
+    @Before
+    public void setUp() {
+        cache = new TestOpenshiftConnectionCache(IDLE_TIMEOUT);
+    }
+
+    @Test
+    public void getShouldReturnCachedConnectionForSameCredentials() {
+        // given
+        cache.put(SERVER, USER, PASSWORD, connectionMock);
+
+        // when
+        final IOpenShiftConnection connection = cache.get(SERVER, USER, PASSWORD);
+
+        // then
+        assertSame(connectionMock, connection);
+    }
+
+    @Test
+    public void getShouldReturnNullForDifferentPassword() {
+        // given
+        cache.put(SERVER, USER, PASSWORD, connectionMock);
+
+        // when
+        final IOpenShiftConnection connection = cache.get(SERVER, USER, "otherPassword");
+
+        // then
+        assertNull(connection);
+    }
+
+    @Test
+    public void getShouldReturnNullWhenConnectionWasIdleLongerThanTimeout() {
+        // given
+        cache.put(SERVER, USER, PASSWORD, connectionMock);
+        cache.now += IDLE_TIMEOUT;
+
+        // when
+        final IOpenShiftConnection connection = cache.get(SERVER, USER, PASSWORD);
+
+        // then
+        assertNull(connection);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void getShouldExtendIdleTimeoutOnAccess() {
+        // given
+        cache.put(SERVER, USER, PASSWORD, connectionMock);
+        cache.now += IDLE_TIMEOUT - 1;
+        cache.get(SERVER, USER, PASSWORD);
+        cache.now += IDLE_TIMEOUT - 1;
+
+        // when
+        final IOpenShiftConnection connection = cache.get(SERVER, USER, PASSWORD);
+
+        // then
+        assertSame(connectionMock, connection);
+    }
+
+    @Test
+    public void invalidateShouldRemoveConnection() {
+        // given
+        cache.put(SERVER, USER, PASSWORD, connectionMock);
+
+        // when
+        cache.invalidate(connectionMock);
+
+        // then
+        assertNull(cache.get(SERVER, USER, PASSWORD));
+    }
+
+    @Test
+    public void hashPasswordShouldNotReturnPlainPassword() {
+        // when
+        final String hash = OpenshiftConnectionCache.hashPassword(PASSWORD);
+
+        // then
+        assertFalse(hash.contains(PASSWORD));
+        assertEquals(hash, OpenshiftConnectionCache.hashPassword(PASSWORD));
+    }
+
+    private static class TestOpenshiftConnectionCache extends OpenshiftConnectionCache {
+        private long now = 0;
+
+        private TestOpenshiftConnectionCache(long idleTimeoutInMillis) {
+            super(idleTimeoutInMillis);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
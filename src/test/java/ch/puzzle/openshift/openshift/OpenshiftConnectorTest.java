@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.openshift.client.IOpenShiftConnection;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OpenshiftConnectorTest {
+
+    private static final String SERVER = "server";
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+
+    private OpenshiftConnector connector;
+
+    @Mock
+    private IOpenShiftConnection connectionMock;
+
+    @Before
+    public void setUp() {
+        connector = spy(new OpenshiftConnector());
+        connector.setConnectionCache(new OpenshiftConnectionCache(60_000));
+        doReturn(connectionMock).when(connector).createConnection(SERVER, USER, PASSWORD);
+    }
+
+    @Test
+    public void getConnectionShouldReuseConnectionForSameServerAndCredentials() {
+        // given
+        connector.getConnection(SERVER, USER, PASSWORD);
+
+        // when
+        final IOpenShiftConnection connection = connector.getConnection(SERVER, USER, PASSWORD);
+
+        // then
+        assertSame(connectionMock, connection);
+        verify(connector, times(1)).createConnection(SERVER, USER, PASSWORD);
+    }
+
+    @Test
+    public void getConnectionShouldCreateNewConnectionAfterInvalidation() {
+        // given
+        connector.getConnection(SERVER, USER, PASSWORD);
+        connector.invalidateConnection(connectionMock);
+
+        // when
+        connector.getConnection(SERVER, USER, PASSWORD);
+
+        // then
+        verify(connector, times(2)).createConnection(SERVER, USER, PASSWORD);
+    }
+}
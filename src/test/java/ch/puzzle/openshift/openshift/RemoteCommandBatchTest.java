@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RemoteCommandBatchTest {
+
+    private RemoteCommandBatch batch = new RemoteCommandBatch().add("first", "command1").add("second", "command2 --arg");
+
+    @Test
+    public void toCommandShouldFrameEachCommandWithSectionAndExitStatusMarker() {
+        // when
+        final String command = batch.toCommand();
+
+        // then
+        assertEquals("echo '#openshift-proxy-section:first'; command1; echo \"#openshift-proxy-exit-status:$?\"; "
+                + "echo '#openshift-proxy-section:second'; command2 --arg; echo \"#openshift-proxy-exit-status:$?\"", command);
+    }
+
+    @Test
+    public void outputParserShouldPassSectionOutputToSectionHandlerAndRecordExitStatus() {
+        // given
+        final List<String> secondSectionLines = new ArrayList<>();
+        final RemoteCommandBatch.OutputParser parser = batch.createOutputParser(Collections.singletonMap("second", collectingHandler(secondSectionLines, null)));
+
+        // when
+        handleLines(parser,
+                "#openshift-proxy-section:first",
+                "ignored",
+                "#openshift-proxy-exit-status:0",
+                "#openshift-proxy-section:second\r",
+                "line 1",
+                "line 2",
+                "#openshift-proxy-exit-status:2");
+
+        // then
+        assertEquals(Arrays.asList("line 1", "line 2"), secondSectionLines);
+        assertTrue(parser.isSuccessful("first"));
+        assertEquals(Integer.valueOf(2), parser.getExitStatus("second"));
+        assertFalse(parser.isSuccessful("second"));
+    }
+
+    @Test
+    public void outputParserShouldStopWhenSectionHandlerNeedsNoMoreOutput() {
+        // given
+        final List<String> secondSectionLines = new ArrayList<>();
+        final RemoteCommandBatch.OutputParser parser = batch.createOutputParser(Collections.singletonMap("second", collectingHandler(secondSectionLines, "line 1")));
+
+        // when
+        parser.handleLine("#openshift-proxy-section:second");
+        final boolean continueReading = parser.handleLine("line 1");
+
+        // then
+        assertFalse(continueReading);
+        assertTrue(parser.hasStarted("second"));
+        assertFalse(parser.hasStarted("first"));
+        assertNull(parser.getExitStatus("second"));
+    }
+
+    private void handleLines(RemoteCommandBatch.OutputParser parser, String... lines) {
+        for (String line : lines) {
+            assertTrue(parser.handleLine(line));
+        }
+    }
+
+    private OutputLineHandler collectingHandler(final List<String> lines, final String lastRequiredLine) {
+        return new OutputLineHandler() {
+            @Override
+            public boolean handleLine(String line) {
+                lines.add(line);
+                return !line.equals(lastRequiredLine);
+            }
+        };
+    }
+}
@@ -19,14 +19,20 @@ package ch.puzzle.openshift.openshift;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SocketFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -94,6 +100,33 @@ public class SessionConnectorTest {
         connector.getAndConnectSession(sshUrl, keyFile);
     }
 
+    @Test
+    public void getAndConnectSessionShouldConfigureServerAliveMessages() throws JSchException {
+        // given
+        connector = new SessionConnector(0, 5_000, 2);
+        connector.setJsch(jSchMock);
+
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        verify(sessionMock).setServerAliveInterval(5_000);
+        verify(sessionMock).setServerAliveCountMax(2);
+    }
+
+    @Test
+    public void getAndConnectSessionShouldNotConfigureServerAliveMessagesWhenDisabled() throws JSchException {
+        // given
+        connector = new SessionConnector(0, 0, 2);
+        connector.setJsch(jSchMock);
+
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        verify(sessionMock, never()).setServerAliveInterval(anyInt());
+    }
+
     @Test
     public void getAndConnectSessionShouldGetSessionForUserAndHost() throws JSchException {
         // given
@@ -204,4 +237,298 @@ public class SessionConnectorTest {
         verify(jSchMock).getSession(USER, HOST);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getAndConnectSessionShouldReuseConnectedPooledSession() throws JSchException {
+        // given
+        String sshUrl = createSshUrl(USER, HOST);
+        when(sessionMock.isConnected()).thenReturn(true);
+        final Session firstSession = connector.getAndConnectSession(sshUrl, null);
+
+        // when
+        final Session secondSession = connector.getAndConnectSession(sshUrl, null);
+
+        // then
+        assertSame(firstSession, secondSession);
+        assertEquals(2, connector.getReferenceCount(sessionMock));
+        verify(jSchMock, times(1)).getSession(USER, HOST);
+    }
+
+    @Test
+    public void getAndConnectSessionShouldNotReusePooledSessionForOtherIdentity() throws JSchException {
+        // given
+        String sshUrl = createSshUrl(USER, HOST);
+        when(sessionMock.isConnected()).thenReturn(true);
+        connector.getAndConnectSession(sshUrl, "keyFile");
+
+        // when
+        connector.getAndConnectSession(sshUrl, "otherKeyFile");
+
+        // then
+        verify(jSchMock, times(2)).getSession(USER, HOST);
+    }
+
+    @Test
+    public void getAndConnectSessionShouldOpenNewSessionWhenPooledSessionIsDisconnected() throws JSchException {
+        // given
+        String sshUrl = createSshUrl(USER, HOST);
+        when(sessionMock.isConnected()).thenReturn(false);
+        connector.getAndConnectSession(sshUrl, null);
+
+        // when
+        connector.getAndConnectSession(sshUrl, null);
+
+        // then
+        verify(jSchMock, times(2)).getSession(USER, HOST);
+    }
+
+    @Test
+    public void releaseSessionShouldNotDisconnectSessionWhileStillBorrowed() throws JSchException {
+        // given
+        connector = createConnectorWithoutLinger();
+        String sshUrl = createSshUrl(USER, HOST);
+        when(sessionMock.isConnected()).thenReturn(true);
+        connector.getAndConnectSession(sshUrl, null);
+        connector.getAndConnectSession(sshUrl, null);
+
+        // when
+        connector.releaseSession(sessionMock);
+
+        // then
+        verify(sessionMock, never()).disconnect();
+        assertEquals(1, connector.getReferenceCount(sessionMock));
+    }
+
+    @Test
+    public void releaseSessionShouldDisconnectSessionWhenLastUserReleasesIt() throws JSchException {
+        // given
+        connector = createConnectorWithoutLinger();
+        String sshUrl = createSshUrl(USER, HOST);
+        when(sessionMock.isConnected()).thenReturn(true);
+        connector.getAndConnectSession(sshUrl, null);
+
+        // when
+        connector.releaseSession(sessionMock);
+
+        // then
+        verify(sessionMock).disconnect();
+    }
+
+    @Test
+    public void releaseSessionShouldKeepSessionDuringLingerTimeout() throws JSchException {
+        // given
+        connector = new SessionConnector(60_000);
+        connector.setJsch(jSchMock);
+        String sshUrl = createSshUrl(USER, HOST);
+        when(sessionMock.isConnected()).thenReturn(true);
+        connector.getAndConnectSession(sshUrl, null);
+
+        // when
+        connector.releaseSession(sessionMock);
+        final Session borrowedAgain = connector.getAndConnectSession(sshUrl, null);
+
+        // then
+        verify(sessionMock, never()).disconnect();
+        assertSame(sessionMock, borrowedAgain);
+        verify(jSchMock, times(1)).getSession(USER, HOST);
+    }
+
+    private SessionConnector createConnectorWithoutLinger() {
+        SessionConnector connector = new SessionConnector(0);
+        connector.setJsch(jSchMock);
+        return connector;
+    }
+
+    @Test
+    public void getAndConnectSessionShouldPoolStripesAsSeparateSessions() throws JSchException {
+        // given
+        Session stripeSessionMock = mock(Session.class);
+        when(jSchMock.getSession(USER, HOST)).thenReturn(sessionMock, stripeSessionMock);
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(stripeSessionMock.isConnected()).thenReturn(true);
+        final String sshUrl = createSshUrl(USER, HOST);
+
+        // when
+        final Session firstStripe = connector.getAndConnectSession(sshUrl, "keyFile");
+        final Session secondStripe = connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT, 1);
+        final Session pooledSecondStripe = connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT, 1);
+
+        // then
+        assertSame(sessionMock, firstStripe);
+        assertSame(stripeSessionMock, secondStripe);
+        assertSame(stripeSessionMock, pooledSecondStripe);
+        assertSame(firstStripe, connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT, 0));
+        verify(jSchMock, times(2)).getSession(USER, HOST);
+    }
+
+    @Test
+    public void getAndConnectSessionShouldPoolTrafficClassesAsSeparateSessions() throws JSchException {
+        // given
+        Session bulkSessionMock = mock(Session.class);
+        when(jSchMock.getSession(USER, HOST)).thenReturn(sessionMock, bulkSessionMock);
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(bulkSessionMock.isConnected()).thenReturn(true);
+        final String sshUrl = createSshUrl(USER, HOST);
+
+        // when
+        final Session interactiveSession = connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT, 0);
+        final Session bulkSession = connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK), 0);
+
+        // then
+        assertSame(sessionMock, interactiveSession);
+        assertSame(bulkSessionMock, bulkSession);
+        assertSame(bulkSessionMock, connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK), 0));
+    }
+
+    @Test
+    public void getAndConnectSessionShouldPoolTunedSessionsSeparatelyAndApplyTheirTuning() throws JSchException {
+        // given
+        Session tunedSessionMock = mock(Session.class);
+        when(jSchMock.getSession(USER, HOST)).thenReturn(sessionMock, tunedSessionMock);
+        when(sessionMock.isConnected()).thenReturn(true);
+        when(tunedSessionMock.isConnected()).thenReturn(true);
+        final String sshUrl = createSshUrl(USER, HOST);
+        final SshTuning tuning = new SshTuning(SshTuning.AUTO_WINDOW_SIZE, 32768, true, SshTuning.DEFAULT_SIZE, 1048576);
+
+        // when
+        final Session defaultSession = connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT, 0);
+        final Session tunedSession = connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT.withTuning(tuning), 0);
+
+        // then
+        assertSame(sessionMock, defaultSession);
+        assertSame(tunedSessionMock, tunedSession);
+        assertSame(tunedSessionMock, connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT.withTuning(tuning), 0));
+        verify(sessionMock, never()).setSocketFactory(any(SocketFactory.class));
+        verify(tunedSessionMock).setSocketFactory(any(TunedSocketFactory.class));
+        assertSame(SshTuning.DEFAULT, ChannelTuner.of(sessionMock).getTuning());
+        assertEquals(tuning, ChannelTuner.of(tunedSessionMock).getTuning());
+    }
+
+    @Test
+    public void getAndConnectSessionShouldNotCompressByDefault() throws JSchException {
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        verify(sessionMock, never()).setConfig(eq("compression.s2c"), anyString());
+        assertTrue(connector.getCompressionStatistics().isEmpty());
+    }
+
+    @Test
+    public void getAndConnectSessionShouldCompressWhenCompressionIsOn() throws JSchException {
+        // given
+        connector.setCompressionMode(CompressionMode.ON);
+
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        verify(sessionMock).setConfig("zlib@openssh.com", ZlibCompression.class.getName());
+        verify(sessionMock).setConfig("compression.s2c", SessionConnector.COMPRESSION_METHODS);
+        verify(sessionMock).setConfig("compression.c2s", SessionConnector.COMPRESSION_METHODS);
+    }
+
+    @Test
+    public void adaptiveCompressionShouldRekeySessionOnSlowLink() throws Exception {
+        // given
+        connector.setCompressionMode(CompressionMode.ADAPTIVE);
+        final Session session = connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+        verify(sessionMock, never()).setConfig(eq("compression.s2c"), anyString());
+
+        // when: 100ms round trip, 1 MiB/s
+        recordLink(session, TimeUnit.MILLISECONDS.toNanos(100), 1024 * 1024);
+
+        // then
+        verify(sessionMock).setConfig("compression.s2c", SessionConnector.COMPRESSION_METHODS);
+        verify(sessionMock).rekey();
+    }
+
+    @Test
+    public void adaptiveCompressionShouldNotCompressFastLink() throws Exception {
+        // given
+        connector.setCompressionMode(CompressionMode.ADAPTIVE);
+        final Session session = connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // when: local round trip, 100 MiB/s
+        recordLink(session, TimeUnit.MICROSECONDS.toNanos(200), 100 * 1024 * 1024);
+
+        // then
+        verify(sessionMock, never()).setConfig(eq("compression.s2c"), anyString());
+        verify(sessionMock, never()).rekey();
+    }
+
+    @Test
+    public void adaptiveCompressionShouldCompressNewSessionsToSlowGear() throws Exception {
+        // given
+        Session bulkSessionMock = mock(Session.class);
+        when(jSchMock.getSession(USER, HOST)).thenReturn(sessionMock, bulkSessionMock);
+        connector.setCompressionMode(CompressionMode.ADAPTIVE);
+        final String sshUrl = createSshUrl(USER, HOST);
+        final Session session = connector.getAndConnectSession(sshUrl, "keyFile");
+        recordLink(session, TimeUnit.MILLISECONDS.toNanos(100), 1024 * 1024);
+
+        // when
+        connector.getAndConnectSession(sshUrl, "keyFile", TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK), 0);
+
+        // then
+        verify(bulkSessionMock).setConfig("compression.s2c", SessionConnector.COMPRESSION_METHODS);
+        verify(bulkSessionMock, never()).rekey();
+    }
+
+    @Test
+    public void getAndConnectSessionShouldKeepJschAlgorithmsByDefault() throws JSchException {
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        verify(sessionMock, never()).setConfig(eq("cipher.c2s"), anyString());
+        verify(sessionMock, never()).setConfig(eq("mac.c2s"), anyString());
+        verify(sessionMock, never()).setConfig(eq("kex"), anyString());
+    }
+
+    @Test
+    public void getAndConnectSessionShouldOfferAlgorithmsOfProfileBeforeConnecting() throws JSchException {
+        // given
+        connector.setAlgorithms(SshAlgorithms.THROUGHPUT);
+
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        InOrder inOrder = inOrder(sessionMock);
+        inOrder.verify(sessionMock).setConfig("cipher.c2s", SshAlgorithms.THROUGHPUT.getCiphers());
+        inOrder.verify(sessionMock).setConfig("cipher.s2c", SshAlgorithms.THROUGHPUT.getCiphers());
+        inOrder.verify(sessionMock).setConfig("mac.c2s", SshAlgorithms.THROUGHPUT.getMacs());
+        inOrder.verify(sessionMock).setConfig("mac.s2c", SshAlgorithms.THROUGHPUT.getMacs());
+        inOrder.verify(sessionMock).setConfig("kex", SshAlgorithms.THROUGHPUT.getKeyExchanges());
+        inOrder.verify(sessionMock).connect();
+    }
+
+    @Test
+    public void sessionConnectorShouldReadAlgorithmsFromSystemProperties() throws JSchException {
+        // given
+        System.setProperty(SessionConnector.ALGORITHMS_SYSTEM_PROPERTY, "throughput");
+        System.setProperty(SessionConnector.CIPHERS_SYSTEM_PROPERTY, "aes256-ctr");
+        try {
+            connector = new SessionConnector();
+        } finally {
+            System.clearProperty(SessionConnector.ALGORITHMS_SYSTEM_PROPERTY);
+            System.clearProperty(SessionConnector.CIPHERS_SYSTEM_PROPERTY);
+        }
+        connector.setJsch(jSchMock);
+
+        // when
+        connector.getAndConnectSession(createSshUrl(USER, HOST), "keyFile");
+
+        // then
+        verify(sessionMock).setConfig("cipher.c2s", "aes256-ctr");
+        verify(sessionMock).setConfig("mac.c2s", SshAlgorithms.THROUGHPUT.getMacs());
+        verify(sessionMock).setConfig("kex", SshAlgorithms.THROUGHPUT.getKeyExchanges());
+    }
+
+    private void recordLink(Session session, long roundTripInNanos, long throughputInBytesPerSecond) {
+        final ChannelTuner tuner = ChannelTuner.of(session);
+        tuner.recordRoundTrip(roundTripInNanos);
+        final long bytes = 10 * ChannelTuner.JSCH_WINDOW_SIZE;
+        tuner.recordTransfer(bytes, bytes * TimeUnit.SECONDS.toNanos(1) / throughputInBytesPerSecond);
+    }
+}
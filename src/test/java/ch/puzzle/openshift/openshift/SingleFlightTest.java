@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void executeShouldReturnResultOfCall() {
+        // when
+        final String result = singleFlight.execute("key", createCall("result", new AtomicInteger(), null));
+
+        // then
+        assertEquals("result", result);
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void executeShouldRunCallOnlyOnceForConcurrentCallersWithSameKey() throws Exception {
+        // given
+        final int numberOfCallers = 5;
+        final AtomicInteger invocations = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfCallers);
+
+        // when
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < numberOfCallers; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return singleFlight.execute("key", createCall("result", invocations, release));
+                }
+            }));
+        }
+        while (singleFlight.getInFlightCount() == 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        release.countDown();
+
+        // then
+        for (Future<String> result : results) {
+            assertEquals("result", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, invocations.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void executeShouldRunCallsForDifferentKeysIndependently() {
+        // given
+        final AtomicInteger invocations = new AtomicInteger();
+
+        // when
+        singleFlight.execute("first", createCall("result", invocations, null));
+        singleFlight.execute("second", createCall("result", invocations, null));
+
+        // then
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void executeShouldRethrowRuntimeExceptionOfCall() {
+        // given
+        final IllegalStateException failure = new IllegalStateException("failure");
+
+        // when
+        try {
+            singleFlight.execute("key", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw failure;
+                }
+            });
+            fail("Exception of call should be rethrown");
+        } catch (IllegalStateException e) {
+            // then
+            assertSame(failure, e);
+        }
+    }
+
+    private Callable<String> createCall(final String result, final AtomicInteger invocations, final CountDownLatch release) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                invocations.incrementAndGet();
+                if (release != null) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Session;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class SshAlgorithmsTest {
+
+    @Test
+    public void forProfileShouldReturnProfileIgnoringCase() {
+        // when / then
+        assertSame(SshAlgorithms.DEFAULT, SshAlgorithms.forProfile("default"));
+        assertSame(SshAlgorithms.THROUGHPUT, SshAlgorithms.forProfile("Throughput"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void forProfileShouldThrowExceptionOnUnknownProfile() {
+        // when
+        SshAlgorithms.forProfile("fastest");
+    }
+
+    @Test
+    public void throughputProfileShouldNotOfferSlowCiphers() {
+        // when
+        final String ciphers = SshAlgorithms.THROUGHPUT.getCiphers();
+
+        // then
+        assertEquals("aes128-ctr", ciphers.split(",")[0]);
+        assertFalse(ciphers.contains("3des"));
+        assertFalse(ciphers.contains("blowfish"));
+    }
+
+    @Test
+    public void constructorShouldRemoveWhitespace() {
+        // when
+        final SshAlgorithms algorithms = new SshAlgorithms(" aes256-ctr, aes128-ctr ", null, null);
+
+        // then
+        assertEquals("aes256-ctr,aes128-ctr", algorithms.getCiphers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowExceptionOnUnsupportedAlgorithm() {
+        // when
+        new SshAlgorithms("aes128-ctr,chacha20-poly1305@openssh.com", null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowExceptionOnEmptyList() {
+        // when
+        new SshAlgorithms(null, " ", null);
+    }
+
+    @Test
+    public void overrideShouldReplaceOnlyGivenLists() {
+        // when
+        final SshAlgorithms algorithms = SshAlgorithms.THROUGHPUT.override(null, "hmac-sha2-256", null);
+
+        // then
+        assertEquals(SshAlgorithms.THROUGHPUT.getCiphers(), algorithms.getCiphers());
+        assertEquals("hmac-sha2-256", algorithms.getMacs());
+        assertEquals(SshAlgorithms.THROUGHPUT.getKeyExchanges(), algorithms.getKeyExchanges());
+    }
+
+    @Test
+    public void applyToShouldNotChangeSessionForDefault() {
+        // given
+        final Session session = mock(Session.class);
+
+        // when
+        SshAlgorithms.DEFAULT.applyTo(session);
+
+        // then
+        assertNull(SshAlgorithms.DEFAULT.getCiphers());
+        verifyZeroInteractions(session);
+    }
+
+    @Test
+    public void applyToShouldSetOnlyGivenLists() {
+        // given
+        final Session session = mock(Session.class);
+
+        // when
+        new SshAlgorithms(null, null, "diffie-hellman-group14-sha1").applyTo(session);
+
+        // then
+        verify(session).setConfig("kex", "diffie-hellman-group14-sha1");
+        verifyNoMoreInteractions(session);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TunnelHealthMonitorTest {
+
+    private static final int LOCAL_PORT = 45_000;
+
+    @Mock
+    private TunnelRegistry tunnelRegistryMock;
+
+    private TunnelHealthMonitor monitor;
+
+    @Before
+    public void setUp() {
+        monitor = new TunnelHealthMonitor(tunnelRegistryMock, 60_000, 1, 4);
+        monitor.start();
+    }
+
+    @After
+    public void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    public void startShouldRegisterMonitorAsTunnelStateListener() {
+        // then
+        verify(tunnelRegistryMock).addTunnelStateListener(monitor);
+    }
+
+    @Test
+    public void brokenTunnelShouldBeReestablished() {
+        // when
+        monitor.tunnelStateChanged("ssh://user@host", LOCAL_PORT, TunnelState.BROKEN);
+
+        // then
+        verify(tunnelRegistryMock, timeout(1_000)).reestablish(LOCAL_PORT);
+    }
+
+    @Test
+    public void failedReestablishShouldBeRetried() {
+        // given
+        doThrow(new RuntimeException("gear not reachable")).doThrow(new RuntimeException("gear not reachable")).doNothing()
+                .when(tunnelRegistryMock).reestablish(LOCAL_PORT);
+
+        // when
+        monitor.tunnelStateChanged("ssh://user@host", LOCAL_PORT, TunnelState.BROKEN);
+
+        // then
+        verify(tunnelRegistryMock, timeout(1_000).times(3)).reestablish(LOCAL_PORT);
+    }
+
+    @Test
+    public void stopShouldUnregisterMonitorAsTunnelStateListener() {
+        // when
+        monitor.stop();
+
+        // then
+        verify(tunnelRegistryMock).removeTunnelStateListener(monitor);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TunnelOptionsTest {
+
+    @Test
+    public void defaultShouldUseSingleInteractiveStripeWithDefaultTuning() {
+        // given
+        // when
+        final TunnelOptions options = TunnelOptions.DEFAULT;
+
+        // then
+        assertEquals(TrafficClass.INTERACTIVE, options.getTrafficClass());
+        assertEquals(1, options.getStripes());
+        assertEquals(StripingStrategy.LEAST_LOADED, options.getStripingStrategy());
+        assertEquals(SshTuning.DEFAULT, options.getTuning());
+    }
+
+    @Test
+    public void withShouldOnlyReplaceGivenOption() {
+        // given
+        // when
+        final TunnelOptions options = TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK).withStripes(4, StripingStrategy.ROUND_ROBIN);
+
+        // then
+        assertEquals(TrafficClass.BULK, options.getTrafficClass());
+        assertEquals(4, options.getStripes());
+        assertEquals(StripingStrategy.ROUND_ROBIN, options.getStripingStrategy());
+        assertEquals(SshTuning.DEFAULT, options.getTuning());
+        assertEquals(TrafficClass.INTERACTIVE, TunnelOptions.DEFAULT.getTrafficClass());
+    }
+
+    @Test
+    public void equalOptionsShouldBeEqual() {
+        // given
+        final TunnelOptions options = new TunnelOptions(TrafficClass.INTERACTIVE, 1, StripingStrategy.LEAST_LOADED, SshTuning.DEFAULT);
+
+        // when
+        // then
+        assertEquals(TunnelOptions.DEFAULT, options);
+        assertEquals(TunnelOptions.DEFAULT.hashCode(), options.hashCode());
+        assertFalse(TunnelOptions.DEFAULT.equals(options.withTrafficClass(TrafficClass.BULK)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withStripesShouldRejectZeroStripes() {
+        // given
+        // when
+        TunnelOptions.DEFAULT.withStripes(0, StripingStrategy.ROUND_ROBIN);
+
+        // then throw exception
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void withTrafficClassShouldRejectNull() {
+        // given
+        // when
+        TunnelOptions.DEFAULT.withTrafficClass(null);
+
+        // then throw exception
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TunnelRegistryTest {
+
+    private static final String SSH_URL = "ssh://user@host";
+    private static final String KEY_PATH = "keyPath";
+    private static final int LOCAL_PORT = 45_000;
+
+    @Mock
+    private SessionConnector sessionConnectorMock;
+
+    @Mock
+    private Session sessionMock;
+
+    @Mock
+    private Session otherSessionMock;
+
+    @Mock
+    private TunnelStateListener listenerMock;
+
+    private TunnelRegistry registry;
+
+    @Before
+    public void setUp() throws JSchException {
+        registry = new TunnelRegistry(sessionConnectorMock);
+        registry.addTunnelStateListener(listenerMock);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, KEY_PATH)).thenReturn(sessionMock, otherSessionMock);
+        mockForwarding(sessionMock);
+        mockForwarding(otherSessionMock);
+    }
+
+    private void mockForwarding(Session session) throws JSchException {
+        when(session.isConnected()).thenReturn(true);
+        when(session.setPortForwardingL(anyInt(), anyString(), anyInt())).thenReturn(LOCAL_PORT);
+        when(session.getPortForwardingL()).thenReturn(new String[]{LOCAL_PORT + ":dbhost:5432"});
+    }
+
+    private int acquire() {
+        return registry.acquire(SSH_URL, KEY_PATH, ForwardablePort.createForValidRhcListPortsOutputLine("postgresql -> dbhost:5432"));
+    }
+
+    @Test
+    public void acquireShouldPublishStartedTunnel() {
+        // when
+        final int localPort = acquire();
+
+        // then
+        assertEquals(TunnelState.STARTED, registry.getTunnelState(localPort));
+        verify(listenerMock).tunnelStateChanged(SSH_URL, LOCAL_PORT, TunnelState.STARTED);
+    }
+
+    @Test
+    public void checkTunnelsShouldMarkTunnelWithDisconnectedSessionBroken() {
+        // given
+        final int localPort = acquire();
+        when(sessionMock.isConnected()).thenReturn(false);
+
+        // when
+        registry.checkTunnels();
+
+        // then
+        assertEquals(TunnelState.BROKEN, registry.getTunnelState(localPort));
+        verify(listenerMock).tunnelStateChanged(SSH_URL, LOCAL_PORT, TunnelState.BROKEN);
+        verify(sessionConnectorMock).releaseSession(sessionMock);
+    }
+
+    @Test
+    public void checkTunnelsShouldKeepActiveTunnel() {
+        // given
+        final int localPort = acquire();
+
+        // when
+        registry.checkTunnels();
+
+        // then
+        assertEquals(TunnelState.STARTED, registry.getTunnelState(localPort));
+        verify(sessionConnectorMock, never()).releaseSession(any(Session.class));
+    }
+
+    @Test
+    public void acquireShouldRestartBrokenTunnelKeepingReferencesOfItsUsers() {
+        // given
+        final int localPort = acquire();
+        when(sessionMock.isConnected()).thenReturn(false);
+        registry.checkTunnels();
+
+        // when
+        final int restartedLocalPort = acquire();
+
+        // then
+        assertEquals(TunnelState.STARTED, registry.getTunnelState(restartedLocalPort));
+        assertEquals(2, registry.getReferenceCount(restartedLocalPort));
+        registry.release(localPort);
+        verify(sessionConnectorMock, never()).releaseSession(otherSessionMock);
+        registry.release(restartedLocalPort);
+        verify(sessionConnectorMock).releaseSession(otherSessionMock);
+        verify(listenerMock).tunnelStateChanged(SSH_URL, LOCAL_PORT, TunnelState.CLOSED);
+    }
+
+    @Test
+    public void releaseOfLastUserShouldCloseBrokenTunnel() {
+        // given
+        final int localPort = acquire();
+        when(sessionMock.isConnected()).thenReturn(false);
+        registry.checkTunnels();
+
+        // when
+        registry.release(localPort);
+
+        // then
+        assertEquals(TunnelState.CLOSED, registry.getTunnelState(localPort));
+        verify(listenerMock).tunnelStateChanged(SSH_URL, LOCAL_PORT, TunnelState.CLOSED);
+    }
+
+    @Test
+    public void reestablishShouldRestartBrokenTunnelOnSameLocalPort() throws JSchException {
+        // given
+        final int localPort = acquire();
+        when(sessionMock.isConnected()).thenReturn(false);
+        registry.checkTunnels();
+
+        // when
+        registry.reestablish(localPort);
+
+        // then
+        verify(otherSessionMock).setPortForwardingL(LOCAL_PORT, "dbhost", 5432);
+        assertEquals(TunnelState.STARTED, registry.getTunnelState(localPort));
+        assertEquals(1, registry.getReferenceCount(localPort));
+    }
+
+    @Test
+    public void reestablishShouldKeepTunnelBrokenWhenPortForwardingFails() throws JSchException {
+        // given
+        final int localPort = acquire();
+        when(sessionMock.isConnected()).thenReturn(false);
+        registry.checkTunnels();
+        when(otherSessionMock.setPortForwardingL(anyInt(), anyString(), anyInt())).thenThrow(new JSchException("connection refused"));
+
+        // when
+        try {
+            registry.reestablish(localPort);
+            fail("Failing port forwarding should throw exception");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // then
+        assertEquals(TunnelState.BROKEN, registry.getTunnelState(localPort));
+        verify(sessionConnectorMock).releaseSession(otherSessionMock);
+    }
+
+    @Test
+    public void reestablishShouldDoNothingForClosedTunnel() {
+        // given
+        final int localPort = acquire();
+        registry.release(localPort);
+
+        // when
+        registry.reestablish(localPort);
+
+        // then
+        verify(sessionConnectorMock, times(1)).getAndConnectSession(SSH_URL, KEY_PATH);
+    }
+
+    @Test
+    public void releaseOfLastUserShouldReturnLocalPortToAllocator() {
+        // given
+        final LocalPortAllocator localPortAllocator = new LocalPortAllocator(LOCAL_PORT + "-" + LOCAL_PORT, false);
+        registry = new TunnelRegistry(sessionConnectorMock, localPortAllocator);
+        final int localPort = acquire();
+
+        // when
+        registry.release(localPort);
+
+        // then
+        assertEquals(0, localPortAllocator.getAllocatedCount());
+    }
+
+    @Test
+    public void acquireShouldStartPortForwardingWithConfiguredPortForwarder() throws JSchException {
+        // given
+        PortForwarder portForwarderMock = mock(PortForwarder.class);
+        when(portForwarderMock.forward(eq(sessionMock), anyInt(), eq("dbhost"), eq(5432))).thenReturn(LOCAL_PORT);
+        registry = new TunnelRegistry(sessionConnectorMock, new LocalPortAllocator(), portForwarderMock);
+
+        // when
+        final int localPort = acquire();
+
+        // then
+        assertEquals(LOCAL_PORT, localPort);
+        verify(sessionMock, never()).setPortForwardingL(anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    public void closeAllShouldShutdownPortForwarder() throws JSchException {
+        // given
+        PortForwarder portForwarderMock = mock(PortForwarder.class);
+        when(portForwarderMock.forward(eq(sessionMock), anyInt(), eq("dbhost"), eq(5432))).thenReturn(LOCAL_PORT);
+        when(portForwarderMock.isForwarding(sessionMock, LOCAL_PORT, "dbhost", 5432)).thenReturn(true);
+        registry = new TunnelRegistry(sessionConnectorMock, new LocalPortAllocator(), portForwarderMock);
+        acquire();
+
+        // when
+        registry.closeAll();
+
+        // then
+        verify(portForwarderMock).stop(sessionMock, LOCAL_PORT);
+        verify(portForwarderMock).shutdown();
+    }
+
+    private Session mockStripedForwarding() throws JSchException {
+        Session stripeSessionMock = mock(Session.class);
+        when(stripeSessionMock.isConnected()).thenReturn(true);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, KEY_PATH, TunnelOptions.DEFAULT, 1)).thenReturn(stripeSessionMock);
+        PortForwarder portForwarderMock = mock(PortForwarder.class);
+        when(portForwarderMock.forward(eq(sessionMock), anyInt(), eq("dbhost"), eq(5432))).thenReturn(LOCAL_PORT);
+        when(portForwarderMock.forward(eq(stripeSessionMock), anyInt(), eq("dbhost"), eq(5432))).thenReturn(LOCAL_PORT + 1);
+        when(portForwarderMock.isForwarding(any(Session.class), anyInt(), anyString(), anyInt())).thenReturn(true);
+        registry = new TunnelRegistry(sessionConnectorMock, new LocalPortAllocator(), portForwarderMock);
+        return stripeSessionMock;
+    }
+
+    private int acquireStriped(StripingStrategy strategy) {
+        return registry.acquire(SSH_URL, KEY_PATH, ForwardablePort.createForValidRhcListPortsOutputLine("postgresql -> dbhost:5432"), TunnelOptions.DEFAULT.withStripes(2, strategy));
+    }
+
+    @Test
+    public void acquireWithRoundRobinStripingShouldUseStripesInTurn() throws JSchException {
+        // given
+        mockStripedForwarding();
+
+        // when
+        final int firstLocalPort = acquireStriped(StripingStrategy.ROUND_ROBIN);
+        final int secondLocalPort = acquireStriped(StripingStrategy.ROUND_ROBIN);
+        final int thirdLocalPort = acquireStriped(StripingStrategy.ROUND_ROBIN);
+
+        // then
+        assertEquals(LOCAL_PORT, firstLocalPort);
+        assertEquals(LOCAL_PORT + 1, secondLocalPort);
+        assertEquals(LOCAL_PORT, thirdLocalPort);
+        assertEquals(2, registry.getReferenceCount(LOCAL_PORT));
+        verify(sessionConnectorMock).getAndConnectSession(SSH_URL, KEY_PATH);
+        verify(sessionConnectorMock).getAndConnectSession(SSH_URL, KEY_PATH, TunnelOptions.DEFAULT, 1);
+    }
+
+    @Test
+    public void acquireWithLeastLoadedStripingShouldUseStripeWithFewestUsers() throws JSchException {
+        // given
+        mockStripedForwarding();
+        assertEquals(LOCAL_PORT, acquireStriped(StripingStrategy.LEAST_LOADED));
+        assertEquals(LOCAL_PORT + 1, acquireStriped(StripingStrategy.LEAST_LOADED));
+        assertEquals(LOCAL_PORT, acquireStriped(StripingStrategy.LEAST_LOADED));
+        assertEquals(LOCAL_PORT + 1, acquireStriped(StripingStrategy.LEAST_LOADED));
+        registry.release(LOCAL_PORT + 1);
+
+        // when
+        final int localPort = acquireStriped(StripingStrategy.LEAST_LOADED);
+
+        // then
+        assertEquals(LOCAL_PORT + 1, localPort);
+        assertEquals(2, registry.getReferenceCount(LOCAL_PORT));
+        assertEquals(2, registry.getReferenceCount(LOCAL_PORT + 1));
+    }
+
+    @Test
+    public void releaseOfStripeShouldOnlyCloseItsSession() throws JSchException {
+        // given
+        final Session stripeSessionMock = mockStripedForwarding();
+        acquireStriped(StripingStrategy.ROUND_ROBIN);
+        acquireStriped(StripingStrategy.ROUND_ROBIN);
+
+        // when
+        registry.release(LOCAL_PORT + 1);
+
+        // then
+        verify(sessionConnectorMock).releaseSession(stripeSessionMock);
+        verify(sessionConnectorMock, never()).releaseSession(sessionMock);
+        assertEquals(TunnelState.STARTED, registry.getTunnelState(LOCAL_PORT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acquireShouldThrowExceptionForNonPositiveStripes() {
+        // when
+        registry.acquire(SSH_URL, KEY_PATH, ForwardablePort.createForValidRhcListPortsOutputLine("postgresql -> dbhost:5432"), TunnelOptions.DEFAULT.withStripes(0, StripingStrategy.ROUND_ROBIN));
+    }
+
+    @Test
+    public void acquireShouldUseSeparateSessionsForTrafficClasses() throws JSchException {
+        // given
+        final Session bulkSessionMock = mockStripedForwarding();
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, KEY_PATH, TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK), 0)).thenReturn(bulkSessionMock);
+
+        // when
+        final int interactiveLocalPort = registry.acquire(SSH_URL, KEY_PATH, createPort(), TunnelOptions.DEFAULT);
+        final int bulkLocalPort = registry.acquire(SSH_URL, KEY_PATH, createPort(), TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK));
+        final int otherInteractiveLocalPort = registry.acquire(SSH_URL, KEY_PATH, createPort(), TunnelOptions.DEFAULT);
+
+        // then
+        assertEquals(LOCAL_PORT, interactiveLocalPort);
+        assertEquals(LOCAL_PORT + 1, bulkLocalPort);
+        assertEquals(LOCAL_PORT, otherInteractiveLocalPort);
+        verify(sessionConnectorMock).getAndConnectSession(SSH_URL, KEY_PATH);
+        verify(sessionConnectorMock).getAndConnectSession(SSH_URL, KEY_PATH, TunnelOptions.DEFAULT.withTrafficClass(TrafficClass.BULK), 0);
+    }
+
+    private ForwardablePort createPort() {
+        return ForwardablePort.createForValidRhcListPortsOutputLine("postgresql -> dbhost:5432");
+    }
+
+    @Test
+    public void acquireShouldUseSeparateSessionForTuning() throws JSchException {
+        // given
+        final Session tunedSessionMock = mockStripedForwarding();
+        final SshTuning tuning = new SshTuning(1048576, SshTuning.DEFAULT_SIZE, null, SshTuning.DEFAULT_SIZE, SshTuning.DEFAULT_SIZE);
+        when(sessionConnectorMock.getAndConnectSession(SSH_URL, KEY_PATH, TunnelOptions.DEFAULT.withTuning(tuning), 0)).thenReturn(tunedSessionMock);
+
+        // when
+        final int defaultLocalPort = registry.acquire(SSH_URL, KEY_PATH, createPort(), TunnelOptions.DEFAULT);
+        final int tunedLocalPort = registry.acquire(SSH_URL, KEY_PATH, createPort(), TunnelOptions.DEFAULT.withTuning(tuning));
+
+        // then
+        assertEquals(LOCAL_PORT, defaultLocalPort);
+        assertEquals(LOCAL_PORT + 1, tunedLocalPort);
+        verify(sessionConnectorMock).getAndConnectSession(SSH_URL, KEY_PATH);
+        verify(sessionConnectorMock).getAndConnectSession(SSH_URL, KEY_PATH, TunnelOptions.DEFAULT.withTuning(tuning), 0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TunnelSetupTrackerTest {
+
+    private static final long IDLE_THRESHOLD = 1_000;
+    private static final String SSH_URL = "ssh://user@host";
+
+    private TestTunnelSetupTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new TestTunnelSetupTracker(IDLE_THRESHOLD);
+    }
+
+    @Test
+    public void isRecentlySetUpShouldReturnFalseForUnknownGear() {
+        // when
+        final boolean recentlySetUp = tracker.isRecentlySetUp(SSH_URL);
+
+        // then
+        assertFalse(recentlySetUp);
+    }
+
+    @Test
+    public void isRecentlySetUpShouldReturnTrueWithinIdleThreshold() {
+        // given
+        tracker.recordTunnelSetup(SSH_URL);
+        tracker.now += IDLE_THRESHOLD - 1;
+
+        // when
+        final boolean recentlySetUp = tracker.isRecentlySetUp(SSH_URL);
+
+        // then
+        assertTrue(recentlySetUp);
+    }
+
+    @Test
+    public void isRecentlySetUpShouldReturnFalseAfterIdleThreshold() {
+        // given
+        tracker.recordTunnelSetup(SSH_URL);
+        tracker.now += IDLE_THRESHOLD;
+
+        // when
+        final boolean recentlySetUp = tracker.isRecentlySetUp(SSH_URL);
+
+        // then
+        assertFalse(recentlySetUp);
+    }
+
+    @Test
+    public void isRecentlySetUpShouldReturnFalseAfterForget() {
+        // given
+        tracker.recordTunnelSetup(SSH_URL);
+        tracker.forget(SSH_URL);
+
+        // when
+        final boolean recentlySetUp = tracker.isRecentlySetUp(SSH_URL);
+
+        // then
+        assertFalse(recentlySetUp);
+    }
+
+    @Test
+    public void isRecentlySetUpShouldAlwaysReturnFalseWhenIdleThresholdIsZero() {
+        // given
+        tracker = new TestTunnelSetupTracker(0);
+        tracker.recordTunnelSetup(SSH_URL);
+
+        // when
+        final boolean recentlySetUp = tracker.isRecentlySetUp(SSH_URL);
+
+        // then
+        assertFalse(recentlySetUp);
+    }
+
+    private static class TestTunnelSetupTracker extends TunnelSetupTracker {
+        private long now = 0;
+
+        private TestTunnelSetupTracker(long idleThresholdInMillis) {
+            super(idleThresholdInMillis);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Puzzle ITC GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.puzzle.openshift.openshift;
+
+import com.jcraft.jsch.Compression;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZlibCompressionTest {
+
+    /**
+     * Offset of the payload in an ssh packet (packet length and padding length)
+     */
+    private static final int PAYLOAD_OFFSET = 5;
+
+    private ZlibCompression deflater;
+    private ZlibCompression inflater;
+
+    @Before
+    public void setUp() {
+        deflater = new ZlibCompression();
+        deflater.init(Compression.DEFLATER, Deflater.DEFAULT_COMPRESSION);
+        inflater = new ZlibCompression();
+        inflater.init(Compression.INFLATER, 0);
+    }
+
+    @Test
+    public void uncompressShouldRestoreCompressedPayload() {
+        // given
+        final byte[] payload = createTextPayload(100);
+
+        // when
+        final byte[] restored = transfer(payload);
+
+        // then
+        assertArrayEquals(payload, restored);
+    }
+
+    @Test
+    public void compressionShouldKeepStateAcrossPackets() {
+        // when
+        final byte[] first = transfer(createTextPayload(10));
+        final byte[] second = transfer(createTextPayload(20));
+
+        // then
+        assertArrayEquals(createTextPayload(10), first);
+        assertArrayEquals(createTextPayload(20), second);
+    }
+
+    @Test
+    public void compressionShouldHandlePayloadLargerThanBuffer() {
+        // given
+        final byte[] payload = new byte[100000];
+        new Random(42).nextBytes(payload);
+
+        // when
+        final byte[] restored = transfer(payload);
+
+        // then
+        assertArrayEquals(payload, restored);
+    }
+
+    @Test
+    public void compressionShouldCountCompressedAndUncompressedBytes() {
+        // given
+        final byte[] payload = createTextPayload(1000);
+
+        // when
+        transfer(payload);
+
+        // then
+        assertEquals(payload.length, deflater.getUncompressedBytes());
+        assertEquals(payload.length, inflater.getUncompressedBytes());
+        assertEquals(deflater.getCompressedBytes(), inflater.getCompressedBytes());
+        assertTrue(deflater.getCompressedBytes() * 10 < payload.length);
+    }
+
+    @Test
+    public void uncompressShouldReturnNullForCorruptData() {
+        // given
+        final byte[] packet = new byte[]{0, 0, 0, 0, 0, 1, 2, 3, 4, 5, 6, 7};
+
+        // when
+        final byte[] result = inflater.uncompress(packet, PAYLOAD_OFFSET, new int[]{packet.length - PAYLOAD_OFFSET});
+
+        // then
+        assertNull(result);
+    }
+
+    private byte[] transfer(byte[] payload) {
+        final byte[] packet = new byte[PAYLOAD_OFFSET + payload.length];
+        System.arraycopy(payload, 0, packet, PAYLOAD_OFFSET, payload.length);
+        final int[] length = {packet.length};
+        final byte[] compressedPacket = deflater.compress(packet, PAYLOAD_OFFSET, length);
+        // the receiver gets the compressed payload behind the packet header
+        final int[] compressedLength = {length[0] - PAYLOAD_OFFSET};
+        final byte[] uncompressedPacket = inflater.uncompress(Arrays.copyOf(compressedPacket, length[0]), PAYLOAD_OFFSET, compressedLength);
+        return Arrays.copyOfRange(uncompressedPacket, PAYLOAD_OFFSET, PAYLOAD_OFFSET + compressedLength[0]);
+    }
+
+    private byte[] createTextPayload(int rows) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            builder.append("row ").append(i).append(": customer name, street, city, country\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}